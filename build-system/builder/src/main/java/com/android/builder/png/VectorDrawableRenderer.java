@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkState;
 
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
+import com.android.builder.utils.FileCache;
 import com.android.ide.common.resources.ResourcePreprocessor;
 import com.android.ide.common.resources.configuration.DensityQualifier;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
@@ -31,6 +32,11 @@ import com.android.ide.common.vectordrawable.VdPreview;
 import com.android.resources.Density;
 import com.android.resources.ResourceFolderType;
 import com.android.utils.ILogger;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
@@ -43,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 import javax.imageio.ImageIO;
 import javax.xml.stream.XMLInputFactory;
@@ -51,15 +58,30 @@ import javax.xml.stream.XMLStreamReader;
 
 /**
  * Generates PNG images (and XML copies) from VectorDrawable files.
+ *
+ * <p>Each density is generated by a separate {@link #generateFile} call, usually from different
+ * worker threads. To avoid parsing the same drawable once per density, parsed drawables are kept
+ * in a process-wide cache keyed by the hash of the file contents. When a build cache is given,
+ * the generated PNGs are also stored there so that unchanged drawables are not rendered again.
  */
 public class VectorDrawableRenderer implements ResourcePreprocessor {
     private static final String TAG_GRADIENT = "gradient";
 
+    /**
+     * Version of the PNG generation, part of the build cache key. Increase it whenever the
+     * rendering changes in a way that affects the generated images.
+     */
+    private static final long PNG_CACHE_VERSION = 1;
+
+    private static final Cache<HashCode, VdPreview.ParsedVectorDrawable> PARSED_DRAWABLES =
+            CacheBuilder.newBuilder().maximumSize(200).softValues().build();
+
     private final Supplier<ILogger> mLogger;
     private final int mMinSdk;
     private final boolean mSupportLibraryIsUsed;
     private final File mOutputDir;
     private final Collection<Density> mDensities;
+    @Nullable private final FileCache mBuildCache;
 
     public VectorDrawableRenderer(
             int minSdk,
@@ -67,11 +89,22 @@ public class VectorDrawableRenderer implements ResourcePreprocessor {
             @NonNull File outputDir,
             @NonNull Collection<Density> densities,
             @NonNull Supplier<ILogger> loggerSupplier) {
+        this(minSdk, supportLibraryIsUsed, outputDir, densities, loggerSupplier, null);
+    }
+
+    public VectorDrawableRenderer(
+            int minSdk,
+            boolean supportLibraryIsUsed,
+            @NonNull File outputDir,
+            @NonNull Collection<Density> densities,
+            @NonNull Supplier<ILogger> loggerSupplier,
+            @Nullable FileCache buildCache) {
         mMinSdk = minSdk;
         mSupportLibraryIsUsed = supportLibraryIsUsed;
         mOutputDir = outputDir;
         mDensities = densities;
         mLogger = loggerSupplier;
+        mBuildCache = buildCache;
     }
 
     @Override
@@ -219,12 +252,49 @@ public class VectorDrawableRenderer implements ResourcePreprocessor {
                 scaleFactor = 1.0f;
             }
 
+            byte[] xmlContent = Files.toByteArray(original);
+            HashCode hash = Hashing.sha256().hashBytes(xmlContent);
             VdPreview.TargetSize imageSize = VdPreview.TargetSize.createFromScale(scaleFactor);
-            String xmlContent = Files.asCharSource(original, StandardCharsets.UTF_8).read();
-            BufferedImage image = VdPreview.getPreviewFromVectorXml(imageSize, xmlContent, null);
-            checkState(image != null, "Generating the image failed.");
-            ImageIO.write(image, "png", toBeGenerated);
+
+            if (mBuildCache == null) {
+                writePng(toBeGenerated, xmlContent, hash, imageSize);
+                return;
+            }
+
+            FileCache.Inputs inputs =
+                    new FileCache.Inputs.Builder(FileCache.Command.GENERATE_VECTOR_DRAWABLE_PNG)
+                            .putString("hash", hash.toString())
+                            .putLong("density", density.getDpiValue())
+                            .putLong("version", PNG_CACHE_VERSION)
+                            .build();
+            try {
+                mBuildCache.createFile(
+                        toBeGenerated,
+                        inputs,
+                        () -> writePng(toBeGenerated, xmlContent, hash, imageSize));
+            } catch (ExecutionException e) {
+                Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private static void writePng(
+            @NonNull File toBeGenerated,
+            @NonNull byte[] xmlContent,
+            @NonNull HashCode hash,
+            @NonNull VdPreview.TargetSize imageSize)
+            throws IOException {
+        VdPreview.ParsedVectorDrawable drawable = PARSED_DRAWABLES.getIfPresent(hash);
+        if (drawable == null) {
+            drawable =
+                    VdPreview.parseVectorXml(new String(xmlContent, StandardCharsets.UTF_8), null);
+            checkState(drawable != null, "Generating the image failed.");
+            PARSED_DRAWABLES.put(hash, drawable);
         }
+        BufferedImage image = drawable.render(imageSize, null);
+        ImageIO.write(image, "png", toBeGenerated);
     }
 
     @NonNull
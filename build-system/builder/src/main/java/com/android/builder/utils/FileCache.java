@@ -32,6 +32,7 @@ import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
@@ -79,10 +80,13 @@ import java.util.stream.Stream;
  * <p>If a cache entry exists but is found to be corrupted, the cache entry will be deleted and
  * recreated.
  *
- * <p>This class is thread-safe.
+ * <p>This class is thread-safe. It is also serializable, so that it can be passed to worker
+ * actions along with its locking scope.
  */
 @Immutable
-public class FileCache {
+public class FileCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /** The scope of the locking facility. */
     private enum LockingScope {
@@ -1071,6 +1075,9 @@ public class FileCache {
 
         /** Fix stack frames. */
         FIX_STACK_FRAMES,
+
+        /** Generate a PNG image from a vector drawable. */
+        GENERATE_VECTOR_DRAWABLE_PNG,
     }
 
     /**
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.utils;
+
+import com.android.annotations.NonNull;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Rewrites a zip file entry by entry, copying the entries that are kept verbatim.
+ *
+ * <p>Unlike copying through a {@link java.util.zip.ZipInputStream} and a {@link
+ * java.util.zip.ZipOutputStream}, kept entries are never inflated and deflated again: their
+ * (possibly compressed) data is transferred directly from the source file channel to the
+ * destination file channel. Entries can also be replaced with new contents, which are compressed
+ * only if the entry they replace was compressed.
+ *
+ * <p>The output preserves the order in which the entries are returned by {@link #getEntries()},
+ * which is the order in which they are physically stored in the source file.
+ *
+ * <p>Only plain single-disk zip files are supported; a {@link ZipException} is thrown for Zip64
+ * archives (or if the output would require Zip64), in which case the caller should fall back to a
+ * stream-based copy.
+ *
+ * <p>This class is not thread-safe.
+ */
+public final class ZipRawCopier implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    /** Bit 3 of the general purpose flags: sizes and CRC are stored in a data descriptor. */
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    private static final long MAX_32_BIT_VALUE = 0xFFFFFFFFL;
+    private static final int MAX_16_BIT_VALUE = 0xFFFF;
+
+    /** Compression level used for replaced entries that need to be deflated. */
+    private static final int COMPRESSION_LEVEL = 9;
+
+    @NonNull private final FileChannel input;
+    @NonNull private final FileChannel output;
+    @NonNull private final List<Entry> entries;
+    @NonNull private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private int writtenEntries;
+    private boolean closed;
+
+    /**
+     * Opens {@code source} for reading and creates (or truncates) {@code dest} for writing.
+     *
+     * @throws ZipException if {@code source} is not a zip file supported by this class
+     */
+    public ZipRawCopier(@NonNull File source, @NonNull File dest) throws IOException {
+        input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            entries = readCentralDirectory(input);
+            output =
+                    FileChannel.open(
+                            dest.toPath(),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /** Returns the entries of the source file, in the order they are stored in the file. */
+    @NonNull
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /** Copies the given source entry to the output without decompressing it. */
+    public void copy(@NonNull Entry entry) throws IOException {
+        ByteBuffer localHeader = read(input, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name);
+        }
+        int nameLength = localHeader.getShort(26) & MAX_16_BIT_VALUE;
+        int extraLength = localHeader.getShort(28) & MAX_16_BIT_VALUE;
+        ByteBuffer extra =
+                read(input, entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength, extraLength);
+
+        long offset = output.position();
+        writeHeaders(
+                entry,
+                entry.flags & ~FLAG_DATA_DESCRIPTOR,
+                entry.method,
+                entry.crc,
+                entry.compressedSize,
+                entry.size,
+                extra,
+                offset);
+
+        // Transfer the raw entry data; any trailing data descriptor is dropped since the local
+        // header we wrote above already contains the sizes and the CRC.
+        long position = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long transferred = input.transferTo(position, remaining, output);
+            if (transferred <= 0) {
+                throw new ZipException("Unexpected end of data for " + entry.name);
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    /**
+     * Writes an entry with the name and timestamp of the given source entry, but with the given
+     * contents. The contents are compressed if and only if the source entry was compressed.
+     */
+    public void replace(@NonNull Entry entry, @NonNull byte[] contents) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+
+        byte[] data;
+        int method;
+        if (entry.method == ZipEntry.STORED) {
+            data = contents;
+            method = ZipEntry.STORED;
+        } else {
+            Deflater deflater = new Deflater(COMPRESSION_LEVEL, true);
+            try {
+                deflater.setInput(contents);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(contents.length + 16);
+                byte[] buffer = new byte[1024];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+                data = compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+            method = ZipEntry.DEFLATED;
+        }
+
+        long offset = output.position();
+        writeHeaders(
+                entry,
+                entry.flags & ~FLAG_DATA_DESCRIPTOR,
+                method,
+                crc.getValue(),
+                data.length,
+                contents.length,
+                ByteBuffer.allocate(0),
+                offset);
+        writeFully(output, ByteBuffer.wrap(data));
+    }
+
+    /** Writes the central directory of the output file and closes both files. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (FileChannel in = input;
+                FileChannel out = output) {
+            long centralDirectoryOffset = out.position();
+            byte[] directory = centralDirectory.toByteArray();
+            checkFits32Bits(centralDirectoryOffset + directory.length);
+            writeFully(out, ByteBuffer.wrap(directory));
+
+            ByteBuffer end =
+                    ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putShort((short) 0); // Number of this disk
+            end.putShort((short) 0); // Disk where the central directory starts
+            end.putShort((short) writtenEntries);
+            end.putShort((short) writtenEntries);
+            end.putInt(directory.length);
+            end.putInt((int) centralDirectoryOffset);
+            end.putShort((short) 0); // Comment length
+            end.flip();
+            writeFully(out, end);
+        }
+    }
+
+    private void writeHeaders(
+            @NonNull Entry entry,
+            int flags,
+            int method,
+            long crc,
+            long compressedSize,
+            long size,
+            @NonNull ByteBuffer localExtra,
+            long offset)
+            throws IOException {
+        checkFits32Bits(offset);
+        if (writtenEntries == MAX_16_BIT_VALUE) {
+            throw new ZipException("Too many entries for a non-Zip64 archive");
+        }
+        writtenEntries++;
+
+        ByteBuffer local =
+                ByteBuffer.allocate(
+                                LOCAL_HEADER_SIZE + entry.rawName.length + localExtra.remaining())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(LOCAL_HEADER_SIGNATURE);
+        local.putShort((short) entry.versionNeeded);
+        local.putShort((short) flags);
+        local.putShort((short) method);
+        local.putShort((short) entry.dosTime);
+        local.putShort((short) entry.dosDate);
+        local.putInt((int) crc);
+        local.putInt((int) compressedSize);
+        local.putInt((int) size);
+        local.putShort((short) entry.rawName.length);
+        local.putShort((short) localExtra.remaining());
+        local.put(entry.rawName);
+        local.put(localExtra);
+        local.flip();
+        writeFully(output, local);
+
+        // The central directory record is the source record with the updated fields patched in.
+        ByteBuffer central =
+                ByteBuffer.wrap(entry.centralDirectoryRecord.clone())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        central.putShort(8, (short) flags);
+        central.putShort(10, (short) method);
+        central.putInt(16, (int) crc);
+        central.putInt(20, (int) compressedSize);
+        central.putInt(24, (int) size);
+        central.putInt(42, (int) offset);
+        centralDirectory.write(central.array(), 0, central.capacity());
+    }
+
+    @NonNull
+    private static List<Entry> readCentralDirectory(@NonNull FileChannel channel)
+            throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new ZipException("Not a zip file");
+        }
+
+        // The end of central directory record is followed by a comment of at most 64K
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        long tailOffset = fileSize - tailSize;
+        ByteBuffer tail = read(channel, tailOffset, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                    && i + END_OF_CENTRAL_DIRECTORY_SIZE + (tail.getShort(i + 20) & MAX_16_BIT_VALUE)
+                            == tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new ZipException("End of central directory record not found");
+        }
+        if (eocd >= ZIP64_LOCATOR_SIZE
+                && tail.getInt(eocd - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIGNATURE) {
+            throw new ZipException("Zip64 archives are not supported");
+        }
+        if (tail.getShort(eocd + 4) != 0 || tail.getShort(eocd + 6) != 0) {
+            throw new ZipException("Multi-disk archives are not supported");
+        }
+        int entryCount = tail.getShort(eocd + 10) & MAX_16_BIT_VALUE;
+        long directorySize = tail.getInt(eocd + 12) & MAX_32_BIT_VALUE;
+        long directoryOffset = tail.getInt(eocd + 16) & MAX_32_BIT_VALUE;
+        if (directoryOffset + directorySize > tailOffset + eocd) {
+            throw new ZipException("Invalid central directory bounds");
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directorySize
+                    || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory record");
+            }
+            int nameLength = directory.getShort(position + 28) & MAX_16_BIT_VALUE;
+            int extraLength = directory.getShort(position + 30) & MAX_16_BIT_VALUE;
+            int commentLength = directory.getShort(position + 32) & MAX_16_BIT_VALUE;
+            int recordLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (position + recordLength > directorySize) {
+                throw new ZipException("Invalid central directory record");
+            }
+            byte[] record = new byte[recordLength];
+            directory.position(position);
+            directory.get(record);
+            entries.add(new Entry(ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN)));
+            position += recordLength;
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.localHeaderOffset));
+        return Collections.unmodifiableList(entries);
+    }
+
+    @NonNull
+    private static ByteBuffer read(@NonNull FileChannel channel, long offset, int size)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void checkFits32Bits(long offset) throws ZipException {
+        if (offset > MAX_32_BIT_VALUE) {
+            throw new ZipException("Output requires Zip64, which is not supported");
+        }
+    }
+
+    /** An entry of the source zip file, as described by its central directory record. */
+    public static final class Entry {
+        @NonNull private final byte[] centralDirectoryRecord;
+        @NonNull private final byte[] rawName;
+        @NonNull private final String name;
+        private final int versionNeeded;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int dosDate;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(@NonNull ByteBuffer record) throws ZipException {
+            centralDirectoryRecord = record.array();
+            versionNeeded = record.getShort(6) & MAX_16_BIT_VALUE;
+            flags = record.getShort(8) & MAX_16_BIT_VALUE;
+            method = record.getShort(10) & MAX_16_BIT_VALUE;
+            dosTime = record.getShort(12) & MAX_16_BIT_VALUE;
+            dosDate = record.getShort(14) & MAX_16_BIT_VALUE;
+            crc = record.getInt(16) & MAX_32_BIT_VALUE;
+            compressedSize = record.getInt(20) & MAX_32_BIT_VALUE;
+            size = record.getInt(24) & MAX_32_BIT_VALUE;
+            localHeaderOffset = record.getInt(42) & MAX_32_BIT_VALUE;
+            int nameLength = record.getShort(28) & MAX_16_BIT_VALUE;
+            rawName = new byte[nameLength];
+            System.arraycopy(centralDirectoryRecord, CENTRAL_HEADER_SIZE, rawName, 0, nameLength);
+            // Like java.util.zip, assume UTF-8 names regardless of the general purpose flags
+            name = new String(rawName, StandardCharsets.UTF_8);
+            if (compressedSize == MAX_32_BIT_VALUE
+                    || size == MAX_32_BIT_VALUE
+                    || localHeaderOffset == MAX_32_BIT_VALUE) {
+                throw new ZipException("Zip64 entries are not supported: " + name);
+            }
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                throw new ZipException("Unsupported compression method for " + name);
+            }
+        }
+
+        /** Returns the name of the entry. */
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        /** Returns whether the entry is a directory entry. */
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /** Returns the uncompressed size of the entry. */
+        public long getSize() {
+            return size;
+        }
+
+        /** Returns whether the entry data is compressed in the source file. */
+        public boolean isCompressed() {
+            return method != ZipEntry.STORED;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
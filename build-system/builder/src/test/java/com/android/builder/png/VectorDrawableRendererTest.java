@@ -19,15 +19,18 @@ import static com.android.utils.FileUtils.writeToFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import com.android.builder.utils.FileCache;
 import com.android.resources.Density;
 import com.android.utils.FileUtils;
 import com.android.utils.NullLogger;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
 import com.google.common.truth.Truth;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
+import javax.imageio.ImageIO;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -388,4 +391,42 @@ public class VectorDrawableRendererTest {
                 .named("getFilesToBeGenerated returned")
                 .isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void generatePngsWithBuildCache() throws Exception {
+        File cacheDir = tmpFolder.newFolder("cache");
+        File output = tmpFolder.newFolder("generated");
+        mRenderer =
+                new VectorDrawableRenderer(
+                        19,
+                        false,
+                        output,
+                        mDensities,
+                        NullLogger::new,
+                        FileCache.getInstanceWithSingleProcessLocking(cacheDir));
+        File drawable = new File(mRes, "drawable");
+        File input = new File(drawable, "icon.xml");
+
+        writeToFile(input, VECTOR_WITH_FILLTYPE);
+
+        File hdpi = FileUtils.join(output, "drawable-hdpi", "icon.png");
+        File mdpi = FileUtils.join(output, "drawable-mdpi", "icon.png");
+        mRenderer.generateFile(hdpi, input);
+        mRenderer.generateFile(mdpi, input);
+        Truth.assertThat(cacheDir.list()).isNotEmpty();
+
+        // The second run is served from the build cache and produces the same images.
+        byte[] hdpiBytes = Files.toByteArray(hdpi);
+        FileUtils.deleteDirectoryContents(output);
+        mRenderer.generateFile(hdpi, input);
+        Truth.assertThat(Files.toByteArray(hdpi)).isEqualTo(hdpiBytes);
+        Truth.assertThat(ImageIO.read(hdpi).getWidth()).isEqualTo(96);
+
+        // Without a build cache the images are the same.
+        File uncached =
+                FileUtils.join(tmpFolder.newFolder("uncached"), "drawable-hdpi", "icon.png");
+        new VectorDrawableRenderer(19, false, output, mDensities, NullLogger::new)
+                .generateFile(uncached, input);
+        Truth.assertThat(Files.toByteArray(uncached)).isEqualTo(hdpiBytes);
+    }
+}
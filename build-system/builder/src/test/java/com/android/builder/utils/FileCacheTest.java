@@ -30,9 +30,13 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -87,6 +91,22 @@ public class FileCacheTest {
         assertThat(outputFile).hasContents("Some text");
     }
 
+    @Test
+    public void testSerialization_KeepsLockingScope() throws Exception {
+        FileCache fileCache = FileCache.getInstanceWithSingleProcessLocking(cacheDir);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(fileCache);
+        }
+        FileCache copy;
+        try (ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (FileCache) in.readObject();
+        }
+        assertThat(copy.toString()).isEqualTo(fileCache.toString());
+        assertThat(copy.toString()).contains("SINGLE_PROCESS");
+    }
+
     @Test
     public void testCreateFile_SameInputDifferentOutputs() throws Exception {
         FileCache fileCache = FileCache.getInstanceWithSingleProcessLocking(cacheDir);
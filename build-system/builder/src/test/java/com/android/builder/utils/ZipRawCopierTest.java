@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Test cases for {@link ZipRawCopier}. */
+public class ZipRawCopierTest {
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopyAndReplace() throws IOException {
+        File source = temporaryFolder.newFile("source.zip");
+        File dest = temporaryFolder.newFile("dest.zip");
+        byte[] stored = "stored contents".getBytes(UTF_8);
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(source))) {
+            zos.putNextEntry(new ZipEntry("res/"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("res/layout/main.xml"));
+            zos.write("<LinearLayout/><LinearLayout/><LinearLayout/>".getBytes(UTF_8));
+            zos.closeEntry();
+            ZipEntry storedEntry = new ZipEntry("res/raw/data.bin");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            zos.putNextEntry(storedEntry);
+            zos.write(stored);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("res/drawable/unused.png"));
+            zos.write(new byte[4096]);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("resources.arsc"));
+            zos.write(new byte[128]);
+            zos.closeEntry();
+        }
+
+        List<String> names = new ArrayList<>();
+        try (ZipRawCopier copier = new ZipRawCopier(source, dest)) {
+            for (ZipRawCopier.Entry entry : copier.getEntries()) {
+                names.add(entry.getName());
+                if (entry.getName().equals("res/drawable/unused.png")) {
+                    assertThat(entry.isCompressed()).isTrue();
+                    assertThat(entry.getSize()).isEqualTo(4096);
+                    copier.replace(entry, new byte[] {1, 2, 3});
+                } else {
+                    copier.copy(entry);
+                }
+            }
+        }
+        assertThat(names)
+                .containsExactly(
+                        "res/",
+                        "res/layout/main.xml",
+                        "res/raw/data.bin",
+                        "res/drawable/unused.png",
+                        "resources.arsc")
+                .inOrder();
+
+        // Entries are streamed out in the original order
+        List<String> copied = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(dest))) {
+            ZipEntry entry = zis.getNextEntry();
+            while (entry != null) {
+                copied.add(entry.getName());
+                entry = zis.getNextEntry();
+            }
+        }
+        assertThat(copied).isEqualTo(names);
+
+        try (ZipFile zipFile = new ZipFile(dest)) {
+            assertThat(read(zipFile, "res/layout/main.xml"))
+                    .isEqualTo("<LinearLayout/><LinearLayout/><LinearLayout/>".getBytes(UTF_8));
+            assertThat(read(zipFile, "res/raw/data.bin")).isEqualTo(stored);
+            assertThat(zipFile.getEntry("res/raw/data.bin").getMethod())
+                    .isEqualTo(ZipEntry.STORED);
+            assertThat(read(zipFile, "res/drawable/unused.png")).isEqualTo(new byte[] {1, 2, 3});
+            assertThat(zipFile.getEntry("res/drawable/unused.png").getMethod())
+                    .isEqualTo(ZipEntry.DEFLATED);
+            assertThat(read(zipFile, "resources.arsc")).isEqualTo(new byte[128]);
+        }
+    }
+
+    @Test
+    public void testNotAZipFile() throws IOException {
+        File source = temporaryFolder.newFile("source.zip");
+        Files.write("not a zip file".getBytes(UTF_8), source);
+        try {
+            new ZipRawCopier(source, temporaryFolder.newFile("dest.zip")).close();
+            fail("Expected ZipException");
+        } catch (ZipException expected) {
+        }
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws IOException {
+        return ByteStreams.toByteArray(zipFile.getInputStream(zipFile.getEntry(name)));
+    }
+}
@@ -46,6 +46,7 @@ import com.android.builder.core.BuilderConstants;
 import com.android.builder.model.SourceProvider;
 import com.android.builder.model.VectorDrawablesOptions;
 import com.android.builder.png.VectorDrawableRenderer;
+import com.android.builder.utils.FileCache;
 import com.android.ide.common.blame.MergingLog;
 import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.CopyToOutputDirectoryResourceCompilationService;
@@ -146,6 +147,8 @@ public class MergeResources extends IncrementalTask {
 
     private Supplier<Integer> minSdk;
 
+    @Nullable private FileCache buildCache;
+
     @Nullable private FileCollection aapt2FromMaven;
 
     @Nullable private SingleFileProcessor dataBindingLayoutProcessor;
@@ -374,8 +377,9 @@ public class MergeResources extends IncrementalTask {
                 boolean supportLibraryIsUsed,
                 File outputDir,
                 Collection<Density> densities,
-                Supplier<ILogger> loggerSupplier) {
-            super(minSdk, supportLibraryIsUsed, outputDir, densities, loggerSupplier);
+                Supplier<ILogger> loggerSupplier,
+                @Nullable FileCache buildCache) {
+            super(minSdk, supportLibraryIsUsed, outputDir, densities, loggerSupplier, buildCache);
         }
 
         @Override
@@ -418,7 +422,8 @@ public class MergeResources extends IncrementalTask {
                 vectorSupportLibraryIsUsed,
                 generatedPngsOutputDir,
                 densities,
-                LoggerWrapper.supplierFor(MergeResources.class));
+                LoggerWrapper.supplierFor(MergeResources.class),
+                buildCache);
     }
 
     @NonNull
@@ -829,6 +834,7 @@ public class MergeResources extends IncrementalTask {
             // the getUseSupportLibrary method returns TRUE.
             task.vectorSupportLibraryIsUsed =
                     Boolean.TRUE.equals(vectorDrawablesOptions.getUseSupportLibrary());
+            task.buildCache = globalScope.getBuildCache();
 
             task.validateEnabled =
                     !globalScope.getProjectOptions().get(BooleanOption.DISABLE_RESOURCE_VALIDATION);
@@ -39,6 +39,7 @@ import com.android.build.gradle.internal.incremental.ByteCodeUtils;
 import com.android.builder.dexing.AnalysisCallback;
 import com.android.builder.dexing.R8ResourceShrinker;
 import com.android.builder.utils.ZipEntryUtils;
+import com.android.builder.utils.ZipRawCopier;
 import com.android.ide.common.resources.usage.ResourceUsageModel;
 import com.android.ide.common.resources.usage.ResourceUsageModel.Resource;
 import com.android.ide.common.xml.XmlPrettyPrinter;
@@ -49,12 +50,12 @@ import com.android.utils.Pair;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -62,23 +63,35 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import org.objectweb.asm.AnnotationVisitor;
@@ -197,6 +210,15 @@ public class ResourceUsageAnalyzer {
     /** Special marker regexp which does not match a resource name */
     static final String NO_MATCH = "-nomatch-";
 
+    /**
+     * Maximum number of class or resource files being read and analyzed ahead of their results
+     * being merged into the model, which bounds the memory held by pending results
+     */
+    private static final int MAX_PENDING_TASKS = 4 * ForkJoinPool.getCommonPoolParallelism();
+
+    /** Number of jar entries analyzed per task */
+    private static final int JAR_ENTRIES_PER_TASK = 64;
+
     private final File mResourceClassDir;
     private final File mProguardMapping;
     /** These can be class or dex files. */
@@ -297,9 +319,7 @@ public class ResourceUsageAnalyzer {
         gatherResourceValues(mResourceClassDir);
         recordMapping(mProguardMapping);
 
-        for (File jarOrDir : mClasses) {
-            recordClassUsages(jarOrDir);
-        }
+        recordClassUsages(mClasses);
         recordManifestUsages(mMergedManifest);
         recordResources(mResourceDirs);
         keepPossiblyReferencedResources();
@@ -406,6 +426,9 @@ public class ResourceUsageAnalyzer {
      * will remove the individual file-based resources, which is where most of
      * the data is anyway (usually in drawable bitmaps)
      *
+     * <p>Entries that are kept are copied over as is, without decompressing and compressing
+     * them again.
+     *
      * @param source the .ap_ file created by aapt
      * @param dest a new .ap_ file with unused file-based resources removed
      */
@@ -418,6 +441,90 @@ public class ResourceUsageAnalyzer {
             }
         }
 
+        try {
+            copyResourceZip(source, dest);
+        } catch (ZipException e) {
+            // Not an archive the raw copier can handle (e.g. Zip64): fall back to
+            // decompressing and recompressing every entry
+            if (mDebugPrinter != null) {
+                mDebugPrinter.println(
+                        "Could not copy " + source + " as is (" + e.getMessage() + ")");
+            }
+            recompressResourceZip(source, dest);
+        }
+
+        // If net negative, copy original back. This is unusual, but can happen
+        // in some circumstances, such as the one described in
+        // https://plus.google.com/+SaidTahsinDane/posts/X9sTSwoVUhB
+        // "Removed unused resources: Binary resource data reduced from 588KB to 595KB: Removed -1%"
+        // Guard against that, and worst case, just use the original.
+        long before = source.length();
+        long after = dest.length();
+        if (after > before) {
+            String message = "Resource shrinking did not work (grew from " + before + " to "
+                    + after + "); using original instead";
+            if (isVerbose()) {
+                System.out.println(message);
+            }
+            if (mDebugPrinter != null) {
+                mDebugPrinter.println(message);
+            }
+
+            Files.copy(source, dest);
+        }
+    }
+
+    private void copyResourceZip(@NonNull File source, @NonNull File dest) throws IOException {
+        // Write next to dest and rename once done, so that a copy failing half way does not
+        // leave a truncated dest behind for the fallback
+        File tmp =
+                File.createTempFile(
+                        dest.getName(), ".tmp", dest.getAbsoluteFile().getParentFile());
+        try {
+            try (ZipRawCopier copier = new ZipRawCopier(source, tmp)) {
+                copyResourceZipEntries(copier);
+            }
+            Files.move(tmp, dest);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private void copyResourceZipEntries(@NonNull ZipRawCopier copier) throws IOException {
+        List<ZipRawCopier.Entry> entries = copier.getEntries();
+        // JarInputStream, used by recompressResourceZip, consumes a leading META-INF/ directory
+        // and manifest without returning them as entries: leave them out here as well, so that
+        // both paths produce the same archive
+        int first = 0;
+        if (first < entries.size() && entries.get(first).getName().equalsIgnoreCase("META-INF/")) {
+            first++;
+        }
+        if (first < entries.size()
+                && entries.get(first).getName().equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            first++;
+        }
+        for (ZipRawCopier.Entry entry : entries.subList(first, entries.size())) {
+            String name = entry.getName();
+            if (name.contains("../")) {
+                throw new InvalidPathException(name, "Entry name contains invalid characters");
+            }
+            Resource resource = getResourceByJarPath(name);
+            if (resource == null || resource.isReachable()) {
+                copier.copy(entry);
+            } else if (REPLACE_DELETED_WITH_EMPTY && !entry.isDirectory()) {
+                byte[] bytes = getDummyContents(name);
+                copier.replace(entry, bytes);
+                logReplacedEntry(name, entry.getSize(), bytes.length);
+            } else {
+                logSkippedEntry(name, entry.getSize());
+            }
+        }
+    }
+
+    private void recompressResourceZip(@NonNull File source, @NonNull File dest)
+            throws IOException {
         try (JarInputStream zis =
                         new JarInputStream(new BufferedInputStream(new FileInputStream(source)));
                 JarOutputStream zos =
@@ -441,75 +548,69 @@ public class ResourceUsageAnalyzer {
                     copyToOutput(zis, zos, entry, name, directory);
                 } else if (REPLACE_DELETED_WITH_EMPTY && !directory) {
                     replaceWithDummyEntry(zos, entry, name);
-                } else if (isVerbose() || mDebugPrinter != null) {
-                    String message =
-                            "Skipped unused resource " + name + ": " + entry.getSize() + " bytes";
-                    if (isVerbose()) {
-                        System.out.println(message);
-                    }
-                    if (mDebugPrinter != null) {
-                        mDebugPrinter.println(message);
-                    }
+                } else {
+                    logSkippedEntry(name, entry.getSize());
                 }
                 entry = zis.getNextEntry();
             }
             zos.flush();
         }
-
-        // If net negative, copy original back. This is unusual, but can happen
-        // in some circumstances, such as the one described in
-        // https://plus.google.com/+SaidTahsinDane/posts/X9sTSwoVUhB
-        // "Removed unused resources: Binary resource data reduced from 588KB to 595KB: Removed -1%"
-        // Guard against that, and worst case, just use the original.
-        long before = source.length();
-        long after = dest.length();
-        if (after > before) {
-            String message = "Resource shrinking did not work (grew from " + before + " to "
-                    + after + "); using original instead";
-            if (isVerbose()) {
-                System.out.println(message);
-            }
-            if (mDebugPrinter != null) {
-                mDebugPrinter.println(message);
-            }
-
-            Files.copy(source, dest);
-        }
     }
 
     /**
-     * Replaces the given entry with a minimal valid file of that type.
+     * Returns a minimal valid file of the type of the given entry.
      *
      * @see #REPLACE_DELETED_WITH_EMPTY
      */
-    private void replaceWithDummyEntry(JarOutputStream zos, ZipEntry entry, String name)
-            throws IOException {
-        // Create a new entry so that the compressed len is recomputed.
-        byte[] bytes;
-        long crc;
+    @NonNull
+    private byte[] getDummyContents(@NonNull String name) {
         if (name.endsWith(DOT_9PNG)) {
-            bytes = TINY_9PNG;
-            crc = TINY_9PNG_CRC;
+            return TINY_9PNG;
         } else if (name.endsWith(DOT_PNG)) {
-            bytes = TINY_PNG;
-            crc = TINY_PNG_CRC;
+            return TINY_PNG;
         } else if (name.endsWith(DOT_XML)) {
             switch (format) {
                 case BINARY:
-                    bytes = TINY_BINARY_XML;
-                    crc = TINY_BINARY_XML_CRC;
-                    break;
+                    return TINY_BINARY_XML;
                 case PROTO:
-                    bytes = TINY_PROTO_XML;
-                    crc = TINY_PROTO_XML_CRC;
-                    break;
+                    return TINY_PROTO_XML;
+                default:
+                    throw new IllegalStateException("");
+            }
+        } else {
+            return new byte[0];
+        }
+    }
+
+    /** Returns the CRC of the contents returned by {@link #getDummyContents(String)}. */
+    private long getDummyCrc(@NonNull String name) {
+        if (name.endsWith(DOT_9PNG)) {
+            return TINY_9PNG_CRC;
+        } else if (name.endsWith(DOT_PNG)) {
+            return TINY_PNG_CRC;
+        } else if (name.endsWith(DOT_XML)) {
+            switch (format) {
+                case BINARY:
+                    return TINY_BINARY_XML_CRC;
+                case PROTO:
+                    return TINY_PROTO_XML_CRC;
                 default:
                     throw new IllegalStateException("");
             }
         } else {
-            bytes = new byte[0];
-            crc = 0L;
+            return 0L;
         }
+    }
+
+    /**
+     * Replaces the given entry with a minimal valid file of that type.
+     *
+     * @see #REPLACE_DELETED_WITH_EMPTY
+     */
+    private void replaceWithDummyEntry(JarOutputStream zos, ZipEntry entry, String name)
+            throws IOException {
+        // Create a new entry so that the compressed len is recomputed.
+        byte[] bytes = getDummyContents(name);
         JarEntry outEntry = new JarEntry(name);
         if (entry.getTime() != -1L) {
             outEntry.setTime(entry.getTime());
@@ -517,20 +618,36 @@ public class ResourceUsageAnalyzer {
         if (entry.getMethod() == JarEntry.STORED) {
             outEntry.setMethod(JarEntry.STORED);
             outEntry.setSize(bytes.length);
-            outEntry.setCrc(crc);
+            outEntry.setCrc(getDummyCrc(name));
         }
         zos.putNextEntry(outEntry);
         zos.write(bytes);
         zos.closeEntry();
 
+        logReplacedEntry(name, entry.getSize(), bytes.length);
+    }
+
+    private void logSkippedEntry(@NonNull String name, long size) {
+        if (isVerbose() || mDebugPrinter != null) {
+            String message = "Skipped unused resource " + name + ": " + size + " bytes";
+            if (isVerbose()) {
+                System.out.println(message);
+            }
+            if (mDebugPrinter != null) {
+                mDebugPrinter.println(message);
+            }
+        }
+    }
+
+    private void logReplacedEntry(@NonNull String name, long size, int replacementSize) {
         if (isVerbose() || mDebugPrinter != null) {
             String message =
                     "Skipped unused resource "
                             + name
                             + ": "
-                            + entry.getSize()
+                            + size
                             + " bytes (replaced with small dummy file of size "
-                            + bytes.length
+                            + replacementSize
                             + " bytes)";
             if (isVerbose()) {
                 System.out.println(message);
@@ -1267,39 +1384,88 @@ public class ResourceUsageAnalyzer {
 
     private void recordResources(Iterable<File> resources)
             throws IOException, SAXException, ParserConfigurationException {
-        for (File resDir : resources) {
-            File[] resourceFolders = resDir.listFiles();
-            if (resourceFolders != null) {
-                for (File folder : resourceFolders) {
-                    ResourceFolderType folderType =
-                            ResourceFolderType.getFolderType(folder.getName());
-                    if (folderType != null) {
-                        recordResources(folderType, folder);
+        // XML files are read and parsed in parallel, ahead of being visited in order (visiting
+        // updates the model, so it has to happen on this thread)
+        Deque<PendingResource> pending = new ArrayDeque<>();
+        try {
+            for (File resDir : resources) {
+                File[] resourceFolders = resDir.listFiles();
+                if (resourceFolders != null) {
+                    for (File folder : resourceFolders) {
+                        ResourceFolderType folderType =
+                                ResourceFolderType.getFolderType(folder.getName());
+                        if (folderType != null) {
+                            recordResources(folderType, folder, pending);
+                        }
                     }
                 }
             }
+            while (!pending.isEmpty()) {
+                recordResource(pending.removeFirst());
+            }
+        } finally {
+            for (PendingResource resource : pending) {
+                resource.cancel();
+            }
         }
     }
 
-    private void recordResources(@NonNull ResourceFolderType folderType, File folder)
-            throws ParserConfigurationException, SAXException, IOException {
+    private void recordResources(
+            @NonNull ResourceFolderType folderType,
+            File folder,
+            @NonNull Deque<PendingResource> pending)
+            throws SAXException, IOException {
         File[] files = folder.listFiles();
         if (files != null) {
             for (File file : files) {
-                String path = file.getPath();
-                mModel.file = file;
-                try {
-                    boolean isXml = endsWithIgnoreCase(path, DOT_XML);
-                    if (isXml) {
-                        String xml = Files.toString(file, UTF_8);
-                        Document document = XmlUtils.parseDocument(xml, true);
-                        mModel.visitXmlDocument(file, folderType, document);
-                    } else {
-                        mModel.visitBinaryResource(folderType, file);
-                    }
-                } finally {
-                    mModel.file = null;
+                if (pending.size() >= MAX_PENDING_TASKS) {
+                    recordResource(pending.removeFirst());
                 }
+                pending.addLast(new PendingResource(folderType, file));
+            }
+        }
+    }
+
+    private void recordResource(@NonNull PendingResource resource)
+            throws SAXException, IOException {
+        mModel.file = resource.file;
+        try {
+            if (resource.document != null) {
+                Document document = getResult(resource.document);
+                mModel.visitXmlDocument(resource.file, resource.folderType, document);
+            } else {
+                mModel.visitBinaryResource(resource.folderType, resource.file);
+            }
+        } finally {
+            mModel.file = null;
+        }
+    }
+
+    /** A resource file, along with the task parsing it if it is an XML file. */
+    private static class PendingResource {
+        @NonNull private final ResourceFolderType folderType;
+        @NonNull private final File file;
+        @Nullable private final ForkJoinTask<Document> document;
+
+        PendingResource(@NonNull ResourceFolderType folderType, @NonNull File file) {
+            this.folderType = folderType;
+            this.file = file;
+            if (endsWithIgnoreCase(file.getPath(), DOT_XML)) {
+                document =
+                        ForkJoinPool.commonPool()
+                                .submit(
+                                        () -> {
+                                            String xml = Files.toString(file, UTF_8);
+                                            return XmlUtils.parseDocument(xml, true);
+                                        });
+            } else {
+                document = null;
+            }
+        }
+
+        void cancel() {
+            if (document != null) {
+                document.cancel(true);
             }
         }
     }
@@ -1397,11 +1563,26 @@ public class ResourceUsageAnalyzer {
     private boolean mFoundWebContent;
 
     private void referencedString(@NonNull String string) {
+        if (!isPossibleResourceString(string)) {
+            return;
+        }
+
+        if (mStrings == null) {
+            mStrings = Sets.newHashSetWithExpectedSize(300);
+        }
+        mStrings.add(string);
+
+        if (!mFoundWebContent && string.contains(ANDROID_RES)) {
+            mFoundWebContent = true;
+        }
+    }
+
+    private static boolean isPossibleResourceString(@NonNull String string) {
         // See if the string is at all eligible; ignore strings that aren't
         // identifiers (has java identifier chars and nothing but .:/), or are empty or too long
         // We also allow "%", used for formatting strings.
         if (string.isEmpty() || string.length() > 80) {
-            return;
+            return false;
         }
         boolean haveIdentifierChar = false;
         for (int i = 0, n = string.length(); i < n; i++) {
@@ -1410,118 +1591,265 @@ public class ResourceUsageAnalyzer {
             if (!identifierChar && c != '.' && c != ':' && c != '/' && c != '%') {
                 // .:/ are for the fully qualified resource names, or for resource URLs or
                 // relative file names
-                return;
+                return false;
             } else if (identifierChar) {
                 haveIdentifierChar = true;
             }
         }
-        if (!haveIdentifierChar) {
-            return;
-        }
-
-        if (mStrings == null) {
-            mStrings = Sets.newHashSetWithExpectedSize(300);
-        }
-        mStrings.add(string);
+        return haveIdentifierChar;
+    }
 
-        if (!mFoundWebContent && string.contains(ANDROID_RES)) {
-            mFoundWebContent = true;
+    /**
+     * Records the resource references in the given class, dex and jar files.
+     *
+     * <p>The files are analyzed in parallel, each task collecting its references into its own
+     * {@link ReferenceCollector}. The collected references are merged into the model in the
+     * order of the files, so the result (and the debug output) does not depend on scheduling.
+     */
+    private void recordClassUsages(@NonNull Iterable<File> classes)
+            throws IOException, SAXException {
+        Deque<ForkJoinTask<ReferenceCollector>> pending = new ArrayDeque<>();
+        try {
+            for (File jarOrDir : classes) {
+                recordClassUsages(jarOrDir, pending);
+            }
+            while (!pending.isEmpty()) {
+                mergeReferences(getResult(pending.removeFirst()));
+            }
+        } finally {
+            for (ForkJoinTask<ReferenceCollector> task : pending) {
+                task.cancel(true);
+            }
         }
     }
 
-    private void recordClassUsages(File file) throws IOException {
+    private void recordClassUsages(
+            @NonNull File file, @NonNull Deque<ForkJoinTask<ReferenceCollector>> pending)
+            throws IOException, SAXException {
         if (file.isDirectory()) {
             File[] children = file.listFiles();
             if (children != null) {
                 for (File child : children) {
-                    recordClassUsages(child);
+                    recordClassUsages(child, pending);
                 }
             }
         } else if (file.isFile()) {
             if (file.getPath().endsWith(DOT_CLASS) || file.getPath().endsWith(DOT_DEX)) {
-                byte[] bytes = Files.toByteArray(file);
-                recordClassUsages(file, file.getName(), bytes);
+                submitClassUsages(
+                        pending,
+                        () -> {
+                            ReferenceCollector collector = new ReferenceCollector();
+                            byte[] bytes = Files.toByteArray(file);
+                            collector.recordClassUsages(file, file.getName(), bytes);
+                            return collector;
+                        });
             } else if (file.getPath().endsWith(DOT_JAR)) {
-                ZipInputStream zis = null;
-                try {
-                    FileInputStream fis = new FileInputStream(file);
-                    try {
-                        zis = new ZipInputStream(fis);
-                        ZipEntry entry = zis.getNextEntry();
-                        while (entry != null) {
-                            String name = entry.getName();
-                            if ((name.endsWith(DOT_CLASS)
-                                            &&
-                                            // Skip resource type classes like R$drawable; they will
-                                            // reference the integer id's we're looking for, but
-                                            // these aren't actual usages we need to track;
-                                            // if somebody references the field elsewhere, we'll
-                                            // catch that
-                                            !isResourceClass(name))
-                                    || name.endsWith(DOT_DEX)) {
-                                byte[] bytes = ByteStreams.toByteArray(zis);
-                                if (bytes != null) {
-                                    recordClassUsages(file, name, bytes);
-                                }
+                // The jar is read on this thread, and its entries handed out in batches
+                try (ZipInputStream zis =
+                        new ZipInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    List<Pair<String, byte[]>> batch = new ArrayList<>(JAR_ENTRIES_PER_TASK);
+                    ZipEntry entry = zis.getNextEntry();
+                    while (entry != null) {
+                        String name = entry.getName();
+                        if ((name.endsWith(DOT_CLASS)
+                                        &&
+                                        // Skip resource type classes like R$drawable; they will
+                                        // reference the integer id's we're looking for, but
+                                        // these aren't actual usages we need to track;
+                                        // if somebody references the field elsewhere, we'll
+                                        // catch that
+                                        !isResourceClass(name))
+                                || name.endsWith(DOT_DEX)) {
+                            batch.add(Pair.of(name, ByteStreams.toByteArray(zis)));
+                            if (batch.size() == JAR_ENTRIES_PER_TASK) {
+                                submitJarEntries(pending, file, batch);
+                                batch = new ArrayList<>(JAR_ENTRIES_PER_TASK);
                             }
-
-                            entry = zis.getNextEntry();
                         }
-                    } finally {
-                        Closeables.close(fis, true);
+
+                        entry = zis.getNextEntry();
+                    }
+                    if (!batch.isEmpty()) {
+                        submitJarEntries(pending, file, batch);
                     }
-                } finally {
-                    Closeables.close(zis, true);
                 }
             }
         }
     }
 
-    private void recordClassUsages(File file, String name, byte[] bytes) {
-        if (name.endsWith(DOT_CLASS)) {
-            ClassReader classReader = new ClassReader(bytes);
-            classReader.accept(new UsageVisitor(file, name), SKIP_DEBUG | SKIP_FRAMES);
-        } else {
-            assert name.endsWith(DOT_DEX);
-            AnalysisCallback callback =
-                    new AnalysisCallback() {
-                        @Override
-                        public boolean shouldProcess(@NonNull String internalName) {
-                            return !isResourceClass(internalName + DOT_CLASS);
-                        }
+    private void submitJarEntries(
+            @NonNull Deque<ForkJoinTask<ReferenceCollector>> pending,
+            @NonNull File jar,
+            @NonNull List<Pair<String, byte[]>> entries)
+            throws IOException, SAXException {
+        submitClassUsages(
+                pending,
+                () -> {
+                    ReferenceCollector collector = new ReferenceCollector();
+                    for (Pair<String, byte[]> entry : entries) {
+                        collector.recordClassUsages(jar, entry.getFirst(), entry.getSecond());
+                    }
+                    return collector;
+                });
+    }
 
-                        @Override
-                        public void referencedInt(int value) {
-                            ResourceUsageAnalyzer.this.referencedInt("dex", value, file, name);
-                        }
+    private void submitClassUsages(
+            @NonNull Deque<ForkJoinTask<ReferenceCollector>> pending,
+            @NonNull Callable<ReferenceCollector> task)
+            throws IOException, SAXException {
+        // Bound the amount of class data held in memory by merging the oldest results first
+        if (pending.size() >= MAX_PENDING_TASKS) {
+            mergeReferences(getResult(pending.removeFirst()));
+        }
+        pending.addLast(ForkJoinPool.commonPool().submit(task));
+    }
 
-                        @Override
-                        public void referencedString(@NonNull String value) {
-                            ResourceUsageAnalyzer.this.referencedString(value);
-                        }
+    private void mergeReferences(@NonNull ReferenceCollector collector) {
+        for (Map.Entry<Resource, String> entry : collector.mReferencedResources.entrySet()) {
+            Resource resource = entry.getKey();
+            String context = entry.getValue();
+            if (ResourceUsageModel.markReachable(resource) && context != null) {
+                assert mDebugPrinter != null : "mDebug is true, but mDebugPrinter is null.";
+                mDebugPrinter.println(
+                        "Marking " + resource + " reachable: referenced from " + context);
+            }
+        }
+        for (String string : collector.mReferencedStrings) {
+            referencedString(string);
+        }
+        mFoundGetIdentifier |= collector.mFoundGetIdentifier;
+        mFoundWebContent |= collector.mFoundWebContent;
+    }
 
-                        @Override
-                        public void referencedStaticField(
-                                @NonNull String internalName, @NonNull String fieldName) {
-                            Resource resource = getResourceFromCode(internalName, fieldName);
-                            if (resource != null) {
-                                ResourceUsageModel.markReachable(resource);
+    /**
+     * Waits for the given task to complete and returns its result, rethrowing the exception it
+     * failed with, if any.
+     */
+    private static <T> T getResult(@NonNull Future<T> task) throws IOException, SAXException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Throwables.throwIfInstanceOf(cause, IOException.class);
+            Throwables.throwIfInstanceOf(cause, SAXException.class);
+            Throwables.throwIfUnchecked(cause);
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Resource references found in a set of class or dex files.
+     *
+     * <p>Code is analyzed concurrently, and resources can't be marked reachable from several
+     * threads at once, so each task only reads the model while collecting references into its
+     * own collector; see {@link #mergeReferences(ReferenceCollector)}.
+     */
+    private class ReferenceCollector {
+        /**
+         * The referenced resources, in the order they were first referenced, mapped to a
+         * description of that reference when debugging (and to null otherwise)
+         */
+        private final Map<Resource, String> mReferencedResources = new LinkedHashMap<>();
+
+        private final Set<String> mReferencedStrings = new LinkedHashSet<>();
+        private boolean mFoundGetIdentifier;
+        private boolean mFoundWebContent;
+
+        private void recordClassUsages(File file, String name, byte[] bytes) {
+            if (name.endsWith(DOT_CLASS)) {
+                ClassReader classReader = new ClassReader(bytes);
+                classReader.accept(new UsageVisitor(this, file, name), SKIP_DEBUG | SKIP_FRAMES);
+            } else {
+                assert name.endsWith(DOT_DEX);
+                AnalysisCallback callback =
+                        new AnalysisCallback() {
+                            @Override
+                            public boolean shouldProcess(@NonNull String internalName) {
+                                return !isResourceClass(internalName + DOT_CLASS);
                             }
-                        }
 
-                        @Override
-                        public void referencedMethod(
-                                @NonNull String internalName,
-                                @NonNull String methodName,
-                                @NonNull String methodDescriptor) {
-                            ResourceUsageAnalyzer.this.referencedMethodInvocation(
-                                    internalName,
-                                    methodName,
-                                    methodDescriptor,
-                                    internalName + DOT_CLASS);
-                        }
-                    };
-            R8ResourceShrinker.runResourceShrinkerAnalysis(bytes, file, callback);
+                            @Override
+                            public void referencedInt(int value) {
+                                ReferenceCollector.this.referencedInt("dex", value, file, name);
+                            }
+
+                            @Override
+                            public void referencedString(@NonNull String value) {
+                                ReferenceCollector.this.referencedString(value);
+                            }
+
+                            @Override
+                            public void referencedStaticField(
+                                    @NonNull String internalName, @NonNull String fieldName) {
+                                ReferenceCollector.this.referencedStaticField(
+                                        internalName, fieldName);
+                            }
+
+                            @Override
+                            public void referencedMethod(
+                                    @NonNull String internalName,
+                                    @NonNull String methodName,
+                                    @NonNull String methodDescriptor) {
+                                ReferenceCollector.this.referencedMethodInvocation(
+                                        internalName,
+                                        methodName,
+                                        methodDescriptor,
+                                        internalName + DOT_CLASS);
+                            }
+                        };
+                R8ResourceShrinker.runResourceShrinkerAnalysis(bytes, file, callback);
+            }
+        }
+
+        private void referencedInt(
+                @NonNull String context, int value, File file, String currentClass) {
+            Resource resource = mModel.getResource(value);
+            if (resource != null && !mReferencedResources.containsKey(resource)) {
+                mReferencedResources.put(
+                        resource, mDebug ? context + " in " + file + ":" + currentClass : null);
+            }
+        }
+
+        private void referencedStaticField(@NonNull String owner, @NonNull String name) {
+            Resource resource = getResourceFromCode(owner, name);
+            if (resource != null && !mReferencedResources.containsKey(resource)) {
+                mReferencedResources.put(resource, null);
+            }
+        }
+
+        private void referencedString(@NonNull String string) {
+            if (isPossibleResourceString(string)) {
+                mReferencedStrings.add(string);
+            }
+        }
+
+        private void referencedMethodInvocation(
+                @NonNull String owner,
+                @NonNull String name,
+                @NonNull String desc,
+                @NonNull String currentClass) {
+            if (owner.equals("android/content/res/Resources")
+                    && name.equals("getIdentifier")
+                    && desc.equals("(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)I")) {
+
+                if (currentClass.equals(mResourcesWrapper)
+                        || currentClass.equals(mSuggestionsAdapter)) {
+                    // "benign" usages: don't trigger reflection mode just because
+                    // the user has included appcompat
+                    return;
+                }
+
+                mFoundGetIdentifier = true;
+                // TODO: Check previous instruction and see if we can find a literal
+                // String; if so, we can more accurately dispatch the resource here
+                // rather than having to check the whole string pool!
+            }
+            if (owner.equals("android/webkit/WebView") && name.startsWith("load")) {
+                mFoundWebContent = true;
+            }
         }
     }
 
@@ -1706,12 +2034,14 @@ public class ResourceUsageAnalyzer {
      * in the case of non-library code), as well as looking both for Resources#getIdentifier
      * calls and recording string literals, used to handle dynamic lookup of resources.
      */
-    private class UsageVisitor extends ClassVisitor {
+    private static class UsageVisitor extends ClassVisitor {
+        private final ReferenceCollector mCollector;
         private final File mJarFile;
         private final String mCurrentClass;
 
-        public UsageVisitor(File jarFile, String name) {
+        public UsageVisitor(ReferenceCollector collector, File jarFile, String name) {
             super(Opcodes.ASM5);
+            mCollector = collector;
             mJarFile = jarFile;
             mCurrentClass = name;
         }
@@ -1728,10 +2058,7 @@ public class ResourceUsageAnalyzer {
                 @Override
                 public void visitFieldInsn(int opcode, String owner, String name, String desc) {
                     if (opcode == Opcodes.GETSTATIC) {
-                        Resource resource = getResourceFromCode(owner, name);
-                        if (resource != null) {
-                            ResourceUsageModel.markReachable(resource);
-                        }
+                        mCollector.referencedStaticField(owner, name);
                     }
                 }
 
@@ -1739,7 +2066,7 @@ public class ResourceUsageAnalyzer {
                 public void visitMethodInsn(
                         int opcode, String owner, String name, String desc, boolean itf) {
                     super.visitMethodInsn(opcode, owner, name, desc, itf);
-                    referencedMethodInvocation(owner, name, desc, mCurrentClass);
+                    mCollector.referencedMethodInvocation(owner, name, desc, mCurrentClass);
                 }
 
                 @Override
@@ -1803,58 +2130,16 @@ public class ResourceUsageAnalyzer {
         private void handleCodeConstant(@Nullable Object cst, @NonNull String context) {
             if (cst instanceof Integer) {
                 Integer value = (Integer) cst;
-                referencedInt(context, value, mJarFile, mCurrentClass);
+                mCollector.referencedInt(context, value, mJarFile, mCurrentClass);
             } else if (cst instanceof int[]) {
                 int[] values = (int[]) cst;
                 for (int value : values) {
-                    referencedInt(context, value, mJarFile, mCurrentClass);
+                    mCollector.referencedInt(context, value, mJarFile, mCurrentClass);
                 }
             } else if (cst instanceof String) {
                 String string = (String) cst;
-                referencedString(string);
-            }
-        }
-    }
-
-    private void referencedInt(@NonNull String context, int value, File file, String currentClass) {
-        Resource resource = mModel.getResource(value);
-        if (ResourceUsageModel.markReachable(resource) && mDebug) {
-            assert mDebugPrinter != null : "mDebug is true, but mDebugPrinter is null.";
-            mDebugPrinter.println(
-                    "Marking "
-                            + resource
-                            + " reachable: referenced from "
-                            + context
-                            + " in "
-                            + file
-                            + ":"
-                            + currentClass);
-        }
-    }
-
-    private void referencedMethodInvocation(
-            @NonNull String owner,
-            @NonNull String name,
-            @NonNull String desc,
-            @NonNull String currentClass) {
-        if (owner.equals("android/content/res/Resources")
-                && name.equals("getIdentifier")
-                && desc.equals("(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)I")) {
-
-            if (currentClass.equals(mResourcesWrapper)
-                    || currentClass.equals(mSuggestionsAdapter)) {
-                // "benign" usages: don't trigger reflection mode just because
-                // the user has included appcompat
-                return;
+                mCollector.referencedString(string);
             }
-
-            mFoundGetIdentifier = true;
-            // TODO: Check previous instruction and see if we can find a literal
-            // String; if so, we can more accurately dispatch the resource here
-            // rather than having to check the whole string pool!
-        }
-        if (owner.equals("android/webkit/WebView") && name.startsWith("load")) {
-            mFoundWebContent = true;
         }
     }
 
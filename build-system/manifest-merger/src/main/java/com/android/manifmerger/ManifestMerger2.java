@@ -29,16 +29,22 @@ import com.android.ide.common.xml.XmlFormatStyle;
 import com.android.ide.common.xml.XmlPrettyPrinter;
 import com.android.utils.ILogger;
 import com.android.utils.Pair;
+import com.android.utils.PositionXmlParser;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -46,11 +52,15 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.w3c.dom.Attr;
@@ -68,6 +78,20 @@ public class ManifestMerger2 {
     static final String BOOTSTRAP_INSTANT_RUN_CONTENT_PROVIDER =
             "com.android.tools.ir.server.InstantRunContentProvider";
 
+    /** Maximum number of parsed library manifests kept by {@link #PARSED_LIBRARY_MANIFESTS}. */
+    private static final int MAX_CACHED_LIBRARY_MANIFESTS = 1000;
+
+    /**
+     * Parsed library manifests keyed by the hash of their contents, shared by all merger
+     * invocations (variants, and builds in the same process). The cached documents are never
+     * modified, see {@link #parseLibraryManifest(byte[])}.
+     */
+    private static final Cache<HashCode, Document> PARSED_LIBRARY_MANIFESTS =
+            CacheBuilder.newBuilder()
+                    .maximumSize(MAX_CACHED_LIBRARY_MANIFESTS)
+                    .softValues()
+                    .build();
+
     @NonNull
     private final File mManifestFile;
 
@@ -1133,64 +1157,130 @@ public class ManifestMerger2 {
             @Nullable String mainManifestPackageName)
             throws MergeFailureException {
 
-        ImmutableList.Builder<LoadedManifestInfo> loadedLibraryDocuments = ImmutableList.builder();
-
-        for (Pair<String, File> libraryFile : Sets.newLinkedHashSet(mLibraryFiles)) {
-            mLogger.verbose("Loading library manifest " + libraryFile.getSecond().getPath());
-            ManifestInfo manifestInfo =
-                    new ManifestInfo(
-                            libraryFile.getFirst(),
-                            libraryFile.getSecond(),
-                            XmlDocument.Type.LIBRARY,
-                            Optional.fromNullable(mainManifestPackageName));
-            File xmlFile = manifestInfo.mLocation;
-            XmlDocument libraryDocument;
-            try {
-                InputStream inputStream = mFileStreamProvider.getInputStream(xmlFile);
-                libraryDocument =
-                        XmlLoader.load(
-                                selectors,
-                                mSystemPropertyResolver,
-                                manifestInfo.mName,
-                                xmlFile,
-                                inputStream,
+        // Library manifests are independent of each other until they are merged, so they are
+        // parsed and have their placeholders substituted in parallel. The contents are read on
+        // this thread since file stream providers are not required to be thread-safe.
+        List<ForkJoinTask<LoadedLibraryManifest>> pendingLibraries = new ArrayList<>();
+        try {
+            for (Pair<String, File> libraryFile : Sets.newLinkedHashSet(mLibraryFiles)) {
+                mLogger.verbose("Loading library manifest " + libraryFile.getSecond().getPath());
+                ManifestInfo manifestInfo =
+                        new ManifestInfo(
+                                libraryFile.getFirst(),
+                                libraryFile.getSecond(),
                                 XmlDocument.Type.LIBRARY,
-                                Optional.absent(), /* mainManifestPackageName */
-                                mModel);
-            } catch (Exception e) {
-                throw new MergeFailureException(e);
-            }
-            // extract the package name...
-            String libraryPackage = libraryDocument.getRootNode().getXml().getAttribute("package");
-            // save it in the selector instance.
-            if (!Strings.isNullOrEmpty(libraryPackage)) {
-                selectors.addSelector(libraryPackage, libraryFile.getFirst());
+                                Optional.fromNullable(mainManifestPackageName));
+                byte[] contents;
+                try (InputStream inputStream =
+                        mFileStreamProvider.getInputStream(manifestInfo.mLocation)) {
+                    contents = ByteStreams.toByteArray(inputStream);
+                } catch (Exception e) {
+                    throw new MergeFailureException(e);
+                }
+                pendingLibraries.add(
+                        ForkJoinPool.commonPool()
+                                .submit(
+                                        () ->
+                                                loadLibrary(
+                                                        manifestInfo,
+                                                        contents,
+                                                        selectors,
+                                                        mergingReportBuilder.getLogger())));
             }
 
-            // perform placeholder substitution, this is useful when the library is using
-            // a placeholder in a key element, we however do not need to record these
-            // substitutions so feed it with a fake merging report.
-            MergingReport.Builder builder =
-                    new MergingReport.Builder(mergingReportBuilder.getLogger());
-            builder.getActionRecorder().recordAddedNodeAction(libraryDocument.getRootNode(), false);
-            performPlaceHolderSubstitution(
-                    manifestInfo, libraryDocument, builder, MergingReport.Record.Severity.INFO);
-            if (builder.hasErrors()) {
-                // we log the errors but continue, in case the error is of no consequence
-                // to the application consuming the library.
-                builder.build().log(mLogger);
+            // Register selectors and report problems in the library declaration order.
+            ImmutableList.Builder<LoadedManifestInfo> loadedLibraryDocuments =
+                    ImmutableList.builder();
+            for (ForkJoinTask<LoadedLibraryManifest> pendingLibrary : pendingLibraries) {
+                LoadedLibraryManifest library;
+                try {
+                    library = pendingLibrary.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MergeFailureException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new MergeFailureException(
+                            cause instanceof Exception ? (Exception) cause : e);
+                }
+                // save the package name in the selector instance.
+                if (!Strings.isNullOrEmpty(library.mPackage)) {
+                    selectors.addSelector(library.mPackage, library.mInfo.getName());
+                }
+                if (library.mReport.hasErrors()) {
+                    // we log the errors but continue, in case the error is of no consequence
+                    // to the application consuming the library.
+                    library.mReport.build().log(mLogger);
+                }
+                loadedLibraryDocuments.add(library.mInfo);
+            }
+            return loadedLibraryDocuments.build();
+        } finally {
+            for (ForkJoinTask<LoadedLibraryManifest> pendingLibrary : pendingLibraries) {
+                pendingLibrary.cancel(false);
             }
+        }
+    }
 
-            LoadedManifestInfo info =
-                    new LoadedManifestInfo(
-                            manifestInfo,
-                            Optional.fromNullable(libraryDocument.getPackageName()),
-                            libraryDocument);
+    /**
+     * Parses a library manifest and performs placeholder substitution. This method is called
+     * concurrently for all the libraries, so it must not modify shared state such as the selectors.
+     */
+    @NonNull
+    private LoadedLibraryManifest loadLibrary(
+            @NonNull ManifestInfo manifestInfo,
+            @NonNull byte[] contents,
+            @NonNull KeyResolver<String> selectors,
+            @NonNull ILogger logger)
+            throws Exception {
+        XmlDocument libraryDocument =
+                XmlLoader.load(
+                        selectors,
+                        mSystemPropertyResolver,
+                        manifestInfo.mName,
+                        manifestInfo.mLocation,
+                        parseLibraryManifest(contents),
+                        XmlDocument.Type.LIBRARY,
+                        Optional.absent(), /* mainManifestPackageName */
+                        mModel);
+        // extract the package name...
+        String libraryPackage = libraryDocument.getRootNode().getXml().getAttribute("package");
+
+        // perform placeholder substitution, this is useful when the library is using
+        // a placeholder in a key element, we however do not need to record these
+        // substitutions so feed it with a fake merging report.
+        MergingReport.Builder builder = new MergingReport.Builder(logger);
+        builder.getActionRecorder().recordAddedNodeAction(libraryDocument.getRootNode(), false);
+        performPlaceHolderSubstitution(
+                manifestInfo, libraryDocument, builder, MergingReport.Record.Severity.INFO);
+
+        LoadedManifestInfo info =
+                new LoadedManifestInfo(
+                        manifestInfo,
+                        Optional.fromNullable(libraryDocument.getPackageName()),
+                        libraryDocument);
+        return new LoadedLibraryManifest(info, libraryPackage, builder);
+    }
 
-            loadedLibraryDocuments.add(info);
+    /**
+     * Returns a new DOM document for the given library manifest contents. Library manifests are
+     * usually identical across variants and builds, so parsed documents are cached by content
+     * hash; since merging moves nodes out of library documents, each caller gets its own copy.
+     */
+    @NonNull
+    private static Document parseLibraryManifest(@NonNull byte[] contents) throws Exception {
+        HashCode hash = Hashing.sha256().hashBytes(contents);
+        Document document = PARSED_LIBRARY_MANIFESTS.getIfPresent(hash);
+        if (document == null) {
+            document = PositionXmlParser.parse(contents);
+            // Keep a pristine copy around, the parsed document is handed to the caller.
+            PARSED_LIBRARY_MANIFESTS.put(hash, PositionXmlParser.copy(document));
+            return document;
+        }
+        // DOM implementations are not thread-safe, even for reads.
+        synchronized (document) {
+            return PositionXmlParser.copy(document);
         }
-
-        return loadedLibraryDocuments.build();
     }
 
     private void checkUniquePackageName(
@@ -1869,6 +1959,24 @@ public class ManifestMerger2 {
         }
     }
 
+    /** A library manifest loaded by {@link #loadLibrary}, waiting to be registered in order. */
+    private static class LoadedLibraryManifest {
+        @NonNull private final LoadedManifestInfo mInfo;
+        /** The package attribute value, before placeholder substitution. */
+        @Nullable private final String mPackage;
+        /** The placeholder substitution report, only logged if it has errors. */
+        @NonNull private final MergingReport.Builder mReport;
+
+        private LoadedLibraryManifest(
+                @NonNull LoadedManifestInfo info,
+                @Nullable String libraryPackage,
+                @NonNull MergingReport.Builder report) {
+            mInfo = info;
+            mPackage = libraryPackage;
+            mReport = report;
+        }
+    }
+
     private static class LoadedManifestInfo extends ManifestInfo {
 
         @NonNull private final XmlDocument mXmlDocument;
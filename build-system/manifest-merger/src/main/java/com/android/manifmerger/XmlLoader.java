@@ -55,6 +55,36 @@ public final class XmlLoader {
             @NonNull DocumentModel<ManifestModel.NodeTypes> model)
             throws IOException, SAXException, ParserConfigurationException {
         Document domDocument = PositionXmlParser.parse(inputStream);
+        return load(
+                selectors,
+                systemPropertyResolver,
+                displayName,
+                xmlFile,
+                domDocument,
+                type,
+                mainManifestPackageName,
+                model);
+    }
+
+    /**
+     * Creates a {@link XmlDocument} from an already parsed DOM document. The returned {@link
+     * XmlDocument} takes ownership of the DOM document, which may be modified by merging.
+     *
+     * @param displayName the xml file display name.
+     * @param xmlFile the xml file.
+     * @param domDocument the document, as parsed by {@link PositionXmlParser}.
+     * @return the initialized {@link com.android.manifmerger.XmlDocument}
+     */
+    @NonNull
+    public static XmlDocument load(
+            @NonNull KeyResolver<String> selectors,
+            @NonNull KeyBasedValueResolver<ManifestSystemProperty> systemPropertyResolver,
+            @NonNull String displayName,
+            @NonNull File xmlFile,
+            @NonNull Document domDocument,
+            @NonNull XmlDocument.Type type,
+            @NonNull Optional<String> mainManifestPackageName,
+            @NonNull DocumentModel<ManifestModel.NodeTypes> model) {
         return new XmlDocument(
                 new SourceFile(xmlFile, displayName),
                 selectors,
@@ -360,6 +360,39 @@ public class PositionXmlParser {
         return p == null ? SourcePosition.UNKNOWN : p.toSourcePosition();
     }
 
+    /**
+     * Returns a deep copy of a document created by this parser, keeping the position information
+     * so that {@link #getPosition(Node)} works on the copied nodes. The original document is not
+     * modified, which allows a parsed document to be cached and copied for each use instead of
+     * being parsed again.
+     *
+     * @param document a document returned by one of the {@code parse} methods
+     * @return a new document with the same contents and positions
+     */
+    @NonNull
+    public static Document copy(@NonNull Document document) {
+        Document copy = (Document) document.cloneNode(true);
+        copy.setUserData(CONTENT_KEY, document.getUserData(CONTENT_KEY), null);
+        copyPositions(document, copy);
+        return copy;
+    }
+
+    private static void copyPositions(@NonNull Node from, @NonNull Node to) {
+        Object position = from.getUserData(POS_KEY);
+        if (position != null) {
+            // Positions are not modified once parsing is done, so they can be shared.
+            to.setUserData(POS_KEY, position, null);
+        }
+
+        Node fromChild = from.getFirstChild();
+        Node toChild = to.getFirstChild();
+        while (fromChild != null && toChild != null) {
+            copyPositions(fromChild, toChild);
+            fromChild = fromChild.getNextSibling();
+            toChild = toChild.getNextSibling();
+        }
+    }
+
     /**
      * Finds the leaf node at the given offset
      *
@@ -588,4 +588,39 @@ public class PositionXmlParserTest extends TestCase {
         // Ok (earlier this would throw networking errors attempting to load schemas.android.com)
         PositionXmlParser.parse(new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8)));
     }
+
+    public void testCopy() throws Exception {
+        String xml =
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                        + "<LinearLayout\n"
+                        + "    xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                        + "    android:orientation=\"vertical\" >\n"
+                        + "    <!-- comment -->\n"
+                        + "    <Button\n"
+                        + "        android:id=\"@+id/button1\" />\n"
+                        + "</LinearLayout>\n";
+        Document document = PositionXmlParser.parse(xml);
+        Document copy = PositionXmlParser.copy(document);
+        assertNotSame(document, copy);
+
+        Element button = (Element) copy.getElementsByTagName("Button").item(0);
+        assertNotNull(button);
+        assertEquals(
+                PositionXmlParser.getPosition(document.getElementsByTagName("Button").item(0)),
+                PositionXmlParser.getPosition(button));
+        SourcePosition position = PositionXmlParser.getPosition(button);
+        assertEquals(5, position.getStartLine());
+        assertEquals(xml.indexOf("<Button"), position.getStartOffset());
+
+        Attr id = button.getAttributeNodeNS("http://schemas.android.com/apk/res/android", "id");
+        assertEquals(xml.indexOf("android:id"), PositionXmlParser.getPosition(id).getStartOffset());
+
+        Node comment = copy.getDocumentElement().getFirstChild().getNextSibling();
+        assertEquals(Node.COMMENT_NODE, comment.getNodeType());
+        assertEquals(xml.indexOf("<!--"), PositionXmlParser.getPosition(comment).getStartOffset());
+
+        // Modifying the copy leaves the original alone.
+        copy.getDocumentElement().removeChild(button);
+        assertEquals(1, document.getElementsByTagName("Button").getLength());
+    }
 }
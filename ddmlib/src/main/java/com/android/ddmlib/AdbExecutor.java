@@ -0,0 +1,851 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ddmlib.log.LogReceiver;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs adb requests asynchronously. Unlike the blocking methods of {@link AdbHelper}, which use
+ * one thread and a spin-waiting connection per request, all the connections of an executor are
+ * driven by a single thread through a {@link Selector}, so a host can talk to many devices at
+ * once without a thread per operation.
+ *
+ * <p>The adb server closes a connection once the service it was switched to completes, so each
+ * request still uses its own connection. To avoid overloading a device's transport, at most a
+ * fixed number of requests run concurrently per device; further requests are queued and started
+ * in order as earlier ones complete.
+ *
+ * <p>Receivers passed to the executor, and listeners added to its futures with a direct
+ * executor, are called on the executor thread, and must not block.
+ */
+public final class AdbExecutor implements AutoCloseable {
+    private static final String LOG_TAG = "AdbExecutor";
+
+    /** Interval at which the cancellation of long running services is checked, in ms */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private static final int BUFFER_SIZE = 16384;
+
+    private final InetSocketAddress mAdbSockAddr;
+    private final int mMaxConnectionsPerDevice;
+    private final Selector mSelector;
+    private final Thread mThread;
+    private final Queue<Request<?>> mNewRequests = new ConcurrentLinkedQueue<>();
+
+    /** Per device queues, only accessed on the executor thread */
+    private final Map<String, DeviceQueue> mDeviceQueues = new HashMap<>();
+
+    private final List<Connection> mConnections = new ArrayList<>();
+
+    private volatile boolean mClosed;
+
+    /**
+     * Creates a new executor for the adb server at the given address.
+     *
+     * @param adbSockAddr the socket address of the adb server, typically {@link
+     *     AndroidDebugBridge#getSocketAddress()}
+     * @param maxConnectionsPerDevice the maximum number of requests to run concurrently on a
+     *     single device
+     * @throws IOException if the selector could not be opened
+     */
+    public AdbExecutor(@NonNull InetSocketAddress adbSockAddr, int maxConnectionsPerDevice)
+            throws IOException {
+        if (maxConnectionsPerDevice < 1) {
+            throw new IllegalArgumentException(
+                    "maxConnectionsPerDevice must be positive: " + maxConnectionsPerDevice);
+        }
+        mAdbSockAddr = adbSockAddr;
+        mMaxConnectionsPerDevice = maxConnectionsPerDevice;
+        mSelector = Selector.open();
+        mThread = new Thread(this::run, "AdbExecutor");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Executes a shell command on the device. The output is handed to <var>rcvr</var> as it
+     * arrives.
+     *
+     * @param device the device on which to execute the command
+     * @param command the shell command to execute
+     * @param rcvr the receiver of the output of the command
+     * @param maxTimeToOutputResponse max time between command output. If more time passes
+     *     between command output, the future fails with {@link
+     *     ShellCommandUnresponsiveException}. A value of 0 means the command may run forever.
+     * @param maxTimeUnits units for {@code maxTimeToOutputResponse}
+     * @return a future completed once the command has finished, or the receiver was cancelled
+     */
+    @NonNull
+    public ListenableFuture<Void> executeShellCommand(
+            @NonNull IDevice device,
+            @NonNull String command,
+            @NonNull IShellOutputReceiver rcvr,
+            long maxTimeToOutputResponse,
+            @NonNull TimeUnit maxTimeUnits) {
+        return submit(
+                new ShellRequest(
+                        device.getSerialNumber(),
+                        command,
+                        rcvr,
+                        maxTimeUnits.toMillis(maxTimeToOutputResponse)));
+    }
+
+    /**
+     * Runs a log service on the device, and provides its output to the {@link LogReceiver}.
+     *
+     * @param device the device on which to run the service
+     * @param logName the name of the log file to output
+     * @param rcvr the receiver of the log output
+     * @return a future completed when the service ends, or the receiver was cancelled
+     */
+    @NonNull
+    public ListenableFuture<Void> runLogService(
+            @NonNull IDevice device, @NonNull String logName, @NonNull LogReceiver rcvr) {
+        return submit(new LogRequest(device.getSerialNumber(), logName, rcvr));
+    }
+
+    /**
+     * Retrieves the frame buffer from the device.
+     *
+     * @param device the device to take a screenshot of
+     * @return a future for the image, or null if the frame buffer protocol is not supported
+     */
+    @NonNull
+    public ListenableFuture<RawImage> getFrameBuffer(@NonNull IDevice device) {
+        return submit(new FrameBufferRequest(device.getSerialNumber()));
+    }
+
+    /**
+     * Creates a port forwarding between a local and a remote port.
+     *
+     * @param device the device on which to do the port forwarding
+     * @param localPortSpec specification of the local port to forward, such as tcp:1234
+     * @param remotePortSpec specification of the remote port to forward to; see {@link
+     *     AdbHelper#createForward}
+     * @return a future completed once the forward has been created
+     */
+    @NonNull
+    public ListenableFuture<Void> createForward(
+            @NonNull IDevice device,
+            @NonNull String localPortSpec,
+            @NonNull String remotePortSpec) {
+        String serial = device.getSerialNumber();
+        return submit(
+                new HostRequest(
+                        serial,
+                        String.format(
+                                "host-serial:%1$s:forward:%2$s;%3$s", //$NON-NLS-1$
+                                serial, localPortSpec, remotePortSpec)));
+    }
+
+    /**
+     * Removes a port forwarding.
+     *
+     * @param device the device on which to remove the port forwarding
+     * @param localPortSpec specification of the local port that was forwarded
+     * @return a future completed once the forward has been removed
+     */
+    @NonNull
+    public ListenableFuture<Void> removeForward(
+            @NonNull IDevice device, @NonNull String localPortSpec) {
+        String serial = device.getSerialNumber();
+        return submit(
+                new HostRequest(
+                        serial,
+                        String.format(
+                                "host-serial:%1$s:killforward:%2$s", //$NON-NLS-1$
+                                serial, localPortSpec)));
+    }
+
+    /**
+     * Reboots the device.
+     *
+     * @param device the device to reboot
+     * @param into what to reboot into (recovery, bootloader), or null to just reboot
+     * @return a future completed once the request has been sent
+     */
+    @NonNull
+    public ListenableFuture<Void> reboot(@NonNull IDevice device, @Nullable String into) {
+        return submit(new RebootRequest(device.getSerialNumber(), into));
+    }
+
+    /** Stops the executor, failing all the pending requests */
+    @Override
+    public void close() {
+        mClosed = true;
+        mSelector.wakeup();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NonNull
+    private <T> ListenableFuture<T> submit(@NonNull Request<T> request) {
+        if (mClosed) {
+            request.mFuture.setException(new IOException("AdbExecutor is closed"));
+        } else {
+            mNewRequests.add(request);
+            mSelector.wakeup();
+            if (mClosed && mNewRequests.remove(request)) {
+                // Raced with close()
+                request.mFuture.setException(new IOException("AdbExecutor is closed"));
+            }
+        }
+        return request.mFuture;
+    }
+
+    private void run() {
+        try {
+            while (!mClosed) {
+                long now = System.currentTimeMillis();
+                long timeout = 0;
+                for (Connection connection : mConnections) {
+                    long wait = Math.max(1, connection.nextCheck() - now);
+                    timeout = timeout == 0 ? wait : Math.min(timeout, wait);
+                }
+                mSelector.select(timeout);
+
+                Request<?> request;
+                while ((request = mNewRequests.poll()) != null) {
+                    enqueue(request);
+                }
+
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        connection.process();
+                    } catch (Exception e) {
+                        connection.fail(e);
+                    }
+                }
+
+                now = System.currentTimeMillis();
+                // Copy, since checking may start queued requests
+                for (Connection connection : new ArrayList<>(mConnections)) {
+                    connection.check(now);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            Log.e(LOG_TAG, e);
+        } finally {
+            mClosed = true;
+            IOException closed = new IOException("AdbExecutor is closed");
+            for (Connection connection : new ArrayList<>(mConnections)) {
+                connection.fail(closed);
+            }
+            for (DeviceQueue queue : mDeviceQueues.values()) {
+                for (Request<?> request : queue.mPending) {
+                    request.mFuture.setException(closed);
+                }
+            }
+            Request<?> request;
+            while ((request = mNewRequests.poll()) != null) {
+                request.mFuture.setException(closed);
+            }
+            try {
+                mSelector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void enqueue(@NonNull Request<?> request) {
+        DeviceQueue queue = mDeviceQueues.get(request.mSerial);
+        if (queue == null) {
+            queue = new DeviceQueue();
+            mDeviceQueues.put(request.mSerial, queue);
+        }
+        if (queue.mActive < mMaxConnectionsPerDevice) {
+            queue.mActive++;
+            start(request);
+        } else {
+            queue.mPending.add(request);
+        }
+    }
+
+    private void start(@NonNull Request<?> request) {
+        if (mClosed) {
+            request.mFuture.setException(new IOException("AdbExecutor is closed"));
+            return;
+        }
+        Connection connection = new Connection(request);
+        mConnections.add(connection);
+        try {
+            connection.connect();
+        } catch (Exception e) {
+            connection.fail(e);
+        }
+    }
+
+    /** Called once a connection is closed, to start the next request for the device */
+    private void finished(@NonNull Connection connection) {
+        mConnections.remove(connection);
+        String serial = connection.mRequest.mSerial;
+        DeviceQueue queue = mDeviceQueues.get(serial);
+        Request<?> next = queue.mPending.poll();
+        if (next != null) {
+            start(next);
+        } else if (--queue.mActive == 0) {
+            mDeviceQueues.remove(serial);
+        }
+    }
+
+    private static final class DeviceQueue {
+        private final Queue<Request<?>> mPending = new ArrayDeque<>();
+        private int mActive;
+    }
+
+    private enum Phase {
+        CONNECTING,
+        TRANSPORT_STATUS,
+        SERVICE_STATUS,
+        STREAMING
+    }
+
+    /** The state of the adb connection serving a single request */
+    private final class Connection {
+        private final Request<?> mRequest;
+        private final ByteBuffer mIn = ByteBuffer.allocate(BUFFER_SIZE);
+        private final Queue<ByteBuffer> mOut = new ArrayDeque<>();
+        private SocketChannel mChannel;
+        private SelectionKey mKey;
+        private Phase mPhase = Phase.CONNECTING;
+        private long mLastProgress = System.currentTimeMillis();
+        private boolean mDone;
+
+        Connection(@NonNull Request<?> request) {
+            mRequest = request;
+        }
+
+        void connect() throws IOException {
+            if (mRequest.mFuture.isCancelled()) {
+                complete();
+                return;
+            }
+            mChannel = SocketChannel.open();
+            mChannel.configureBlocking(false);
+            mChannel.socket().setTcpNoDelay(true);
+            mKey = mChannel.register(mSelector, SelectionKey.OP_CONNECT, this);
+            if (mChannel.connect(mAdbSockAddr)) {
+                connected();
+            }
+        }
+
+        private void connected() throws IOException {
+            mPhase = Phase.TRANSPORT_STATUS;
+            if (mRequest.usesTransport()) {
+                send(AdbHelper.formAdbRequest("host:transport:" + mRequest.mSerial));
+            } else {
+                sendService();
+            }
+        }
+
+        private void sendService() throws IOException {
+            mPhase = Phase.SERVICE_STATUS;
+            send(AdbHelper.formAdbRequest(mRequest.getService()));
+        }
+
+        /** Queues the given data to be written to adb */
+        void send(@NonNull byte[] data) throws IOException {
+            mOut.add(ByteBuffer.wrap(data));
+            flush();
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = mOut.peek()) != null) {
+                mChannel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                mOut.remove();
+                mLastProgress = System.currentTimeMillis();
+            }
+            if (mOut.isEmpty() && mPhase == Phase.SERVICE_STATUS && !mRequest.awaitsStatus()) {
+                complete();
+                return;
+            }
+            mKey.interestOps(mOut.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        }
+
+        void process() throws Exception {
+            if (mKey.isConnectable()) {
+                mChannel.finishConnect();
+                connected();
+                return;
+            }
+            if (mKey.isWritable()) {
+                flush();
+            }
+            if (mDone || !mKey.isValid() || !mKey.isReadable()) {
+                return;
+            }
+
+            int count = mChannel.read(mIn);
+            if (count > 0) {
+                mLastProgress = System.currentTimeMillis();
+            }
+            mIn.flip();
+            try {
+                while (!mDone && parse(count < 0)) {
+                    // Keep parsing while progress is made
+                }
+            } finally {
+                mIn.compact();
+            }
+            if (count < 0 && !mDone) {
+                if (mPhase == Phase.STREAMING) {
+                    mRequest.onEof();
+                    complete();
+                } else {
+                    throw new IOException("EOF");
+                }
+            }
+        }
+
+        /** Parses the data in {@link #mIn}; returns true if some of it was consumed */
+        private boolean parse(boolean eof) throws Exception {
+            switch (mPhase) {
+                case TRANSPORT_STATUS:
+                case SERVICE_STATUS:
+                    if (mIn.remaining() < 4) {
+                        return false;
+                    }
+                    byte[] reply = new byte[4];
+                    mIn.get(reply);
+                    if (!AdbHelper.isOkay(reply)) {
+                        mIn.position(mIn.position() - 4);
+                        return parseFailure(eof);
+                    }
+                    if (mPhase == Phase.TRANSPORT_STATUS) {
+                        sendService();
+                    } else if (mRequest.hasOutput()) {
+                        mPhase = Phase.STREAMING;
+                    } else {
+                        complete();
+                    }
+                    return true;
+                case STREAMING:
+                    if (!mIn.hasRemaining()) {
+                        return false;
+                    }
+                    int position = mIn.position();
+                    if (mRequest.onData(this, mIn)) {
+                        complete();
+                        return false;
+                    }
+                    return mIn.position() != position;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Reads the reason following a failure status, and fails the request. As in {@link
+         * AdbHelper#readAdbResponse}, a missing or malformed reason is not an error.
+         */
+        private boolean parseFailure(boolean eof) throws AdbCommandRejectedException {
+            int start = mIn.position();
+            String message = "";
+            if (mIn.remaining() >= 8) {
+                byte[] lengthBuffer = new byte[4];
+                mIn.position(start + 4);
+                mIn.get(lengthBuffer);
+                try {
+                    int length = Integer.parseInt(AdbHelper.replyToString(lengthBuffer), 16);
+                    if (mIn.remaining() >= length) {
+                        byte[] reason = new byte[length];
+                        mIn.get(reason);
+                        message = AdbHelper.replyToString(reason);
+                    } else if (!eof && length <= mIn.capacity() - 8) {
+                        mIn.position(start);
+                        return false;
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            } else if (!eof) {
+                return false;
+            }
+            throw new AdbCommandRejectedException(message, mPhase == Phase.TRANSPORT_STATUS);
+        }
+
+        /** Returns the time at which {@link #check} should next be called */
+        long nextCheck() {
+            long timeout = getTimeout();
+            if (mRequest.isLongRunning() && mPhase == Phase.STREAMING) {
+                long poll = System.currentTimeMillis() + POLL_INTERVAL_MS;
+                return timeout > 0 ? Math.min(poll, mLastProgress + timeout) : poll;
+            }
+            return timeout > 0 ? mLastProgress + timeout : Long.MAX_VALUE;
+        }
+
+        private long getTimeout() {
+            return mPhase == Phase.STREAMING
+                    ? mRequest.getStreamingTimeout()
+                    : DdmPreferences.getTimeOut();
+        }
+
+        /** Checks for timeouts and cancellation */
+        void check(long now) {
+            if (mDone) {
+                return;
+            }
+            if (mRequest.mFuture.isCancelled() || mRequest.isCancelled()) {
+                complete();
+                return;
+            }
+            long timeout = getTimeout();
+            if (timeout > 0 && now - mLastProgress > timeout) {
+                fail(
+                        mPhase == Phase.STREAMING
+                                ? mRequest.createStreamingTimeoutException()
+                                : new TimeoutException());
+            }
+        }
+
+        private void complete() {
+            if (close()) {
+                mRequest.complete();
+            }
+        }
+
+        void fail(@NonNull Throwable t) {
+            if (close()) {
+                mRequest.mFuture.setException(t);
+            }
+        }
+
+        private boolean close() {
+            if (mDone) {
+                return false;
+            }
+            mDone = true;
+            if (mKey != null) {
+                mKey.cancel();
+            }
+            if (mChannel != null) {
+                try {
+                    mChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            finished(this);
+            return true;
+        }
+    }
+
+    /** A request to run a single adb service */
+    private abstract static class Request<T> {
+        final String mSerial;
+        final SettableFuture<T> mFuture = SettableFuture.create();
+
+        Request(@NonNull String serial) {
+            mSerial = serial;
+        }
+
+        /** Returns the service request to send to adb */
+        @NonNull
+        abstract String getService();
+
+        /** Whether the device transport must be selected before requesting the service */
+        boolean usesTransport() {
+            return true;
+        }
+
+        /** Whether adb replies to the service request with a status */
+        boolean awaitsStatus() {
+            return true;
+        }
+
+        /** Whether the service sends output after accepting the request */
+        boolean hasOutput() {
+            return true;
+        }
+
+        /** Whether the service runs until cancelled by the receiver */
+        boolean isLongRunning() {
+            return false;
+        }
+
+        /** Whether the receiver has been cancelled */
+        boolean isCancelled() {
+            return false;
+        }
+
+        /** Max time without output once the service has started, or 0 to wait forever */
+        long getStreamingTimeout() {
+            return DdmPreferences.getTimeOut();
+        }
+
+        /** Returns the exception to fail with when the service sends no output in time */
+        @NonNull
+        Exception createStreamingTimeoutException() {
+            return new TimeoutException();
+        }
+
+        /**
+         * Consumes data sent by the service once it has started. Returns true if the request is
+         * done; otherwise, returns once more data is needed.
+         */
+        boolean onData(@NonNull Connection connection, @NonNull ByteBuffer data)
+                throws Exception {
+            data.position(data.limit());
+            return false;
+        }
+
+        /** Called when the service closes the connection */
+        void onEof() {}
+
+        /** Completes the future successfully */
+        void complete() {
+            mFuture.set(null);
+        }
+    }
+
+    private static final class ShellRequest extends Request<Void> {
+        private final String mCommand;
+        private final IShellOutputReceiver mReceiver;
+        private final long mMaxTimeToOutputMs;
+
+        ShellRequest(
+                @NonNull String serial,
+                @NonNull String command,
+                @NonNull IShellOutputReceiver receiver,
+                long maxTimeToOutputMs) {
+            super(serial);
+            mCommand = command;
+            mReceiver = receiver;
+            mMaxTimeToOutputMs = maxTimeToOutputMs;
+        }
+
+        @NonNull
+        @Override
+        String getService() {
+            return "shell:" + mCommand; //$NON-NLS-1$
+        }
+
+        @Override
+        boolean isLongRunning() {
+            return true;
+        }
+
+        @Override
+        boolean isCancelled() {
+            return mReceiver.isCancelled();
+        }
+
+        @Override
+        long getStreamingTimeout() {
+            return mMaxTimeToOutputMs;
+        }
+
+        @NonNull
+        @Override
+        Exception createStreamingTimeoutException() {
+            return new ShellCommandUnresponsiveException();
+        }
+
+        @Override
+        boolean onData(@NonNull Connection connection, @NonNull ByteBuffer data) {
+            mReceiver.addOutput(
+                    data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return mReceiver.isCancelled();
+        }
+
+        @Override
+        void onEof() {
+            mReceiver.flush();
+        }
+    }
+
+    private static final class LogRequest extends Request<Void> {
+        private final String mLogName;
+        private final LogReceiver mReceiver;
+
+        LogRequest(@NonNull String serial, @NonNull String logName, @NonNull LogReceiver receiver) {
+            super(serial);
+            mLogName = logName;
+            mReceiver = receiver;
+        }
+
+        @NonNull
+        @Override
+        String getService() {
+            return "log:" + mLogName; //$NON-NLS-1$
+        }
+
+        @Override
+        boolean isLongRunning() {
+            return true;
+        }
+
+        @Override
+        boolean isCancelled() {
+            return mReceiver.isCancelled();
+        }
+
+        @Override
+        long getStreamingTimeout() {
+            return 0;
+        }
+
+        @Override
+        boolean onData(@NonNull Connection connection, @NonNull ByteBuffer data) {
+            mReceiver.parseNewData(
+                    data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return mReceiver.isCancelled();
+        }
+    }
+
+    private static final class FrameBufferRequest extends Request<RawImage> {
+        private final RawImage mImage = new RawImage();
+        private int mVersion = -1;
+        private int mOffset;
+        private boolean mUnsupported;
+
+        FrameBufferRequest(@NonNull String serial) {
+            super(serial);
+        }
+
+        @NonNull
+        @Override
+        String getService() {
+            return "framebuffer:"; //$NON-NLS-1$
+        }
+
+        @Override
+        boolean onData(@NonNull Connection connection, @NonNull ByteBuffer data)
+                throws IOException {
+            if (mVersion == -1) {
+                // first the protocol version
+                if (data.remaining() < 4) {
+                    return false;
+                }
+                mVersion = data.order(ByteOrder.LITTLE_ENDIAN).getInt();
+                data.order(ByteOrder.BIG_ENDIAN);
+            }
+            if (mImage.data == null) {
+                // then the header, whose size is a count of int
+                int headerSize = RawImage.getHeaderSize(mVersion) * 4;
+                if (data.remaining() < headerSize) {
+                    return false;
+                }
+                ByteBuffer header = data.slice();
+                header.limit(headerSize);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                data.position(data.position() + headerSize);
+                if (!mImage.readHeader(mVersion, header)) {
+                    Log.e("Screenshot", "Unsupported protocol: " + mVersion);
+                    mUnsupported = true;
+                    return true;
+                }
+                mImage.data = new byte[mImage.size];
+                // nudge the device to send the image
+                connection.send(new byte[] {0});
+            }
+            int length = Math.min(data.remaining(), mImage.size - mOffset);
+            data.get(mImage.data, mOffset, length);
+            mOffset += length;
+            return mOffset == mImage.size;
+        }
+
+        @Override
+        void complete() {
+            if (mUnsupported) {
+                mFuture.set(null);
+            } else if (mImage.data != null && mOffset == mImage.size) {
+                mFuture.set(mImage);
+            } else {
+                mFuture.setException(new IOException("EOF"));
+            }
+        }
+    }
+
+    /** A host request, which is answered with a status only */
+    private static final class HostRequest extends Request<Void> {
+        private final String mService;
+
+        HostRequest(@NonNull String serial, @NonNull String service) {
+            super(serial);
+            mService = service;
+        }
+
+        @NonNull
+        @Override
+        String getService() {
+            return mService;
+        }
+
+        @Override
+        boolean usesTransport() {
+            return false;
+        }
+
+        @Override
+        boolean hasOutput() {
+            return false;
+        }
+    }
+
+    private static final class RebootRequest extends Request<Void> {
+        private final String mInto;
+
+        RebootRequest(@NonNull String serial, @Nullable String into) {
+            super(serial);
+            mInto = into;
+        }
+
+        @NonNull
+        @Override
+        String getService() {
+            return mInto == null ? "reboot:" : "reboot:" + mInto; //$NON-NLS-1$
+        }
+
+        @Override
+        boolean awaitsStatus() {
+            return false;
+        }
+    }
+}
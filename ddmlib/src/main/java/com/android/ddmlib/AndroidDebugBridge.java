@@ -176,7 +176,10 @@ public class AndroidDebugBridge {
         /**
          * Sent when an existing client information changed.
          * <p>
-         * This is sent from a non UI thread.
+         * This is sent from a non UI thread. Changes coming from the data sent by the client are
+         * sent either from the monitor thread or from one of the chunk handler threads, so
+         * changes of different clients may be sent concurrently. The changes of a given client
+         * are sent one at a time, in the order the client sent its data.
          * @param client the updated client.
          * @param changeMask the bit mask describing the changed properties. It can contain
          * any of the following values: {@link Client#CHANGE_INFO},
@@ -539,6 +542,21 @@ public class AndroidDebugBridge {
         return false;
     }
 
+    /**
+     * Returns a snapshot of the metrics about the handling of the DDM chunks received from the
+     * clients, or <code>null</code> if the client support is not running.
+     *
+     * @see #init(boolean)
+     */
+    @Nullable
+    public static ChunkHandlerStats getChunkHandlerStats() {
+        MonitorThread monitorThread = MonitorThread.getInstance();
+        if (monitorThread != null) {
+            return monitorThread.getDdmExtension().getChunkHandlerStats();
+        }
+        return null;
+    }
+
     /**
      * Sets the client to accept debugger connection on the custom "Selected debug port".
      * @param selectedClient the client. Can be null.
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.VisibleForTesting;
+import com.android.annotations.concurrency.GuardedBy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of the direct buffers the JDWP packets of clients and debuggers are read into.
+ *
+ * <p>Packets are forwarded between a debugger and a client straight out of the read buffer. With
+ * a heap buffer, the JDK copies the data through a temporary direct buffer on each read and each
+ * write; with a direct buffer, it is not copied at all. Direct memory is costly to allocate and is
+ * only freed by the garbage collector, so the buffers dropped when a read buffer grows or shrinks
+ * are kept for reuse.
+ *
+ * <p>Buffers larger than {@link #MAX_POOLED_CAPACITY} are allocated on the heap, so that the few
+ * huge packets (e.g. heap dumps) do not hold on to direct memory.
+ */
+final class ByteBufferPool {
+    /** Buffers larger than this are heap buffers, and are not pooled */
+    static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    /** Maximum size of the buffers held by the pool */
+    private static final int MAX_POOLED_BYTES = 8 * 1024 * 1024;
+
+    private static final ByteBufferPool sInstance = new ByteBufferPool();
+
+    @GuardedBy("this")
+    private final Map<Integer, ArrayDeque<ByteBuffer>> mBuffers =
+            new HashMap<Integer, ArrayDeque<ByteBuffer>>();
+
+    @GuardedBy("this")
+    private int mPooledBytes;
+
+    @NonNull
+    static ByteBufferPool getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    ByteBufferPool() {}
+
+    /**
+     * Returns an empty buffer of the given capacity, in big endian order. It should be given back
+     * with {@link #release(ByteBuffer)} once it is not referenced anymore.
+     */
+    @NonNull
+    ByteBuffer acquire(int capacity) {
+        if (capacity > MAX_POOLED_CAPACITY) {
+            return ByteBuffer.allocate(capacity);
+        }
+        synchronized (this) {
+            ArrayDeque<ByteBuffer> buffers = mBuffers.get(capacity);
+            ByteBuffer buf = buffers != null ? buffers.pollFirst() : null;
+            if (buf != null) {
+                mPooledBytes -= capacity;
+                return buf;
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Gives a buffer back to the pool. The buffer must not be used by the caller anymore, including
+     * through the {@link JdwpPacket}s found in it.
+     */
+    void release(@NonNull ByteBuffer buf) {
+        int capacity = buf.capacity();
+        if (!buf.isDirect() || capacity > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        buf.clear();
+        buf.order(ByteOrder.BIG_ENDIAN);
+        synchronized (this) {
+            if (mPooledBytes + capacity > MAX_POOLED_BYTES) {
+                return;
+            }
+            ArrayDeque<ByteBuffer> buffers = mBuffers.get(capacity);
+            if (buffers == null) {
+                buffers = new ArrayDeque<ByteBuffer>();
+                mBuffers.put(capacity, buffers);
+            }
+            buffers.addFirst(buf);
+            mPooledBytes += capacity;
+        }
+    }
+
+    /**
+     * Returns a buffer of the given capacity holding the data of <var>buf</var>, from its start to
+     * its position, and releases <var>buf</var>. The position of the new buffer is at the end of the
+     * data.
+     */
+    @NonNull
+    ByteBuffer grow(@NonNull ByteBuffer buf, int capacity) {
+        ByteBuffer newBuffer = acquire(capacity);
+        buf.flip();
+        newBuffer.put(buf); // leaves "position" at end of copied
+        release(buf);
+        return newBuffer;
+    }
+
+    @VisibleForTesting
+    synchronized int getPooledBytes() {
+        return mPooledBytes;
+    }
+}
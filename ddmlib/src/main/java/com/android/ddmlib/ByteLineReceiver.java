@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Base implementation of {@link IShellOutputReceiver} that splits the raw data coming from the
+ * socket into lines, without decoding it.
+ *
+ * <p>Lines are handed to {@link #processLine(byte[], int, int)} as byte ranges, which are only
+ * valid for the duration of the call: they point either into the data received from the socket,
+ * or into a buffer reused for lines spanning several packets. Lines are terminated by {@code \n},
+ * optionally preceded by {@code \r}; the terminator is not part of the line.
+ *
+ * <p>Unlike {@link MultiLineReceiver}, this does not allocate anything per line, and multi-byte
+ * characters split across packets are handled correctly.
+ */
+public abstract class ByteLineReceiver implements IShellOutputReceiver {
+
+    /** bytes of the unfinished line, stored for the next packet */
+    private byte[] mUnfinishedLine = new byte[256];
+
+    private int mUnfinishedLength;
+
+    /** whether any output was received */
+    private boolean mReceivedOutput;
+
+    private CharsetDecoder mDecoder;
+
+    private CharBuffer mChars;
+
+    @Override
+    public final void addOutput(byte[] data, int offset, int length) {
+        if (isCancelled()) {
+            return;
+        }
+        mReceivedOutput = true;
+
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (mUnfinishedLength > 0) {
+                append(data, start, i - start);
+                processTerminatedLine(mUnfinishedLine, 0, mUnfinishedLength);
+                mUnfinishedLength = 0;
+            } else {
+                processTerminatedLine(data, start, i - start);
+            }
+            start = i + 1;
+        }
+        append(data, start, end - start);
+
+        processedOutput();
+    }
+
+    private void processTerminatedLine(byte[] data, int offset, int length) {
+        // in older devices, the \n is preceded by a \r
+        if (length > 0 && data[offset + length - 1] == '\r') {
+            length--;
+        }
+        processLine(data, offset, length);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        int required = mUnfinishedLength + length;
+        if (required > mUnfinishedLine.length) {
+            mUnfinishedLine =
+                    Arrays.copyOf(mUnfinishedLine, Math.max(required, mUnfinishedLine.length * 2));
+        }
+        System.arraycopy(data, offset, mUnfinishedLine, mUnfinishedLength, length);
+        mUnfinishedLength = required;
+    }
+
+    @Override
+    public void flush() {
+        if (mReceivedOutput) {
+            processUnterminatedLine(mUnfinishedLine, 0, mUnfinishedLength);
+            mUnfinishedLength = 0;
+            mReceivedOutput = false;
+        }
+
+        done();
+    }
+
+    /**
+     * Terminates the process. This is called after the last line has been through {@link
+     * #processLine(byte[], int, int)}.
+     */
+    public void done() {
+        // do nothing.
+    }
+
+    /**
+     * Called for each complete line received from the remote process.
+     *
+     * @param data the buffer containing the line; only valid for the duration of the call
+     * @param offset the offset of the line in the buffer
+     * @param length the length of the line, excluding the line terminator
+     */
+    protected abstract void processLine(@NonNull byte[] data, int offset, int length);
+
+    /**
+     * Called after all the lines of a packet have been processed. This can be used to process
+     * lines in batches.
+     */
+    protected void processedOutput() {
+        // do nothing.
+    }
+
+    /**
+     * Called on {@link #flush()} with the remaining output that was not terminated by a new line,
+     * if any output was received at all. The default implementation processes it as a line if it
+     * is not empty.
+     */
+    protected void processUnterminatedLine(@NonNull byte[] data, int offset, int length) {
+        if (length > 0) {
+            processLine(data, offset, length);
+        }
+    }
+
+    /**
+     * Decodes the given UTF-8 bytes, typically a line passed to {@link #processLine(byte[], int,
+     * int)}, into a reused buffer. The returned sequence is only valid until the next call.
+     */
+    @NonNull
+    protected final CharSequence decode(@NonNull byte[] data, int offset, int length) {
+        if (mChars == null || mChars.capacity() < length) {
+            // UTF-8 never decodes to more chars than bytes
+            mChars = CharBuffer.allocate(Math.max(length, 256));
+        }
+        mChars.clear();
+
+        // fast path for ASCII, which is most of the output of shell commands
+        char[] chars = mChars.array();
+        int i = 0;
+        while (i < length && data[offset + i] >= 0) {
+            chars[i] = (char) data[offset + i];
+            i++;
+        }
+        if (i < length) {
+            if (mDecoder == null) {
+                mDecoder =
+                        StandardCharsets.UTF_8
+                                .newDecoder()
+                                .onMalformedInput(CodingErrorAction.REPLACE)
+                                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            mDecoder.reset();
+            mChars.position(i);
+            ByteBuffer bytes = ByteBuffer.wrap(data, offset + i, length - i);
+            mDecoder.decode(bytes, mChars, true);
+            mDecoder.flush(mChars);
+            mChars.flip();
+        } else {
+            mChars.limit(length);
+        }
+        return mChars;
+    }
+}
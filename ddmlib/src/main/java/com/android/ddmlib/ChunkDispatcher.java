@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.annotations.VisibleForTesting;
+import com.android.annotations.concurrency.GuardedBy;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the work triggered by the packets of clients, typically {@link ChunkHandler}s, on a shared
+ * pool of threads rather than on the {@link MonitorThread}. The tasks of each client run one at a
+ * time, in the order they were dispatched, such that a slow handler (e.g. one processing a heap
+ * dump) only delays the client it is handling. Tasks can also be run right away on the calling
+ * thread when the client has nothing queued, see {@link #runIfIdle(Client, Runnable)}.
+ *
+ * <p>Once the packets waiting to be handled for a client exceed {@link #MAX_PENDING_BYTES}, the
+ * monitor thread should stop reading from that client, see {@link #pauseIfBackedUp(Client)}. It
+ * is notified through the {@link ResumeListener} once they have all been handled.
+ */
+final class ChunkDispatcher {
+    /** Size of the pending packets of a client beyond which it should not be read from */
+    static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
+    /** Handlers taking longer than this are logged */
+    private static final long SLOW_TASK_NS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Listener notified when a paused client can be read from again. */
+    interface ResumeListener {
+        void resume(@NonNull Client client);
+    }
+
+    private final Executor mExecutor;
+
+    private final ConcurrentMap<Client, ClientQueue> mQueues =
+            new ConcurrentHashMap<Client, ClientQueue>();
+
+    @Nullable private volatile ResumeListener mResumeListener;
+
+    // Metrics
+    private final AtomicInteger mPendingTasks = new AtomicInteger();
+    private final AtomicInteger mMaxPendingTasks = new AtomicInteger();
+    private final AtomicLong mCompletedTasks = new AtomicLong();
+    private final AtomicLong mTotalTaskNanos = new AtomicLong();
+    private final AtomicLong mMaxTaskNanos = new AtomicLong();
+    private final AtomicLong mMaxQueueNanos = new AtomicLong();
+
+    ChunkDispatcher() {
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        10,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("Chunk Handler %d") //$NON-NLS-1$
+                                .setDaemon(true)
+                                .build());
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+    }
+
+    @VisibleForTesting
+    ChunkDispatcher(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    void setResumeListener(@Nullable ResumeListener listener) {
+        mResumeListener = listener;
+    }
+
+    /**
+     * Runs a task for the given client, after the tasks previously dispatched for it.
+     *
+     * @param client the client the task is for
+     * @param task the task to run
+     * @param size the size of the data held by the task, counted towards {@link
+     *     #MAX_PENDING_BYTES} until it has run
+     */
+    void dispatch(@NonNull Client client, @NonNull Runnable task, int size) {
+        getQueue(client).add(new Task(task, size), false);
+    }
+
+    /**
+     * Runs a task for the given client on the calling thread, if none of the tasks previously
+     * dispatched for it is waiting or running. Tasks dispatched for the client while it runs are
+     * run after it, on the executor.
+     *
+     * @return true if the task was run, false if it should be dispatched instead
+     */
+    boolean runIfIdle(@NonNull Client client, @NonNull Runnable task) {
+        return getQueue(client).runIfIdle(new Task(task, 0));
+    }
+
+    /**
+     * Runs the last task for the given client, after the tasks previously dispatched for it. The
+     * state kept for the client is released once it has run.
+     */
+    void dispatchLast(@NonNull Client client, @NonNull Runnable task) {
+        getQueue(client).add(new Task(task, 0), true);
+    }
+
+    /**
+     * Returns true if the monitor thread should stop reading from the client, because too much of
+     * its data is waiting to be handled. If so, the {@link ResumeListener} is notified once the
+     * data has been handled.
+     */
+    boolean pauseIfBackedUp(@NonNull Client client) {
+        ClientQueue queue = mQueues.get(client);
+        return queue != null && queue.pauseIfBackedUp();
+    }
+
+    @NonNull
+    private ClientQueue getQueue(@NonNull Client client) {
+        ClientQueue queue = mQueues.get(client);
+        if (queue == null) {
+            ClientQueue newQueue = new ClientQueue(client);
+            queue = mQueues.putIfAbsent(client, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /** Returns the number of tasks waiting to run or running. */
+    int getPendingTasks() {
+        return mPendingTasks.get();
+    }
+
+    /** Returns the maximum number of tasks that were waiting to run or running at once. */
+    int getMaxPendingTasks() {
+        return mMaxPendingTasks.get();
+    }
+
+    /** Returns the number of tasks that have run. */
+    long getCompletedTasks() {
+        return mCompletedTasks.get();
+    }
+
+    /** Returns the average time taken by a task to run, in nanoseconds. */
+    long getAverageTaskNanos() {
+        long count = mCompletedTasks.get();
+        return count == 0 ? 0 : mTotalTaskNanos.get() / count;
+    }
+
+    /** Returns the maximum time taken by a task to run, in nanoseconds. */
+    long getMaxTaskNanos() {
+        return mMaxTaskNanos.get();
+    }
+
+    /** Returns the maximum time a task waited before running, in nanoseconds. */
+    long getMaxQueueNanos() {
+        return mMaxQueueNanos.get();
+    }
+
+    /** Returns a snapshot of the metrics, including the depth of the queue of each client. */
+    @NonNull
+    ChunkHandlerStats getStats() {
+        Map<Client, ChunkHandlerStats.QueueDepth> depths =
+                new HashMap<Client, ChunkHandlerStats.QueueDepth>();
+        for (ClientQueue queue : mQueues.values()) {
+            ChunkHandlerStats.QueueDepth depth = queue.getDepth();
+            if (depth.getPendingTasks() > 0) {
+                depths.put(queue.mClient, depth);
+            }
+        }
+        return new ChunkHandlerStats(
+                getPendingTasks(),
+                getMaxPendingTasks(),
+                getCompletedTasks(),
+                getAverageTaskNanos(),
+                getMaxTaskNanos(),
+                getMaxQueueNanos(),
+                depths);
+    }
+
+    private static void updateMax(@NonNull AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static final class Task {
+        final Runnable mRunnable;
+        final int mSize;
+        final long mQueuedNanos = System.nanoTime();
+
+        Task(@NonNull Runnable runnable, int size) {
+            mRunnable = runnable;
+            mSize = size;
+        }
+    }
+
+    /** The tasks of a client, which are run one at a time on the executor. */
+    private final class ClientQueue implements Runnable {
+        private final Client mClient;
+
+        @GuardedBy("this")
+        private final ArrayDeque<Task> mTasks = new ArrayDeque<Task>();
+
+        @GuardedBy("this")
+        private long mPendingBytes;
+
+        /** Number of tasks added and not done running */
+        @GuardedBy("this")
+        private int mPendingCount;
+
+        /** Whether this queue is submitted to the executor, or running */
+        @GuardedBy("this")
+        private boolean mScheduled;
+
+        @GuardedBy("this")
+        private boolean mPaused;
+
+        @GuardedBy("this")
+        private boolean mClosed;
+
+        ClientQueue(@NonNull Client client) {
+            mClient = client;
+        }
+
+        void add(@NonNull Task task, boolean last) {
+            countPendingTask();
+            synchronized (this) {
+                mTasks.addLast(task);
+                mPendingBytes += task.mSize;
+                mPendingCount++;
+                mClosed |= last;
+                if (mScheduled) {
+                    return;
+                }
+                mScheduled = true;
+            }
+            mExecutor.execute(this);
+        }
+
+        boolean runIfIdle(@NonNull Task task) {
+            synchronized (this) {
+                if (mScheduled) {
+                    return false;
+                }
+                mTasks.addLast(task);
+                mPendingCount++;
+                mScheduled = true;
+            }
+            countPendingTask();
+            run();
+            return true;
+        }
+
+        private void countPendingTask() {
+            int pending = mPendingTasks.incrementAndGet();
+            int max;
+            while (pending > (max = mMaxPendingTasks.get())) {
+                if (mMaxPendingTasks.compareAndSet(max, pending)) {
+                    break;
+                }
+            }
+        }
+
+        @NonNull
+        synchronized ChunkHandlerStats.QueueDepth getDepth() {
+            return new ChunkHandlerStats.QueueDepth(mPendingCount, mPendingBytes, mPaused);
+        }
+
+        synchronized boolean pauseIfBackedUp() {
+            if (mPendingBytes > MAX_PENDING_BYTES) {
+                mPaused = true;
+            }
+            return mPaused;
+        }
+
+        @Override
+        public void run() {
+            Task task;
+            synchronized (this) {
+                task = mTasks.pollFirst();
+            }
+
+            long start = System.nanoTime();
+            updateMax(mMaxQueueNanos, start - task.mQueuedNanos);
+            try {
+                task.mRunnable.run();
+            } catch (Exception e) {
+                // we don't want a bad handler to prevent the other tasks of the client from
+                // running, so we intercept all here.
+                Log.e("ddms", "Exception while handling packet from " + mClient);
+                Log.e("ddms", e);
+            }
+            long duration = System.nanoTime() - start;
+            mCompletedTasks.incrementAndGet();
+            mTotalTaskNanos.addAndGet(duration);
+            updateMax(mMaxTaskNanos, duration);
+            mPendingTasks.decrementAndGet();
+            if (duration > SLOW_TASK_NS) {
+                Log.w("ddms", String.format("Handling packet from %1$s took %2$d ms",
+                        mClient, TimeUnit.NANOSECONDS.toMillis(duration)));
+            }
+
+            boolean resume = false;
+            synchronized (this) {
+                mPendingBytes -= task.mSize;
+                mPendingCount--;
+                if (mPaused && mPendingBytes == 0) {
+                    mPaused = false;
+                    resume = true;
+                }
+                if (mTasks.isEmpty()) {
+                    mScheduled = false;
+                    if (mClosed) {
+                        mQueues.remove(mClient, this);
+                    }
+                }
+            }
+
+            ResumeListener listener = mResumeListener;
+            if (resume && listener != null) {
+                listener.resume(mClient);
+            }
+
+            synchronized (this) {
+                if (!mScheduled) {
+                    return;
+                }
+            }
+            // let the other clients run before handling the next task of this one
+            mExecutor.execute(this);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.android.annotations.NonNull;
 import com.android.ddmlib.DebugPortManager.IDebugPortProvider;
 import com.android.ddmlib.jdwp.JdwpAgent;
 import com.android.ddmlib.jdwp.JdwpInterceptor;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -39,9 +40,14 @@ public abstract class ChunkHandler extends JdwpInterceptor {
     ChunkHandler() {}
 
     /**
-     * Client is ready.  The monitor thread calls this method on all
-     * handlers when the client is determined to be DDM-aware (usually
-     * after receiving a HELO response.)
+     * Client is ready.  This method is called on all handlers when the
+     * client is determined to be DDM-aware (usually after receiving a
+     * HELO response.)
+     *
+     * This and the other methods receiving events or data of a client are
+     * called either on the monitor thread or on a chunk handler thread, see
+     * ChunkDispatcher.  The calls for a given client are made one at a time,
+     * in order, but calls for different clients may be concurrent.
      *
      * The handler can use this opportunity to initialize client-side
      * activity.  Because there's a fair chance we'll want to send a
@@ -69,6 +75,21 @@ public abstract class ChunkHandler extends JdwpInterceptor {
     abstract void handleChunk(Client client, int type,
         ByteBuffer data, boolean isReply, int msgId);
 
+    /**
+     * Handle an incoming chunk whose data was written to "file" as it was
+     * received, rather than read into memory.  This is only done for the
+     * chunk types listed in StreamedChunk, and only when enabled through
+     * DdmPreferences.setDumpStreamingDirectory().
+     *
+     * The file belongs to the handler.
+     */
+    void handleChunkFile(Client client, int type, File file) {
+        Log.w("ddms", "WARNING: received unexpected streamed chunk " + name(type)
+            + ": len=" + file.length());
+        Log.w("ddms", "         client " + client + ", handler " + this);
+        file.delete();
+    }
+
     /**
      * Handle chunks not recognized by handlers.  The handleChunk() method
      * in sub-classes should call this if the chunk type isn't recognized.
@@ -229,14 +250,15 @@ public abstract class ChunkHandler extends JdwpInterceptor {
         // initializers. For many different reasons they should not be there and should
         // be moved to another creation mechanism where they are part of the ddm extension
         // workflow. For now, access the ddmextension directly.
-        MonitorThread.getInstance().getDdmExtension().ddmSeen(client);
+        DdmJdwpExtension extension = MonitorThread.getInstance().getDdmExtension();
+        extension.ddmSeen(client);
 
         if (packet.isError()) {
           client.packetFailed(packet);
         } else if (packet.isEmpty()) {
           Log.d("ddms", "Got empty reply for 0x" + Integer.toHexString(packet.getId()));
         } else {
-          handlePacket(client, packet);
+          extension.dispatchPacket(this, client, packet);
         }
         return null;
       }
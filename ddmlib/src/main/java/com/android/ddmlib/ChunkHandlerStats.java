@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the metrics about the handling of the DDM chunks received from the
+ * clients. The chunks are handled on a pool of threads, one chunk at a time for each client.
+ *
+ * @see AndroidDebugBridge#getChunkHandlerStats()
+ */
+public final class ChunkHandlerStats {
+    /** The chunks of a client waiting to be handled. */
+    public static final class QueueDepth {
+        private final int mPendingTasks;
+        private final long mPendingBytes;
+        private final boolean mPaused;
+
+        QueueDepth(int pendingTasks, long pendingBytes, boolean paused) {
+            mPendingTasks = pendingTasks;
+            mPendingBytes = pendingBytes;
+            mPaused = paused;
+        }
+
+        /** Returns the number of chunks and events of the client waiting to be handled. */
+        public int getPendingTasks() {
+            return mPendingTasks;
+        }
+
+        /** Returns the size of the packets of the client waiting to be handled, in bytes. */
+        public long getPendingBytes() {
+            return mPendingBytes;
+        }
+
+        /** Returns whether reading from the client is paused until its packets are handled. */
+        public boolean isPaused() {
+            return mPaused;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%1$d tasks, %2$d bytes%3$s",
+                    mPendingTasks, mPendingBytes, mPaused ? ", paused" : "");
+        }
+    }
+
+    private final int mPendingTasks;
+    private final int mMaxPendingTasks;
+    private final long mCompletedTasks;
+    private final long mAverageTaskNanos;
+    private final long mMaxTaskNanos;
+    private final long mMaxQueueNanos;
+    @NonNull private final Map<Client, QueueDepth> mQueueDepths;
+
+    ChunkHandlerStats(
+            int pendingTasks,
+            int maxPendingTasks,
+            long completedTasks,
+            long averageTaskNanos,
+            long maxTaskNanos,
+            long maxQueueNanos,
+            @NonNull Map<Client, QueueDepth> queueDepths) {
+        mPendingTasks = pendingTasks;
+        mMaxPendingTasks = maxPendingTasks;
+        mCompletedTasks = completedTasks;
+        mAverageTaskNanos = averageTaskNanos;
+        mMaxTaskNanos = maxTaskNanos;
+        mMaxQueueNanos = maxQueueNanos;
+        mQueueDepths = ImmutableMap.copyOf(queueDepths);
+    }
+
+    /** Returns the number of tasks waiting to run or running, for all the clients. */
+    public int getPendingTasks() {
+        return mPendingTasks;
+    }
+
+    /** Returns the maximum number of tasks that were waiting to run or running at once. */
+    public int getMaxPendingTasks() {
+        return mMaxPendingTasks;
+    }
+
+    /** Returns the number of tasks that have run. */
+    public long getCompletedTasks() {
+        return mCompletedTasks;
+    }
+
+    /** Returns the average time taken by a task to run, in nanoseconds. */
+    public long getAverageTaskNanos() {
+        return mAverageTaskNanos;
+    }
+
+    /** Returns the maximum time taken by a task to run, in nanoseconds. */
+    public long getMaxTaskNanos() {
+        return mMaxTaskNanos;
+    }
+
+    /** Returns the maximum time a task waited before running, in nanoseconds. */
+    public long getMaxQueueNanos() {
+        return mMaxQueueNanos;
+    }
+
+    /** Returns the depth of the queue of each client with tasks waiting to run or running. */
+    @NonNull
+    public Map<Client, QueueDepth> getQueueDepths() {
+        return mQueueDepths;
+    }
+}
@@ -21,6 +21,7 @@ import com.android.ddmlib.AndroidDebugBridge.IClientChangeListener;
 import com.android.ddmlib.DebugPortManager.IDebugPortProvider;
 import com.android.ddmlib.jdwp.JdwpAgent;
 import com.android.ddmlib.jdwp.JdwpProtocol;
+import java.io.File;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
@@ -95,12 +96,17 @@ public class Client extends JdwpAgent {
      * are much smaller.
      *
      * Pass-through debugger traffic is sent without copying.  "mWriteBuffer"
-     * is only used for data generated within Client.
+     * is only used for data generated within Client.  The read buffer comes
+     * from the ByteBufferPool, so that it is a direct buffer the data does
+     * not get copied out of when written to the debugger channel.
      */
     private static final int INITIAL_BUF_SIZE = 2*1024;
     private static final int MAX_BUF_SIZE = 800*1024*1024;
     private ByteBuffer mReadBuffer;
 
+    // chunk whose data is written to a file as it is received, instead of to mReadBuffer
+    private StreamedChunk mStreamedChunk;
+
     private Device mDevice;
 
     private int mConnState;
@@ -127,7 +133,7 @@ public class Client extends JdwpAgent {
         mDevice = device;
         mChan = chan;
 
-        mReadBuffer = ByteBuffer.allocate(INITIAL_BUF_SIZE);
+        mReadBuffer = ByteBufferPool.getInstance().acquire(INITIAL_BUF_SIZE);
 
         mConnState = ST_INIT;
 
@@ -557,6 +563,20 @@ public class Client extends JdwpAgent {
         }
     }
 
+    /**
+     * Makes the Selector the client was registered with report incoming data again, after the
+     * monitor thread stopped reading from it.
+     */
+    void resumeReading(Selector sel) {
+        SocketChannel chan = mChan;
+        if (chan != null) {
+            SelectionKey key = chan.keyFor(sel);
+            if (key != null && key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
     /**
      * Sets the client to accept debugger connection on the "selected debugger port".
      *
@@ -672,6 +692,19 @@ public class Client extends JdwpAgent {
 
         int count;
 
+        if (mStreamedChunk != null && !mStreamedChunk.isComplete()) {
+            if (mStreamedChunk.read(mChan) < 0) {
+                throw new IOException("read failed");
+            }
+            return;
+        }
+
+        // shrink buffer back to initial capacity if last packet required a large buffer
+        if (mReadBuffer.position() == 0 && mReadBuffer.capacity() > INITIAL_BUF_SIZE) {
+            ByteBufferPool.getInstance().release(mReadBuffer);
+            mReadBuffer = ByteBufferPool.getInstance().acquire(INITIAL_BUF_SIZE);
+        }
+
         if (mReadBuffer.position() == mReadBuffer.capacity()) {
             if (mReadBuffer.capacity() * 2 > MAX_BUF_SIZE) {
                 Log.e("ddms", "Exceeded MAX_BUF_SIZE!");
@@ -680,13 +713,9 @@ public class Client extends JdwpAgent {
             Log.d("ddms", "Expanding read buffer to "
                 + mReadBuffer.capacity() * 2);
 
-            ByteBuffer newBuffer = ByteBuffer.allocate(mReadBuffer.capacity() * 2);
-
             // copy entire buffer to new buffer
-            mReadBuffer.position(0);
-            newBuffer.put(mReadBuffer);  // leaves "position" at end of copied
-
-            mReadBuffer = newBuffer;
+            mReadBuffer = ByteBufferPool.getInstance().grow(mReadBuffer,
+                    mReadBuffer.capacity() * 2);
         }
 
         count = mChan.read(mReadBuffer);
@@ -764,6 +793,18 @@ public class Client extends JdwpAgent {
                 if (Log.Config.LOGV) Log.v("ddms",
                     "Checking " + mReadBuffer.position() + " bytes");
             }
+            if (mStreamedChunk == null) {
+                startStreamedChunk();
+            }
+            if (mStreamedChunk != null) {
+                if (!mStreamedChunk.isComplete()) {
+                    // the rest of the chunk is read straight to the file by read()
+                    return null;
+                }
+                finishStreamedChunk();
+                // see if we have another packet in the buffer
+                return getJdwpPacket();
+            }
             return JdwpPacket.findPacket(mReadBuffer);
         } else {
             /*
@@ -775,6 +816,48 @@ public class Client extends JdwpAgent {
         return null;
     }
 
+    /**
+     * Starts writing the chunk at the start of the read buffer to a file, if it is a heap dump or
+     * method trace and these are streamed to disk. The part of the chunk already in the buffer is
+     * moved to the file.
+     */
+    private void startStreamedChunk() throws IOException {
+        File directory = DdmPreferences.getDumpStreamingDirectory();
+        if (directory == null) {
+            return;
+        }
+        int type = JdwpPacket.findDdmChunkType(mReadBuffer);
+        if (!StreamedChunk.isStreamed(type)) {
+            return;
+        }
+
+        int headerLength = JdwpPacket.JDWP_HEADER_LEN + ChunkHandler.CHUNK_HEADER_LEN;
+        int packetLength = mReadBuffer.getInt(0x00);
+        if (packetLength < headerLength) {
+            // let findPacket() deal with it
+            return;
+        }
+        Log.d("ddms", "Streaming " + ChunkHandler.name(type) + " chunk of "
+                + (packetLength - headerLength) + " bytes to " + directory);
+        mStreamedChunk = new StreamedChunk(type, packetLength - headerLength, directory);
+
+        mReadBuffer.flip();
+        mReadBuffer.position(headerLength);
+        mStreamedChunk.write(mReadBuffer);
+        mReadBuffer.compact();
+    }
+
+    /**
+     * Hands the file the completed streamed chunk was written to over to its handler.
+     */
+    private void finishStreamedChunk() throws IOException {
+        StreamedChunk chunk = mStreamedChunk;
+        mStreamedChunk = null;
+        chunk.close();
+        MonitorThread.getInstance().getDdmExtension()
+                .dispatchChunkFile(this, chunk.getType(), chunk.getFile());
+    }
+
     /**
      * An earlier request resulted in a failure.  This is the expected
      * response to a HELO message when talking to a non-DDM client.
@@ -822,6 +905,10 @@ public class Client extends JdwpAgent {
         Log.d("ddms", "Closing " + this.toString());
 
         clear();
+        if (mStreamedChunk != null) {
+            mStreamedChunk.abort();
+            mStreamedChunk = null;
+        }
         try {
             if (mChan != null) {
                 mChan.close();
@@ -838,6 +925,12 @@ public class Client extends JdwpAgent {
             // swallow it -- not much else to do
         }
 
+        // the packets handled asynchronously are copies, so nothing refers to the buffer anymore
+        if (mReadBuffer != null) {
+            MonitorThread.releaseReadBuffer(mReadBuffer);
+            mReadBuffer = null;
+        }
+
         mDevice.removeClient(this, notify);
     }
 
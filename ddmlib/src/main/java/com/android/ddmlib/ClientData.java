@@ -19,6 +19,9 @@ package com.android.ddmlib;
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.ddmlib.HeapSegment.HeapSegmentElement;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -337,28 +340,43 @@ public class ClientData {
     public static class HprofData {
         public enum Type {
             FILE,
-            DATA
+            DATA,
+            LOCAL_FILE
         }
 
         public final Type type;
         public final String filename;
         public final byte[] data;
+        /** The local file the dump was streamed to, for {@link Type#LOCAL_FILE}. */
+        public final File file;
 
         public HprofData(@NonNull String filename) {
             type = Type.FILE;
             this.filename = filename;
             this.data = null;
+            this.file = null;
         }
 
         public HprofData(@NonNull byte[] data) {
             type = Type.DATA;
             this.data = data;
             this.filename = null;
+            this.file = null;
+        }
+
+        public HprofData(@NonNull File file) {
+            type = Type.LOCAL_FILE;
+            this.file = file;
+            this.filename = null;
+            this.data = null;
         }
     }
 
     /**
      * Handlers able to act on HPROF dumps.
+     *
+     * <p>The methods are called on the thread handling the data of the client, as described in
+     * {@link AndroidDebugBridge.IClientChangeListener#clientChanged(Client, int)}.
      */
     @Deprecated
     public interface IHprofDumpHandler {
@@ -376,6 +394,24 @@ public class ClientData {
          */
         void onSuccess(byte[] data, Client client);
 
+        /**
+         * Called when a HPROF dump was successful, and was streamed to a local file. See {@link
+         * DdmPreferences#setDumpStreamingDirectory(File)}. The file belongs to the handler.
+         *
+         * <p>The default implementation reads the file into memory and calls {@link
+         * #onSuccess(byte[], Client)}.
+         *
+         * @param file the file containing the HPROF dump, streamed from the VM
+         * @param client the client that was profiled.
+         */
+        default void onSuccess(@NonNull File file, @NonNull Client client) {
+            try {
+                onSuccess(Files.toByteArray(file), client);
+            } catch (IOException e) {
+                onEndFailure(client, e.getMessage());
+            }
+        }
+
         /**
          * Called when a hprof dump failed to end on the VM side
          * @param client the client that was profiled.
@@ -386,6 +422,9 @@ public class ClientData {
 
     /**
      * Handlers able to act on Method profiling info
+     *
+     * <p>The methods are called on the thread handling the data of the client, as described in
+     * {@link AndroidDebugBridge.IClientChangeListener#clientChanged(Client, int)}.
      */
     public interface IMethodProfilingHandler {
         /**
@@ -402,6 +441,25 @@ public class ClientData {
          */
         void onSuccess(byte[] data, Client client);
 
+        /**
+         * Called when a method tracing was successful, and the trace file was streamed to a local
+         * file. See {@link DdmPreferences#setDumpStreamingDirectory(File)}. The file belongs to the
+         * handler.
+         *
+         * <p>The default implementation reads the file into memory and calls {@link
+         * #onSuccess(byte[], Client)}.
+         *
+         * @param file the file containing the trace file, streamed from the VM
+         * @param client the client that was profiled.
+         */
+        default void onSuccess(@NonNull File file, @NonNull Client client) {
+            try {
+                onSuccess(Files.toByteArray(file), client);
+            } catch (IOException e) {
+                onEndFailure(client, e.getMessage());
+            }
+        }
+
         /**
          * Called when method tracing failed to start
          * @param client the client that was profiled.
@@ -417,8 +475,11 @@ public class ClientData {
         void onEndFailure(Client client, String message);
     }
 
-    /*
+    /**
      * Handlers able to act on allocation tracking info
+     *
+     * <p>The methods are called on the thread handling the data of the client, as described in
+     * {@link AndroidDebugBridge.IClientChangeListener#clientChanged(Client, int)}.
      */
     public interface IAllocationTrackingHandler {
       /**
@@ -438,6 +499,10 @@ public class ClientData {
         mHprofData = new HprofData(filename);
     }
 
+    public void setHprofData(@NonNull File file) {
+        mHprofData = new HprofData(file);
+    }
+
     public void clearHprofData() {
         mHprofData = null;
     }
@@ -20,6 +20,7 @@ import com.android.ddmlib.jdwp.JdwpAgent;
 import com.android.ddmlib.jdwp.JdwpExtension;
 import com.android.ddmlib.jdwp.JdwpInterceptor;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashSet;
@@ -35,23 +36,70 @@ public class DdmJdwpExtension extends JdwpExtension {
         CLIENT_DISCONNECTED
     }
 
+    /**
+     * DDM packets up to this size are handled on the monitor thread when possible. Larger ones,
+     * e.g. heap dumps, method traces or view hierarchies, are handled on the dispatcher.
+     */
+    static final int MAX_INLINE_PACKET_SIZE = 64 * 1024;
+
     @NonNull
     private final ConcurrentMap<Integer, ChunkHandler> mHandlerMap;
 
+    @NonNull
+    private final ChunkDispatcher mDispatcher;
+
     public DdmJdwpExtension() {
         mHandlerMap = new ConcurrentHashMap<Integer, ChunkHandler>();
+        mDispatcher = new ChunkDispatcher();
     }
 
     @Override
     public void intercept(@NonNull  Client client) {
-        client.addJdwpInterceptor(new DdmInterceptor(client));
+        // only DDM packets need to be looked at, the rest is forwarded as is
+        client.addJdwpInterceptor(ChunkHandler.DDMS_CMD_SET, new DdmInterceptor(client));
     }
 
     public void registerHandler(int type, @NonNull ChunkHandler handler) {
         mHandlerMap.putIfAbsent(type, handler);
     }
 
-    void broadcast(Event event, @NonNull  Client client) {
+    /**
+     * Returns the dispatcher running the chunk handlers.
+     */
+    @NonNull
+    ChunkDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * Returns a snapshot of the metrics about the chunk handlers, including the number of chunks
+     * of each client waiting to be handled.
+     */
+    @NonNull
+    public ChunkHandlerStats getChunkHandlerStats() {
+        return mDispatcher.getStats();
+    }
+
+    /**
+     * Notifies the handlers of an event. They are notified on the dispatcher, after the chunks
+     * previously received from the client have been handled.
+     */
+    void broadcast(final Event event, @NonNull final Client client) {
+        Runnable task =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        broadcastNow(event, client);
+                    }
+                };
+        if (event == Event.CLIENT_DISCONNECTED) {
+            mDispatcher.dispatchLast(client, task);
+        } else {
+            mDispatcher.dispatch(client, task, 0);
+        }
+    }
+
+    private void broadcastNow(Event event, @NonNull Client client) {
         Log.d("ddms", "broadcast " + event + ": " + client);
 
         /*
@@ -87,6 +135,78 @@ public class DdmJdwpExtension extends JdwpExtension {
         }
     }
 
+    /**
+     * Hands a DDM packet to its handler. Small packets are handled right away on the calling
+     * thread, typically the monitor thread, unless the client has chunks waiting to be handled.
+     * Otherwise the packet is copied and handled on the dispatcher, such that a slow handler does
+     * not hold up the monitor thread.
+     */
+    void dispatchPacket(
+            @NonNull ChunkHandler handler, @NonNull Client client, @NonNull JdwpPacket packet) {
+        if (packet.getLength() <= MAX_INLINE_PACKET_SIZE
+                && mDispatcher.runIfIdle(client, createHandlerTask(handler, client, packet))) {
+            return;
+        }
+        // the packet lives in the read buffer of the client until the monitor thread consumes it
+        JdwpPacket copy = packet.copy();
+        mDispatcher.dispatch(client, createHandlerTask(handler, client, copy), copy.getLength());
+    }
+
+    @NonNull
+    private static Runnable createHandlerTask(
+            @NonNull final ChunkHandler handler,
+            @NonNull final Client client,
+            @NonNull final JdwpPacket packet) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handler.handlePacket(client, packet);
+                } catch (RuntimeException e) {
+                    // as when handled on the monitor thread, a packet we fail to handle drops
+                    // the client
+                    Log.e("ddms", e);
+                    MonitorThread monitorThread = MonitorThread.getInstance();
+                    if (monitorThread != null) {
+                        monitorThread.dropClient(client, true /* notify */);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Hands a chunk whose data was streamed to a file to its handler on the dispatcher.
+     *
+     * @see DdmPreferences#setDumpStreamingDirectory(File)
+     */
+    void dispatchChunkFile(@NonNull final Client client, final int type, @NonNull final File file) {
+        ddmSeen(client);
+        final ChunkHandler handler = mHandlerMap.get(type);
+        if (handler == null) {
+            Log.w("ddms", "Received unsupported chunk type " + ChunkHandler.name(type));
+            file.delete();
+            return;
+        }
+        mDispatcher.dispatch(
+                client,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        handler.handleChunkFile(client, type, file);
+                    }
+                },
+                0);
+    }
+
+    /**
+     * Returns true if the monitor thread should stop reading from the client until the packets
+     * already received from it have been handled.
+     */
+    boolean pauseIfBackedUp(@NonNull Client client) {
+        return mDispatcher.pauseIfBackedUp(client);
+    }
+
     void ddmSeen(@NonNull Client client) {
         // on first DDM packet received, broadcast a "ready" message
         if (!client.ddmSeen()) {
@@ -124,7 +244,7 @@ public class DdmJdwpExtension extends JdwpExtension {
                 if (handler == null) {
                     Log.w("ddms", "Received unsupported chunk type " + "ChunkHandler.name(type)");
                 } else {
-                    handler.handlePacket(mClient, packet);
+                    dispatchPacket(handler, mClient, packet);
                 }
                 return null;
             }
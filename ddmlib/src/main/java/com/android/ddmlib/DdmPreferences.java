@@ -16,7 +16,9 @@
 
 package com.android.ddmlib;
 
+import com.android.annotations.Nullable;
 import com.android.ddmlib.Log.LogLevel;
+import java.io.File;
 
 /**
  * Preferences for the ddm library.
@@ -47,6 +49,8 @@ public final class DdmPreferences {
     /** Default values for the use of the ADBHOST environment variable. */
     public static final boolean DEFAULT_USE_ADBHOST = false;
     public static final String DEFAULT_ADBHOST_VALUE = "127.0.0.1";
+    /** Default time mutable device properties are cached for, in ms */
+    public static final long DEFAULT_MUTABLE_PROPERTY_TTL_MS = 0;
 
     private static boolean sThreadUpdate = DEFAULT_INITIAL_THREAD_UPDATE;
     private static boolean sInitialHeapUpdate = DEFAULT_INITIAL_HEAP_UPDATE;
@@ -60,6 +64,10 @@ public final class DdmPreferences {
     private static boolean sUseAdbHost = DEFAULT_USE_ADBHOST;
     private static String sAdbHostValue = DEFAULT_ADBHOST_VALUE;
 
+    private static File sDumpStreamingDirectory = null;
+
+    private static long sMutablePropertyTtlMs = DEFAULT_MUTABLE_PROPERTY_TTL_MS;
+
     /**
      * Returns the initial {@link Client} flag for thread updates.
      * @see #setInitialThreadUpdate(boolean)
@@ -211,6 +219,51 @@ public final class DdmPreferences {
         sAdbHostValue = adbHostValue;
     }
 
+    /**
+     * Returns the directory heap dumps and method traces received from clients are written to,
+     * or <code>null</code> if they are received in memory.
+     * @see #setDumpStreamingDirectory(File)
+     */
+    @Nullable
+    public static File getDumpStreamingDirectory() {
+        return sDumpStreamingDirectory;
+    }
+
+    /**
+     * Sets the directory heap dumps and method traces received from clients are written to, as
+     * they are received. The handlers then get them as files, through
+     * {@link ClientData.IHprofDumpHandler#onSuccess(File, Client)},
+     * {@link ClientData.IMethodProfilingHandler#onSuccess(File, Client)} and
+     * {@link ClientData.HprofData#file}, and are responsible for deleting them.
+     * <p>When <code>null</code>, the default, they are received in memory, which takes up to
+     * twice their size.
+     * <p>This change takes effect right away, for the dumps not being received yet.
+     */
+    public static void setDumpStreamingDirectory(@Nullable File directory) {
+        sDumpStreamingDirectory = directory;
+    }
+
+    /**
+     * Returns the time the values of mutable device properties are cached for, in ms.
+     * @see #setMutablePropertyTtlMs(long)
+     */
+    public static long getMutablePropertyTtlMs() {
+        return sMutablePropertyTtlMs;
+    }
+
+    /**
+     * Sets the time the values of mutable device properties, i.e. the ones not starting with
+     * <code>ro.</code>, are cached for. Requests made through
+     * {@link IDevice#getSystemProperty(String)} within that time of the last 'getprop' are served
+     * from the cache rather than running 'getprop' again. The cache of a device is also
+     * invalidated when its state changes.
+     * <p>When 0, the default, each request for a mutable property queries the device.
+     * <p>This change takes effect right away.
+     */
+    public static void setMutablePropertyTtlMs(long ttlMs) {
+        sMutablePropertyTtlMs = ttlMs;
+    }
+
     /**
      * Non accessible constructor.
      */
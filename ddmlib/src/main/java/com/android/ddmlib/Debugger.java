@@ -90,7 +90,7 @@ public class Debugger extends JdwpAgent {
         mListenChannel.socket().bind(addr);
         mListenPort = mListenChannel.socket().getLocalPort();
 
-        mReadBuffer = ByteBuffer.allocate(INITIAL_BUF_SIZE);
+        mReadBuffer = ByteBufferPool.getInstance().acquire(INITIAL_BUF_SIZE);
         mPreDataBuffer = ByteBuffer.allocate(PRE_DATA_BUF_SIZE);
         mConnState = ST_NOT_CONNECTED;
 
@@ -228,6 +228,12 @@ public class Debugger extends JdwpAgent {
         } catch (IOException ioe) {
             Log.w("ddms", "Failed to close listener " + this);
         }
+
+        // no connection can be accepted anymore, so the buffer can be reused by others
+        if (mReadBuffer != null) {
+            MonitorThread.releaseReadBuffer(mReadBuffer);
+            mReadBuffer = null;
+        }
     }
 
     // TODO: ?? add a finalizer that verifies the channel was closed
@@ -299,7 +305,8 @@ public class Debugger extends JdwpAgent {
                     String.format(
                             "Shrinking buffer from %d bytes to %d bytes",
                             mReadBuffer.capacity(), INITIAL_BUF_SIZE));
-            mReadBuffer = ByteBuffer.allocate(INITIAL_BUF_SIZE);
+            ByteBufferPool.getInstance().release(mReadBuffer);
+            mReadBuffer = ByteBufferPool.getInstance().acquire(INITIAL_BUF_SIZE);
         }
 
         // Expand buffer if we reached maximum capacity
@@ -311,11 +318,7 @@ public class Debugger extends JdwpAgent {
             }
             Log.d("ddms", "Expanding read buffer to " + newCapacity);
 
-            ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
-            mReadBuffer.position(0);
-            newBuffer.put(mReadBuffer);     // leaves "position" at end
-
-            mReadBuffer = newBuffer;
+            mReadBuffer = ByteBufferPool.getInstance().grow(mReadBuffer, newCapacity);
         }
 
         count = mChannel.read(mReadBuffer);
@@ -70,6 +70,9 @@ final class Device implements IDevice {
 
     private final BatteryFetcher mBatteryFetcher = new BatteryFetcher(this);
 
+    /** Installed packages. */
+    private final PackageFetcher mPackageFetcher = new PackageFetcher(this);
+
     @GuardedBy("mClients")
     private final List<Client> mClients = new ArrayList<>();
 
@@ -230,6 +233,11 @@ final class Device implements IDevice {
      * Changes the state of the device.
      */
     void setState(DeviceState state) {
+        if (state != mState) {
+            // the device may have been rebooted or flashed while it was not online
+            mPropFetcher.invalidate();
+            mPackageFetcher.invalidate();
+        }
         mState = state;
     }
 
@@ -277,7 +285,7 @@ final class Device implements IDevice {
 
     @Override
     public String getPropertySync(String name) {
-        Future<String> future = mPropFetcher.getProperty(name);
+        Future<String> future = mPropFetcher.getProperty(name, 0, TimeUnit.MILLISECONDS);
         try {
             return future.get();
         } catch (InterruptedException | ExecutionException e) {
@@ -292,6 +300,33 @@ final class Device implements IDevice {
         return mPropFetcher.getProperty(name);
     }
 
+    @NonNull
+    @Override
+    public Future<String> getSystemProperty(
+            @NonNull String name, long freshnessTime, @NonNull TimeUnit timeUnit) {
+        return mPropFetcher.getProperty(name, freshnessTime, timeUnit);
+    }
+
+    @NonNull
+    @Override
+    public Future<Map<String, String>> getInstalledPackages(
+            long freshnessTime, @NonNull TimeUnit timeUnit) {
+        return mPackageFetcher.getPackages(freshnessTime, timeUnit);
+    }
+
+    @NonNull
+    @Override
+    public DeviceSnapshot getSnapshot() {
+        return new DeviceSnapshot(
+                mSerialNumber,
+                mState,
+                mPropFetcher.copyProperties(),
+                mPropFetcher.getLastSuccessTime(),
+                mPackageFetcher.getCachedPackages(),
+                mPackageFetcher.getLastSuccessTime(),
+                mClientInfo);
+    }
+
     @Override
     public boolean supportsFeature(@NonNull Feature feature) {
         switch (feature) {
@@ -543,8 +578,12 @@ final class Device implements IDevice {
     public void executeShellCommand(String command, IShellOutputReceiver receiver)
             throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
             IOException {
-        AdbHelper.executeRemoteCommand(AndroidDebugBridge.getSocketAddress(), command, this,
-                receiver, DdmPreferences.getTimeOut());
+        try {
+            AdbHelper.executeRemoteCommand(AndroidDebugBridge.getSocketAddress(), command, this,
+                    receiver, DdmPreferences.getTimeOut());
+        } finally {
+            onShellCommand(command);
+        }
     }
 
     @Override
@@ -556,16 +595,20 @@ final class Device implements IDevice {
             @Nullable InputStream is)
             throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
                     IOException {
-        AdbHelper.executeRemoteCommand(
-                AndroidDebugBridge.getSocketAddress(),
-                AdbHelper.AdbService.EXEC,
-                command,
-                this,
-                receiver,
-                0L,
-                maxTimeToOutputResponse,
-                maxTimeUnits,
-                is);
+        try {
+            AdbHelper.executeRemoteCommand(
+                    AndroidDebugBridge.getSocketAddress(),
+                    AdbHelper.AdbService.EXEC,
+                    command,
+                    this,
+                    receiver,
+                    0L,
+                    maxTimeToOutputResponse,
+                    maxTimeUnits,
+                    is);
+        } finally {
+            onShellCommand(command);
+        }
     }
 
     @Override
@@ -573,8 +616,12 @@ final class Device implements IDevice {
             int maxTimeToOutputResponse)
             throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
             IOException {
-        AdbHelper.executeRemoteCommand(AndroidDebugBridge.getSocketAddress(), command, this,
-                receiver, maxTimeToOutputResponse);
+        try {
+            AdbHelper.executeRemoteCommand(AndroidDebugBridge.getSocketAddress(), command, this,
+                    receiver, maxTimeToOutputResponse);
+        } finally {
+            onShellCommand(command);
+        }
     }
 
     @Override
@@ -582,14 +629,18 @@ final class Device implements IDevice {
             long maxTimeToOutputResponse, TimeUnit maxTimeUnits)
             throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
             IOException {
-        AdbHelper.executeRemoteCommand(
-                AndroidDebugBridge.getSocketAddress(),
-                command,
-                this,
-                receiver,
-                0L,
-                maxTimeToOutputResponse,
-                maxTimeUnits);
+        try {
+            AdbHelper.executeRemoteCommand(
+                    AndroidDebugBridge.getSocketAddress(),
+                    command,
+                    this,
+                    receiver,
+                    0L,
+                    maxTimeToOutputResponse,
+                    maxTimeUnits);
+        } finally {
+            onShellCommand(command);
+        }
     }
 
     @Override
@@ -601,14 +652,18 @@ final class Device implements IDevice {
             TimeUnit maxTimeUnits)
             throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
                     IOException {
-        AdbHelper.executeRemoteCommand(
-                AndroidDebugBridge.getSocketAddress(),
-                command,
-                this,
-                receiver,
-                maxTimeout,
-                maxTimeToOutputResponse,
-                maxTimeUnits);
+        try {
+            AdbHelper.executeRemoteCommand(
+                    AndroidDebugBridge.getSocketAddress(),
+                    command,
+                    this,
+                    receiver,
+                    maxTimeout,
+                    maxTimeToOutputResponse,
+                    maxTimeUnits);
+        } finally {
+            onShellCommand(command);
+        }
     }
 
     @Override
@@ -749,6 +804,12 @@ final class Device implements IDevice {
         return mSocketChannel;
     }
 
+    /** Invalidates the caches affected by a shell command run on the device. */
+    private void onShellCommand(@NonNull String command) {
+        mPackageFetcher.onShellCommand(command);
+        mPropFetcher.onShellCommand(command);
+    }
+
     void update(int changeMask) {
         AndroidDebugBridge.deviceChanged(this, changeMask);
     }
@@ -770,6 +831,8 @@ final class Device implements IDevice {
     private void updateClientInfo(Client client, int changeMask) {
         if ((changeMask & Client.CHANGE_NAME) == Client.CHANGE_NAME) {
             addClientInfo(client);
+            // a package may have been installed by another adb client
+            mPackageFetcher.onClientPackage(client.getClientData().getPackageName());
         }
     }
 
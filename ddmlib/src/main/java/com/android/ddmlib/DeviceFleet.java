@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.ddmlib.testrunner.ShardedTestRunner;
+import com.android.sdklib.AndroidVersion;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A set of devices on which applications are installed at once, e.g. the emulators of a
+ * continuous integration host. Tests can be run across the devices of a fleet with a {@link
+ * com.android.ddmlib.testrunner.ShardedTestRunner}.
+ *
+ * <p>Operations on the fleet use one thread per device, and return once they completed on all
+ * the devices. Like the shards of a {@link ShardedTestRunner}, an installation is attempted again
+ * when the device is lost or the connection to it fails, up to a maximum number of attempts.
+ */
+public final class DeviceFleet {
+    private static final String LOG_TAG = "DeviceFleet";
+
+    @NonNull private final List<IDevice> mDevices;
+    private int mMaxAttempts = ShardedTestRunner.DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Creates a fleet of the given devices.
+     *
+     * @param devices the devices, which must not be empty
+     */
+    public DeviceFleet(@NonNull Collection<? extends IDevice> devices) {
+        if (devices.isEmpty()) {
+            throw new IllegalArgumentException("A device fleet needs at least one device");
+        }
+        mDevices = ImmutableList.copyOf(devices);
+    }
+
+    /** Returns the devices of the fleet. */
+    @NonNull
+    public List<IDevice> getDevices() {
+        return mDevices;
+    }
+
+    /**
+     * Sets the number of times an installation is attempted on a device before giving up, when
+     * the device is lost or the connection to it fails. Defaults to {@link
+     * ShardedTestRunner#DEFAULT_MAX_ATTEMPTS}.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * Installs an Android application made of one or more APK files on all the devices at once.
+     *
+     * <p>Each APK file is read once, and its contents are streamed from memory to all the devices.
+     * The failure of the installation on a device does not affect the other devices. Failures
+     * reported by the package manager, like <code>INSTALL_FAILED_INSUFFICIENT_STORAGE</code>, are
+     * not retried.
+     *
+     * @param apks list of apks to install (1 main APK + 0..n split apks)
+     * @param reinstall set to <code>true</code> if re-install of app should be performed
+     * @param installOptions optional extra arguments to pass. See 'adb shell pm install --help' for
+     *     available options.
+     * @param timeout installation timeout, for each device
+     * @param timeoutUnit {@link TimeUnit} corresponding to the timeout parameter
+     * @return the devices on which the installation failed, with the cause of the failure, in the
+     *     order of the devices of the fleet. The map is empty if all the installations succeeded.
+     * @throws IOException if reading the APK files fails.
+     * @throws InterruptedException if interrupted while waiting for the installations.
+     */
+    @NonNull
+    public Map<IDevice, InstallException> installPackages(
+            @NonNull final List<File> apks,
+            final boolean reinstall,
+            @NonNull final List<String> installOptions,
+            final long timeout,
+            @NonNull final TimeUnit timeoutUnit)
+            throws IOException, InterruptedException {
+        final int maxAttempts = mMaxAttempts;
+        final List<ByteSource> contents = new ArrayList<ByteSource>(apks.size());
+        for (File apk : apks) {
+            contents.add(ByteSource.wrap(Files.toByteArray(apk)));
+        }
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(mDevices.size());
+        ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        mDevices.size(),
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("Device Fleet Install %d") //$NON-NLS-1$
+                                .setDaemon(true)
+                                .build());
+        try {
+            for (final IDevice device : mDevices) {
+                futures.add(
+                        executor.submit(
+                                new Callable<Void>() {
+                                    @Override
+                                    public Void call() throws InstallException {
+                                        installWithRetries(device, apks, contents, reinstall,
+                                                installOptions, timeout, timeoutUnit, maxAttempts);
+                                        return null;
+                                    }
+                                }));
+            }
+
+            Map<IDevice, InstallException> failures =
+                    new LinkedHashMap<IDevice, InstallException>();
+            for (int i = 0; i < mDevices.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    IDevice device = mDevices.get(i);
+                    Log.w(LOG_TAG, String.format("Failed to install %1$s on %2$s: %3$s",
+                            apks.get(0).getName(), device.getSerialNumber(), cause));
+                    failures.put(
+                            device,
+                            cause instanceof InstallException
+                                    ? (InstallException) cause
+                                    : new InstallException(cause));
+                }
+            }
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void installWithRetries(
+            @NonNull IDevice device,
+            @NonNull List<File> apks,
+            @NonNull List<ByteSource> contents,
+            boolean reinstall,
+            @NonNull List<String> installOptions,
+            long timeout,
+            @NonNull TimeUnit timeoutUnit,
+            int maxAttempts)
+            throws InstallException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                install(device, apks, contents, reinstall, installOptions, timeout, timeoutUnit);
+                return;
+            } catch (InstallException e) {
+                if (attempt >= maxAttempts || !isTransient(device, e)) {
+                    throw e;
+                }
+                Log.w(LOG_TAG, String.format("Failed to install %1$s on %2$s: %3$s, installing"
+                                + " it again", apks.get(0).getName(), device.getSerialNumber(), e));
+            }
+        }
+    }
+
+    /**
+     * Returns whether a failed installation may succeed when attempted again, which is the case
+     * when the device was lost or the connection to it failed, but not when the package manager
+     * rejected the application.
+     */
+    private static boolean isTransient(@NonNull IDevice device, @NonNull InstallException e) {
+        if (!device.isOnline()) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException
+                    || cause instanceof TimeoutException
+                    || cause instanceof AdbCommandRejectedException
+                    || cause instanceof ShellCommandUnresponsiveException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void install(
+            @NonNull IDevice device,
+            @NonNull List<File> apks,
+            @NonNull List<ByteSource> contents,
+            boolean reinstall,
+            @NonNull List<String> installOptions,
+            long timeout,
+            @NonNull TimeUnit timeoutUnit)
+            throws InstallException {
+        int apiWithSplitApk = AndroidVersion.ALLOW_SPLIT_APK_INSTALLATION.getApiLevel();
+        if (apks.size() == 1 && !device.getVersion().isGreaterOrEqualThan(apiWithSplitApk)) {
+            // install sessions are not supported, the APK is pushed then installed
+            device.installPackage(
+                    apks.get(0).getAbsolutePath(),
+                    reinstall,
+                    installOptions.toArray(new String[0]));
+            return;
+        }
+
+        try {
+            SplitApkInstaller.create(device, apks, contents, reinstall, installOptions)
+                    .install(timeout, timeoutUnit);
+        } catch (InstallException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InstallException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/**
+ * An immutable view of the state of a device known to ddmlib: its cached properties and
+ * installed packages, and the clients running on it. Taking a snapshot does not run any command on
+ * the device, which makes it suitable for tools polling many devices.
+ *
+ * @see IDevice#getSnapshot()
+ */
+public final class DeviceSnapshot {
+    @NonNull private final String mSerialNumber;
+    @Nullable private final IDevice.DeviceState mState;
+    @NonNull private final Map<String, String> mProperties;
+    private final long mPropertiesTime;
+    @Nullable private final Map<String, String> mPackages;
+    private final long mPackagesTime;
+    @NonNull private final Map<Integer, String> mClients;
+
+    DeviceSnapshot(
+            @NonNull String serialNumber,
+            @Nullable IDevice.DeviceState state,
+            @NonNull Map<String, String> properties,
+            long propertiesTime,
+            @Nullable Map<String, String> packages,
+            long packagesTime,
+            @NonNull Map<Integer, String> clients) {
+        mSerialNumber = serialNumber;
+        mState = state;
+        mProperties = ImmutableMap.copyOf(properties);
+        mPropertiesTime = propertiesTime;
+        mPackages = packages != null ? ImmutableMap.copyOf(packages) : null;
+        mPackagesTime = packagesTime;
+        mClients = ImmutableMap.copyOf(clients);
+    }
+
+    @NonNull
+    public String getSerialNumber() {
+        return mSerialNumber;
+    }
+
+    @Nullable
+    public IDevice.DeviceState getState() {
+        return mState;
+    }
+
+    /** Returns the cached properties of the device, empty if they were never fetched. */
+    @NonNull
+    public Map<String, String> getProperties() {
+        return mProperties;
+    }
+
+    /**
+     * Returns the time the cached properties were fetched at, as returned by
+     * {@link System#currentTimeMillis()}, or 0 if the mutable ones are stale.
+     */
+    public long getPropertiesTime() {
+        return mPropertiesTime;
+    }
+
+    /**
+     * Returns the APK paths of the packages installed on the device, by package name, or
+     * <code>null</code> if they were never fetched.
+     *
+     * @see IDevice#getInstalledPackages(long, java.util.concurrent.TimeUnit)
+     */
+    @Nullable
+    public Map<String, String> getPackages() {
+        return mPackages;
+    }
+
+    /**
+     * Returns the time the cached packages were fetched at, as returned by
+     * {@link System#currentTimeMillis()}, or 0 if they are stale.
+     */
+    public long getPackagesTime() {
+        return mPackagesTime;
+    }
+
+    /** Returns the names of the clients running on the device, by pid. */
+    @NonNull
+    public Map<Integer, String> getClients() {
+        return mClients;
+    }
+}
@@ -19,6 +19,7 @@ package com.android.ddmlib;
 import com.android.ddmlib.ClientData.AllocationTrackingStatus;
 import com.android.ddmlib.ClientData.IHprofDumpHandler;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -299,6 +300,20 @@ final class HandleHeap extends ChunkHandler {
         client.getClientData().clearHprofData();
     }
 
+    /**
+     * Streamed chunk handler entry point.
+     */
+    @Override
+    void handleChunkFile(Client client, int type, File file) {
+        Log.d("ddm-heap", "handling streamed " + ChunkHandler.name(type));
+
+        if (type == CHUNK_HPDS) {
+            handleHPDS(client, file);
+        } else {
+            super.handleChunkFile(client, type, file);
+        }
+    }
+
     /*
      * Handle HeaP Dump Streaming response.  "data" contains the full
      * hprof dump.
@@ -317,6 +332,20 @@ final class HandleHeap extends ChunkHandler {
         client.getClientData().clearHprofData();
     }
 
+    /*
+     * Handle HeaP Dump Streaming response, streamed to "file".
+     */
+    private void handleHPDS(Client client, File file) {
+        Log.d("ddm-hprof", "got hprof file " + file + ", size: " + file.length() + " bytes");
+        client.getClientData().setHprofData(file);
+        IHprofDumpHandler handler = ClientData.getHprofDumpHandler();
+        if (handler != null) {
+            handler.onSuccess(file, client);
+        }
+        client.update(Client.CHANGE_HPROF);
+        client.getClientData().clearHprofData();
+    }
+
     /**
      * Sends a REAE (REcent Allocation Enable) request to the client.
      */
@@ -19,6 +19,7 @@ package com.android.ddmlib;
 import com.android.ddmlib.ClientData.IMethodProfilingHandler;
 import com.android.ddmlib.ClientData.MethodProfilingStatus;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
@@ -274,6 +275,35 @@ final class HandleProfiling extends ChunkHandler {
         client.update(Client.CHANGE_METHOD_PROFILING_STATUS);
     }
 
+    /**
+     * Streamed chunk handler entry point.
+     */
+    @Override
+    void handleChunkFile(Client client, int type, File file) {
+        Log.d("ddm-prof", "handling streamed " + ChunkHandler.name(type));
+
+        if (type == CHUNK_MPSE) {
+            handleMPSE(client, file);
+        } else {
+            super.handleChunkFile(client, type, file);
+        }
+    }
+
+    /**
+     * Handle incoming profiling data, streamed to "file".
+     */
+    private void handleMPSE(Client client, File file) {
+        IMethodProfilingHandler handler = ClientData.getMethodProfilingHandler();
+        if (handler != null) {
+            Log.d("ddm-prof", "got trace file " + file + ", size: " + file.length() + " bytes");
+
+            handler.onSuccess(file, client);
+        }
+
+        client.getClientData().setMethodProfilingStatus(MethodProfilingStatus.OFF);
+        client.update(Client.CHANGE_METHOD_PROFILING_STATUS);
+    }
+
     /**
      * Send a MPRQ (Method PRofiling Query) request to the client.
      */
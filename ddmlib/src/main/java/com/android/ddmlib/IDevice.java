@@ -336,6 +336,27 @@ public interface IDevice extends IShellEnabledDevice {
     RawImage getScreenshot(long timeout, TimeUnit unit)
             throws TimeoutException, AdbCommandRejectedException, IOException;
 
+    /**
+     * Starts capturing the screen of the device at the given interval, and passes the frames that
+     * changed to the listener. This transfers much less data than repeated calls to {@link
+     * #getScreenshot()}. See {@link ScreenCaptureStream}.
+     *
+     * @param interval the minimum interval between the start of two captures
+     * @param unit the unit of <var>interval</var>
+     * @param listener the listener notified of the frames
+     * @return the capture stream, which must be closed to stop capturing.
+     */
+    @NonNull
+    default ScreenCaptureStream startScreenCapture(
+            long interval,
+            @NonNull TimeUnit unit,
+            @NonNull ScreenCaptureStream.FrameListener listener) {
+        ScreenCaptureStream stream = new ScreenCaptureStream(this, interval, unit, 2);
+        stream.addFrameListener(listener);
+        stream.start();
+        return stream;
+    }
+
     /**
      * Initiates screen recording on the device if the device supports {@link Feature#SCREEN_RECORD}.
      */
@@ -809,6 +830,67 @@ public interface IDevice extends IShellEnabledDevice {
     @NonNull
     Future<Integer> getBattery(long freshnessTime, @NonNull TimeUnit timeUnit);
 
+    /**
+     * Do a potential asynchronous query for a system property. Read only properties are served
+     * from the cache once it is populated. Mutable properties are only queried from the device if
+     * <var>freshnessTime</var> has expired since the last successful query, or if the cache was
+     * invalidated by a change of the state of the device or by a 'setprop' command run through
+     * this device. Other property changes are not tracked, so <var>freshnessTime</var> bounds how
+     * long they may go unnoticed.
+     *
+     * <p>Implementations which do not cache properties, by default, query the property as {@link
+     * #getSystemProperty(String)} does.
+     *
+     * @param name the name of the value to return.
+     * @param freshnessTime the desired recency of the value of a mutable property
+     * @param timeUnit the {@link TimeUnit} of freshnessTime
+     * @return a {@link Future} which can be used to retrieve value of property. Future#get() can
+     *     return null if property can not be retrieved.
+     */
+    @NonNull
+    default Future<String> getSystemProperty(
+            @NonNull String name, long freshnessTime, @NonNull TimeUnit timeUnit) {
+        return getSystemProperty(name);
+    }
+
+    /**
+     * Returns the packages installed on the device.
+     * <p>The packages are cached. Only queries the device if <code>freshnessTime</code> has
+     * expired since the last successful query, if packages have been installed or uninstalled
+     * through this device since, or if a client of a package missing from the cache connected.
+     * Other changes, e.g. a package uninstalled by another adb client, are only seen once
+     * <code>freshnessTime</code> has expired.
+     *
+     * <p>Not all implementations support this: the default implementation throws {@link
+     * UnsupportedOperationException}, which callers handling any {@link IDevice} should expect.
+     *
+     * @param freshnessTime the desired recency of the package list
+     * @param timeUnit the {@link TimeUnit} of freshnessTime
+     * @return a {@link Future} that can be used to get the APK paths of the installed packages, by
+     *     package name. The Future will return a {@link ExecutionException} if the packages could
+     *     not be retrieved.
+     * @throws UnsupportedOperationException if the implementation does not cache packages
+     */
+    @NonNull
+    default Future<Map<String, String>> getInstalledPackages(
+            long freshnessTime, @NonNull TimeUnit timeUnit) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the state of the device as currently cached, without running any command on the
+     * device.
+     *
+     * <p>Not all implementations support this: the default implementation throws {@link
+     * UnsupportedOperationException}, which callers handling any {@link IDevice} should expect.
+     *
+     * @throws UnsupportedOperationException if the implementation does not cache its state
+     */
+    @NonNull
+    default DeviceSnapshot getSnapshot() {
+        throw new UnsupportedOperationException();
+    }
+
 
     /**
      * Returns the ABIs supported by this device. The ABIs are sorted in preferred order, with the
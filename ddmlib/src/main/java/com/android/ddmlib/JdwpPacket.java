@@ -200,6 +200,16 @@ public final class JdwpPacket {
         mBuffer.position(oldPosn);
     }
 
+    /**
+     * Returns a copy of the packet backed by its own buffer. A packet found in the read buffer of
+     * a client or debugger is only valid until it is consumed.
+     */
+    JdwpPacket copy() {
+        ByteBuffer buf = ByteBuffer.allocate(mLength);
+        move(buf);
+        return findPacket(buf);
+    }
+
     /** Replace the payload of the package with a buffer. The current position is unchanged. */
     public void setPayLoad(ByteBuffer buf) {
         if (mLength - JDWP_HEADER_LEN != buf.remaining()) {
@@ -293,11 +303,43 @@ public final class JdwpPacket {
         return pkt;
     }
 
+    /**
+     * Returns the type of the DDM chunk at the start of "buf", if it holds the JDWP header of a
+     * DDM command packet followed by a chunk header, or 0 otherwise. The rest of the packet does
+     * not need to have been received.
+     *
+     * Like findPacket, this does not alter "buf"s attributes.
+     */
+    static int findDdmChunkType(ByteBuffer buf) {
+        if (buf.position() < JDWP_HEADER_LEN + ChunkHandler.CHUNK_HEADER_LEN) {
+            return 0;
+        }
+        int flags = buf.get(0x08) & 0xff;
+        int cmdSet = buf.get(0x09) & 0xff;
+        int cmd = buf.get(0x0a) & 0xff;
+        if ((flags & REPLY_PACKET) != 0
+                || cmdSet != ChunkHandler.DDMS_CMD_SET
+                || cmd != ChunkHandler.DDMS_CMD) {
+            return 0;
+        }
+
+        ByteOrder oldOrder = buf.order();
+        buf.order(ChunkHandler.CHUNK_ORDER);
+        int type = buf.getInt(JDWP_HEADER_LEN);
+        buf.order(oldOrder);
+        return type;
+    }
+
     @Override
     public String toString() {
         return isReply() ? " < # " + mId : " > " + mCmdSet + "." + mCmd + " # " + mId;
     }
 
+    /** Returns the command set of a command packet, or -1 for a reply. */
+    public int getCommandSet() {
+        return mCmdSet;
+    }
+
     public boolean is(int cmdSet, int cmd) {
         return cmdSet == mCmdSet && cmd == mCmd;
     }
@@ -250,7 +250,11 @@ public final class Log {
         sLevel = logLevel;
     }
 
-    static boolean isAtLeast(@NonNull LogLevel logLevel) {
+    /**
+     * Returns whether messages of the given level are output, which lets callers skip building
+     * messages that would be dropped.
+     */
+    public static boolean isAtLeast(@NonNull LogLevel logLevel) {
         return logLevel.getPriority() >= sLevel.getPriority();
     }
 
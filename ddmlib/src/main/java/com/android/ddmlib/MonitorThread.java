@@ -16,13 +16,14 @@
 
 package com.android.ddmlib;
 
-
+import com.android.annotations.NonNull;
 import com.android.ddmlib.Log.LogLevel;
 import com.android.ddmlib.jdwp.JdwpExtension;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.NotYetBoundException;
 import java.nio.channels.SelectionKey;
@@ -35,6 +36,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Monitor open connections.
@@ -54,6 +56,14 @@ final class MonitorThread extends Thread {
 
     private final List<JdwpExtension> mJdwpExtensions;
 
+    // Clients we stopped reading from until their chunks are handled, and which can be read again
+    private final ConcurrentLinkedQueue<Client> mClientsToResume =
+            new ConcurrentLinkedQueue<Client>();
+
+    // Read buffers of closed clients and debuggers, which may still be in use by this thread
+    private final ConcurrentLinkedQueue<ByteBuffer> mBuffersToRelease =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+
     // port for "debug selected"
     private ServerSocketChannel mDebugSelectedChan;
 
@@ -79,6 +89,14 @@ final class MonitorThread extends Thread {
         mNewDebugSelectedPort = DdmPreferences.getSelectedDebugPort();
 
         mDdmJdwpExtension = new DdmJdwpExtension();
+        mDdmJdwpExtension.getDispatcher().setResumeListener(
+                new ChunkDispatcher.ResumeListener() {
+                    @Override
+                    public void resume(Client client) {
+                        mClientsToResume.add(client);
+                        wakeup();
+                    }
+                });
         mJdwpExtensions = new LinkedList<JdwpExtension>();
         mJdwpExtensions.add(mDdmJdwpExtension);
     }
@@ -97,6 +115,21 @@ final class MonitorThread extends Thread {
         return sInstance;
     }
 
+    /**
+     * Gives the read buffer of a closed {@link Client} or {@link Debugger} back to the
+     * {@link ByteBufferPool}. As they can be closed from any thread, while the monitor thread is
+     * still handling their data, the buffer is only released before the monitor thread next
+     * waits for activity.
+     */
+    static void releaseReadBuffer(@NonNull ByteBuffer buffer) {
+        MonitorThread monitorThread = sInstance;
+        if (monitorThread != null) {
+            monitorThread.mBuffersToRelease.add(buffer);
+        } else {
+            ByteBufferPool.getInstance().release(buffer);
+        }
+    }
+
 
     /**
      * Sets or changes the port number for "debug selected".
@@ -226,6 +259,16 @@ final class MonitorThread extends Thread {
                     mNewDebugSelectedPort = mDebugSelectedPort; // no retry
                 }
 
+                Client resumed;
+                while ((resumed = mClientsToResume.poll()) != null) {
+                    resumed.resumeReading(mSelector);
+                }
+
+                ByteBuffer closedBuffer;
+                while ((closedBuffer = mBuffersToRelease.poll()) != null) {
+                    ByteBufferPool.getInstance().release(closedBuffer);
+                }
+
                 int count;
                 try {
                     count = mSelector.select();
@@ -314,6 +357,13 @@ final class MonitorThread extends Thread {
                 // find next
                 packet = client.getJdwpPacket();
             }
+
+            if (mDdmJdwpExtension.pauseIfBackedUp(client)) {
+                // too many chunks are waiting to be handled: leave the data in the socket until
+                // they are, so that the client is slowed down instead of us running out of memory
+                Log.d("ddms", "Pausing reads from " + client);
+                key.interestOps(0);
+            }
         } catch (CancelledKeyException e) {
             // key was canceled probably due to a disconnected client before we could
             // read stuff coming from the client, so we drop it.
@@ -17,9 +17,9 @@
 package com.android.ddmlib;
 
 import com.android.annotations.NonNull;
-import com.google.common.base.Charsets;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
 /**
  * Base implementation of {@link IShellOutputReceiver}, that takes the raw data coming from the
@@ -28,16 +28,15 @@ import java.util.Collection;
  * <p>Additionally, it splits the string by lines.
  *
  * <p>Classes extending it must implement {@link #processNewLines(String[])} which receives new
- * parsed lines as they become available.
+ * parsed lines as they become available. Receivers that do not need every line as a {@link
+ * String} should extend {@link ByteLineReceiver} instead.
  */
-public abstract class MultiLineReceiver implements IShellOutputReceiver {
+public abstract class MultiLineReceiver extends ByteLineReceiver {
 
     private boolean mTrimLines = true;
 
-    /** unfinished message line, stored for next packet */
-    private String mUnfinishedLine = null;
-
-    private final Collection<String> mArray = new ArrayList<>();
+    /** lines of the current packet */
+    private final List<String> mLines = new ArrayList<>();
 
     /**
      * Set the trim lines flag.
@@ -48,82 +47,33 @@ public abstract class MultiLineReceiver implements IShellOutputReceiver {
         mTrimLines = trim;
     }
 
-    /* (non-Javadoc)
-     * @see com.android.ddmlib.adb.IShellOutputReceiver#addOutput(
-     *      byte[], int, int)
-     */
     @Override
-    public final void addOutput(byte[] data, int offset, int length) {
-        if (!isCancelled()) {
-            String s = new String(data, offset, length, Charsets.UTF_8);
-
-            // ok we've got a string
-            // if we had an unfinished line we add it.
-            if (mUnfinishedLine != null) {
-                s = mUnfinishedLine + s;
-                mUnfinishedLine = null;
-            }
-
-            // now we split the lines
-            mArray.clear();
-            int start = 0;
-            do {
-                int index = s.indexOf('\n', start); // $NON-NLS-1$
-
-                // if \n was not found, this is an unfinished line
-                // and we store it to be processed for the next packet
-                if (index == -1) {
-                    mUnfinishedLine = s.substring(start);
-                    break;
-                }
-
-                // we found a \n, in older devices, this is preceded by a \r
-                int newlineLength = 1;
-                if (index > 0 && s.charAt(index - 1) == '\r') {
-                    index--;
-                    newlineLength = 2;
-                }
-
-                // extract the line
-                String line = s.substring(start, index);
-                if (mTrimLines) {
-                    line = line.trim();
-                }
-                mArray.add(line);
-
-                // move start to after the \r\n we found
-                start = index + newlineLength;
-            } while (true);
-
-            if (!mArray.isEmpty()) {
-                // at this point we've split all the lines.
-                // make the array
-                String[] lines = mArray.toArray(new String[0]);
-
-                // send it for final processing
-                processNewLines(lines);
-            }
+    protected final void processLine(@NonNull byte[] data, int offset, int length) {
+        String line = new String(data, offset, length, StandardCharsets.UTF_8);
+        if (mTrimLines) {
+            line = line.trim();
         }
+        mLines.add(line);
     }
 
-    /* (non-Javadoc)
-     * @see com.android.ddmlib.adb.IShellOutputReceiver#flush()
-     */
     @Override
-    public void flush() {
-        if (mUnfinishedLine != null) {
-            processNewLines(new String[] {mUnfinishedLine});
+    protected final void processedOutput() {
+        if (!mLines.isEmpty()) {
+            // at this point we've split all the lines.
+            // make the array
+            String[] lines = mLines.toArray(new String[0]);
+            mLines.clear();
+
+            // send it for final processing
+            processNewLines(lines);
         }
-
-        done();
     }
 
-    /**
-     * Terminates the process. This is called after the last lines have been through {@link
-     * #processNewLines(String[])}.
-     */
-    public void done() {
-        // do nothing.
+    @Override
+    protected final void processUnterminatedLine(@NonNull byte[] data, int offset, int length) {
+        // the last line is passed on as is, even if empty
+        String line = new String(data, offset, length, StandardCharsets.UTF_8);
+        processNewLines(new String[] {line});
     }
 
     /**
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches and caches the list of packages installed on a device. The cache is invalidated by the
+ * shell commands installing or uninstalling packages run through the device, and when a process of
+ * a package missing from the cache is reported by track-jdwp. Other changes, e.g. a package
+ * uninstalled by another adb client, are only seen once the cache is older than the freshness
+ * requested.
+ */
+class PackageFetcher {
+    private static final String LOG_TAG = "PackageFetcher";
+
+    private static final String PM_LIST_PACKAGES = "pm list packages -f"; //$NON-NLS-1$
+    private static final long PM_LIST_TIMEOUT_SEC = 10;
+
+    /** Pattern of the shell commands changing the installed packages. */
+    private static final Pattern PACKAGE_CHANGE_COMMAND =
+            Pattern.compile("^\\s*(pm|cmd package)\\s+(install|uninstall)"); //$NON-NLS-1$
+
+    /**
+     * Output receiver for the 'pm list packages -f' command. Each line looks like
+     * <code>package:/data/app/com.foo-1/base.apk=com.foo</code>.
+     */
+    @VisibleForTesting
+    static final class PackageListReceiver extends MultiLineReceiver {
+        private static final Pattern PACKAGE_LINE =
+                Pattern.compile("^package:(.+)=([^=]+)$"); //$NON-NLS-1$
+
+        private final Map<String, String> mPackages = new TreeMap<String, String>();
+
+        @Override
+        public void processNewLines(@NonNull String[] lines) {
+            for (String line : lines) {
+                Matcher m = PACKAGE_LINE.matcher(line.trim());
+                if (m.matches()) {
+                    mPackages.put(m.group(2), m.group(1));
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        /** Returns the APK paths of the packages listed, by package name. */
+        @NonNull
+        Map<String, String> getPackages() {
+            return mPackages;
+        }
+    }
+
+    private final IDevice mDevice;
+    private Map<String, String> mPackages;
+    private long mLastSuccessTime;
+    private SettableFuture<Map<String, String>> mPendingRequest;
+    /** True if the cache was invalidated while a request was underway */
+    private boolean mPendingRequestStale;
+
+    public PackageFetcher(IDevice device) {
+        mDevice = device;
+    }
+
+    /**
+     * Make a possibly asynchronous request for the packages installed on the device.
+     *
+     * @param freshness the desired recentness of the package list
+     * @param timeUnit the {@link TimeUnit} of freshness
+     * @return a {@link Future} that can be used to retrieve the APK paths of the installed
+     *     packages, by package name
+     */
+    public synchronized Future<Map<String, String>> getPackages(long freshness,
+            TimeUnit timeUnit) {
+        SettableFuture<Map<String, String>> result;
+        if (mPackages == null || isFetchRequired(freshness, timeUnit)) {
+            if (mPendingRequest == null) {
+                // no request underway - start a new one
+                mPendingRequest = SettableFuture.create();
+                mPendingRequestStale = false;
+                initiatePackagesQuery();
+            }
+            result = mPendingRequest;
+        } else {
+            // cache is populated within desired freshness
+            result = SettableFuture.create();
+            result.set(mPackages);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cached packages, without querying the device, or <code>null</code> if they
+     * were never fetched.
+     */
+    @Nullable
+    public synchronized Map<String, String> getCachedPackages() {
+        return mPackages;
+    }
+
+    /**
+     * Returns the time of the last successful query of the packages, or 0 if they have been
+     * invalidated since.
+     */
+    public synchronized long getLastSuccessTime() {
+        return mLastSuccessTime;
+    }
+
+    /** Marks the cached packages as stale, so that the next request queries the device. */
+    public synchronized void invalidate() {
+        mLastSuccessTime = 0;
+        if (mPendingRequest != null) {
+            mPendingRequestStale = true;
+        }
+    }
+
+    /**
+     * Invalidates the cache if the given shell command, which was run on the device, installs or
+     * uninstalls packages.
+     */
+    public void onShellCommand(@NonNull String command) {
+        if (PACKAGE_CHANGE_COMMAND.matcher(command).lookingAt()) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Invalidates the cache if a process of the given package runs on the device, but the package
+     * is not in the cached list, i.e. it was installed since the last query.
+     *
+     * @param packageName the package of a client of the device, as reported by the client
+     */
+    public synchronized void onClientPackage(@Nullable String packageName) {
+        // skip the processes which are not of a package, e.g. "system_process"
+        if (packageName == null || packageName.indexOf('.') == -1) {
+            return;
+        }
+        if (mPackages != null && !mPackages.containsKey(packageName)) {
+            invalidate();
+        }
+    }
+
+    private boolean isFetchRequired(long freshness, TimeUnit timeUnit) {
+        long freshnessMs = timeUnit.toMillis(freshness);
+        return mLastSuccessTime == 0
+                || (System.currentTimeMillis() - mLastSuccessTime) > freshnessMs;
+    }
+
+    private void initiatePackagesQuery() {
+        String threadName = String.format("query-packages-%s", mDevice.getSerialNumber());
+        Thread fetchThread = new Thread(threadName) {
+            @Override
+            public void run() {
+                try {
+                    PackageListReceiver receiver = new PackageListReceiver();
+                    mDevice.executeShellCommand(PM_LIST_PACKAGES, receiver, PM_LIST_TIMEOUT_SEC,
+                            TimeUnit.SECONDS);
+                    setPackages(receiver.getPackages());
+                } catch (Throwable e) {
+                    handlePackagesFailure(e);
+                }
+            }
+        };
+        fetchThread.setDaemon(true);
+        fetchThread.start();
+    }
+
+    private synchronized void setPackages(@NonNull Map<String, String> packages) {
+        mPackages = ImmutableMap.copyOf(packages);
+        // a package change during the query may not be in the result
+        mLastSuccessTime = mPendingRequestStale ? 0 : System.currentTimeMillis();
+        if (mPendingRequest != null) {
+            mPendingRequest.set(mPackages);
+        }
+        mPendingRequest = null;
+    }
+
+    private synchronized void handlePackagesFailure(Throwable e) {
+        Log.w(LOG_TAG, String.format(
+                "%s getting packages for device %s: %s",
+                e.getClass().getSimpleName(), mDevice.getSerialNumber(), e.getMessage()));
+        if (mPendingRequest != null) {
+            mPendingRequest.setException(e);
+        }
+        mPendingRequest = null;
+    }
+}
@@ -17,6 +17,7 @@ package com.android.ddmlib;
 
 import com.android.annotations.NonNull;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.SettableFuture;
 import java.util.Map;
@@ -27,6 +28,11 @@ import java.util.regex.Pattern;
 
 /**
  * Fetches and caches 'getprop' values from device.
+ *
+ * <p>The cached mutable properties are invalidated when the state of the device changes, and by
+ * the 'setprop' shell commands run through the device. adb offers no way to be notified of the
+ * other property changes, e.g. made by the device itself or by another adb client, so these are
+ * only seen once the cache is older than the freshness requested.
  */
 class PropertyFetcher {
     /** the amount of time to wait between unsuccessful prop fetch attempts */
@@ -35,6 +41,9 @@ class PropertyFetcher {
     private static final int GETPROP_TIMEOUT_SEC = 2;
     private static final int EXPECTED_PROP_COUNT = 150;
 
+    /** Pattern of the shell commands changing a property. */
+    private static final Pattern SETPROP_COMMAND = Pattern.compile("^\\s*setprop\\s"); //$NON-NLS-1$
+
     private enum CacheState {
         UNPOPULATED, FETCHING, POPULATED
     }
@@ -86,6 +95,8 @@ class PropertyFetcher {
             EXPECTED_PROP_COUNT);
     private final IDevice mDevice;
     private CacheState mCacheState = CacheState.UNPOPULATED;
+    /** Time of the last successful getprop, or 0 if mutable properties must be queried again */
+    private long mLastSuccessTime;
     private final Map<String, SettableFuture<String>> mPendingRequests =
             Maps.newHashMapWithExpectedSize(4);
 
@@ -100,6 +111,12 @@ class PropertyFetcher {
         return mProperties;
     }
 
+    /** Returns a copy of the cached properties. */
+    @NonNull
+    public synchronized Map<String, String> copyProperties() {
+        return ImmutableMap.copyOf(mProperties);
+    }
+
     /**
      * Ideally we should not cache mutable system properties. But removing cache will result in more
      * blocking calls. Thus we keep the option to enable it here.
@@ -112,17 +129,35 @@ class PropertyFetcher {
 
     /**
      * Make a possibly asynchronous request for a system property value.
+     * <p>Mutable properties are served from the cache if it is more recent than
+     * {@link DdmPreferences#getMutablePropertyTtlMs()}.
+     *
+     * @param name the property name to retrieve
+     * @return a {@link Future} that can be used to retrieve the prop value
+     */
+    @NonNull
+    public Future<String> getProperty(@NonNull String name) {
+        return getProperty(name, DdmPreferences.getMutablePropertyTtlMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Make a possibly asynchronous request for a system property value. Read only properties are
+     * always served from the cache once populated, mutable ones only if the cache is more recent
+     * than <var>freshness</var>.
      *
      * @param name the property name to retrieve
+     * @param freshness the maximum age of the cached value of a mutable property
+     * @param unit the {@link TimeUnit} of freshness
      * @return a {@link Future} that can be used to retrieve the prop value
      */
     @NonNull
-    public synchronized Future<String> getProperty(@NonNull String name) {
+    public synchronized Future<String> getProperty(@NonNull String name, long freshness,
+            @NonNull TimeUnit unit) {
         SettableFuture<String> result;
         if (mCacheState.equals(CacheState.FETCHING)) {
             result = addPendingRequest(name);
         } else if (mDevice.isOnline() && mCacheState.equals(CacheState.UNPOPULATED)
-                || !isImmutableProperty(name)) {
+                || !isImmutableProperty(name) && !isFresh(freshness, unit)) {
             // cache is empty, or this is a volatile prop that requires a query
             result = addPendingRequest(name);
             mCacheState = CacheState.FETCHING;
@@ -135,6 +170,39 @@ class PropertyFetcher {
         return result;
     }
 
+    private boolean isFresh(long freshness, @NonNull TimeUnit unit) {
+        return sEnableCachingMutableProps
+                && mCacheState.equals(CacheState.POPULATED)
+                && mLastSuccessTime != 0
+                && System.currentTimeMillis() - mLastSuccessTime < unit.toMillis(freshness);
+    }
+
+    /**
+     * Marks the cached mutable properties as stale, so that the next request for one of them
+     * queries the device. Read only properties are kept.
+     */
+    public synchronized void invalidate() {
+        mLastSuccessTime = 0;
+    }
+
+    /**
+     * Invalidates the cached mutable properties if the given shell command, which was run on the
+     * device, sets a property.
+     */
+    public void onShellCommand(@NonNull String command) {
+        if (SETPROP_COMMAND.matcher(command).lookingAt()) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns the time of the last successful query of the properties, or 0 if the mutable
+     * properties have been invalidated since.
+     */
+    public synchronized long getLastSuccessTime() {
+        return mLastSuccessTime;
+    }
+
     private SettableFuture<String> addPendingRequest(String name) {
         SettableFuture<String> future = mPendingRequests.get(name);
         if (future == null) {
@@ -166,6 +234,7 @@ class PropertyFetcher {
     private synchronized void populateCache(@NonNull Map<String, String> props) {
         mCacheState = props.isEmpty() ? CacheState.UNPOPULATED : CacheState.POPULATED;
         if (!props.isEmpty()) {
+            mLastSuccessTime = System.currentTimeMillis();
             if (sEnableCachingMutableProps) {
                 mProperties.putAll(props);
             } else {
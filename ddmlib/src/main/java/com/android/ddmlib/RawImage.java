@@ -16,7 +16,12 @@
 
 package com.android.ddmlib;
 
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import java.awt.Rectangle;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Data representing an image taken from a device frame buffer.
@@ -178,6 +183,65 @@ public final class RawImage {
         return rotated;
     }
 
+    /**
+     * Returns the tiles of this image that differ from <var>previous</var>. The image is divided
+     * in a grid of <var>tileSize</var> x <var>tileSize</var> tiles, clipped to the image bounds.
+     * <p>If there is no previous image, or if its size or pixel format differs, the whole image
+     * is returned as a single region.
+     * @param previous the image to compare to, typically the previous frame of the same screen.
+     * @param tileSize the width and height of the tiles, in pixels.
+     * @return the changed tiles, in row order. Empty if the images are identical.
+     */
+    @NonNull
+    public List<Rectangle> getChangedTiles(@Nullable RawImage previous, int tileSize) {
+        List<Rectangle> tiles = new ArrayList<Rectangle>();
+        if (previous == null
+                || previous.width != width
+                || previous.height != height
+                || previous.bpp != bpp
+                || previous.data == null
+                || previous.data.length != data.length) {
+            tiles.add(new Rectangle(0, 0, width, height));
+            return tiles;
+        }
+
+        int bytesPerPixel = bpp >> 3;
+        int columns = (width + tileSize - 1) / tileSize;
+        boolean[] changed = new boolean[columns];
+        for (int tileY = 0; tileY < height; tileY += tileSize) {
+            int tileHeight = Math.min(tileSize, height - tileY);
+            int changedCount = 0;
+            for (int y = tileY; y < tileY + tileHeight && changedCount < columns; y++) {
+                int rowOffset = y * width * bytesPerPixel;
+                for (int column = 0; column < columns; column++) {
+                    if (changed[column]) {
+                        continue;
+                    }
+                    int start = rowOffset + column * tileSize * bytesPerPixel;
+                    int end = rowOffset + Math.min((column + 1) * tileSize, width) * bytesPerPixel;
+                    for (int i = start; i < end; i++) {
+                        if (data[i] != previous.data[i]) {
+                            changed[column] = true;
+                            changedCount++;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            for (int column = 0; column < columns; column++) {
+                if (changed[column]) {
+                    int tileX = column * tileSize;
+                    tiles.add(new Rectangle(
+                            tileX, tileY, Math.min(tileSize, width - tileX), tileHeight));
+                    changed[column] = false;
+                }
+            }
+        }
+
+        return tiles;
+    }
+
     /**
      * Returns an ARGB integer value for the pixel at <var>index</var> in {@link #data}.
      */
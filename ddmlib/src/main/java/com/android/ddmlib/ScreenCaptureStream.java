@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.concurrency.GuardedBy;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Periodically captures the screen of a device, and passes the frames that changed to {@link
+ * FrameListener}s along with the regions that changed.
+ *
+ * <p>Frames are captured with {@code screencap -p}, whose PNG output is a fraction of the size of
+ * the raw frame buffer returned by {@link IDevice#getScreenshot()}. This matters when polling
+ * many devices over USB. A frame whose PNG is identical to the previous one is not decoded nor
+ * passed on.
+ *
+ * <p>Frames are passed to the listeners on a separate thread, through a queue of up to {@code
+ * maxPendingFrames} frames. When the listeners can't keep up, the oldest pending frames are
+ * dropped; the changed regions of a frame are always relative to the frame previously passed to
+ * the listeners.
+ */
+public final class ScreenCaptureStream implements AutoCloseable {
+    private static final String SCREENCAP_COMMAND = "screencap -p"; //$NON-NLS-1$
+
+    /** Size of the tiles used to compute the changed regions of a frame */
+    private static final int TILE_SIZE = 64;
+
+    /** Maximum time to wait for the output of screencap */
+    private static final long CAPTURE_TIMEOUT_MS = 10000;
+
+    /** Listener notified of the captured frames. */
+    public interface FrameListener {
+        /**
+         * Sent when a frame differing from the previous one was captured.
+         *
+         * @param frame the captured frame
+         */
+        void frameCaptured(@NonNull Frame frame);
+
+        /**
+         * Sent when capturing a frame failed. Capture is attempted again at the next interval,
+         * until the stream is closed.
+         *
+         * @param e the cause of the failure
+         */
+        default void captureFailed(@NonNull Exception e) {}
+    }
+
+    /** A frame captured from the screen of the device. */
+    public static final class Frame {
+        private final RawImage mImage;
+        private final List<Rectangle> mChangedRegions;
+        private final long mTimestampNanos;
+
+        Frame(
+                @NonNull RawImage image,
+                @NonNull List<Rectangle> changedRegions,
+                long timestampNanos) {
+            mImage = image;
+            mChangedRegions = changedRegions;
+            mTimestampNanos = timestampNanos;
+        }
+
+        /**
+         * Returns the image of the screen. The image is in 32 bit RGBA format, and must not be
+         * modified, since it is used to compute the changes of the next frame.
+         */
+        @NonNull
+        public RawImage getImage() {
+            return mImage;
+        }
+
+        /**
+         * Returns the regions of the image that differ from the frame previously passed to the
+         * listeners, as tiles. For the first frame, this is the whole image.
+         */
+        @NonNull
+        public List<Rectangle> getChangedRegions() {
+            return mChangedRegions;
+        }
+
+        /** Returns the time the frame was captured at, as given by {@link System#nanoTime()} */
+        public long getTimestampNanos() {
+            return mTimestampNanos;
+        }
+    }
+
+    private final IDevice mDevice;
+    private final long mIntervalNanos;
+    private final int mMaxPendingFrames;
+    private final List<FrameListener> mListeners = new CopyOnWriteArrayList<FrameListener>();
+
+    @GuardedBy("mPendingFrames")
+    private final ArrayDeque<PendingFrame> mPendingFrames = new ArrayDeque<PendingFrame>();
+
+    private final Thread mCaptureThread;
+    private final Thread mDeliveryThread;
+    private volatile boolean mClosed;
+
+    /** Image last passed to the listeners. Only accessed by the delivery thread. */
+    private RawImage mLastDelivered;
+
+    /**
+     * Creates a stream capturing the screen of the given device. Capture starts once {@link
+     * #start()} is called.
+     *
+     * @param device the device to capture the screen of
+     * @param interval the minimum interval between the start of two captures
+     * @param unit the unit of <var>interval</var>
+     * @param maxPendingFrames the maximum number of frames waiting to be passed to the listeners
+     */
+    public ScreenCaptureStream(
+            @NonNull IDevice device, long interval, @NonNull TimeUnit unit, int maxPendingFrames) {
+        if (maxPendingFrames < 1) {
+            throw new IllegalArgumentException(
+                    "maxPendingFrames must be positive: " + maxPendingFrames);
+        }
+        mDevice = device;
+        mIntervalNanos = unit.toNanos(interval);
+        mMaxPendingFrames = maxPendingFrames;
+
+        mCaptureThread =
+                new Thread("Screen Capture " + device.getSerialNumber()) { //$NON-NLS-1$
+                    @Override
+                    public void run() {
+                        captureFrames();
+                    }
+                };
+        mCaptureThread.setDaemon(true);
+        mDeliveryThread =
+                new Thread("Screen Capture Delivery " + device.getSerialNumber()) { //$NON-NLS-1$
+                    @Override
+                    public void run() {
+                        deliverFrames();
+                    }
+                };
+        mDeliveryThread.setDaemon(true);
+    }
+
+    public void addFrameListener(@NonNull FrameListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeFrameListener(@NonNull FrameListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** Starts capturing frames. */
+    public void start() {
+        mCaptureThread.start();
+        mDeliveryThread.start();
+    }
+
+    /** Stops capturing frames. Pending frames are dropped. */
+    @Override
+    public void close() {
+        mClosed = true;
+        mCaptureThread.interrupt();
+        synchronized (mPendingFrames) {
+            mPendingFrames.clear();
+            mPendingFrames.notifyAll();
+        }
+    }
+
+    private void captureFrames() {
+        PngReceiver receiver = new PngReceiver();
+        byte[] lastPng = null;
+        long nextCapture = System.nanoTime();
+
+        while (!mClosed) {
+            long delay = nextCapture - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            long timestamp = System.nanoTime();
+            nextCapture = timestamp + mIntervalNanos;
+
+            try {
+                receiver.reset();
+                mDevice.executeShellCommand(
+                        SCREENCAP_COMMAND,
+                        receiver,
+                        CAPTURE_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS,
+                        null);
+                if (mClosed) {
+                    return;
+                }
+
+                byte[] png = receiver.getPng();
+                if (lastPng != null && Arrays.equals(png, lastPng)) {
+                    // the screen did not change
+                    continue;
+                }
+                RawImage image = decodePng(png);
+                lastPng = png;
+                enqueue(new PendingFrame(image, timestamp));
+            } catch (Exception e) {
+                if (mClosed) {
+                    return;
+                }
+                for (FrameListener listener : mListeners) {
+                    listener.captureFailed(e);
+                }
+            }
+        }
+    }
+
+    private void enqueue(@NonNull PendingFrame frame) {
+        synchronized (mPendingFrames) {
+            if (mPendingFrames.size() == mMaxPendingFrames) {
+                mPendingFrames.removeFirst();
+            }
+            mPendingFrames.addLast(frame);
+            mPendingFrames.notifyAll();
+        }
+    }
+
+    private void deliverFrames() {
+        while (true) {
+            PendingFrame pending;
+            synchronized (mPendingFrames) {
+                while (mPendingFrames.isEmpty() && !mClosed) {
+                    try {
+                        mPendingFrames.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mClosed) {
+                    return;
+                }
+                pending = mPendingFrames.removeFirst();
+            }
+
+            RawImage image = pending.mImage;
+            Frame frame =
+                    new Frame(
+                            image,
+                            image.getChangedTiles(mLastDelivered, TILE_SIZE),
+                            pending.mTimestampNanos);
+            mLastDelivered = image;
+            if (frame.getChangedRegions().isEmpty()) {
+                // the PNG differed, but not the pixels
+                continue;
+            }
+            for (FrameListener listener : mListeners) {
+                listener.frameCaptured(frame);
+            }
+        }
+    }
+
+    /** Decodes the output of {@code screencap -p} to a 32 bit RGBA {@link RawImage}. */
+    @NonNull
+    static RawImage decodePng(@NonNull byte[] png) throws IOException {
+        BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(png));
+        if (bufferedImage == null) {
+            throw new IOException("Invalid screencap output");
+        }
+
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+
+        RawImage image = new RawImage();
+        image.version = 1;
+        image.bpp = 32;
+        image.width = width;
+        image.height = height;
+        image.size = width * height * 4;
+        image.red_offset = 0;
+        image.red_length = 8;
+        image.green_offset = 8;
+        image.green_length = 8;
+        image.blue_offset = 16;
+        image.blue_length = 8;
+        image.alpha_offset = 24;
+        image.alpha_length = 8;
+        image.data = new byte[image.size];
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            image.data[i * 4] = (byte) (argb >> 16);
+            image.data[i * 4 + 1] = (byte) (argb >> 8);
+            image.data[i * 4 + 2] = (byte) argb;
+            image.data[i * 4 + 3] = (byte) (argb >>> 24);
+        }
+        return image;
+    }
+
+    private static final class PendingFrame {
+        final RawImage mImage;
+        final long mTimestampNanos;
+
+        PendingFrame(@NonNull RawImage image, long timestampNanos) {
+            mImage = image;
+            mTimestampNanos = timestampNanos;
+        }
+    }
+
+    /** Collects the binary output of screencap. */
+    private final class PngReceiver implements IShellOutputReceiver {
+        private byte[] mData = new byte[256 * 1024];
+        private int mLength;
+
+        void reset() {
+            mLength = 0;
+        }
+
+        @NonNull
+        byte[] getPng() {
+            return Arrays.copyOf(mData, mLength);
+        }
+
+        @Override
+        public void addOutput(byte[] data, int offset, int length) {
+            if (mLength + length > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(mLength + length, mData.length * 2));
+            }
+            System.arraycopy(data, offset, mData, mLength, length);
+            mLength += length;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public boolean isCancelled() {
+            return mClosed;
+        }
+    }
+}
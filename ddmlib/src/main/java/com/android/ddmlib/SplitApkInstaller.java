@@ -16,6 +16,8 @@
 package com.android.ddmlib;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.io.ByteSource;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -29,10 +31,14 @@ public class SplitApkInstaller extends SplitApkInstallerBase {
 
     @NonNull private final List<File> mApks;
 
+    /** The contents of the APKs, when already read by the caller, or null to read the files */
+    @Nullable private final List<ByteSource> mContents;
+
     private SplitApkInstaller(@NonNull IDevice device, @NonNull List<File> apks,
-            @NonNull String options) {
+            @Nullable List<ByteSource> contents, @NonNull String options) {
         super(device, options);
         this.mApks = apks;
+        this.mContents = contents;
     }
 
     /**
@@ -128,7 +134,10 @@ public class SplitApkInstaller extends SplitApkInstallerBase {
         Log.d(LOG_TAG, String.format("Executing : %1$s", command));
         InputStream inputStream = null;
         try {
-            inputStream = new BufferedInputStream(new FileInputStream(fileToUpload));
+            inputStream =
+                    mContents != null
+                            ? mContents.get(uniqueId).openStream()
+                            : new BufferedInputStream(new FileInputStream(fileToUpload));
             InstallReceiver receiver = new InstallReceiver();
             AdbHelper.executeRemoteCommand(
                     AndroidDebugBridge.getSocketAddress(),
@@ -193,7 +202,32 @@ public class SplitApkInstaller extends SplitApkInstallerBase {
             boolean reInstall,
             @NonNull List<String> installOptions) {
         validateArguments(device, apks);
-        return new SplitApkInstaller(device, apks, getOptions(reInstall, installOptions));
+        return new SplitApkInstaller(device, apks, null, getOptions(reInstall, installOptions));
+    }
+
+    /**
+     * Returns a {@link SplitApkInstaller} for the given list of APK files from host to the given
+     * device, whose contents were already read. This lets the contents of the APKs be read once
+     * when installing them on several devices.
+     *
+     * @param device the device to install APK, must include at least the main APK.
+     * @param apks list of APK files.
+     * @param contents the contents of the APK files, in the same order.
+     * @param reInstall whether to enable reinstall option.
+     * @param installOptions list of install options.
+     */
+    static SplitApkInstaller create(
+            @NonNull IDevice device,
+            @NonNull List<File> apks,
+            @NonNull List<ByteSource> contents,
+            boolean reInstall,
+            @NonNull List<String> installOptions) {
+        validateArguments(device, apks);
+        if (contents.size() != apks.size()) {
+            throw new IllegalArgumentException("The contents of each APK must be given");
+        }
+        return new SplitApkInstaller(
+                device, apks, contents, getOptions(reInstall, installOptions));
     }
 
     /**
@@ -215,6 +249,6 @@ public class SplitApkInstaller extends SplitApkInstallerBase {
             @NonNull List<String> installOptions) {
         validateArguments(device, apks);
         return new SplitApkInstaller(
-                device, apks, getOptions(reInstall, true, applicationId, installOptions));
+                device, apks, null, getOptions(reInstall, true, applicationId, installOptions));
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * The data of a chunk being written to a file as it is received from a client, rather than
+ * accumulated in the read buffer of the client. This is used for the chunks holding heap dumps and
+ * method traces, which can be hundreds of megabytes.
+ *
+ * @see DdmPreferences#setDumpStreamingDirectory(File)
+ */
+final class StreamedChunk {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final int mType;
+    private final File mFile;
+    private final FileChannel mChannel;
+    private final long mLength;
+    private long mWritten;
+
+    /** Buffer used to read from the client socket, allocated on the first read */
+    private ByteBuffer mBuffer;
+
+    /**
+     * Returns true if the data of chunks of the given type is streamed to a file, when enabled.
+     */
+    static boolean isStreamed(int type) {
+        return type == HandleHeap.CHUNK_HPDS || type == HandleProfiling.CHUNK_MPSE;
+    }
+
+    /**
+     * Creates a file in the given directory to write the data of a chunk to.
+     *
+     * @param type the type of the chunk
+     * @param length the length of the chunk data
+     * @param directory the directory to create the file in
+     */
+    StreamedChunk(int type, long length, @NonNull File directory) throws IOException {
+        mType = type;
+        mLength = length;
+        mFile =
+                File.createTempFile(
+                        type == HandleHeap.CHUNK_HPDS ? "hprof" : "trace", //$NON-NLS-1$ //$NON-NLS-2$
+                        type == HandleHeap.CHUNK_HPDS ? ".hprof" : ".trace", //$NON-NLS-1$ //$NON-NLS-2$
+                        directory);
+        mChannel = new RandomAccessFile(mFile, "rw").getChannel(); //$NON-NLS-1$
+    }
+
+    int getType() {
+        return mType;
+    }
+
+    @NonNull
+    File getFile() {
+        return mFile;
+    }
+
+    boolean isComplete() {
+        return mWritten == mLength;
+    }
+
+    /**
+     * Writes the chunk data found between the position and the limit of the buffer to the file,
+     * stopping at the end of the chunk. The position of the buffer is moved past the data written.
+     */
+    void write(@NonNull ByteBuffer buf) throws IOException {
+        int oldLimit = buf.limit();
+        if (buf.remaining() > mLength - mWritten) {
+            buf.limit(buf.position() + (int) (mLength - mWritten));
+        }
+        while (buf.hasRemaining()) {
+            mWritten += mChannel.write(buf);
+        }
+        buf.limit(oldLimit);
+    }
+
+    /**
+     * Reads the next part of the chunk data from a client socket, and writes it to the file. No
+     * data past the end of the chunk is read.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    int read(@NonNull ReadableByteChannel chan) throws IOException {
+        if (mBuffer == null) {
+            mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        mBuffer.clear();
+        if (mBuffer.remaining() > mLength - mWritten) {
+            mBuffer.limit((int) (mLength - mWritten));
+        }
+        int count = chan.read(mBuffer);
+        if (count > 0) {
+            mBuffer.flip();
+            write(mBuffer);
+        }
+        return count;
+    }
+
+    /** Closes the file, once all the data has been written. */
+    void close() throws IOException {
+        mChannel.close();
+    }
+
+    /** Closes and deletes the file, when the client went away before sending all the data. */
+    void abort() {
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            // nothing to do, the file is deleted anyway
+        }
+        if (!mFile.delete()) {
+            Log.w("ddms", "Failed to delete " + mFile);
+        }
+    }
+}
@@ -28,9 +28,18 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Sync service class to push/pull to/from devices/emulators, through the debug bridge.
@@ -109,6 +118,13 @@ public class SyncService {
          * @param work the amount of work done.
          */
         void advance(int work);
+        /**
+         * Sent when the transfer completed successfully, right before {@link #stop()}.
+         * @param bytes the number of bytes of file content transferred.
+         * @param elapsedNanos the duration of the transfer, in nanoseconds.
+         */
+        default void transferComplete(long bytes, long elapsedNanos) {
+        }
     }
 
     public static class FileStat {
@@ -167,6 +183,18 @@ public class SyncService {
      */
     private byte[] mBuffer;
 
+    /**
+     * Buffer used to receive file content. Allocated when needed and reused afterward.
+     */
+    private ByteBuffer mDataBuffer;
+
+    /**
+     * Selector used to wait for {@link #mChannel} to be ready, rather than polling it.
+     */
+    private Selector mSelector;
+
+    private SelectionKey mSelectionKey;
+
     /**
      * Creates a Sync service object.
      * @param address The address to connect to
@@ -189,6 +217,8 @@ public class SyncService {
         try {
             mChannel = SocketChannel.open(mAddress);
             mChannel.configureBlocking(false);
+            // the small requests ending each file transfer must not wait for the data to be acked
+            mChannel.socket().setTcpNoDelay(true);
 
             // target a specific device
             AdbHelper.setDevice(mChannel, mDevice);
@@ -235,6 +265,15 @@ public class SyncService {
      * Closes the connection.
      */
     public void close() {
+        if (mSelector != null) {
+            try {
+                mSelector.close();
+            } catch (IOException e) {
+                // nothing to be done really...
+            }
+            mSelector = null;
+            mSelectionKey = null;
+        }
         if (mChannel != null) {
             try {
                 mChannel.close();
@@ -288,8 +327,51 @@ public class SyncService {
         // start the monitor
         monitor.start(total);
 
-        doPull(entries, localPath, fls, monitor);
+        long start = System.nanoTime();
+        long bytes = doPull(entries, localPath, fls, monitor);
+
+        monitor.transferComplete(bytes, System.nanoTime() - start);
+        monitor.stop();
+    }
+
+    /**
+     * Pulls file(s) or folder(s), transferring up to <var>maxConnections</var> files in parallel.
+     * <p>Each additional connection is a separate sync connection to the device, which is only
+     * worth it for many files: the transfer of a single file is limited by the device rather than
+     * the connection.
+     * @param entries the remote item(s) to pull
+     * @param localPath The local destination. If the entries count is &gt; 1 or
+     *      if the unique entry is a folder, this should be a folder.
+     * @param monitor The progress monitor. Cannot be null. The calls to the monitor are
+     *      serialized, but may come from different threads.
+     * @param maxConnections the maximum number of sync connections to use, including this one.
+     * @throws SyncException if a file could not be pulled
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     *
+     * @see #pull(FileEntry[], String, ISyncProgressMonitor)
+     */
+    public void pull(FileEntry[] entries, String localPath, ISyncProgressMonitor monitor,
+            int maxConnections) throws SyncException, IOException, TimeoutException {
+        File f = new File(localPath);
+        if (!f.exists()) {
+            throw new SyncException(SyncError.NO_DIR_TARGET);
+        }
+        if (!f.isDirectory()) {
+            throw new SyncException(SyncError.TARGET_IS_FILE);
+        }
+
+        FileListingService fls = new FileListingService(mDevice);
+        int total = getTotalRemoteFileSize(entries, fls);
+        monitor.start(total);
+
+        long start = System.nanoTime();
+        List<FileTransfer> transfers = new ArrayList<FileTransfer>();
+        collectPullTransfers(entries, localPath, fls, monitor, transfers);
+        long bytes = doTransfers(transfers, new SerializedSyncProgressMonitor(monitor),
+                maxConnections);
 
+        monitor.transferComplete(bytes, System.nanoTime() - start);
         monitor.stop();
     }
 
@@ -311,8 +393,10 @@ public class SyncService {
         int total = remote.getSizeValue();
         monitor.start(total);
 
-        doPullFile(remote.getFullPath(), localFilename, monitor);
+        long start = System.nanoTime();
+        long bytes = doPullFile(remote.getFullPath(), localFilename, monitor);
 
+        monitor.transferComplete(bytes, System.nanoTime() - start);
         monitor.stop();
     }
 
@@ -343,8 +427,10 @@ public class SyncService {
         monitor.start(0);
         //TODO: use the {@link FileListingService} to get the file size.
 
-        doPullFile(remoteFilepath, localFilename, monitor);
+        long start = System.nanoTime();
+        long bytes = doPullFile(remoteFilepath, localFilename, monitor);
 
+        monitor.transferComplete(bytes, System.nanoTime() - start);
         monitor.stop();
     }
 
@@ -375,8 +461,49 @@ public class SyncService {
 
         monitor.start(total);
 
-        doPush(fileArray, remote.getFullPath(), monitor);
+        long start = System.nanoTime();
+        long bytes = doPush(fileArray, remote.getFullPath(), monitor);
 
+        monitor.transferComplete(bytes, System.nanoTime() - start);
+        monitor.stop();
+    }
+
+    /**
+     * Push several files, transferring up to <var>maxConnections</var> files in parallel.
+     * <p>Each additional connection is a separate sync connection to the device, which is only
+     * worth it for many files: the transfer of a single file is limited by the device rather than
+     * the connection.
+     * @param local An array of loca files to push
+     * @param remote the remote {@link FileEntry} representing a directory.
+     * @param monitor The progress monitor. Cannot be null. The calls to the monitor are
+     *      serialized, but may come from different threads.
+     * @param maxConnections the maximum number of sync connections to use, including this one.
+     * @throws SyncException if a file could not be pushed
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     *
+     * @see #push(String[], FileEntry, ISyncProgressMonitor)
+     */
+    public void push(String[] local, FileEntry remote, ISyncProgressMonitor monitor,
+            int maxConnections) throws SyncException, IOException, TimeoutException {
+        if (!remote.isDirectory()) {
+            throw new SyncException(SyncError.REMOTE_IS_FILE);
+        }
+
+        File[] fileArray = new File[local.length];
+        for (int i = 0; i < local.length; i++) {
+            fileArray[i] = new File(local[i]);
+        }
+        int total = getTotalLocalFileSize(fileArray);
+        monitor.start(total);
+
+        long start = System.nanoTime();
+        List<FileTransfer> transfers = new ArrayList<FileTransfer>();
+        collectPushTransfers(fileArray, remote.getFullPath(), monitor, transfers);
+        long bytes = doTransfers(transfers, new SerializedSyncProgressMonitor(monitor),
+                maxConnections);
+
+        monitor.transferComplete(bytes, System.nanoTime() - start);
         monitor.stop();
     }
 
@@ -403,8 +530,10 @@ public class SyncService {
 
         monitor.start((int)f.length());
 
-        doPushFile(local, remote, monitor);
+        long start = System.nanoTime();
+        long bytes = doPushFile(local, remote, monitor);
 
+        monitor.transferComplete(bytes, System.nanoTime() - start);
         monitor.stop();
     }
 
@@ -460,14 +589,16 @@ public class SyncService {
      * @param localPath the localpath to a directory
      * @param fileListingService a FileListingService object to browse through remote directories.
      * @param monitor the progress monitor. Must be started already.
+     * @return the number of bytes pulled.
      *
      * @throws SyncException if file could not be pushed
      * @throws IOException in case of I/O error on the connection.
      * @throws TimeoutException in case of a timeout reading responses from the device.
      */
-    private void doPull(FileEntry[] entries, String localPath,
+    private long doPull(FileEntry[] entries, String localPath,
             FileListingService fileListingService,
             ISyncProgressMonitor monitor) throws SyncException, IOException, TimeoutException {
+        long bytes = 0;
 
         for (FileEntry e : entries) {
             // check if we're cancelled
@@ -488,12 +619,42 @@ public class SyncService {
                 // then recursively call the content. Since we did a ls command
                 // to get the number of files, we can use the cache
                 FileEntry[] children = fileListingService.getChildren(e, true, null);
-                doPull(children, dest, fileListingService, monitor);
+                bytes += doPull(children, dest, fileListingService, monitor);
                 monitor.advance(1);
             } else if (type == FileListingService.TYPE_FILE) {
                 monitor.startSubTask(e.getFullPath());
                 String dest = localPath + File.separator + e.getName();
-                doPullFile(e.getFullPath(), dest, monitor);
+                bytes += doPullFile(e.getFullPath(), dest, monitor);
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Creates the local directories for the given remote entries, and lists the files to pull.
+     * Directories are reported to the monitor as they are created, as sub tasks of their own.
+     */
+    private static void collectPullTransfers(FileEntry[] entries, String localPath,
+            FileListingService fileListingService, ISyncProgressMonitor monitor,
+            List<FileTransfer> transfers) throws SyncException {
+        for (FileEntry e : entries) {
+            if (monitor.isCanceled()) {
+                throw new SyncException(SyncError.CANCELED);
+            }
+
+            int type = e.getType();
+            if (type == FileListingService.TYPE_DIRECTORY) {
+                monitor.startSubTask(e.getFullPath());
+                String dest = localPath + File.separator + e.getName();
+                new File(dest).mkdir();
+
+                FileEntry[] children = fileListingService.getChildren(e, true, null);
+                collectPullTransfers(children, dest, fileListingService, monitor, transfers);
+                monitor.advance(1);
+            } else if (type == FileListingService.TYPE_FILE) {
+                String dest = localPath + File.separator + e.getName();
+                transfers.add(new FileTransfer(false, dest, e.getFullPath()));
             }
         }
     }
@@ -503,14 +664,16 @@ public class SyncService {
      * @param remotePath the remote file (length max is 1024)
      * @param localPath the local destination
      * @param monitor the monitor. The monitor must be started already.
+     * @return the number of bytes pulled.
      * @throws SyncException if file could not be pushed
      * @throws IOException in case of I/O error on the connection.
      * @throws TimeoutException in case of a timeout reading responses from the device.
      */
-    private void doPullFile(String remotePath, String localPath,
+    private long doPullFile(String remotePath, String localPath,
             ISyncProgressMonitor monitor) throws IOException, SyncException, TimeoutException {
         byte[] msg = null;
         byte[] pullResult = new byte[8];
+        ByteBuffer pullResultBuffer = ByteBuffer.wrap(pullResult);
 
         final int timeOut = DdmPreferences.getTimeOut();
         byte[] remotePathContent = remotePath.getBytes(AdbHelper.DEFAULT_CHARSET);
@@ -523,10 +686,10 @@ public class SyncService {
         msg = createFileReq(ID_RECV, remotePathContent);
 
         // and send it.
-        AdbHelper.write(mChannel, msg, -1, timeOut);
+        writeFully(ByteBuffer.wrap(msg), timeOut);
 
         // read the result, in a byte array containing 2 ints (id, size)
-        AdbHelper.read(mChannel, pullResult, -1, timeOut);
+        readFully(pullResultBuffer, timeOut);
 
         // check we have the proper data back
         if (!checkResult(pullResult, ID_DATA) && !checkResult(pullResult, ID_DONE)) {
@@ -536,15 +699,17 @@ public class SyncService {
 
         // access the destination file
         File f = new File(localPath);
+        long bytes = 0;
 
         // create the stream to write in the file. We use a new try/catch block to differentiate
         // between file and network io exceptions.
         FileOutputStream fos = null;
         try {
             fos = new FileOutputStream(f);
+            FileChannel fileChannel = fos.getChannel();
 
             // the buffer to read the data
-            byte[] data = new byte[SYNC_DATA_MAX];
+            ByteBuffer data = getDataBuffer();
 
             // loop to get data until we're done.
             while (true) {
@@ -570,14 +735,21 @@ public class SyncService {
                 }
 
                 // now read the length we received
-                AdbHelper.read(mChannel, data, length, timeOut);
+                data.clear();
+                data.limit(length);
+                readFully(data, timeOut);
 
                 // get the header for the next packet.
-                AdbHelper.read(mChannel, pullResult, -1, timeOut);
+                pullResultBuffer.clear();
+                readFully(pullResultBuffer, timeOut);
 
                 // write the content in the file
-                fos.write(data, 0, length);
+                data.flip();
+                while (data.hasRemaining()) {
+                    fileChannel.write(data);
+                }
 
+                bytes += length;
                 monitor.advance(length);
             }
 
@@ -591,6 +763,8 @@ public class SyncService {
                 fos.close();
             }
         }
+
+        return bytes;
     }
 
 
@@ -599,13 +773,15 @@ public class SyncService {
      * @param fileArray
      * @param remotePath
      * @param monitor
+     * @return the number of bytes pushed.
      *
      * @throws SyncException if file could not be pushed
      * @throws IOException in case of I/O error on the connection.
      * @throws TimeoutException in case of a timeout reading responses from the device.
      */
-    private void doPush(File[] fileArray, String remotePath, ISyncProgressMonitor monitor)
+    private long doPush(File[] fileArray, String remotePath, ISyncProgressMonitor monitor)
             throws SyncException, IOException, TimeoutException {
+        long bytes = 0;
         for (File f : fileArray) {
             // check if we're canceled
             if (monitor.isCanceled()) {
@@ -616,36 +792,152 @@ public class SyncService {
                     // append the name of the directory to the remote path
                     String dest = remotePath + "/" + f.getName(); // $NON-NLS-1S
                     monitor.startSubTask(dest);
-                    doPush(f.listFiles(), dest, monitor);
+                    bytes += doPush(f.listFiles(), dest, monitor);
 
                     monitor.advance(1);
                 } else if (f.isFile()) {
                     // append the name of the file to the remote path
                     String remoteFile = remotePath + "/" + f.getName(); // $NON-NLS-1S
                     monitor.startSubTask(remoteFile);
-                    doPushFile(f.getAbsolutePath(), remoteFile, monitor);
+                    bytes += doPushFile(f.getAbsolutePath(), remoteFile, monitor);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Lists the files to push. Directories are reported to the monitor as they are listed, as sub
+     * tasks of their own; they are created on the device along with the files they contain.
+     */
+    private static void collectPushTransfers(File[] fileArray, String remotePath,
+            ISyncProgressMonitor monitor, List<FileTransfer> transfers) throws SyncException {
+        for (File f : fileArray) {
+            if (monitor.isCanceled()) {
+                throw new SyncException(SyncError.CANCELED);
+            }
+            if (f.exists()) {
+                if (f.isDirectory()) {
+                    String dest = remotePath + "/" + f.getName(); // $NON-NLS-1S
+                    monitor.startSubTask(dest);
+                    collectPushTransfers(f.listFiles(), dest, monitor, transfers);
+                    monitor.advance(1);
+                } else if (f.isFile()) {
+                    String remoteFile = remotePath + "/" + f.getName(); // $NON-NLS-1S
+                    transfers.add(new FileTransfer(true, f.getAbsolutePath(), remoteFile));
                 }
             }
         }
     }
 
+    /**
+     * Runs the given transfers over up to <var>maxConnections</var> sync connections, this one
+     * included. Each additional connection is served by its own thread, and the transfers are
+     * handed out to the connections as they become available.
+     * @param transfers the files to transfer
+     * @param monitor the monitor, which must be safe to use from several threads.
+     * @param maxConnections the maximum number of connections to use.
+     * @return the number of bytes transferred.
+     * @throws SyncException if a file could not be transferred
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     */
+    private long doTransfers(List<FileTransfer> transfers,
+            final SerializedSyncProgressMonitor monitor, int maxConnections)
+            throws SyncException, IOException, TimeoutException {
+        final Queue<FileTransfer> queue = new ConcurrentLinkedQueue<FileTransfer>(transfers);
+        final AtomicLong bytes = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        int additionalConnections = Math.min(maxConnections, transfers.size()) - 1;
+        for (int i = 0; i < additionalConnections; i++) {
+            Thread thread = new Thread("Sync " + mDevice.getSerialNumber()) { //$NON-NLS-1$
+                @Override
+                public void run() {
+                    SyncService service = new SyncService(mAddress, mDevice);
+                    try {
+                        if (!service.openSync()) {
+                            // the remaining transfers are run by the other connections
+                            return;
+                        }
+                    } catch (TimeoutException | AdbCommandRejectedException | IOException e) {
+                        Log.w("ddms", "Unable to open additional sync connection: " + e);
+                        return;
+                    }
+
+                    try {
+                        bytes.addAndGet(service.runTransfers(queue, monitor));
+                    } catch (SyncException | IOException | TimeoutException e) {
+                        monitor.fail(e);
+                    } finally {
+                        service.close();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        try {
+            bytes.addAndGet(runTransfers(queue, monitor));
+        } catch (SyncException | IOException | TimeoutException e) {
+            monitor.fail(e);
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                monitor.fail(new SyncException(SyncError.CANCELED));
+            }
+        }
+
+        monitor.throwFailure();
+        return bytes.get();
+    }
+
+    /**
+     * Runs transfers from the queue until it is empty, or one of the transfers fails.
+     * @return the number of bytes transferred.
+     */
+    private long runTransfers(Queue<FileTransfer> queue, SerializedSyncProgressMonitor monitor)
+            throws SyncException, IOException, TimeoutException {
+        long bytes = 0;
+        FileTransfer transfer;
+        while ((transfer = queue.poll()) != null) {
+            if (monitor.isCanceled()) {
+                throw new SyncException(SyncError.CANCELED);
+            }
+            monitor.startSubTask(transfer.mRemotePath);
+            if (transfer.mPush) {
+                bytes += doPushFile(transfer.mLocalPath, transfer.mRemotePath, monitor);
+            } else {
+                bytes += doPullFile(transfer.mRemotePath, transfer.mLocalPath, monitor);
+            }
+        }
+        return bytes;
+    }
+
     /**
      * Push a single file
      * @param localPath the local file to push
      * @param remotePath the remote file (length max is 1024)
      * @param monitor the monitor. The monitor must be started already.
+     * @return the number of bytes pushed.
      *
      * @throws SyncException if file could not be pushed
      * @throws IOException in case of I/O error on the connection.
      * @throws TimeoutException in case of a timeout reading responses from the device.
      */
-    private void doPushFile(String localPath, String remotePath,
+    private long doPushFile(String localPath, String remotePath,
             ISyncProgressMonitor monitor) throws SyncException, IOException, TimeoutException {
         FileInputStream fis = null;
         byte[] msg;
 
         final int timeOut = DdmPreferences.getTimeOut();
         File f = new File(localPath);
+        long position = 0;
 
         try {
             byte[] remotePathContent = remotePath.getBytes(AdbHelper.DEFAULT_CHARSET);
@@ -656,6 +948,7 @@ public class SyncService {
 
             // create the stream to read the file
             fis = new FileInputStream(f);
+            FileChannel fileChannel = fis.getChannel();
 
             int permissions = FilePermissionUtil.getFilePosixPermission(f);
             // create the header for the action
@@ -663,9 +956,9 @@ public class SyncService {
 
             // and send it. We use a custom try/catch block to make the difference between
             // file and network IO exceptions.
-            AdbHelper.write(mChannel, msg, -1, timeOut);
+            writeFully(ByteBuffer.wrap(msg), timeOut);
 
-            System.arraycopy(ID_DATA, 0, getBuffer(), 0, ID_DATA.length);
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
 
             // look while there is something to read
             while (true) {
@@ -674,23 +967,36 @@ public class SyncService {
                     throw new SyncException(SyncError.CANCELED);
                 }
 
-                // read up to SYNC_DATA_MAX
-                int readCount = fis.read(getBuffer(), 8, SYNC_DATA_MAX);
-
-                if (readCount == -1) {
+                // send up to SYNC_DATA_MAX
+                long size = fileChannel.size();
+                if (position >= size) {
                     // we reached the end of the file
                     break;
                 }
-
-                // now send the data to the device
-                // first write the amount read
-                ArrayHelper.swap32bitsToArray(readCount, getBuffer(), 4);
-
-                // now write it
-                AdbHelper.write(mChannel, getBuffer(), readCount+8, timeOut);
+                int length = (int) Math.min(SYNC_DATA_MAX, size - position);
+
+                // first write the amount to be sent
+                header.clear();
+                header.put(ID_DATA).putInt(length).flip();
+                writeFully(header, timeOut);
+
+                // then the data itself, straight from the file. This avoids copying it, and lets
+                // the file be read ahead while the previous data is still being sent.
+                long end = position + length;
+                while (position < end) {
+                    long count = fileChannel.transferTo(position, end - position, mChannel);
+                    if (count > 0) {
+                        position += count;
+                    } else if (position >= fileChannel.size()) {
+                        // the file was truncated while being pushed
+                        throw new SyncException(SyncError.FILE_READ_ERROR);
+                    } else {
+                        waitForChannel(SelectionKey.OP_WRITE, timeOut);
+                    }
+                }
 
                 // and advance the monitor
-                monitor.advance(readCount);
+                monitor.advance(length);
             }
         } finally {
             // close the local file
@@ -704,17 +1010,85 @@ public class SyncService {
         msg = createReq(ID_DONE, (int)time);
 
         // and send it.
-        AdbHelper.write(mChannel, msg, -1, timeOut);
+        writeFully(ByteBuffer.wrap(msg), timeOut);
 
         // read the result, in a byte array containing 2 ints
         // (id, size)
         byte[] result = new byte[8];
-        AdbHelper.read(mChannel, result, -1 /* full length */, timeOut);
+        readFully(ByteBuffer.wrap(result), timeOut);
 
         if (!checkResult(result, ID_OKAY)) {
             throw new SyncException(SyncError.TRANSFER_PROTOCOL_ERROR,
                     readErrorMessage(result, timeOut));
         }
+
+        return position;
+    }
+
+    /**
+     * Writes the content of the buffer to {@link #mChannel}.
+     * @param buffer the data to write
+     * @param timeOut The timeout value in ms, since the last progress. A timeout of zero means
+     *      "wait forever".
+     * @throws TimeoutException in case of timeout on the connection.
+     * @throws IOException in case of I/O error on the connection.
+     */
+    private void writeFully(ByteBuffer buffer, int timeOut) throws TimeoutException, IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.write(buffer) == 0) {
+                waitForChannel(SelectionKey.OP_WRITE, timeOut);
+            }
+        }
+    }
+
+    /**
+     * Reads from {@link #mChannel} until the buffer is full.
+     * @param buffer the buffer to store the data into
+     * @param timeOut The timeout value in ms, since the last progress. A timeout of zero means
+     *      "wait forever".
+     * @throws TimeoutException in case of timeout on the connection.
+     * @throws IOException in case of I/O error on the connection.
+     */
+    private void readFully(ByteBuffer buffer, int timeOut) throws TimeoutException, IOException {
+        while (buffer.hasRemaining()) {
+            int count = mChannel.read(buffer);
+            if (count < 0) {
+                Log.d("ddms", "read: channel EOF");
+                throw new IOException("EOF");
+            } else if (count == 0) {
+                waitForChannel(SelectionKey.OP_READ, timeOut);
+            }
+        }
+    }
+
+    /**
+     * Waits for {@link #mChannel} to be ready for the given operation. Unlike
+     * {@link AdbHelper#read(SocketChannel, byte[], int, long)}, this returns as soon as the channel
+     * is ready, which matters when transferring many small chunks or files.
+     * @param operation the {@link SelectionKey} operation to wait for
+     * @param timeOut The timeout value in ms. A timeout of zero means "wait forever".
+     * @throws TimeoutException if the channel isn't ready by the end of the timeout.
+     * @throws IOException in case of I/O error on the connection.
+     */
+    private void waitForChannel(int operation, int timeOut) throws TimeoutException, IOException {
+        if (mSelector == null) {
+            mSelector = Selector.open();
+            mSelectionKey = mChannel.register(mSelector, operation);
+        } else {
+            mSelectionKey.interestOps(operation);
+        }
+
+        int selected = mSelector.select(timeOut);
+        mSelector.selectedKeys().clear();
+        if (Thread.currentThread().isInterrupted()) {
+            // Throw a timeout exception in place of interrupted exception to avoid API changes.
+            throw new TimeoutException(
+                    "Transfer interrupted with immediate timeout via interruption.");
+        }
+        if (selected == 0 && timeOut != 0) {
+            Log.d("ddms", "sync: timeout");
+            throw new TimeoutException();
+        }
     }
 
     /**
@@ -879,6 +1253,16 @@ public class SyncService {
         return FileListingService.TYPE_OTHER;
     }
 
+    /**
+     * Retrieve the buffer used to receive file content, allocating if necessary
+     */
+    private ByteBuffer getDataBuffer() {
+        if (mDataBuffer == null) {
+            mDataBuffer = ByteBuffer.allocateDirect(SYNC_DATA_MAX);
+        }
+        return mDataBuffer;
+    }
+
     /**
      * Retrieve the buffer, allocating if necessary
      * @return
@@ -891,4 +1275,80 @@ public class SyncService {
         }
         return mBuffer;
     }
+
+    /**
+     * A file to push or pull.
+     */
+    private static final class FileTransfer {
+        final boolean mPush;
+        final String mLocalPath;
+        final String mRemotePath;
+
+        FileTransfer(boolean push, String localPath, String remotePath) {
+            mPush = push;
+            mLocalPath = localPath;
+            mRemotePath = remotePath;
+        }
+    }
+
+    /**
+     * A progress monitor forwarding the calls of several transfer threads to a monitor, one at a
+     * time. Once a transfer fails, the other transfers are canceled.
+     */
+    private static final class SerializedSyncProgressMonitor implements ISyncProgressMonitor {
+        private final ISyncProgressMonitor mMonitor;
+        private Exception mFailure;
+
+        SerializedSyncProgressMonitor(ISyncProgressMonitor monitor) {
+            mMonitor = monitor;
+        }
+
+        @Override
+        public synchronized void start(int totalWork) {
+            mMonitor.start(totalWork);
+        }
+
+        @Override
+        public synchronized void stop() {
+            mMonitor.stop();
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return mFailure != null || mMonitor.isCanceled();
+        }
+
+        @Override
+        public synchronized void startSubTask(String name) {
+            mMonitor.startSubTask(name);
+        }
+
+        @Override
+        public synchronized void advance(int work) {
+            mMonitor.advance(work);
+        }
+
+        /**
+         * Records the failure of a transfer. Only the first failure is kept, since the following
+         * ones are typically the consequence of the cancellation.
+         */
+        synchronized void fail(Exception e) {
+            if (mFailure == null) {
+                mFailure = e;
+            }
+        }
+
+        /**
+         * Throws the first failure recorded, if any.
+         */
+        synchronized void throwFailure() throws SyncException, IOException, TimeoutException {
+            if (mFailure instanceof SyncException) {
+                throw (SyncException) mFailure;
+            } else if (mFailure instanceof IOException) {
+                throw (IOException) mFailure;
+            } else if (mFailure instanceof TimeoutException) {
+                throw (TimeoutException) mFailure;
+            }
+        }
+    }
 }
@@ -23,6 +23,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class JdwpAgent {
 
@@ -35,12 +36,19 @@ public abstract class JdwpAgent {
     @NonNull
     private final List<JdwpInterceptor> mInterceptors;
 
+    /**
+     * Interceptors of the command packets of a given command set, by command set.
+     */
+    @NonNull
+    private final ConcurrentMap<Integer, List<JdwpInterceptor>> mCommandSetInterceptors;
+
     @NonNull
     private final JdwpProtocol mProtocol;
 
     public JdwpAgent(@NonNull JdwpProtocol protocol) {
         mReplyInterceptors = new ConcurrentHashMap<Integer, JdwpInterceptor>();
         mInterceptors = new LinkedList<JdwpInterceptor>();
+        mCommandSetInterceptors = new ConcurrentHashMap<Integer, List<JdwpInterceptor>>();
         mProtocol = protocol;
     }
 
@@ -67,17 +75,48 @@ public abstract class JdwpAgent {
         mInterceptors.add(interceptor);
     }
 
+    /**
+     * Adds an interceptor for the command packets of the given command set only. The other packets,
+     * including all the replies, are forwarded without being seen by the interceptor. Interceptors
+     * added this way run before the ones intercepting all the packets.
+     */
+    public void addJdwpInterceptor(int commandSet, @NonNull JdwpInterceptor interceptor) {
+        List<JdwpInterceptor> interceptors = mCommandSetInterceptors.get(commandSet);
+        if (interceptors == null) {
+            interceptors = new CopyOnWriteArrayList<JdwpInterceptor>();
+            List<JdwpInterceptor> existing =
+                    mCommandSetInterceptors.putIfAbsent(commandSet, interceptors);
+            if (existing != null) {
+                interceptors = existing;
+            }
+        }
+        interceptors.add(interceptor);
+    }
+
     public void removeJdwpInterceptor(@NonNull JdwpInterceptor interceptor) {
         mInterceptors.remove(interceptor);
+        for (List<JdwpInterceptor> interceptors : mCommandSetInterceptors.values()) {
+            interceptors.remove(interceptor);
+        }
     }
 
     public void incoming(@NonNull JdwpPacket packet, @Nullable JdwpAgent target) throws IOException {
         mProtocol.incoming(packet, target);
-        int id = packet.getId();
         if (packet.isReply()) {
-            JdwpInterceptor interceptor = mReplyInterceptors.remove(id);
-            if (interceptor != null) {
-                packet = interceptor.intercept(this, packet);
+            if (!mReplyInterceptors.isEmpty()) {
+                JdwpInterceptor interceptor = mReplyInterceptors.remove(packet.getId());
+                if (interceptor != null) {
+                    packet = interceptor.intercept(this, packet);
+                }
+            }
+        } else if (!mCommandSetInterceptors.isEmpty()) {
+            List<JdwpInterceptor> interceptors =
+                    mCommandSetInterceptors.get(packet.getCommandSet());
+            if (interceptors != null) {
+                for (JdwpInterceptor interceptor : interceptors) {
+                    if (packet == null) break;
+                    packet = interceptor.intercept(this, packet);
+                }
             }
         }
         for (JdwpInterceptor interceptor : mInterceptors) {
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib.logcat;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the binary output of {@code adb logcat -B} to {@link LogCatMessage} objects.
+ *
+ * <p>Each entry is a little endian {@code logger_entry} header (see liblog's log_read.h), followed
+ * by a payload made of the priority byte, the NUL terminated tag and the NUL terminated message.
+ * As with {@link LogCatMessageParser}, each non empty line of a message becomes a separate {@link
+ * LogCatMessage}, sharing the header of the entry.
+ */
+public final class LogCatBinaryParser {
+    /** Size of the version 1 header, which has no header size field */
+    private static final int V1_HEADER_SIZE = 20;
+
+    /** Header sizes beyond this are considered corrupt; version 4 headers are 28 bytes */
+    private static final int MAX_HEADER_SIZE = 128;
+
+    private static final int TAG_CACHE_SIZE = 1024;
+
+    /** Bytes of an entry split across several chunks of output */
+    private byte[] mPartialEntry = new byte[4096];
+
+    private int mPartialLength;
+
+    /** Tags seen recently, such that the same {@link String} is shared between messages */
+    private final String[] mTags = new String[TAG_CACHE_SIZE];
+
+    private int mLastPid = -1;
+
+    @NonNull private String mLastAppName = "?";
+
+    /**
+     * Parses a chunk of binary logcat output. Entries may be split across chunks; this method
+     * maintains state from previous calls.
+     *
+     * @param data the buffer containing the output
+     * @param offset the offset of the output in the buffer
+     * @param length the length of the output
+     * @param device device from which these log messages have been received
+     * @return list of messages parsed from the complete entries, never null
+     */
+    @NonNull
+    public List<LogCatMessage> processBinaryData(
+            @NonNull byte[] data, int offset, int length, @Nullable IDevice device) {
+        List<LogCatMessage> messages = new ArrayList<>();
+        int end = offset + length;
+
+        if (mPartialLength > 0) {
+            // complete the partial entry first
+            while (offset < end) {
+                int required = getEntrySize(mPartialEntry, 0, mPartialLength);
+                if (required < 0) {
+                    required = V1_HEADER_SIZE;
+                }
+                if (mPartialLength >= required) {
+                    break;
+                }
+                int count = Math.min(required - mPartialLength, end - offset);
+                appendPartial(data, offset, count);
+                offset += count;
+            }
+            int size = getEntrySize(mPartialEntry, 0, mPartialLength);
+            if (size < 0 || mPartialLength < size) {
+                return messages;
+            }
+            parseEntry(mPartialEntry, 0, device, messages);
+            mPartialLength = 0;
+        }
+
+        while (offset < end) {
+            int size = getEntrySize(data, offset, end - offset);
+            if (size < 0 || offset + size > end) {
+                appendPartial(data, offset, end - offset);
+                break;
+            }
+            parseEntry(data, offset, device, messages);
+            offset += size;
+        }
+
+        return messages;
+    }
+
+    private void appendPartial(@NonNull byte[] data, int offset, int length) {
+        int required = mPartialLength + length;
+        if (required > mPartialEntry.length) {
+            mPartialEntry =
+                    Arrays.copyOf(mPartialEntry, Math.max(required, mPartialEntry.length * 2));
+        }
+        System.arraycopy(data, offset, mPartialEntry, mPartialLength, length);
+        mPartialLength = required;
+    }
+
+    /**
+     * Returns the total size of the entry at the given offset, or -1 if not enough data is
+     * available to read its header
+     */
+    private static int getEntrySize(@NonNull byte[] data, int offset, int available) {
+        if (available < 4) {
+            return -1;
+        }
+        return getHeaderSize(data, offset) + readU16(data, offset);
+    }
+
+    private static int getHeaderSize(@NonNull byte[] data, int offset) {
+        int headerSize = readU16(data, offset + 2);
+        // version 1 headers have padding instead of a header size
+        return headerSize < V1_HEADER_SIZE || headerSize > MAX_HEADER_SIZE
+                ? V1_HEADER_SIZE
+                : headerSize;
+    }
+
+    private void parseEntry(
+            @NonNull byte[] data,
+            int offset,
+            @Nullable IDevice device,
+            @NonNull List<LogCatMessage> messages) {
+        int payloadLength = readU16(data, offset);
+        int pid = readS32(data, offset + 4);
+        int tid = readS32(data, offset + 8);
+        int sec = readS32(data, offset + 12);
+        int nsec = readS32(data, offset + 16);
+
+        int payload = offset + getHeaderSize(data, offset);
+        int end = payload + payloadLength;
+        if (payloadLength < 1) {
+            return;
+        }
+
+        LogLevel level = getLogLevel(data[payload]);
+        int tagStart = payload + 1;
+        int tagEnd = indexOf(data, (byte) 0, tagStart, end);
+        String tag = getTag(data, tagStart, tagEnd - tagStart);
+        int messageStart = Math.min(tagEnd + 1, end);
+        int messageEnd = indexOf(data, (byte) 0, messageStart, end);
+
+        LogCatHeader header =
+                new LogCatHeader(
+                        level,
+                        pid,
+                        tid,
+                        getAppName(device, pid),
+                        tag,
+                        Instant.ofEpochSecond(sec & 0xFFFFFFFFL, nsec));
+
+        // each non empty line is a separate message, as in the output of logcat -v long
+        int lineStart = messageStart;
+        while (lineStart < messageEnd) {
+            int lineEnd = indexOf(data, (byte) '\n', lineStart, messageEnd);
+            if (lineEnd > lineStart) {
+                String line =
+                        new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                messages.add(new LogCatMessage(header, line));
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /** Returns the log level for the given android_LogPriority */
+    @NonNull
+    private static LogLevel getLogLevel(byte priority) {
+        switch (priority) {
+            case 2:
+                return LogLevel.VERBOSE;
+            case 3:
+                return LogLevel.DEBUG;
+            case 4:
+                return LogLevel.INFO;
+            case 5:
+                return LogLevel.WARN;
+            case 6:
+                return LogLevel.ERROR;
+            case 7:
+                return LogLevel.ASSERT;
+            default:
+                // as in LogCatMessageParser#parsePriority
+                return LogLevel.WARN;
+        }
+    }
+
+    @NonNull
+    private String getTag(@NonNull byte[] data, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (TAG_CACHE_SIZE - 1);
+        String tag = mTags[slot];
+        if (tag == null || !equalsAscii(tag, data, offset, length)) {
+            tag = new String(data, offset, length, StandardCharsets.UTF_8);
+            mTags[slot] = tag;
+        }
+        return tag;
+    }
+
+    private static boolean equalsAscii(
+            @NonNull String s, @NonNull byte[] data, int offset, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = data[offset + i];
+            if (b < 0 || s.charAt(i) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    private String getAppName(@Nullable IDevice device, int pid) {
+        // consecutive entries are typically logged by the same process; names that are not
+        // known yet are looked up again, since the process may not have been seen by ddms yet
+        if (pid != mLastPid || mLastAppName.equals("?")) {
+            mLastAppName = LogCatMessageParser.getPackageName(device, pid);
+            mLastPid = pid;
+        }
+        return mLastAppName;
+    }
+
+    /** Returns the index of the given byte in the range, or the end of the range */
+    private static int indexOf(@NonNull byte[] data, byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int readU16(@NonNull byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readS32(@NonNull byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | data[offset + 3] << 24;
+    }
+}
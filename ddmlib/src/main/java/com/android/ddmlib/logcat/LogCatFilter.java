@@ -16,11 +16,13 @@
 package com.android.ddmlib.logcat;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.ddmlib.Log.LogLevel;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -28,6 +30,9 @@ import java.util.regex.PatternSyntaxException;
  * A Filter for logcat messages. A filter can be constructed to match
  * different fields of a logcat message. It can then be queried to see if
  * a message matches the filter's settings.
+ * <p>
+ * Since messages share few distinct tags and app names, the result of matching
+ * them is cached, and plain text is searched for without a regex.
  */
 public final class LogCatFilter {
     private static final String PID_KEYWORD = "pid:";   //$NON-NLS-1$
@@ -35,6 +40,11 @@ public final class LogCatFilter {
     private static final String TAG_KEYWORD = "tag:";   //$NON-NLS-1$
     private static final String TEXT_KEYWORD = "text:"; //$NON-NLS-1$
 
+    /** Maximum number of tag or app name match results cached */
+    private static final int MAX_CACHED_MATCHES = 4096;
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}"; //$NON-NLS-1$
+
     private final String mName;
     private final String mTag;
     private final String mText;
@@ -51,6 +61,19 @@ public final class LogCatFilter {
     private Pattern mTagPattern;
     private Pattern mTextPattern;
 
+    /** The pid to match, or null if the pid filter can never match */
+    @Nullable
+    private Integer mPidValue;
+
+    /** The text to search for, if the text filter is plain ASCII rather than a regex */
+    @Nullable
+    private String mTextLiteral;
+
+    private boolean mTextIgnoreCase;
+
+    private final Map<String, Boolean> mAppNameMatches = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> mTagMatches = new ConcurrentHashMap<>();
+
     /**
      * Construct a filter with the provided restrictions for the logcat message. All the text
      * fields accept Java regexes as input, but ignore invalid regexes.
@@ -72,6 +95,16 @@ public final class LogCatFilter {
         mLogLevel = logLevel;
 
         mCheckPid = !mPid.isEmpty();
+        if (mCheckPid) {
+            try {
+                int value = Integer.parseInt(mPid);
+                // only the canonical form matched, since the pid was compared as a string
+                if (Integer.toString(value).equals(mPid)) {
+                    mPidValue = value;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
 
         if (!mAppName.isEmpty()) {
             try {
@@ -93,8 +126,13 @@ public final class LogCatFilter {
 
         if (!mText.isEmpty()) {
             try {
-                mTextPattern = Pattern.compile(mText, getPatternCompileFlags(mText));
+                int flags = getPatternCompileFlags(mText);
+                mTextPattern = Pattern.compile(mText, flags);
                 mCheckText = true;
+                if (isAsciiLiteral(mText)) {
+                    mTextIgnoreCase = flags == Pattern.CASE_INSENSITIVE;
+                    mTextLiteral = mTextIgnoreCase ? toLowerAscii(mText) : mText;
+                }
             } catch (PatternSyntaxException e) {
                 mCheckText = false;
             }
@@ -117,6 +155,30 @@ public final class LogCatFilter {
         return Pattern.CASE_INSENSITIVE;
     }
 
+    private static boolean isAsciiLiteral(@NonNull String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c >= 0x80 || REGEX_METACHARACTERS.indexOf(c) != -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @NonNull
+    private static String toLowerAscii(@NonNull String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerAscii(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
     /**
      * Construct a list of {@link LogCatFilter} objects by decoding the query.
      * @param query encoded search string. The query is simply a list of words (can be regexes)
@@ -199,33 +261,87 @@ public final class LogCatFilter {
 
         /* if pid filter is enabled, filter out messages whose pid does not match
          * the filter's pid */
-        if (mCheckPid && !Integer.toString(m.getPid()).equals(mPid)) {
+        if (!matchesPid(m.getPid())) {
             return false;
         }
 
         /* if app name filter is enabled, filter out messages not matching the app name */
-        if (mCheckAppName) {
-            Matcher matcher = mAppNamePattern.matcher(m.getAppName());
-            if (!matcher.find()) {
-                return false;
-            }
+        if (mCheckAppName && !find(mAppNamePattern, mAppNameMatches, m.getAppName())) {
+            return false;
         }
 
         /* if tag filter is enabled, filter out messages not matching the tag */
-        if (mCheckTag) {
-            Matcher matcher = mTagPattern.matcher(m.getTag());
-            if (!matcher.find()) {
-                return false;
-            }
+        if (!matchesTag(m.getTag())) {
+            return false;
         }
 
         if (mCheckText) {
-            Matcher matcher = mTextPattern.matcher(m.getMessage());
-            if (!matcher.find()) {
-                return false;
+            String message = m.getMessage();
+            if (mTextLiteral != null) {
+                return containsAscii(message, mTextLiteral, mTextIgnoreCase);
             }
+            return mTextPattern.matcher(message).find();
         }
 
         return true;
     }
+
+    /** Returns true if messages from the given pid may match this filter */
+    boolean matchesPid(int pid) {
+        return !mCheckPid || (mPidValue != null && mPidValue == pid);
+    }
+
+    /** Returns true if messages with the given tag may match this filter */
+    boolean matchesTag(@NonNull String tag) {
+        return !mCheckTag || find(mTagPattern, mTagMatches, tag);
+    }
+
+    /** Returns the pid to match, or null if messages from all pids may match this filter */
+    @Nullable
+    Integer getPidValue() {
+        return mCheckPid ? mPidValue : null;
+    }
+
+    private static boolean find(
+            @NonNull Pattern pattern, @NonNull Map<String, Boolean> cache, @NonNull String s) {
+        Boolean result = cache.get(s);
+        if (result == null) {
+            result = pattern.matcher(s).find();
+            if (cache.size() >= MAX_CACHED_MATCHES) {
+                cache.clear();
+            }
+            cache.put(s, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the string contains the given ASCII literal, ignoring ASCII case if
+     * requested, like a {@link Pattern#CASE_INSENSITIVE} regex would.
+     */
+    private static boolean containsAscii(
+            @NonNull String s, @NonNull String literal, boolean ignoreCase) {
+        if (!ignoreCase) {
+            return s.contains(literal);
+        }
+        int length = literal.length();
+        if (length == 0) {
+            return true;
+        }
+        char first = literal.charAt(0);
+        int max = s.length() - length;
+        outer:
+        for (int i = 0; i <= max; i++) {
+            if (toLowerAscii(s.charAt(i)) != first) {
+                continue;
+            }
+            for (int j = 1; j < length; j++) {
+                if (toLowerAscii(s.charAt(i + j)) != literal.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
 }
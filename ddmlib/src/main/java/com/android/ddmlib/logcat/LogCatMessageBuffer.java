@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib.logcat;
+
+import com.android.annotations.NonNull;
+import com.android.ddmlib.Log.LogLevel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded buffer of the most recent logcat messages. Once full, each new message evicts the
+ * oldest one.
+ *
+ * <p>Messages are indexed by tag, pid and log level, such that filtered queries only visit the
+ * messages that can match: a {@link LogCatFilter} tag pattern is evaluated once per distinct tag
+ * rather than once per message.
+ *
+ * <p>The buffer can be registered as a {@link LogCatListener} on a {@link LogCatReceiverTask}. It
+ * is thread safe.
+ */
+public final class LogCatMessageBuffer implements LogCatListener {
+    private final LogCatMessage[] mMessages;
+
+    /** Sequence number of the oldest message in the buffer */
+    private long mFirst;
+
+    /** Sequence number of the next message added to the buffer */
+    private long mNext;
+
+    private final Map<String, SequenceList> mTagIndex = new HashMap<>();
+    private final Map<Integer, SequenceList> mPidIndex = new HashMap<>();
+    private final SequenceList[] mLevelIndex = new SequenceList[LogLevel.values().length];
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param capacity the maximum number of messages kept in the buffer
+     */
+    public LogCatMessageBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mMessages = new LogCatMessage[capacity];
+        for (int i = 0; i < mLevelIndex.length; i++) {
+            mLevelIndex[i] = new SequenceList();
+        }
+    }
+
+    @Override
+    public synchronized void log(@NonNull List<LogCatMessage> msgList) {
+        for (LogCatMessage message : msgList) {
+            add(message);
+        }
+    }
+
+    /** Adds a message to the buffer, evicting the oldest message if the buffer is full */
+    public synchronized void add(@NonNull LogCatMessage message) {
+        if (mNext - mFirst == mMessages.length) {
+            evictOldest();
+        }
+        long sequence = mNext++;
+        mMessages[index(sequence)] = message;
+
+        SequenceList tagList = mTagIndex.get(message.getTag());
+        if (tagList == null) {
+            tagList = new SequenceList();
+            mTagIndex.put(message.getTag(), tagList);
+        }
+        tagList.add(sequence);
+        SequenceList pidList = mPidIndex.get(message.getPid());
+        if (pidList == null) {
+            pidList = new SequenceList();
+            mPidIndex.put(message.getPid(), pidList);
+        }
+        pidList.add(sequence);
+        mLevelIndex[message.getLogLevel().ordinal()].add(sequence);
+    }
+
+    private void evictOldest() {
+        int index = index(mFirst++);
+        LogCatMessage message = mMessages[index];
+        mMessages[index] = null;
+
+        // the oldest message is first in each of the lists it is in
+        SequenceList tagList = mTagIndex.get(message.getTag());
+        tagList.removeFirst();
+        if (tagList.isEmpty()) {
+            mTagIndex.remove(message.getTag());
+        }
+        SequenceList pidList = mPidIndex.get(message.getPid());
+        pidList.removeFirst();
+        if (pidList.isEmpty()) {
+            mPidIndex.remove(message.getPid());
+        }
+        mLevelIndex[message.getLogLevel().ordinal()].removeFirst();
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % mMessages.length);
+    }
+
+    /** Returns the number of messages in the buffer */
+    public synchronized int size() {
+        return (int) (mNext - mFirst);
+    }
+
+    /** Removes all the messages from the buffer */
+    public synchronized void clear() {
+        Arrays.fill(mMessages, null);
+        mFirst = mNext;
+        mTagIndex.clear();
+        mPidIndex.clear();
+        for (SequenceList list : mLevelIndex) {
+            list.clear();
+        }
+    }
+
+    /** Returns all the messages in the buffer, oldest first */
+    @NonNull
+    public synchronized List<LogCatMessage> getMessages() {
+        List<LogCatMessage> messages = new ArrayList<>(size());
+        for (long sequence = mFirst; sequence < mNext; sequence++) {
+            messages.add(mMessages[index(sequence)]);
+        }
+        return messages;
+    }
+
+    /** Returns the messages with the given tag, oldest first */
+    @NonNull
+    public synchronized List<LogCatMessage> getMessagesWithTag(@NonNull String tag) {
+        return getMessages(mTagIndex.get(tag));
+    }
+
+    /** Returns the messages logged by the given process, oldest first */
+    @NonNull
+    public synchronized List<LogCatMessage> getMessagesWithPid(int pid) {
+        return getMessages(mPidIndex.get(pid));
+    }
+
+    /** Returns the messages with the given log level, oldest first */
+    @NonNull
+    public synchronized List<LogCatMessage> getMessagesWithLevel(@NonNull LogLevel level) {
+        return getMessages(mLevelIndex[level.ordinal()]);
+    }
+
+    /**
+     * Returns the messages matching the given filters, oldest first. As with the filters of the
+     * logcat view, a message matches if it matches all the filters.
+     */
+    @NonNull
+    public synchronized List<LogCatMessage> getMessages(@NonNull List<LogCatFilter> filters) {
+        long[] candidates = null;
+        for (LogCatFilter filter : filters) {
+            long[] sequences = getCandidates(filter);
+            if (sequences != null && (candidates == null || sequences.length < candidates.length)) {
+                candidates = sequences;
+            }
+        }
+
+        List<LogCatMessage> messages = new ArrayList<>();
+        if (candidates != null) {
+            for (long sequence : candidates) {
+                addIfMatches(mMessages[index(sequence)], filters, messages);
+            }
+        } else {
+            for (long sequence = mFirst; sequence < mNext; sequence++) {
+                addIfMatches(mMessages[index(sequence)], filters, messages);
+            }
+        }
+        return messages;
+    }
+
+    private static void addIfMatches(
+            @NonNull LogCatMessage message,
+            @NonNull List<LogCatFilter> filters,
+            @NonNull List<LogCatMessage> messages) {
+        for (LogCatFilter filter : filters) {
+            if (!filter.matches(message)) {
+                return;
+            }
+        }
+        messages.add(message);
+    }
+
+    /**
+     * Returns the sorted sequence numbers of the messages that may match the given filter, based
+     * on the indices, or null if the filter can't be narrowed down by the indices
+     */
+    private long[] getCandidates(@NonNull LogCatFilter filter) {
+        if (!filter.getPid().isEmpty()) {
+            Integer pid = filter.getPidValue();
+            SequenceList list = pid != null ? mPidIndex.get(pid) : null;
+            return list != null ? list.toArray() : new long[0];
+        }
+
+        if (!filter.getTag().isEmpty()) {
+            List<SequenceList> lists = new ArrayList<>();
+            int count = 0;
+            for (Map.Entry<String, SequenceList> entry : mTagIndex.entrySet()) {
+                if (filter.matchesTag(entry.getKey())) {
+                    lists.add(entry.getValue());
+                    count += entry.getValue().size();
+                }
+            }
+            if (count < size()) {
+                return merge(lists, count);
+            }
+        }
+
+        int minLevel = filter.getLogLevel().ordinal();
+        if (minLevel > 0) {
+            List<SequenceList> lists = new ArrayList<>();
+            int count = 0;
+            for (int level = minLevel; level < mLevelIndex.length; level++) {
+                lists.add(mLevelIndex[level]);
+                count += mLevelIndex[level].size();
+            }
+            return merge(lists, count);
+        }
+
+        return null;
+    }
+
+    @NonNull
+    private static long[] merge(@NonNull List<SequenceList> lists, int count) {
+        long[] sequences = new long[count];
+        int offset = 0;
+        for (SequenceList list : lists) {
+            offset = list.copyTo(sequences, offset);
+        }
+        if (lists.size() > 1) {
+            Arrays.sort(sequences);
+        }
+        return sequences;
+    }
+
+    @NonNull
+    private List<LogCatMessage> getMessages(SequenceList list) {
+        if (list == null) {
+            return new ArrayList<>();
+        }
+        List<LogCatMessage> messages = new ArrayList<>(list.size());
+        for (long sequence : list.toArray()) {
+            messages.add(mMessages[index(sequence)]);
+        }
+        return messages;
+    }
+
+    /** An ascending list of message sequence numbers, which are removed from the front */
+    private static final class SequenceList {
+        private long[] mSequences = new long[16];
+        private int mStart;
+        private int mEnd;
+
+        void add(long sequence) {
+            if (mEnd == mSequences.length) {
+                int size = mEnd - mStart;
+                if (mStart > size) {
+                    // reclaim the space of the removed sequences
+                    System.arraycopy(mSequences, mStart, mSequences, 0, size);
+                } else {
+                    long[] sequences = new long[mSequences.length * 2];
+                    System.arraycopy(mSequences, mStart, sequences, 0, size);
+                    mSequences = sequences;
+                }
+                mStart = 0;
+                mEnd = size;
+            }
+            mSequences[mEnd++] = sequence;
+        }
+
+        void removeFirst() {
+            mStart++;
+        }
+
+        void clear() {
+            mStart = 0;
+            mEnd = 0;
+        }
+
+        boolean isEmpty() {
+            return mStart == mEnd;
+        }
+
+        int size() {
+            return mEnd - mStart;
+        }
+
+        int copyTo(@NonNull long[] target, int offset) {
+            System.arraycopy(mSequences, mStart, target, offset, mEnd - mStart);
+            return offset + mEnd - mStart;
+        }
+
+        @NonNull
+        long[] toArray() {
+            return Arrays.copyOfRange(mSequences, mStart, mEnd);
+        }
+    }
+}
@@ -73,6 +73,15 @@ public class LogCatMessageParser {
      */
     @Nullable
     public LogCatHeader processLogHeader(@NonNull String line, @Nullable IDevice device) {
+        return processLogHeader((CharSequence) line, device);
+    }
+
+    @Nullable
+    private LogCatHeader processLogHeader(@NonNull CharSequence line, @Nullable IDevice device) {
+        // headers are rare compared to message lines, so check for them before matching
+        if (line.length() == 0 || line.charAt(0) != '[') {
+            return null;
+        }
         Matcher matcher = HEADER.matcher(line);
 
         if (!matcher.matches()) {
@@ -167,25 +176,43 @@ public class LogCatMessageParser {
         List<LogCatMessage> messages = new ArrayList<>(lines.length);
 
         for (String line : lines) {
-            if (line.isEmpty()) {
-                continue;
-            }
-
-            if (processLogHeader(line, device) == null) {
-                // If not a header line, this is a message line
-                if (mPrevHeader == null) {
-                    // If we are fed a log line without a header, there's nothing we can do with
-                    // it - the header metadata is very important! So, we have no choice but to drop
-                    // this line.
-                    //
-                    // This should rarely happen, if ever - for example, perhaps we're running over
-                    // old logs where some earlier lines have been truncated.
-                    continue;
-                }
-                messages.add(new LogCatMessage(mPrevHeader, line));
+            LogCatMessage message = processLogLine(line, device);
+            if (message != null) {
+                messages.add(message);
             }
         }
 
         return messages;
     }
+
+    /**
+     * Parses a single line of logcat -v long output, as {@link #processLogLines(String[],
+     * IDevice)} does for each of its lines. The line is only read during the call, so it can be a
+     * view of a reused buffer.
+     *
+     * @return the message of the line, or {@code null} if the line is empty, a header, or a message
+     *     line without a preceding header
+     */
+    @Nullable
+    public LogCatMessage processLogLine(@NonNull CharSequence line, @Nullable IDevice device) {
+        if (line.length() == 0) {
+            return null;
+        }
+
+        if (processLogHeader(line, device) != null) {
+            return null;
+        }
+
+        // If not a header line, this is a message line
+        if (mPrevHeader == null) {
+            // If we are fed a log line without a header, there's nothing we can do with
+            // it - the header metadata is very important! So, we have no choice but to drop
+            // this line.
+            //
+            // This should rarely happen, if ever - for example, perhaps we're running over
+            // old logs where some earlier lines have been truncated.
+            return null;
+        }
+        return new LogCatMessage(mPrevHeader, line.toString());
+    }
 }
@@ -19,21 +19,24 @@ package com.android.ddmlib.logcat;
 import com.android.annotations.NonNull;
 import com.android.annotations.concurrency.GuardedBy;
 import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.ByteLineReceiver;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.Log.LogLevel;
-import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class LogCatReceiverTask implements Runnable {
     private static final String LOGCAT_COMMAND = "logcat -v long"; //$NON-NLS-1$
+    private static final String LOGCAT_BINARY_COMMAND = "logcat -B"; //$NON-NLS-1$
     private static final int DEVICE_POLL_INTERVAL_MSEC = 1000;
 
     private static final LogCatMessage sDeviceDisconnectedMsg =
@@ -44,18 +47,34 @@ public class LogCatReceiverTask implements Runnable {
             new LogCatMessage(LogLevel.ERROR, "LogCat Connection error");
 
     private final IDevice mDevice;
-    private final LogCatOutputReceiver mReceiver;
+    private final boolean mBinary;
+    private final IShellOutputReceiver mReceiver;
     private final LogCatMessageParser mParser;
+    private final LogCatBinaryParser mBinaryParser;
     private final AtomicBoolean mCancelled;
 
     @GuardedBy("this")
     private final Set<LogCatListener> mListeners = new HashSet<LogCatListener>();
 
     public LogCatReceiverTask(@NonNull IDevice device) {
+        this(device, false);
+    }
+
+    /**
+     * Creates a task reading the log of the given device.
+     *
+     * @param device the device to read the log from
+     * @param binary whether to read the binary output of logcat, which is parsed significantly
+     *     faster than the text output. This runs logcat through the exec service, which leaves the
+     *     output unmodified, and is therefore only supported by devices running API 21 or later.
+     */
+    public LogCatReceiverTask(@NonNull IDevice device, boolean binary) {
         mDevice = device;
+        mBinary = binary;
 
-        mReceiver = new LogCatOutputReceiver();
+        mReceiver = binary ? new LogCatBinaryReceiver() : new LogCatOutputReceiver();
         mParser = new LogCatMessageParser();
+        mBinaryParser = new LogCatBinaryParser();
         mCancelled = new AtomicBoolean();
     }
 
@@ -71,7 +90,12 @@ public class LogCatReceiverTask implements Runnable {
         }
 
         try {
-            mDevice.executeShellCommand(LOGCAT_COMMAND, mReceiver, 0);
+            if (mBinary) {
+                mDevice.executeShellCommand(
+                        LOGCAT_BINARY_COMMAND, mReceiver, 0, TimeUnit.MILLISECONDS, null);
+            } else {
+                mDevice.executeShellCommand(LOGCAT_COMMAND, mReceiver, 0);
+            }
         } catch (TimeoutException e) {
             notifyListeners(Collections.singletonList(sConnectionTimeoutMsg));
         } catch (AdbCommandRejectedException ignored) {
@@ -89,10 +113,12 @@ public class LogCatReceiverTask implements Runnable {
         mCancelled.set(true);
     }
 
-    private class LogCatOutputReceiver extends MultiLineReceiver {
-        public LogCatOutputReceiver() {
-            setTrimLine(false);
-        }
+    /**
+     * Parses the text output of logcat line by line as it is received, and notifies the listeners
+     * of the messages of each packet at once.
+     */
+    private class LogCatOutputReceiver extends ByteLineReceiver {
+        private List<LogCatMessage> mMessages = new ArrayList<>();
 
         /** Implements {@link IShellOutputReceiver#isCancelled() }. */
         @Override
@@ -101,18 +127,53 @@ public class LogCatReceiverTask implements Runnable {
         }
 
         @Override
-        public void processNewLines(@NonNull String[] lines) {
+        protected void processLine(@NonNull byte[] data, int offset, int length) {
+            LogCatMessage message = mParser.processLogLine(decode(data, offset, length), mDevice);
+            if (message != null) {
+                mMessages.add(message);
+            }
+        }
+
+        @Override
+        protected void processedOutput() {
+            if (mMessages.isEmpty()) {
+                return;
+            }
+            // the listeners may hold on to the list
+            List<LogCatMessage> newMessages = mMessages;
+            mMessages = new ArrayList<>();
             if (!mCancelled.get()) {
-                processLogLines(lines);
+                notifyListeners(newMessages);
             }
         }
 
-        private void processLogLines(String[] lines) {
-            List<LogCatMessage> newMessages = mParser.processLogLines(lines, mDevice);
+        @Override
+        protected void processUnterminatedLine(@NonNull byte[] data, int offset, int length) {
+            super.processUnterminatedLine(data, offset, length);
+            processedOutput();
+        }
+    }
+
+    private class LogCatBinaryReceiver implements IShellOutputReceiver {
+        @Override
+        public void addOutput(byte[] data, int offset, int length) {
+            if (mCancelled.get()) {
+                return;
+            }
+            List<LogCatMessage> newMessages =
+                    mBinaryParser.processBinaryData(data, offset, length, mDevice);
             if (!newMessages.isEmpty()) {
                 notifyListeners(newMessages);
             }
         }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled.get();
+        }
     }
 
     public synchronized void addLogCatListener(LogCatListener l) {
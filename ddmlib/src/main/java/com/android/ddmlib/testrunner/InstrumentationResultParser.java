@@ -19,7 +19,8 @@ package com.android.ddmlib.testrunner;
 import com.android.annotations.NonNull;
 import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.Log;
-import com.android.ddmlib.MultiLineReceiver;
+import com.android.ddmlib.ByteLineReceiver;
+import com.android.ddmlib.Log.LogLevel;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -67,8 +68,11 @@ import java.util.regex.Pattern;
  * Time: X
  * </pre>
  * <p>Note that the "value" portion of the key-value pair may wrap over several text lines
+ *
+ * <p>Lines are matched against the prefixes above while still in the receive buffer, so that only
+ * the keys and values are turned into {@link String}s.
  */
-public class InstrumentationResultParser extends MultiLineReceiver {
+public class InstrumentationResultParser extends ByteLineReceiver {
 
     /** Relevant test status keys. */
     private static class StatusKeys {
@@ -268,16 +272,35 @@ public class InstrumentationResultParser extends MultiLineReceiver {
     }
 
     /**
-     * Processes the instrumentation test output from shell.
-     *
-     * @see MultiLineReceiver#processNewLines
+     * Processes lines of instrumentation test output, for callers which already split the output
+     * into lines. The output received through {@link #addOutput(byte[], int, int)} is processed
+     * line by line directly.
      */
-    @Override
     public void processNewLines(@NonNull String[] lines) {
         for (String line : lines) {
-            parse(line);
-            // in verbose mode, dump all adb output to log
-            Log.v(LOG_TAG, line);
+            processLine(line.trim());
+        }
+    }
+
+    /** Processes a line of the instrumentation test output from shell. */
+    @Override
+    protected void processLine(@NonNull byte[] data, int offset, int length) {
+        // like String#trim
+        int end = offset + length;
+        while (offset < end && data[offset] >= 0 && data[offset] <= ' ') {
+            offset++;
+        }
+        while (end > offset && data[end - 1] >= 0 && data[end - 1] <= ' ') {
+            end--;
+        }
+        processLine(decode(data, offset, end - offset));
+    }
+
+    private void processLine(@NonNull CharSequence line) {
+        parse(line);
+        // in verbose mode, dump all adb output to log
+        if (Log.isAtLeast(LogLevel.VERBOSE)) {
+            Log.v(LOG_TAG, line.toString());
         }
     }
 
@@ -297,47 +320,60 @@ public class InstrumentationResultParser extends MultiLineReceiver {
      * <li> A line reporting the total elapsed time of the test run. (Prefixes.TIME_REPORT) </li>
      * </ul>
      *
-     * @param line  Text output line
+     * @param line  Text output line, only valid for the duration of the call
      */
-    private void parse(String line) {
-        if (line.startsWith(Prefixes.STATUS_CODE)) {
+    private void parse(CharSequence line) {
+        if (startsWith(line, Prefixes.STATUS_CODE)) {
             // Previous status key-value has been collected. Store it.
             submitCurrentKeyValue();
             mInInstrumentationResultKey = false;
             parseStatusCode(line);
-        } else if (line.startsWith(Prefixes.STATUS)) {
+        } else if (startsWith(line, Prefixes.STATUS)) {
             // Previous status key-value has been collected. Store it.
             submitCurrentKeyValue();
             mInInstrumentationResultKey = false;
             parseKey(line, Prefixes.STATUS.length());
-        } else if (line.startsWith(Prefixes.RESULT)) {
+        } else if (startsWith(line, Prefixes.RESULT)) {
             // Previous status key-value has been collected. Store it.
             submitCurrentKeyValue();
             mInInstrumentationResultKey = true;
             parseKey(line, Prefixes.RESULT.length());
-        } else if (line.startsWith(Prefixes.STATUS_FAILED) ||
-                   line.startsWith(Prefixes.CODE)) {
+        } else if (startsWith(line, Prefixes.STATUS_FAILED)
+                || startsWith(line, Prefixes.CODE)) {
             // Previous status key-value has been collected. Store it.
             submitCurrentKeyValue();
             mInInstrumentationResultKey = false;
             // these codes signal the end of the instrumentation run
             mTestRunFinished = true;
             // just ignore the remaining data on this line
-        } else if (line.startsWith(Prefixes.TIME_REPORT)) {
+        } else if (startsWith(line, Prefixes.TIME_REPORT)) {
             parseTime(line);
-        } else if (line.startsWith(Prefixes.ON_ERROR)) {
-            mOnError = line;
+        } else if (startsWith(line, Prefixes.ON_ERROR)) {
+            mOnError = line.toString();
         } else {
             if (mCurrentValue != null) {
                 // this is a value that has wrapped to next line.
                 mCurrentValue.append("\r\n");
                 mCurrentValue.append(line);
-            } else if (!line.trim().isEmpty()) {
+            } else if (line.length() > 0) {
                 Log.d(LOG_TAG, "unrecognized line " + line);
             }
         }
     }
 
+    private static boolean startsWith(@NonNull CharSequence line, @NonNull String prefix) {
+        int length = prefix.length();
+        if (line.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Stores the currently parsed key-value pair in the appropriate place.
      */
@@ -417,10 +453,16 @@ public class InstrumentationResultParser extends MultiLineReceiver {
      * @param line full line of text to parse
      * @param keyStartPos the starting position of the key in the given line
      */
-    private void parseKey(String line, int keyStartPos) {
-        int endKeyPos = line.indexOf('=', keyStartPos);
+    private void parseKey(CharSequence line, int keyStartPos) {
+        int endKeyPos = -1;
+        for (int i = keyStartPos; i < line.length(); i++) {
+            if (line.charAt(i) == '=') {
+                endKeyPos = i;
+                break;
+            }
+        }
         if (endKeyPos != -1) {
-            mCurrentKey = line.substring(keyStartPos, endKeyPos).trim();
+            mCurrentKey = line.subSequence(keyStartPos, endKeyPos).toString().trim();
             parseValue(line, endKeyPos + 1);
         }
     }
@@ -431,16 +473,17 @@ public class InstrumentationResultParser extends MultiLineReceiver {
      * @param line - full line of text to parse
      * @param valueStartPos - the starting position of the value in the given line
      */
-    private void parseValue(String line, int valueStartPos) {
+    private void parseValue(CharSequence line, int valueStartPos) {
         mCurrentValue = new StringBuilder();
-        mCurrentValue.append(line.substring(valueStartPos));
+        mCurrentValue.append(line, valueStartPos, line.length());
     }
 
     /**
      * Parses out a status code result.
      */
-    private void parseStatusCode(String line) {
-        String value = line.substring(Prefixes.STATUS_CODE.length()).trim();
+    private void parseStatusCode(CharSequence line) {
+        String value =
+                line.subSequence(Prefixes.STATUS_CODE.length(), line.length()).toString().trim();
         TestResult testInfo = getCurrentTestInfo();
         testInfo.mCode = StatusCodes.ERROR;
         try {
@@ -594,7 +637,7 @@ public class InstrumentationResultParser extends MultiLineReceiver {
      * Parses out and store the elapsed time. Elapsed time format use comma separation above 1000.
      * For example: "Time: 1,745.755" which should be handled.
      */
-    private void parseTime(String line) {
+    private void parseTime(CharSequence line) {
         final Pattern timePattern =
                 Pattern.compile(String.format("%s\\s*([\\d\\,]*[\\d\\.]+)", Prefixes.TIME_REPORT));
         Matcher timeMatcher = timePattern.matcher(line);
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmlib.testrunner;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.annotations.concurrency.GuardedBy;
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.DeviceFleet;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs the tests of an instrumentation across the devices of a {@link DeviceFleet}, by splitting
+ * them in shards with the <code>numShards</code> and <code>shardIndex</code> arguments of the
+ * AndroidJUnitRunner. Each device runs one shard at a time.
+ *
+ * <p>The listeners are notified of each shard as a separate test run, once the shard completed,
+ * and never concurrently. When the device running a shard is lost, the shard is run again on
+ * another device, and the results of the interrupted run are not reported.
+ */
+public class ShardedTestRunner {
+    private static final String LOG_TAG = "ShardedTestRunner";
+
+    private static final String NUM_SHARDS_ARG_NAME = "numShards";
+    private static final String SHARD_INDEX_ARG_NAME = "shardIndex";
+
+    /** Default number of times a shard is run before giving up, when its device is lost. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private final String mPackageName;
+    private final String mRunnerName;
+    private final DeviceFleet mFleet;
+    private final Map<String, String> mInstrumentationArgs = new LinkedHashMap<String, String>();
+    private int mShardCount = 0;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long mMaxTimeoutMs = 0;
+    private long mMaxTimeToOutputResponseMs = 0;
+    private String mRunName = null;
+
+    /**
+     * Creates a runner for the given instrumentation.
+     *
+     * @param packageName the Android application package that contains the tests to run
+     * @param runnerName the instrumentation test runner to execute. Must support sharding, like
+     *     AndroidJUnitRunner.
+     * @param fleet the devices to run the tests on
+     */
+    public ShardedTestRunner(
+            @NonNull String packageName, @NonNull String runnerName, @NonNull DeviceFleet fleet) {
+        mPackageName = packageName;
+        mRunnerName = runnerName;
+        mFleet = fleet;
+    }
+
+    /**
+     * Adds an argument to pass to the instrumentation of each shard.
+     *
+     * @see RemoteAndroidTestRunner#addInstrumentationArg(String, String)
+     */
+    public void addInstrumentationArg(@NonNull String name, @NonNull String value) {
+        mInstrumentationArgs.put(name, value);
+    }
+
+    /**
+     * Sets the number of shards the tests are split in. By default, there is one shard per device
+     * of the fleet.
+     */
+    public void setShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        mShardCount = shardCount;
+    }
+
+    /**
+     * Sets the number of times a shard is run before giving up, when the device running it is
+     * lost. Defaults to {@link #DEFAULT_MAX_ATTEMPTS}.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+    }
+
+    /** @see RemoteAndroidTestRunner#setMaxTimeout(long, TimeUnit) */
+    public void setMaxTimeout(long maxTimeout, @NonNull TimeUnit maxTimeUnits) {
+        mMaxTimeoutMs = maxTimeUnits.toMillis(maxTimeout);
+    }
+
+    /** @see RemoteAndroidTestRunner#setMaxTimeToOutputResponse(long, TimeUnit) */
+    public void setMaxTimeToOutputResponse(
+            long maxTimeToOutputResponse, @NonNull TimeUnit maxTimeUnits) {
+        mMaxTimeToOutputResponseMs = maxTimeUnits.toMillis(maxTimeToOutputResponse);
+    }
+
+    /** @see RemoteAndroidTestRunner#setRunName(String) */
+    public void setRunName(@Nullable String runName) {
+        mRunName = runName;
+    }
+
+    /**
+     * Runs the tests, and blocks until all the shards completed.
+     *
+     * @param listeners the listeners notified of the test results of each shard
+     * @return the results of all the shards
+     * @throws InterruptedException if interrupted while waiting for the shards
+     */
+    @NonNull
+    public TestRunResult run(@NonNull ITestRunListener... listeners) throws InterruptedException {
+        return run(Arrays.asList(listeners));
+    }
+
+    /**
+     * Runs the tests, and blocks until all the shards completed.
+     *
+     * @param listeners the listeners notified of the test results of each shard
+     * @return the results of all the shards
+     * @throws InterruptedException if interrupted while waiting for the shards
+     */
+    @NonNull
+    public TestRunResult run(@NonNull Collection<ITestRunListener> listeners)
+            throws InterruptedException {
+        List<IDevice> devices = mFleet.getDevices();
+        final ShardedRun shardedRun =
+                new ShardedRun(
+                        mRunName == null ? mPackageName : mRunName,
+                        mShardCount > 0 ? mShardCount : devices.size(),
+                        devices.size(),
+                        listeners);
+
+        List<Thread> threads = new ArrayList<Thread>(devices.size());
+        for (final IDevice device : devices) {
+            Thread thread =
+                    new Thread("Sharded Test Runner " + device.getSerialNumber()) { //$NON-NLS-1$
+                        @Override
+                        public void run() {
+                            shardedRun.runShards(device);
+                        }
+                    };
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+        return shardedRun.getResult();
+    }
+
+    /**
+     * Runs a shard on a device.
+     *
+     * @return true if the device was lost while running the shard
+     */
+    private boolean runShard(
+            @NonNull IDevice device, @NonNull Shard shard, @NonNull ShardRecorder recorder) {
+        RemoteAndroidTestRunner runner =
+                new RemoteAndroidTestRunner(mPackageName, mRunnerName, device);
+        for (Map.Entry<String, String> arg : mInstrumentationArgs.entrySet()) {
+            runner.addInstrumentationArg(arg.getKey(), arg.getValue());
+        }
+        if (shard.mCount > 1) {
+            runner.addInstrumentationArg(NUM_SHARDS_ARG_NAME, Integer.toString(shard.mCount));
+            runner.addInstrumentationArg(SHARD_INDEX_ARG_NAME, Integer.toString(shard.mIndex));
+        }
+        runner.setMaxTimeout(mMaxTimeoutMs, TimeUnit.MILLISECONDS);
+        runner.setMaxTimeToOutputResponse(mMaxTimeToOutputResponseMs, TimeUnit.MILLISECONDS);
+        runner.setRunName(mRunName);
+
+        Log.d(LOG_TAG, String.format("Running shard %1$d/%2$d on %3$s",
+                shard.mIndex, shard.mCount, device.getSerialNumber()));
+        boolean deviceLost;
+        try {
+            runner.run(recorder);
+            deviceLost = recorder.mFailure != null && !device.isOnline();
+        } catch (IOException | AdbCommandRejectedException e) {
+            // the connection to the device was lost
+            deviceLost = true;
+        } catch (Exception e) {
+            // the failure was reported to the recorder by the runner
+            deviceLost = !device.isOnline();
+        }
+        if (deviceLost) {
+            recorder.mFailure =
+                    String.format("Lost device %1$s while running shard %2$d: %3$s",
+                            device.getSerialNumber(), shard.mIndex, recorder.mFailure);
+        }
+        return deviceLost;
+    }
+
+    /** The state of a call to {@link #run(Collection)}, shared by the threads of the devices. */
+    private final class ShardedRun {
+        private final String mName;
+        private final Collection<ITestRunListener> mListeners;
+
+        @GuardedBy("this")
+        private final ArrayDeque<Shard> mPendingShards = new ArrayDeque<Shard>();
+
+        @GuardedBy("this")
+        private int mRemainingShards;
+
+        @GuardedBy("this")
+        private int mActiveDevices;
+
+        @GuardedBy("this")
+        private final TestRunResult mResult = new TestRunResult();
+
+        @GuardedBy("this")
+        private final List<String> mFailures = new ArrayList<String>();
+
+        ShardedRun(
+                @NonNull String name,
+                int shardCount,
+                int deviceCount,
+                @NonNull Collection<ITestRunListener> listeners) {
+            mName = name;
+            mListeners = listeners;
+            for (int i = 0; i < shardCount; i++) {
+                mPendingShards.add(new Shard(i, shardCount));
+            }
+            mRemainingShards = shardCount;
+            mActiveDevices = deviceCount;
+            mResult.setAggregateMetrics(true);
+            mResult.testRunStarted(name, 0);
+        }
+
+        /** Runs shards on a device, until there are none left or the device is lost. */
+        void runShards(@NonNull IDevice device) {
+            while (true) {
+                Shard shard;
+                synchronized (this) {
+                    while (mPendingShards.isEmpty() && mRemainingShards > 0) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (mRemainingShards == 0) {
+                        return;
+                    }
+                    shard = mPendingShards.removeFirst();
+                }
+
+                ShardRecorder recorder = new ShardRecorder();
+                boolean deviceLost = runShard(device, shard, recorder);
+
+                synchronized (this) {
+                    if (!deviceLost) {
+                        complete(recorder);
+                        notifyAll();
+                        continue;
+                    }
+
+                    mActiveDevices--;
+                    shard.mAttempts++;
+                    if (shard.mAttempts < mMaxAttempts && mActiveDevices > 0) {
+                        Log.w(LOG_TAG, recorder.mFailure + ", running it again");
+                        mPendingShards.addLast(shard);
+                    } else {
+                        complete(recorder);
+                    }
+                    if (mActiveDevices == 0) {
+                        // nothing is left to run the pending shards
+                        while (!mPendingShards.isEmpty()) {
+                            Shard pending = mPendingShards.removeFirst();
+                            ShardRecorder failed = new ShardRecorder();
+                            failed.testRunFailed("No device left to run shard " + pending.mIndex);
+                            complete(failed);
+                        }
+                    }
+                    notifyAll();
+                    return;
+                }
+            }
+        }
+
+        /** Reports the results of a shard to the listeners. */
+        @GuardedBy("this")
+        private void complete(@NonNull ShardRecorder recorder) {
+            mRemainingShards--;
+            for (ITestRunListener listener : mListeners) {
+                recorder.replay(mName, listener);
+            }
+
+            for (Consumer<ITestRunListener> event : recorder.mTestEvents) {
+                event.accept(mResult);
+            }
+            if (recorder.mFailure != null) {
+                mFailures.add(recorder.mFailure);
+            }
+            mResult.testRunEnded(recorder.mElapsedTime, recorder.mRunMetrics);
+        }
+
+        @NonNull
+        synchronized TestRunResult getResult() {
+            if (!mFailures.isEmpty()) {
+                mResult.testRunFailed(String.join("\n", mFailures));
+            }
+            return mResult;
+        }
+    }
+
+    private static final class Shard {
+        final int mIndex;
+        final int mCount;
+        int mAttempts;
+
+        Shard(int index, int count) {
+            mIndex = index;
+            mCount = count;
+        }
+    }
+
+    /** Records the results of the run of a shard, to report them once it completed. */
+    private static final class ShardRecorder implements ITestRunListener {
+        private final List<Consumer<ITestRunListener>> mTestEvents =
+                new ArrayList<Consumer<ITestRunListener>>();
+        private int mTestCount;
+        @Nullable private String mFailure;
+        private long mElapsedTime;
+        private Map<String, String> mRunMetrics = Collections.emptyMap();
+
+        void replay(@NonNull String runName, @NonNull ITestRunListener listener) {
+            listener.testRunStarted(runName, mTestCount);
+            for (Consumer<ITestRunListener> event : mTestEvents) {
+                event.accept(listener);
+            }
+            if (mFailure != null) {
+                listener.testRunFailed(mFailure);
+            }
+            listener.testRunEnded(mElapsedTime, mRunMetrics);
+        }
+
+        @Override
+        public void testRunStarted(String runName, int testCount) {
+            mTestCount = testCount;
+        }
+
+        @Override
+        public void testStarted(TestIdentifier test) {
+            testStarted(test, System.currentTimeMillis());
+        }
+
+        @Override
+        public void testStarted(TestIdentifier test, long startTime) {
+            mTestEvents.add(listener -> listener.testStarted(test, startTime));
+        }
+
+        @Override
+        public void testFailed(TestIdentifier test, String trace) {
+            mTestEvents.add(listener -> listener.testFailed(test, trace));
+        }
+
+        @Override
+        public void testAssumptionFailure(TestIdentifier test, String trace) {
+            mTestEvents.add(listener -> listener.testAssumptionFailure(test, trace));
+        }
+
+        @Override
+        public void testIgnored(TestIdentifier test) {
+            mTestEvents.add(listener -> listener.testIgnored(test));
+        }
+
+        @Override
+        public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+            testEnded(test, System.currentTimeMillis(), testMetrics);
+        }
+
+        @Override
+        public void testEnded(TestIdentifier test, long endTime, Map<String, String> testMetrics) {
+            mTestEvents.add(listener -> listener.testEnded(test, endTime, testMetrics));
+        }
+
+        @Override
+        public void testRunFailed(String errorMessage) {
+            mFailure = errorMessage;
+        }
+
+        @Override
+        public void testRunStopped(long elapsedTime) {
+            mElapsedTime = elapsedTime;
+        }
+
+        @Override
+        public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+            mElapsedTime = elapsedTime;
+            mRunMetrics = runMetrics;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.android.fakeadbserver.DeviceState;
+import com.android.fakeadbserver.FakeAdbServer;
+import com.android.fakeadbserver.shellcommandhandlers.GetPropCommandHandler;
+import com.android.fakeadbserver.shellcommandhandlers.WriteNoStopCommandHandler;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdbExecutorTest {
+    private static final String SERIAL = "test_device_001";
+
+    private static final int REASONABLE_TIMEOUT_S = 10;
+
+    private FakeAdbServer mServer;
+    private AdbExecutor mExecutor;
+    private IDevice mDevice;
+
+    @Before
+    public void setUp() throws Exception {
+        FakeAdbServer.Builder builder = new FakeAdbServer.Builder();
+        builder.installDefaultCommandHandlers();
+        mServer = builder.build();
+        mServer.connectDevice(
+                        SERIAL, "Google", "Nexus Silver", "8.0", "26",
+                        DeviceState.HostConnectionType.USB)
+                .get();
+        mServer.start();
+        mExecutor = new AdbExecutor(new InetSocketAddress("127.0.0.1", mServer.getPort()), 2);
+        mDevice = createMockDevice(SERIAL);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.close();
+        mServer.close();
+    }
+
+    @Test
+    public void testShellCommands() throws Exception {
+        CollectingOutputReceiver first = new CollectingOutputReceiver();
+        mExecutor
+                .executeShellCommand(
+                        mDevice, GetPropCommandHandler.COMMAND, first, 0, TimeUnit.SECONDS)
+                .get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+        assertThat(first.getOutput()).contains("[ro.product.model]: [Nexus Silver]");
+
+        // More requests than may run concurrently on the device are queued
+        List<CollectingOutputReceiver> receivers = new ArrayList<>();
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            CollectingOutputReceiver receiver = new CollectingOutputReceiver();
+            receivers.add(receiver);
+            futures.add(
+                    mExecutor.executeShellCommand(
+                            mDevice, GetPropCommandHandler.COMMAND, receiver, 0, TimeUnit.SECONDS));
+        }
+        Futures.allAsList(futures).get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+        for (CollectingOutputReceiver receiver : receivers) {
+            assertThat(receiver.getOutput()).isEqualTo(first.getOutput());
+        }
+    }
+
+    @Test
+    public void testCancelledReceiver() throws Exception {
+        int[] chunks = new int[1];
+        IShellOutputReceiver receiver =
+                new IShellOutputReceiver() {
+                    @Override
+                    public void addOutput(byte[] data, int offset, int length) {
+                        chunks[0]++;
+                    }
+
+                    @Override
+                    public void flush() {}
+
+                    @Override
+                    public boolean isCancelled() {
+                        return chunks[0] >= 2;
+                    }
+                };
+        mExecutor
+                .executeShellCommand(
+                        mDevice, WriteNoStopCommandHandler.COMMAND, receiver, 0, TimeUnit.SECONDS)
+                .get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+        assertThat(chunks[0]).isEqualTo(2);
+    }
+
+    @Test
+    public void testUnresponsiveCommand() throws Exception {
+        try {
+            mExecutor
+                    .executeShellCommand(
+                            mDevice,
+                            WriteNoStopCommandHandler.COMMAND,
+                            new CollectingOutputReceiver(),
+                            50,
+                            TimeUnit.MILLISECONDS)
+                    .get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+            fail("Expected ShellCommandUnresponsiveException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(ShellCommandUnresponsiveException.class);
+        }
+    }
+
+    @Test
+    public void testUnknownDevice() throws Exception {
+        try {
+            mExecutor
+                    .executeShellCommand(
+                            createMockDevice("unknown"),
+                            GetPropCommandHandler.COMMAND,
+                            new CollectingOutputReceiver(),
+                            0,
+                            TimeUnit.SECONDS)
+                    .get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+            fail("Expected AdbCommandRejectedException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AdbCommandRejectedException.class);
+            AdbCommandRejectedException cause = (AdbCommandRejectedException) e.getCause();
+            assertThat(cause.wasErrorDuringDeviceSelection()).isTrue();
+        }
+    }
+
+    @Test
+    public void testForward() throws Exception {
+        mExecutor
+                .createForward(mDevice, "tcp:34567", "tcp:1234")
+                .get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+        mExecutor.removeForward(mDevice, "tcp:34567").get(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+    }
+
+    private static IDevice createMockDevice(String serial) {
+        IDevice device = mock(IDevice.class);
+        when(device.getSerialNumber()).thenReturn(serial);
+        return device;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testReuse() {
+        ByteBufferPool pool = new ByteBufferPool();
+        ByteBuffer buf = pool.acquire(1024);
+        assertThat(buf.isDirect()).isTrue();
+        assertThat(buf.capacity()).isEqualTo(1024);
+
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(42);
+        pool.release(buf);
+        assertThat(pool.getPooledBytes()).isEqualTo(1024);
+
+        ByteBuffer reused = pool.acquire(1024);
+        assertThat(reused).isSameAs(buf);
+        assertThat(reused.position()).isEqualTo(0);
+        assertThat(reused.limit()).isEqualTo(1024);
+        assertThat(reused.order()).isEqualTo(ByteOrder.BIG_ENDIAN);
+        assertThat(pool.getPooledBytes()).isEqualTo(0);
+
+        // other capacities are not served from the same buffers
+        pool.release(reused);
+        assertThat(pool.acquire(2048)).isNotSameAs(reused);
+    }
+
+    @Test
+    public void testLargeBuffersNotPooled() {
+        ByteBufferPool pool = new ByteBufferPool();
+        ByteBuffer buf = pool.acquire(ByteBufferPool.MAX_POOLED_CAPACITY * 2);
+        assertThat(buf.isDirect()).isFalse();
+
+        pool.release(buf);
+        pool.release(ByteBuffer.allocate(1024));
+        assertThat(pool.getPooledBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGrow() {
+        ByteBufferPool pool = new ByteBufferPool();
+        ByteBuffer buf = pool.acquire(1024);
+        for (int i = 0; i < 256; i++) {
+            buf.putInt(i);
+        }
+
+        ByteBuffer grown = pool.grow(buf, 2048);
+        assertThat(grown.capacity()).isEqualTo(2048);
+        assertThat(grown.position()).isEqualTo(1024);
+        assertThat(grown.limit()).isEqualTo(2048);
+        for (int i = 0; i < 256; i++) {
+            assertThat(grown.getInt(i * 4)).isEqualTo(i);
+        }
+        // the old buffer was given back
+        assertThat(pool.getPooledBytes()).isEqualTo(1024);
+    }
+}
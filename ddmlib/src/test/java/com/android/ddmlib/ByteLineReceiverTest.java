@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.annotations.NonNull;
+import com.google.common.base.Charsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ByteLineReceiverTest {
+    @Test
+    public void testLinesSpanningPackets() {
+        List<String> lines = new ArrayList<>();
+        ByteLineReceiver receiver =
+                new ByteLineReceiver() {
+                    @Override
+                    protected void processLine(@NonNull byte[] data, int offset, int length) {
+                        lines.add(decode(data, offset, length).toString());
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+                };
+        // The multi-byte character and the \r\n are split across packets
+        byte[] output = "first\r\nsecond 中文\r\n\nlast".getBytes(Charsets.UTF_8);
+        int split = "first\r\nsecond ".length() + 1;
+        receiver.addOutput(output, 0, 6);
+        receiver.addOutput(output, 6, split - 6);
+        receiver.addOutput(output, split, output.length - split);
+        assertThat(lines).containsExactly("first", "second 中文", "").inOrder();
+
+        receiver.flush();
+        assertThat(lines).containsExactly("first", "second 中文", "", "last").inOrder();
+    }
+
+    @Test
+    public void testMultiLineReceiver() {
+        List<List<String>> batches = new ArrayList<>();
+        MultiLineReceiver receiver =
+                new MultiLineReceiver() {
+                    @Override
+                    public void processNewLines(@NonNull String[] lines) {
+                        batches.add(Arrays.asList(lines));
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+                };
+        byte[] output = " a \nb\r\nc\n".getBytes(Charsets.UTF_8);
+        receiver.addOutput(output, 0, 5);
+        receiver.addOutput(output, 5, output.length - 5);
+        receiver.flush();
+
+        // Lines are trimmed and passed on per packet; the final empty line is passed on flush
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0)).containsExactly("a");
+        assertThat(batches.get(1)).containsExactly("b", "c").inOrder();
+        assertThat(batches.get(2)).containsExactly("");
+    }
+}
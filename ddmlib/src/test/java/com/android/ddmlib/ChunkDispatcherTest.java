@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ChunkDispatcherTest {
+    private static final int REASONABLE_TIMEOUT_S = 10;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testOrderPerClient() throws Exception {
+        ChunkDispatcher dispatcher = new ChunkDispatcher(mExecutor);
+        Client[] clients = {mock(Client.class), mock(Client.class), mock(Client.class)};
+        List<List<Integer>> handled = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(clients.length);
+
+        for (int c = 0; c < clients.length; c++) {
+            List<Integer> clientHandled = Collections.synchronizedList(new ArrayList<>());
+            handled.add(clientHandled);
+            for (int i = 0; i < 1000; i++) {
+                int value = i;
+                dispatcher.dispatch(clients[c], () -> clientHandled.add(value), 10);
+            }
+            dispatcher.dispatchLast(clients[c], done::countDown);
+        }
+
+        assertThat(done.await(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS)).isTrue();
+        for (List<Integer> clientHandled : handled) {
+            assertThat(clientHandled).hasSize(1000);
+            for (int i = 0; i < 1000; i++) {
+                assertThat(clientHandled.get(i)).isEqualTo(i);
+            }
+        }
+        assertThat(dispatcher.getPendingTasks()).isEqualTo(0);
+        assertThat(dispatcher.getCompletedTasks()).isEqualTo(3003);
+        assertThat(dispatcher.getMaxPendingTasks()).isGreaterThan(1);
+    }
+
+    @Test
+    public void testSlowClientDoesNotBlockOthers() throws Exception {
+        ChunkDispatcher dispatcher = new ChunkDispatcher(mExecutor);
+        Client slow = mock(Client.class);
+        Client fast = mock(Client.class);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+
+        dispatcher.dispatch(
+                slow,
+                () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                },
+                0);
+        dispatcher.dispatch(fast, fastDone::countDown, 0);
+
+        assertThat(fastDone.await(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    public void testRunIfIdle() throws Exception {
+        ChunkDispatcher dispatcher = new ChunkDispatcher(mExecutor);
+        Client client = mock(Client.class);
+        Thread thread = Thread.currentThread();
+        List<Thread> threads = new ArrayList<>();
+
+        assertThat(dispatcher.runIfIdle(client, () -> threads.add(Thread.currentThread())))
+                .isTrue();
+        assertThat(threads).containsExactly(thread);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(
+                client,
+                () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                },
+                0);
+        // the task has to wait for the one already dispatched
+        assertThat(dispatcher.runIfIdle(client, () -> {})).isFalse();
+        dispatcher.dispatchLast(client, done::countDown);
+
+        release.countDown();
+        assertThat(done.await(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS)).isTrue();
+        assertThat(dispatcher.getCompletedTasks()).isAtLeast(2L);
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        ChunkDispatcher dispatcher = new ChunkDispatcher(mExecutor);
+        BlockingQueue<Client> resumed = new LinkedBlockingQueue<>();
+        dispatcher.setResumeListener(resumed::add);
+        Client client = mock(Client.class);
+        CountDownLatch release = new CountDownLatch(1);
+
+        dispatcher.dispatch(
+                client,
+                () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                },
+                ChunkDispatcher.MAX_PENDING_BYTES);
+        assertThat(dispatcher.pauseIfBackedUp(client)).isFalse();
+
+        dispatcher.dispatch(client, () -> {}, 1);
+        assertThat(dispatcher.pauseIfBackedUp(client)).isTrue();
+
+        release.countDown();
+        assertThat(resumed.poll(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS)).isSameAs(client);
+        assertThat(dispatcher.pauseIfBackedUp(client)).isFalse();
+    }
+
+    @Test
+    public void testStatsReportQueueDepthPerClient() throws Exception {
+        ChunkDispatcher dispatcher = new ChunkDispatcher(mExecutor);
+        Client busy = mock(Client.class);
+        Client idle = mock(Client.class);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        dispatcher.dispatch(idle, done::countDown, 10);
+        dispatcher.dispatch(
+                busy,
+                () -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                },
+                100);
+        dispatcher.dispatch(busy, () -> {}, 20);
+        dispatcher.dispatchLast(busy, done::countDown);
+        assertThat(started.await(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS)).isTrue();
+
+        ChunkHandlerStats stats = dispatcher.getStats();
+        ChunkHandlerStats.QueueDepth depth = stats.getQueueDepths().get(busy);
+        assertThat(depth.getPendingTasks()).isEqualTo(3);
+        assertThat(depth.getPendingBytes()).isEqualTo(120);
+        assertThat(depth.isPaused()).isFalse();
+
+        release.countDown();
+        assertThat(done.await(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS)).isTrue();
+        // the counters are updated after a task has run
+        stats = dispatcher.getStats();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(REASONABLE_TIMEOUT_S);
+        while (!stats.getQueueDepths().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            stats = dispatcher.getStats();
+        }
+        assertThat(stats.getQueueDepths()).isEmpty();
+        assertThat(stats.getCompletedTasks()).isEqualTo(4);
+        assertThat(stats.getPendingTasks()).isEqualTo(0);
+    }
+}
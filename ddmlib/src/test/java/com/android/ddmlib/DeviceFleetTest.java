@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.android.annotations.NonNull;
+import com.android.fakeadbserver.DeviceState;
+import com.android.fakeadbserver.FakeAdbServer;
+import com.android.fakeadbserver.devicecommandhandlers.DeviceCommandHandler;
+import com.android.sdklib.AndroidVersion;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeviceFleetTest {
+    private static final int API_WITH_SESSIONS =
+            AndroidVersion.ALLOW_SPLIT_APK_INSTALLATION.getApiLevel();
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    /** The APKs streamed to the fake adb server, by device serial */
+    private final Map<String, List<byte[]>> mUploads = new ConcurrentHashMap<>();
+
+    private FakeAdbServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        FakeAdbServer.Builder builder = new FakeAdbServer.Builder();
+        builder.installDefaultCommandHandlers();
+        builder.setDeviceCommandHandler("exec", RecordingExecCommandHandler::new);
+        mServer = builder.build();
+        for (String serial : new String[] {"d1", "d2", "d3"}) {
+            mServer.connectDevice(
+                            serial, "Google", "Nexus Silver", "8.0", "26",
+                            DeviceState.HostConnectionType.USB)
+                    .get();
+        }
+        mServer.start();
+        AndroidDebugBridge.enableFakeAdbServerMode(mServer.getPort());
+        AndroidDebugBridge.initIfNeeded(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AndroidDebugBridge.terminate();
+        AndroidDebugBridge.disableFakeAdbServerMode();
+        mServer.close();
+    }
+
+    @Test
+    public void testInstallStreamsEachApkToEveryDevice() throws Exception {
+        File base = createApk("base.apk", "base contents");
+        File split = createApk("split.apk", "split contents");
+        List<File> apks = Arrays.asList(base, split);
+        IDevice[] devices = {
+            createDevice("d1", API_WITH_SESSIONS, apks),
+            createDevice("d2", API_WITH_SESSIONS, apks),
+            createDevice("d3", API_WITH_SESSIONS, apks)
+        };
+
+        Map<IDevice, InstallException> failures =
+                new DeviceFleet(Arrays.asList(devices))
+                        .installPackages(
+                                apks, true, Collections.emptyList(), 10, TimeUnit.SECONDS);
+
+        assertThat(failures).isEmpty();
+        for (IDevice device : devices) {
+            // the APK files are changed as each device creates its session, so the original
+            // contents can only come from the copy read before the installs
+            List<String> uploads = getUploads(device.getSerialNumber());
+            assertThat(uploads).containsExactly("base contents", "split contents").inOrder();
+            verify(device, never()).installPackage(anyString(), anyBoolean(), any(String[].class));
+        }
+    }
+
+    @Test
+    public void testFailureDoesNotAffectOtherDevices() throws Exception {
+        List<File> apks = Collections.singletonList(createApk("base.apk", "base contents"));
+        IDevice failing = createDevice("d2", API_WITH_SESSIONS, apks);
+        doAnswer(
+                        invocation -> {
+                            String command = invocation.getArgument(0);
+                            String output =
+                                    command.contains("install-create")
+                                            ? "Failure [INSTALL_FAILED_INSUFFICIENT_STORAGE]\n"
+                                            : "Success\n";
+                            sendOutput(invocation.getArgument(1), output);
+                            return null;
+                        })
+                .when(failing)
+                .executeShellCommand(
+                        anyString(),
+                        any(IShellOutputReceiver.class),
+                        anyLong(),
+                        any(TimeUnit.class));
+        IDevice d1 = createDevice("d1", API_WITH_SESSIONS, apks);
+        IDevice d3 = createDevice("d3", API_WITH_SESSIONS, apks);
+
+        Map<IDevice, InstallException> failures =
+                new DeviceFleet(Arrays.asList(d1, failing, d3))
+                        .installPackages(
+                                apks, false, Collections.emptyList(), 10, TimeUnit.SECONDS);
+
+        assertThat(failures.keySet()).containsExactly(failing);
+        assertThat(failures.get(failing).getMessage())
+                .contains("INSTALL_FAILED_INSUFFICIENT_STORAGE");
+        assertThat(getUploads("d1")).containsExactly("base contents");
+        assertThat(getUploads("d2")).isEmpty();
+        assertThat(getUploads("d3")).containsExactly("base contents");
+        // the package manager rejected the application, installing it again would not help
+        verify(failing, times(1))
+                .executeShellCommand(
+                        anyString(),
+                        any(IShellOutputReceiver.class),
+                        anyLong(),
+                        any(TimeUnit.class));
+    }
+
+    @Test
+    public void testInstallIsRetriedWhenConnectionFails() throws Exception {
+        List<File> apks = Collections.singletonList(createApk("base.apk", "base contents"));
+        IDevice flaky = createDevice("d1", API_WITH_SESSIONS, apks);
+        AtomicInteger sessions = new AtomicInteger();
+        doAnswer(
+                        invocation -> {
+                            String command = invocation.getArgument(0);
+                            if (command.contains("install-create")
+                                    && sessions.incrementAndGet() == 1) {
+                                throw new IOException("connection reset");
+                            }
+                            String output =
+                                    command.contains("install-create")
+                                            ? "Success: created install session [1234]\n"
+                                            : "Success\n";
+                            sendOutput(invocation.getArgument(1), output);
+                            return null;
+                        })
+                .when(flaky)
+                .executeShellCommand(
+                        anyString(),
+                        any(IShellOutputReceiver.class),
+                        anyLong(),
+                        any(TimeUnit.class));
+
+        Map<IDevice, InstallException> failures =
+                new DeviceFleet(Collections.singletonList(flaky))
+                        .installPackages(
+                                apks, true, Collections.emptyList(), 10, TimeUnit.SECONDS);
+
+        assertThat(failures).isEmpty();
+        assertThat(sessions.get()).isEqualTo(2);
+        assertThat(getUploads("d1")).containsExactly("base contents");
+    }
+
+    @Test
+    public void testInstallGivesUpOnLostDevice() throws Exception {
+        File base = createApk("base.apk", "base contents");
+        List<File> apks = Collections.singletonList(base);
+        IDevice lost = createDevice("d1", API_WITH_SESSIONS - 1, apks);
+        when(lost.isOnline()).thenReturn(false);
+        doAnswer(
+                        invocation -> {
+                            throw new InstallException("device offline");
+                        })
+                .when(lost)
+                .installPackage(anyString(), anyBoolean(), any(String[].class));
+        IDevice online = createDevice("d2", API_WITH_SESSIONS - 1, apks);
+
+        DeviceFleet fleet = new DeviceFleet(Arrays.asList(lost, online));
+        fleet.setMaxAttempts(2);
+        Map<IDevice, InstallException> failures =
+                fleet.installPackages(apks, true, Collections.emptyList(), 10, TimeUnit.SECONDS);
+
+        assertThat(failures.keySet()).containsExactly(lost);
+        verify(lost, times(2)).installPackage(base.getAbsolutePath(), true);
+        verify(online, times(1)).installPackage(base.getAbsolutePath(), true);
+    }
+
+    @Test
+    public void testPreLollipopDeviceUsesInstallPackage() throws Exception {
+        File base = createApk("base.apk", "base contents");
+        List<File> apks = Collections.singletonList(base);
+        IDevice old = createDevice("d1", API_WITH_SESSIONS - 1, apks);
+        IDevice recent = createDevice("d2", API_WITH_SESSIONS, apks);
+
+        Map<IDevice, InstallException> failures =
+                new DeviceFleet(Arrays.asList(old, recent))
+                        .installPackages(
+                                apks, true, ImmutableList.of("-d"), 10, TimeUnit.SECONDS);
+
+        assertThat(failures).isEmpty();
+        verify(old).installPackage(base.getAbsolutePath(), true, "-d");
+        verify(old, never())
+                .executeShellCommand(
+                        anyString(),
+                        any(IShellOutputReceiver.class),
+                        anyLong(),
+                        any(TimeUnit.class));
+        assertThat(getUploads("d1")).isEmpty();
+        assertThat(getUploads("d2")).containsExactly("base contents");
+    }
+
+    @NonNull
+    private File createApk(@NonNull String name, @NonNull String contents) throws IOException {
+        File apk = mTemporaryFolder.newFile(name);
+        Files.write(contents, apk, Charsets.UTF_8);
+        return apk;
+    }
+
+    /**
+     * Returns a device answering the shell commands of install sessions. Creating a session
+     * overwrites the contents of the given APK files, keeping their size.
+     */
+    @NonNull
+    private static IDevice createDevice(
+            @NonNull String serial, int apiLevel, @NonNull List<File> apks) throws Exception {
+        IDevice device = mock(IDevice.class);
+        when(device.getSerialNumber()).thenReturn(serial);
+        when(device.getVersion()).thenReturn(new AndroidVersion(apiLevel));
+        when(device.isOnline()).thenReturn(true);
+        doAnswer(
+                        invocation -> {
+                            String command = invocation.getArgument(0);
+                            String output = "Success\n";
+                            if (command.contains("install-create")) {
+                                for (File apk : apks) {
+                                    // written in place, the other devices may be reading the
+                                    // size of the file
+                                    try (RandomAccessFile file = new RandomAccessFile(apk, "rw")) {
+                                        byte[] changed = new byte[(int) file.length()];
+                                        Arrays.fill(changed, (byte) 'x');
+                                        file.write(changed);
+                                    }
+                                }
+                                output = "Success: created install session [1234]\n";
+                            }
+                            sendOutput(invocation.getArgument(1), output);
+                            return null;
+                        })
+                .when(device)
+                .executeShellCommand(
+                        anyString(),
+                        any(IShellOutputReceiver.class),
+                        anyLong(),
+                        any(TimeUnit.class));
+        return device;
+    }
+
+    private static void sendOutput(@NonNull IShellOutputReceiver receiver, @NonNull String output) {
+        byte[] bytes = output.getBytes(Charsets.UTF_8);
+        receiver.addOutput(bytes, 0, bytes.length);
+        receiver.flush();
+    }
+
+    @NonNull
+    private List<String> getUploads(@NonNull String serial) {
+        List<String> uploads = new ArrayList<>();
+        for (byte[] upload : mUploads.getOrDefault(serial, Collections.emptyList())) {
+            uploads.add(new String(upload, Charsets.UTF_8));
+        }
+        return uploads;
+    }
+
+    /** Handles the install-write commands, recording the streamed APKs. */
+    private class RecordingExecCommandHandler extends DeviceCommandHandler {
+        private final Pattern mInstallWrite = Pattern.compile("install-write\\s+-S\\s+(\\d+)");
+
+        @Override
+        public boolean invoke(
+                @NonNull FakeAdbServer fakeAdbServer,
+                @NonNull Socket responseSocket,
+                @NonNull DeviceState device,
+                @NonNull String args) {
+            try {
+                writeOkay(responseSocket.getOutputStream());
+                Matcher matcher = mInstallWrite.matcher(args);
+                if (matcher.find()) {
+                    byte[] apk = new byte[Integer.parseInt(matcher.group(1))];
+                    InputStream input = responseSocket.getInputStream();
+                    ByteStreams.readFully(input, apk);
+                    mUploads.computeIfAbsent(
+                                    device.getDeviceId(),
+                                    serial -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(apk);
+                    writeString(responseSocket.getOutputStream(), "Success\n");
+                }
+            } catch (IOException ignored) {
+                // the install fails on the ddmlib side
+            }
+            return false;
+        }
+    }
+}
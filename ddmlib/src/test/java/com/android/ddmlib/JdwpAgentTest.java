@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ddmlib.jdwp.JdwpAgent;
+import com.android.ddmlib.jdwp.JdwpCommands;
+import com.android.ddmlib.jdwp.JdwpInterceptor;
+import com.android.ddmlib.jdwp.JdwpProtocol;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class JdwpAgentTest extends TestCase {
+
+    private final List<String> mCalls = new ArrayList<String>();
+
+    private final TestAgent mAgent = new TestAgent();
+
+    private final TestAgent mTarget = new TestAgent();
+
+    public void testCommandSetInterceptorsOnlySeeTheirCommandSet() throws Exception {
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, new RecordingInterceptor("thread"));
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_EVENT, new RecordingInterceptor("event"));
+
+        mAgent.incoming(createCommand(1, JdwpCommands.SET_THREADREF), mTarget);
+        mAgent.incoming(createCommand(2, JdwpCommands.SET_EVENT), mTarget);
+        mAgent.incoming(createCommand(3, JdwpCommands.SET_OBJREF), mTarget);
+
+        assertThat(mCalls).containsExactly("thread:1", "event:2").inOrder();
+        assertThat(mTarget.mSent).hasSize(3);
+    }
+
+    public void testCommandSetInterceptorsIgnoreReplies() throws Exception {
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, new RecordingInterceptor("thread"));
+        mAgent.addJdwpInterceptor(new RecordingInterceptor("all"));
+
+        mAgent.incoming(createReply(1), mTarget);
+
+        assertThat(mCalls).containsExactly("all:1");
+        assertThat(mTarget.mSent).hasSize(1);
+    }
+
+    public void testCommandSetInterceptorsRunBeforeCatchAll() throws Exception {
+        // the catch-all interceptor is added first, and still runs last
+        mAgent.addJdwpInterceptor(new RecordingInterceptor("all"));
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, new RecordingInterceptor("first"));
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, new RecordingInterceptor("second"));
+
+        mAgent.incoming(createCommand(1, JdwpCommands.SET_THREADREF), mTarget);
+
+        assertThat(mCalls).containsExactly("first:1", "second:1", "all:1").inOrder();
+        assertThat(mTarget.mSent).hasSize(1);
+    }
+
+    public void testDroppedPacketStopsTheChain() throws Exception {
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, new RecordingInterceptor("drop") {
+            @Override
+            public JdwpPacket intercept(@NonNull JdwpAgent agent, @NonNull JdwpPacket packet) {
+                super.intercept(agent, packet);
+                return null;
+            }
+        });
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, new RecordingInterceptor("thread"));
+        mAgent.addJdwpInterceptor(new RecordingInterceptor("all"));
+
+        mAgent.incoming(createCommand(1, JdwpCommands.SET_THREADREF), mTarget);
+
+        assertThat(mCalls).containsExactly("drop:1");
+        assertThat(mTarget.mSent).isEmpty();
+    }
+
+    public void testRemoveInterceptor() throws Exception {
+        JdwpInterceptor thread = new RecordingInterceptor("thread");
+        JdwpInterceptor all = new RecordingInterceptor("all");
+        mAgent.addJdwpInterceptor(JdwpCommands.SET_THREADREF, thread);
+        mAgent.addJdwpInterceptor(all);
+
+        mAgent.removeJdwpInterceptor(thread);
+        mAgent.removeJdwpInterceptor(all);
+        mAgent.incoming(createCommand(1, JdwpCommands.SET_THREADREF), mTarget);
+
+        assertThat(mCalls).isEmpty();
+        assertThat(mTarget.mSent).hasSize(1);
+    }
+
+    @NonNull
+    private static JdwpPacket createCommand(int id, int cmdSet) {
+        return createPacket(id, 0, cmdSet, 1);
+    }
+
+    @NonNull
+    private static JdwpPacket createReply(int id) {
+        return createPacket(id, 0x80, 0, 0);
+    }
+
+    @NonNull
+    private static JdwpPacket createPacket(int id, int flags, int cmdSet, int cmd) {
+        ByteBuffer buf = ByteBuffer.allocate(JdwpPacket.JDWP_HEADER_LEN);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        buf.putInt(JdwpPacket.JDWP_HEADER_LEN);
+        buf.putInt(id);
+        buf.put((byte) flags);
+        buf.put((byte) cmdSet);
+        buf.put((byte) cmd);
+        JdwpPacket packet = JdwpPacket.findPacket(buf);
+        assertThat(packet).isNotNull();
+        return packet;
+    }
+
+    private class RecordingInterceptor extends JdwpInterceptor {
+        private final String mName;
+
+        RecordingInterceptor(@NonNull String name) {
+            mName = name;
+        }
+
+        @Nullable
+        @Override
+        public JdwpPacket intercept(@NonNull JdwpAgent agent, @NonNull JdwpPacket packet) {
+            mCalls.add(mName + ":" + packet.getId());
+            return packet;
+        }
+    }
+
+    private static class TestAgent extends JdwpAgent {
+        private final List<JdwpPacket> mSent = new ArrayList<JdwpPacket>();
+
+        TestAgent() {
+            super(new JdwpProtocol());
+        }
+
+        @Override
+        protected void send(@NonNull JdwpPacket packet) {
+            mSent.add(packet);
+        }
+    }
+}
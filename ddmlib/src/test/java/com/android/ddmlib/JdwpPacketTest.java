@@ -86,6 +86,39 @@ public class JdwpPacketTest extends TestCase {
                 .isTrue();
     }
 
+    public void testFindDdmChunkType() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(100);
+        buf.putInt(1000); // length of the whole packet, not received yet
+        buf.putInt(1); // id
+        buf.put((byte) 0); // flags
+        buf.put((byte) ChunkHandler.DDMS_CMD_SET);
+        buf.put((byte) ChunkHandler.DDMS_CMD);
+        buf.putInt(HandleHeap.CHUNK_HPDS);
+        assertThat(JdwpPacket.findDdmChunkType(buf)).isEqualTo(0);
+
+        buf.putInt(1000 - 19);
+        assertThat(JdwpPacket.findDdmChunkType(buf)).isEqualTo(HandleHeap.CHUNK_HPDS);
+        assertThat(buf.position()).isEqualTo(19);
+
+        // replies are not DDM commands
+        buf.put(0x08, (byte) 0x80);
+        assertThat(JdwpPacket.findDdmChunkType(buf)).isEqualTo(0);
+    }
+
+    public void testGetCommandSet() throws Exception {
+        JdwpPacket packet = createTestPacket(JdwpCommands.SET_VM, JdwpCommands.CMD_VM_VERSION);
+        assertThat(packet.getCommandSet()).isEqualTo(JdwpCommands.SET_VM);
+
+        ByteBuffer buf = ByteBuffer.allocate(JdwpPacket.JDWP_HEADER_LEN);
+        buf.putInt(JdwpPacket.JDWP_HEADER_LEN);
+        buf.putInt(1); // id
+        buf.put((byte) 0x80); // reply
+        buf.putShort((short) 0); // error code
+        JdwpPacket reply = JdwpPacket.findPacket(buf);
+        assertThat(reply.isReply()).isTrue();
+        assertThat(reply.getCommandSet()).isEqualTo(-1);
+    }
+
     private static JdwpPacket createTestPacket(int cmdSet, int cmd) throws Exception {
         ByteBuffer buf = ByteBuffer.allocate(100);
         buf.order(ByteOrder.BIG_ENDIAN);
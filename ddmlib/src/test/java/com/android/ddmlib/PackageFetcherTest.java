@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import com.android.ddmlib.PackageFetcher.PackageListReceiver;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.easymock.EasyMock;
+
+public class PackageFetcherTest extends TestCase {
+    static final String PM_RESPONSE =
+            "package:/system/app/Foo/Foo.apk=com.foo\r\n"
+                    + "package:/data/app/~~a1b==/com.bar-c2d==/base.apk=com.bar\n";
+
+    /** Simple test to ensure parsing result of 'pm list packages -f' works as expected */
+    public void testPackageListReceiver() {
+        PackageListReceiver receiver = new PackageListReceiver();
+        byte[] byteData = PM_RESPONSE.getBytes();
+        receiver.addOutput(byteData, 0, byteData.length);
+        receiver.flush();
+        Map<String, String> packages = receiver.getPackages();
+        assertEquals(2, packages.size());
+        assertEquals("/system/app/Foo/Foo.apk", packages.get("com.foo"));
+        assertEquals("/data/app/~~a1b==/com.bar-c2d==/base.apk", packages.get("com.bar"));
+    }
+
+    /** Test that getPackages works as expected when queries made in different states. */
+    public void testGetPackages() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellResponse(mockDevice, PM_RESPONSE);
+        EasyMock.replay(mockDevice);
+
+        PackageFetcher fetcher = new PackageFetcher(mockDevice);
+        assertNull(fetcher.getCachedPackages());
+        // do query in unpopulated state
+        Future<Map<String, String>> uncachedFuture = fetcher.getPackages(1, TimeUnit.MINUTES);
+        // do query in fetching state
+        Future<Map<String, String>> fetchingFuture = fetcher.getPackages(1, TimeUnit.MINUTES);
+
+        assertEquals(2, uncachedFuture.get().size());
+        assertSame(uncachedFuture.get(), fetchingFuture.get(1, TimeUnit.MILLISECONDS));
+        // served from the cache
+        assertSame(uncachedFuture.get(),
+                fetcher.getPackages(1, TimeUnit.MINUTES).get(1, TimeUnit.MILLISECONDS));
+        assertSame(uncachedFuture.get(), fetcher.getCachedPackages());
+        EasyMock.verify(mockDevice);
+    }
+
+    /** Test that installing or uninstalling packages invalidates the cache. */
+    public void testOnShellCommand() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellResponse(mockDevice, PM_RESPONSE);
+        DeviceTest.injectShellResponse(mockDevice, "package:/system/app/Foo/Foo.apk=com.foo\n");
+        EasyMock.replay(mockDevice);
+
+        PackageFetcher fetcher = new PackageFetcher(mockDevice);
+        assertEquals(2, fetcher.getPackages(1, TimeUnit.MINUTES).get().size());
+
+        fetcher.onShellCommand("getprop");
+        fetcher.onShellCommand("pm list packages");
+        assertTrue(fetcher.getLastSuccessTime() != 0);
+
+        fetcher.onShellCommand("pm uninstall com.bar");
+        assertEquals(0, fetcher.getLastSuccessTime());
+        // the stale packages are still available
+        assertEquals(2, fetcher.getCachedPackages().size());
+        assertEquals(1, fetcher.getPackages(1, TimeUnit.MINUTES).get().size());
+        EasyMock.verify(mockDevice);
+    }
+
+    /** Test that a client of a package missing from the cache invalidates it. */
+    public void testOnClientPackage() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellResponse(mockDevice, PM_RESPONSE);
+        EasyMock.replay(mockDevice);
+
+        PackageFetcher fetcher = new PackageFetcher(mockDevice);
+        fetcher.onClientPackage("com.baz");
+        assertEquals(2, fetcher.getPackages(1, TimeUnit.MINUTES).get().size());
+
+        fetcher.onClientPackage(null);
+        fetcher.onClientPackage("system_process");
+        fetcher.onClientPackage("com.foo");
+        assertTrue(fetcher.getLastSuccessTime() != 0);
+
+        fetcher.onClientPackage("com.baz");
+        assertEquals(0, fetcher.getLastSuccessTime());
+        EasyMock.verify(mockDevice);
+    }
+
+    /** Test that getPackages propagates executeShell exceptions. */
+    public void testGetPackages_shellException() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellExceptionResponse(mockDevice, new ShellCommandUnresponsiveException());
+        EasyMock.replay(mockDevice);
+
+        PackageFetcher fetcher = new PackageFetcher(mockDevice);
+        try {
+            fetcher.getPackages(1, TimeUnit.MINUTES).get();
+            fail("ExecutionException not thrown");
+        } catch (ExecutionException e) {
+            // expected
+            assertTrue(e.getCause() instanceof ShellCommandUnresponsiveException);
+        }
+    }
+}
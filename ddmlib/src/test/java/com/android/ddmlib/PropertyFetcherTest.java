@@ -74,6 +74,55 @@ public class PropertyFetcherTest extends TestCase {
         assertEquals("1", fetcher.getProperty("dev.bootcomplete").get());
     }
 
+    /**
+     * Test that a volatile prop is served from the cache when it is fresh enough
+     */
+    public void testGetProperty_volatileFresh() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellResponse(mockDevice, "[dev.bootcomplete]: [1]\r\n");
+        EasyMock.replay(mockDevice);
+
+        PropertyFetcher fetcher = new PropertyFetcher(mockDevice);
+        assertEquals("1", fetcher.getProperty("dev.bootcomplete", 1, TimeUnit.MINUTES).get());
+        assertEquals("1", fetcher.getProperty("dev.bootcomplete", 1, TimeUnit.MINUTES)
+                .get(1, TimeUnit.MILLISECONDS));
+        EasyMock.verify(mockDevice);
+    }
+
+    /**
+     * Test that a volatile prop is queried again once the cache is invalidated
+     */
+    public void testGetProperty_volatileInvalidated() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellResponse(mockDevice, "[dev.bootcomplete]: [0]\r\n");
+        DeviceTest.injectShellResponse(mockDevice, "[dev.bootcomplete]: [1]\r\n");
+        EasyMock.replay(mockDevice);
+
+        PropertyFetcher fetcher = new PropertyFetcher(mockDevice);
+        assertEquals("0", fetcher.getProperty("dev.bootcomplete", 1, TimeUnit.MINUTES).get());
+        fetcher.invalidate();
+        assertEquals(0, fetcher.getLastSuccessTime());
+        assertEquals("1", fetcher.getProperty("dev.bootcomplete", 1, TimeUnit.MINUTES).get());
+        EasyMock.verify(mockDevice);
+    }
+
+    /** Test that setting a property through the device invalidates the cache. */
+    public void testOnShellCommand() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice();
+        DeviceTest.injectShellResponse(mockDevice, "[dev.bootcomplete]: [1]\r\n");
+        EasyMock.replay(mockDevice);
+
+        PropertyFetcher fetcher = new PropertyFetcher(mockDevice);
+        assertEquals("1", fetcher.getProperty("dev.bootcomplete", 1, TimeUnit.MINUTES).get());
+
+        fetcher.onShellCommand("getprop dev.bootcomplete");
+        assertTrue(fetcher.getLastSuccessTime() != 0);
+
+        fetcher.onShellCommand("setprop debug.foo 1");
+        assertEquals(0, fetcher.getLastSuccessTime());
+        EasyMock.verify(mockDevice);
+    }
+
     /**
      * Test that getProperty returns when the 'shell getprop' command response is invalid
      */
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.android.annotations.NonNull;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+
+public class ScreenCaptureStreamTest {
+    private static final int REASONABLE_TIMEOUT_S = 10;
+
+    @Test
+    public void testChangedTiles() throws Exception {
+        BufferedImage screen = new BufferedImage(100, 70, BufferedImage.TYPE_INT_ARGB);
+        RawImage first = ScreenCaptureStream.decodePng(toPng(screen));
+        assertThat(first.getChangedTiles(null, 64)).containsExactly(new Rectangle(0, 0, 100, 70));
+        assertThat(first.getChangedTiles(first, 64)).isEmpty();
+
+        screen.setRGB(10, 10, 0xFF00FF00);
+        screen.setRGB(99, 69, 0xFFFF0000);
+        RawImage second = ScreenCaptureStream.decodePng(toPng(screen));
+        assertThat(second.getARGB((69 * 100 + 99) * 4)).isEqualTo(0xFFFF0000);
+        assertThat(second.getChangedTiles(first, 64))
+                .containsExactly(new Rectangle(0, 0, 64, 64), new Rectangle(64, 64, 36, 6))
+                .inOrder();
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        BufferedImage screen = new BufferedImage(100, 70, BufferedImage.TYPE_INT_ARGB);
+        BlockingQueue<byte[]> screens = new LinkedBlockingQueue<>();
+        screens.add(toPng(screen));
+        screens.add(toPng(screen));
+        screen.setRGB(80, 20, 0xFF0000FF);
+        screens.add(toPng(screen));
+
+        IDevice device = mock(IDevice.class);
+        when(device.getSerialNumber()).thenReturn("test_device_001");
+        doAnswer(
+                        invocation -> {
+                            byte[] png = screens.poll(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+                            if (png == null) {
+                                throw new TimeoutException();
+                            }
+                            IShellOutputReceiver receiver =
+                                    (IShellOutputReceiver) invocation.getArguments()[1];
+                            receiver.addOutput(png, 0, png.length);
+                            receiver.flush();
+                            return null;
+                        })
+                .when(device)
+                .executeShellCommand(eq("screencap -p"), any(), anyLong(), any(), any());
+
+        BlockingQueue<ScreenCaptureStream.Frame> frames = new LinkedBlockingQueue<>();
+        try (ScreenCaptureStream stream =
+                new ScreenCaptureStream(device, 1, TimeUnit.MILLISECONDS, 2)) {
+            stream.addFrameListener(frames::add);
+            stream.start();
+
+            ScreenCaptureStream.Frame frame = frames.poll(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+            assertThat(frame.getChangedRegions()).containsExactly(new Rectangle(0, 0, 100, 70));
+
+            // the identical screen is skipped
+            frame = frames.poll(REASONABLE_TIMEOUT_S, TimeUnit.SECONDS);
+            assertThat(frame.getChangedRegions()).containsExactly(new Rectangle(64, 0, 36, 64));
+            assertThat(frame.getImage().getARGB((20 * 100 + 80) * 4)).isEqualTo(0xFF0000FF);
+        }
+    }
+
+    private static byte[] toPng(@NonNull BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
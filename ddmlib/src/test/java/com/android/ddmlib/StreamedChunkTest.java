@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamedChunkTest {
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStreamToFile() throws Exception {
+        byte[] data = new byte[1024 * 1024];
+        new Random(0).nextBytes(data);
+
+        StreamedChunk chunk =
+                new StreamedChunk(HandleHeap.CHUNK_HPDS, data.length, mTemporaryFolder.getRoot());
+        assertThat(chunk.getType()).isEqualTo(HandleHeap.CHUNK_HPDS);
+        assertThat(chunk.getFile().getName()).endsWith(".hprof");
+
+        // the start of the chunk was already in the read buffer
+        ByteBuffer buf = ByteBuffer.wrap(data, 0, 1000);
+        chunk.write(buf);
+        assertThat(buf.hasRemaining()).isFalse();
+
+        // the rest is read from the socket, followed by the next packet which is left alone
+        byte[] rest = Arrays.copyOf(Arrays.copyOfRange(data, 1000, data.length), data.length);
+        ReadableByteChannel chan = Channels.newChannel(new ByteArrayInputStream(rest));
+        while (!chunk.isComplete()) {
+            assertThat(chunk.read(chan)).isGreaterThan(0);
+        }
+        chunk.close();
+
+        assertThat(Files.readAllBytes(chunk.getFile().toPath())).isEqualTo(data);
+        ByteBuffer next = ByteBuffer.allocate(data.length);
+        assertThat(chan.read(next)).isEqualTo(1000);
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        StreamedChunk chunk =
+                new StreamedChunk(HandleProfiling.CHUNK_MPSE, 100, mTemporaryFolder.getRoot());
+        assertThat(chunk.getFile().getName()).endsWith(".trace");
+        chunk.write(ByteBuffer.allocate(10));
+        assertThat(chunk.isComplete()).isFalse();
+
+        chunk.abort();
+        assertThat(chunk.getFile().exists()).isFalse();
+    }
+}
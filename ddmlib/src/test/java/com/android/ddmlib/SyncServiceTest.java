@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.android.annotations.NonNull;
+import com.android.ddmlib.FileListingService.FileEntry;
+import com.android.ddmlib.SyncService.ISyncProgressMonitor;
+import com.android.fakeadbserver.DeviceState;
+import com.android.fakeadbserver.FakeAdbServer;
+import com.google.common.io.Files;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SyncServiceTest {
+    private static final String SERIAL = "test_device_001";
+
+    /** Larger than a sync DATA chunk, so that it is transferred in several of them */
+    private static final int LARGE_FILE_SIZE = 150 * 1024;
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private FakeAdbServer mServer;
+    private DeviceState mDeviceState;
+    private SyncService mSyncService;
+
+    @Before
+    public void setUp() throws Exception {
+        FakeAdbServer.Builder builder = new FakeAdbServer.Builder();
+        builder.installDefaultCommandHandlers();
+        mServer = builder.build();
+        mDeviceState =
+                mServer.connectDevice(
+                                SERIAL, "Google", "Nexus Silver", "8.0", "26",
+                                DeviceState.HostConnectionType.USB)
+                        .get();
+        mServer.start();
+        mSyncService =
+                new SyncService(
+                        new InetSocketAddress("127.0.0.1", mServer.getPort()),
+                        new Device(null, SERIAL, IDevice.DeviceState.ONLINE));
+        assertThat(mSyncService.openSync()).isTrue();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mSyncService.close();
+        mServer.close();
+    }
+
+    @Test
+    public void testPushFileAndPullFile() throws Exception {
+        File local = createFile(mTemporaryFolder.getRoot(), "large.bin", LARGE_FILE_SIZE);
+
+        RecordingMonitor pushMonitor = new RecordingMonitor();
+        mSyncService.pushFile(local.getPath(), "/sdcard/large.bin", pushMonitor);
+
+        assertThat(mDeviceState.getFile("/sdcard/large.bin")).isEqualTo(Files.toByteArray(local));
+        assertThat(pushMonitor.getAdvanced()).isEqualTo(LARGE_FILE_SIZE);
+        assertThat(pushMonitor.getEvents())
+                .containsExactly(
+                        "start " + LARGE_FILE_SIZE, "transferComplete " + LARGE_FILE_SIZE, "stop")
+                .inOrder();
+        assertThat(pushMonitor.mElapsedNanos).isGreaterThan(0L);
+
+        File pulled = new File(mTemporaryFolder.getRoot(), "pulled.bin");
+        RecordingMonitor pullMonitor = new RecordingMonitor();
+        mSyncService.pullFile("/sdcard/large.bin", pulled.getPath(), pullMonitor);
+
+        assertThat(Files.toByteArray(pulled)).isEqualTo(Files.toByteArray(local));
+        assertThat(pullMonitor.getAdvanced()).isEqualTo(LARGE_FILE_SIZE);
+        assertThat(pullMonitor.getEvents())
+                .containsExactly("start 0", "transferComplete " + LARGE_FILE_SIZE, "stop")
+                .inOrder();
+    }
+
+    @Test
+    public void testStatFile() throws Exception {
+        mDeviceState.createFile("/sdcard/file.txt", new byte[42]);
+
+        SyncService.FileStat stat = mSyncService.statFile("/sdcard/file.txt");
+        assertThat(stat.getSize()).isEqualTo(42);
+        assertThat(stat.getMode()).isNotEqualTo(0);
+
+        assertThat(mSyncService.statFile("/sdcard/missing.txt").getMode()).isEqualTo(0);
+    }
+
+    @Test
+    public void testParallelPush() throws Exception {
+        File tree = mTemporaryFolder.newFolder("tree");
+        File sub = new File(tree, "sub");
+        assertThat(sub.mkdir()).isTrue();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(createFile(i % 2 == 0 ? tree : sub, "file" + i, 100 + i));
+        }
+        files.add(createFile(tree, "large.bin", LARGE_FILE_SIZE));
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        mSyncService.push(new String[] {tree.getPath()}, createRemoteDir(), monitor, 4);
+
+        long bytes = 0;
+        for (File file : files) {
+            String remotePath =
+                    "/sdcard/tree/"
+                            + (file.getParentFile().equals(sub) ? "sub/" : "")
+                            + file.getName();
+            assertThat(mDeviceState.getFile(remotePath)).isEqualTo(Files.toByteArray(file));
+            assertThat(monitor.getSubTasks()).contains(remotePath);
+            bytes += file.length();
+        }
+        // the directories are listed before the files are transferred, and count for 1
+        List<String> subTasks = monitor.getSubTasks();
+        assertThat(subTasks.subList(0, 2))
+                .containsExactly("/sdcard/tree", "/sdcard/tree/sub")
+                .inOrder();
+        assertThat(subTasks).hasSize(2 + files.size());
+        assertThat(monitor.getAdvanced()).isEqualTo(bytes + 2);
+        assertEndsWithTransferComplete(monitor, bytes);
+    }
+
+    @Test
+    public void testParallelPull() throws Exception {
+        List<FileEntry> entries = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < 20; i++) {
+            int size = i == 0 ? LARGE_FILE_SIZE : 100 + i;
+            entries.add(createRemoteFile("file" + i, size));
+            bytes += size;
+        }
+        File local = mTemporaryFolder.newFolder("local");
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        mSyncService.pull(entries.toArray(new FileEntry[0]), local.getPath(), monitor, 4);
+
+        for (FileEntry entry : entries) {
+            File pulled = new File(local, entry.getName());
+            assertThat(Files.toByteArray(pulled))
+                    .isEqualTo(mDeviceState.getFile(entry.getFullPath()));
+        }
+        assertThat(monitor.getSubTasks()).hasSize(entries.size());
+        assertThat(monitor.getAdvanced()).isEqualTo(bytes);
+        assertThat(monitor.getEvents().get(0)).isEqualTo("start " + bytes);
+        assertEndsWithTransferComplete(monitor, bytes);
+    }
+
+    @Test
+    public void testFailureCancelsRemainingTransfers() throws Exception {
+        List<FileEntry> entries = new ArrayList<>();
+        FileEntry missing =
+                new FileEntry(createRemoteDir(), "missing", FileListingService.TYPE_FILE, false);
+        missing.size = "10";
+        entries.add(missing);
+        for (int i = 0; i < 200; i++) {
+            entries.add(createRemoteFile("file" + i, 10));
+        }
+        File local = mTemporaryFolder.newFolder("local");
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        try {
+            mSyncService.pull(entries.toArray(new FileEntry[0]), local.getPath(), monitor, 2);
+            fail("Expected SyncException");
+        } catch (SyncException e) {
+            assertThat(e.getErrorCode()).isEqualTo(SyncException.SyncError.TRANSFER_PROTOCOL_ERROR);
+            assertThat(e.getMessage()).contains("No such file or directory");
+        }
+
+        // the other connection stops once the failure is known, rather than pulling everything
+        assertThat(local.list().length).isLessThan(200);
+        assertThat(monitor.getEvents()).doesNotContain("stop");
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        List<FileEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(createRemoteFile("file" + i, 10));
+        }
+        File local = mTemporaryFolder.newFolder("local");
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        monitor.mCancelAfterSubTasks = 5;
+        try {
+            mSyncService.pull(entries.toArray(new FileEntry[0]), local.getPath(), monitor, 2);
+            fail("Expected SyncException");
+        } catch (SyncException e) {
+            assertThat(e.getErrorCode()).isEqualTo(SyncException.SyncError.CANCELED);
+        }
+
+        // each connection may start one more transfer before checking for the cancellation
+        assertThat(monitor.getSubTasks().size()).isAtMost(5 + 1);
+    }
+
+    @NonNull
+    private static File createFile(@NonNull File dir, @NonNull String name, int size)
+            throws Exception {
+        File file = new File(dir, name);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + name.hashCode());
+        }
+        Files.write(content, file);
+        return file;
+    }
+
+    @NonNull
+    private static FileEntry createRemoteDir() {
+        FileEntry root = new FileEntry(null, "", FileListingService.TYPE_DIRECTORY, true);
+        return new FileEntry(root, "sdcard", FileListingService.TYPE_DIRECTORY, false);
+    }
+
+    /** Creates a file on the device, and the matching entry of the file listing service. */
+    @NonNull
+    private FileEntry createRemoteFile(@NonNull String name, int size) {
+        FileEntry entry =
+                new FileEntry(createRemoteDir(), name, FileListingService.TYPE_FILE, false);
+        entry.size = Integer.toString(size);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 17 + name.hashCode());
+        }
+        mDeviceState.createFile(entry.getFullPath(), content);
+        return entry;
+    }
+
+    private static void assertEndsWithTransferComplete(
+            @NonNull RecordingMonitor monitor, long bytes) {
+        assertThat(monitor.mOverlapped).isFalse();
+        List<String> events = monitor.getEvents();
+        assertThat(events.subList(events.size() - 2, events.size()))
+                .containsExactly("transferComplete " + bytes, "stop")
+                .inOrder();
+    }
+
+    /**
+     * Records the calls to the monitor, except {@link #advance(int)} which is summed up. The
+     * calls must be serialized by the sync service, which {@link #mOverlapped} checks.
+     */
+    private static final class RecordingMonitor implements ISyncProgressMonitor {
+        private final List<String> mEvents = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> mSubTasks = Collections.synchronizedList(new ArrayList<>());
+        private long mAdvanced;
+        private long mElapsedNanos;
+        private int mCancelAfterSubTasks = Integer.MAX_VALUE;
+        private boolean mInCall;
+        private boolean mOverlapped;
+
+        @Override
+        public void start(int totalWork) {
+            enter();
+            mEvents.add("start " + totalWork);
+            exit();
+        }
+
+        @Override
+        public void stop() {
+            enter();
+            mEvents.add("stop");
+            exit();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            enter();
+            boolean canceled = mSubTasks.size() >= mCancelAfterSubTasks;
+            exit();
+            return canceled;
+        }
+
+        @Override
+        public void startSubTask(String name) {
+            enter();
+            mSubTasks.add(name);
+            exit();
+        }
+
+        @Override
+        public void advance(int work) {
+            enter();
+            mAdvanced += work;
+            exit();
+        }
+
+        @Override
+        public void transferComplete(long bytes, long elapsedNanos) {
+            enter();
+            mEvents.add("transferComplete " + bytes);
+            mElapsedNanos = elapsedNanos;
+            exit();
+        }
+
+        private synchronized void enter() {
+            mOverlapped |= mInCall;
+            mInCall = true;
+        }
+
+        private synchronized void exit() {
+            mInCall = false;
+        }
+
+        @NonNull
+        synchronized List<String> getEvents() {
+            return new ArrayList<>(mEvents);
+        }
+
+        @NonNull
+        synchronized List<String> getSubTasks() {
+            return new ArrayList<>(mSubTasks);
+        }
+
+        synchronized long getAdvanced() {
+            return mAdvanced;
+        }
+    }
+}
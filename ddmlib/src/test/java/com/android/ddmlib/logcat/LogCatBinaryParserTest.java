@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.google.common.base.Charsets;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link LogCatBinaryParser}. */
+public final class LogCatBinaryParserTest extends TestCase {
+    public void testParseEntries() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeEntry(out, 1, 123, 456, 1517266949, 472000000, 3, "dtag", "debug message");
+        writeEntry(out, 2, 123, 457, 1517266950, 0, 6, "etag", "error message");
+        byte[] data = out.toByteArray();
+
+        List<LogCatMessage> messages =
+                new LogCatBinaryParser().processBinaryData(data, 0, data.length, null);
+
+        assertEquals(2, messages.size());
+        LogCatMessage first = messages.get(0);
+        assertEquals(LogLevel.DEBUG, first.getLogLevel());
+        assertEquals(123, first.getPid());
+        assertEquals(456, first.getTid());
+        assertEquals("?", first.getAppName());
+        assertEquals("dtag", first.getTag());
+        assertEquals("debug message", first.getMessage());
+        assertEquals(
+                Instant.ofEpochSecond(1517266949, 472000000),
+                first.getHeader().getTimestampInstant());
+
+        LogCatMessage second = messages.get(1);
+        assertEquals(LogLevel.ERROR, second.getLogLevel());
+        assertEquals(457, second.getTid());
+        assertEquals("etag", second.getTag());
+        assertEquals("error message", second.getMessage());
+    }
+
+    public void testEntriesSplitAcrossChunks() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+            writeEntry(out, 2 + i % 3, 100 + i, 100 + i, 0, 0, 4, "tag" + i, "message " + i);
+        }
+        byte[] data = out.toByteArray();
+
+        // feed the output in chunks splitting both headers and payloads
+        LogCatBinaryParser parser = new LogCatBinaryParser();
+        List<LogCatMessage> messages = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += 7) {
+            int length = Math.min(7, data.length - offset);
+            messages.addAll(parser.processBinaryData(data, offset, length, null));
+        }
+
+        assertEquals(10, messages.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(100 + i, messages.get(i).getPid());
+            assertEquals("tag" + i, messages.get(i).getTag());
+            assertEquals("message " + i, messages.get(i).getMessage());
+        }
+    }
+
+    public void testMultiLineMessage() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeEntry(out, 3, 1, 1, 0, 0, 7, "wtftag", "first line\n\nsecond line\n");
+        writeEntry(out, 3, 1, 1, 0, 0, 9, "unknown", "");
+        byte[] data = out.toByteArray();
+
+        List<LogCatMessage> messages =
+                new LogCatBinaryParser().processBinaryData(data, 0, data.length, null);
+
+        // empty lines are dropped, as with the text output
+        assertEquals(2, messages.size());
+        assertEquals(LogLevel.ASSERT, messages.get(0).getLogLevel());
+        assertEquals("first line", messages.get(0).getMessage());
+        assertEquals("second line", messages.get(1).getMessage());
+        assertSame(messages.get(0).getHeader(), messages.get(1).getHeader());
+    }
+
+    /** Writes a logger_entry of the given version, followed by its payload */
+    private static void writeEntry(
+            ByteArrayOutputStream out,
+            int version,
+            int pid,
+            int tid,
+            int sec,
+            int nsec,
+            int priority,
+            String tag,
+            String message) {
+        byte[] tagBytes = tag.getBytes(Charsets.UTF_8);
+        byte[] messageBytes = message.getBytes(Charsets.UTF_8);
+        int payloadLength = 1 + tagBytes.length + 1 + messageBytes.length + 1;
+        int headerSize = version == 1 ? 20 : version == 2 ? 24 : 28;
+
+        writeU16(out, payloadLength);
+        writeU16(out, version == 1 ? 0 : headerSize);
+        writeS32(out, pid);
+        writeS32(out, tid);
+        writeS32(out, sec);
+        writeS32(out, nsec);
+        for (int i = 20; i < headerSize; i++) {
+            out.write(0);
+        }
+        out.write(priority);
+        out.write(tagBytes, 0, tagBytes.length);
+        out.write(0);
+        out.write(messageBytes, 0, messageBytes.length);
+        out.write(0);
+    }
+
+    private static void writeU16(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+    }
+
+    private static void writeS32(ByteArrayOutputStream out, int value) {
+        writeU16(out, value);
+        writeU16(out, value >> 16);
+    }
+}
@@ -123,6 +123,27 @@ public class LogCatFilterTest extends TestCase {
         assertEquals(true, search("sample", msg));
     }
 
+    public void testLiteralText() {
+        LogCatMessage msg = new MessageBuilder().setMessage("Sample Message (1)").build();
+
+        // plain text is matched as the equivalent regex would
+        assertEquals(true, search("text:ssage", msg));
+        assertEquals(false, search("SAMPLE", msg));
+        assertEquals(true, search("sample message", msg));
+        assertEquals(false, search("Sample MESSAGE", msg));
+        assertEquals(true, search("\\(1\\)", msg));
+        assertEquals(true, search("m.ss", msg));
+    }
+
+    public void testPidFormat() {
+        LogCatMessage msg = new MessageBuilder().setPid(123).build();
+
+        // the pid is compared to the message pid as a string
+        assertEquals(true, search("pid:123", msg));
+        assertEquals(false, search("pid:0123", msg));
+        assertEquals(false, search("pid:+123", msg));
+    }
+
     /**
      * Helper method: search if the query string matches the message.
      * @param query words to search for
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link LogCatMessageBuffer}. */
+public final class LogCatMessageBufferTest extends TestCase {
+    private static final LogLevel[] LEVELS = {
+        LogLevel.VERBOSE, LogLevel.DEBUG, LogLevel.INFO, LogLevel.WARN, LogLevel.ERROR
+    };
+
+    public void testEviction() {
+        LogCatMessageBuffer buffer = new LogCatMessageBuffer(3);
+        buffer.log(createMessages(5));
+
+        assertEquals(3, buffer.size());
+        assertEquals(messagesToString(createMessages(5).subList(2, 5)),
+                messagesToString(buffer.getMessages()));
+        // evicted messages are removed from the indices
+        assertTrue(buffer.getMessagesWithTag("tag0").isEmpty());
+        assertEquals(1, buffer.getMessagesWithTag("tag2").size());
+        assertTrue(buffer.getMessagesWithPid(100).isEmpty());
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.getMessagesWithLevel(LogLevel.ERROR).isEmpty());
+    }
+
+    public void testIndexedQueries() {
+        LogCatMessageBuffer buffer = new LogCatMessageBuffer(1000);
+        List<LogCatMessage> messages = createMessages(2000);
+        buffer.log(messages);
+        List<LogCatMessage> retained = messages.subList(1000, 2000);
+
+        assertEquals(100, buffer.getMessagesWithTag("tag3").size());
+        assertEquals(100, buffer.getMessagesWithPid(107).size());
+        assertEquals(200, buffer.getMessagesWithLevel(LogLevel.WARN).size());
+
+        // the indexed queries give the same results as matching every message
+        String[] queries = {
+            "", "tag:tag3", "tag:^tag[12]$", "pid:107", "pid:0107", "tag:tag3 message",
+            "app:app1 tag:tag1", "text:MESSAGE 1", "text:message 1", "pid:107 tag:tag7",
+        };
+        for (String query : queries) {
+            for (LogLevel level : LEVELS) {
+                List<LogCatFilter> filters = LogCatFilter.fromString(query, level);
+                List<LogCatMessage> expected = new ArrayList<>();
+                for (LogCatMessage message : retained) {
+                    if (matches(filters, message)) {
+                        expected.add(message);
+                    }
+                }
+                assertEquals(query + " " + level,
+                        messagesToString(expected),
+                        messagesToString(buffer.getMessages(filters)));
+            }
+        }
+    }
+
+    private static boolean matches(List<LogCatFilter> filters, LogCatMessage message) {
+        for (LogCatFilter filter : filters) {
+            if (!filter.matches(message)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<LogCatMessage> createMessages(int count) {
+        List<LogCatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(
+                    new LogCatMessage(
+                            LEVELS[i % LEVELS.length],
+                            100 + i % 10,
+                            i,
+                            "app" + i % 3,
+                            "tag" + i % 10,
+                            LogCatTimestamp.ZERO,
+                            "Message " + i));
+        }
+        return messages;
+    }
+
+    private static String messagesToString(List<LogCatMessage> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (LogCatMessage message : messages) {
+            sb.append(message.getTid()).append(' ').append(message.getMessage()).append('\n');
+        }
+        return sb.toString();
+    }
+}
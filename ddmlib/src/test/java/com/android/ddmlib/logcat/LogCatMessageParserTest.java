@@ -17,6 +17,8 @@ package com.android.ddmlib.logcat;
 
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.Log.LogLevel;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import junit.framework.TestCase;
 import org.easymock.EasyMock;
@@ -157,4 +159,24 @@ public final class LogCatMessageParserTest extends TestCase {
         assertEquals(3, mParsedMessages.size());
         assertEquals("Log[1] logline1", mParsedMessages.get(0).getMessage());
     }
+
+    public void testProcessLogLineFromReusedBuffer() {
+        LogCatMessageParser parser = new LogCatMessageParser();
+        CharBuffer buffer = CharBuffer.allocate(100);
+        List<LogCatMessage> messages = new ArrayList<>();
+        for (String line : MESSAGES) {
+            buffer.clear();
+            buffer.put(line);
+            buffer.flip();
+            LogCatMessage message = parser.processLogLine(buffer, null);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        // the buffer is overwritten by the following lines
+        assertEquals(10, messages.size());
+        assertEquals("debug message", messages.get(0).getMessage());
+        assertEquals("etag", messages.get(1).getTag());
+        assertEquals("my tag with spaces message", messages.get(9).getMessage());
+    }
 }
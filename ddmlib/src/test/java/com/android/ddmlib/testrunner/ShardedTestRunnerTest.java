@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib.testrunner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.android.ddmlib.DeviceFleet;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.mockito.invocation.Invocation;
+
+public class ShardedTestRunnerTest {
+    private static final String TEST_PACKAGE = "com.test";
+    private static final String TEST_RUNNER = "android.support.test.runner.AndroidJUnitRunner";
+    private static final Pattern SHARD_INDEX = Pattern.compile("-e shardIndex (\\d+)");
+
+    @Test
+    public void testShards() throws Exception {
+        DeviceFleet fleet = new DeviceFleet(Arrays.asList(createDevice("d1"), createDevice("d2")));
+        ShardedTestRunner runner = new ShardedTestRunner(TEST_PACKAGE, TEST_RUNNER, fleet);
+        runner.setShardCount(4);
+        ITestRunListener listener = mock(ITestRunListener.class);
+
+        TestRunResult result = runner.run(listener);
+
+        assertThat(result.getNumTests()).isEqualTo(8);
+        assertThat(result.getNumTestsInState(TestResult.TestStatus.PASSED)).isEqualTo(8);
+        assertThat(result.isRunFailure()).isFalse();
+        assertThat(result.getTestResults().keySet())
+                .contains(new TestIdentifier("FooTest", "test3_1"));
+
+        // each shard is replayed as one run, without the events of the shards run at the same
+        // time on the other device in between
+        verify(listener, times(4)).testRunStarted(TEST_PACKAGE, 2);
+        verify(listener, never()).testRunFailed(anyString());
+        List<String> events = new ArrayList<>();
+        for (Invocation invocation : mockingDetails(listener).getInvocations()) {
+            String event = invocation.getMethod().getName();
+            if (event.equals("testStarted") || event.equals("testEnded")) {
+                event += " " + ((TestIdentifier) invocation.getArgument(0)).getTestName();
+            }
+            events.add(event);
+        }
+        assertThat(events).hasSize(4 * 6);
+        Set<String> shardIndexes = new HashSet<>();
+        for (int run = 0; run < 4; run++) {
+            List<String> runEvents = events.subList(run * 6, run * 6 + 6);
+            String shardIndex = runEvents.get(1).substring("testStarted test".length(),
+                    runEvents.get(1).indexOf('_'));
+            shardIndexes.add(shardIndex);
+            assertThat(runEvents)
+                    .containsExactly(
+                            "testRunStarted",
+                            "testStarted test" + shardIndex + "_0",
+                            "testEnded test" + shardIndex + "_0",
+                            "testStarted test" + shardIndex + "_1",
+                            "testEnded test" + shardIndex + "_1",
+                            "testRunEnded")
+                    .inOrder();
+        }
+        assertThat(shardIndexes).containsExactly("0", "1", "2", "3");
+    }
+
+    @Test
+    public void testRetryOnDeviceLoss() throws Exception {
+        IDevice lost = mock(IDevice.class);
+        when(lost.getSerialNumber()).thenReturn("lost");
+        when(lost.isOnline()).thenReturn(false);
+        doThrow(new IOException("device offline"))
+                .when(lost)
+                .executeShellCommand(anyString(), any(), anyLong(), anyLong(), any(TimeUnit.class));
+
+        DeviceFleet fleet = new DeviceFleet(Arrays.asList(lost, createDevice("d1")));
+        ShardedTestRunner runner = new ShardedTestRunner(TEST_PACKAGE, TEST_RUNNER, fleet);
+        runner.setShardCount(3);
+
+        TestRunResult result = runner.run();
+
+        // the shards of the lost device are run on the other one
+        assertThat(result.getNumTests()).isEqualTo(6);
+        assertThat(result.isRunFailure()).isFalse();
+    }
+
+    @Test
+    public void testAllDevicesLost() throws Exception {
+        IDevice lost = mock(IDevice.class);
+        when(lost.getSerialNumber()).thenReturn("lost");
+        when(lost.isOnline()).thenReturn(false);
+        doThrow(new IOException("device offline"))
+                .when(lost)
+                .executeShellCommand(anyString(), any(), anyLong(), anyLong(), any(TimeUnit.class));
+
+        ShardedTestRunner runner =
+                new ShardedTestRunner(
+                        TEST_PACKAGE, TEST_RUNNER, new DeviceFleet(Arrays.asList(lost)));
+        runner.setShardCount(2);
+
+        TestRunResult result = runner.run();
+
+        assertThat(result.getNumTests()).isEqualTo(0);
+        assertThat(result.getRunFailureMessage()).contains("Lost device lost");
+        assertThat(result.getRunFailureMessage()).contains("No device left to run shard");
+    }
+
+    /** Returns a device running the 2 tests of the requested shard. */
+    private static IDevice createDevice(String serial) throws Exception {
+        IDevice device = mock(IDevice.class);
+        when(device.getSerialNumber()).thenReturn(serial);
+        when(device.getName()).thenReturn(serial);
+        when(device.isOnline()).thenReturn(true);
+        doAnswer(
+                        invocation -> {
+                            Matcher matcher =
+                                    SHARD_INDEX.matcher((String) invocation.getArguments()[0]);
+                            assertThat(matcher.find()).isTrue();
+                            byte[] output =
+                                    createOutput(Integer.parseInt(matcher.group(1)))
+                                            .getBytes(Charsets.UTF_8);
+                            IShellOutputReceiver receiver =
+                                    (IShellOutputReceiver) invocation.getArguments()[1];
+                            receiver.addOutput(output, 0, output.length);
+                            receiver.flush();
+                            return null;
+                        })
+                .when(device)
+                .executeShellCommand(
+                        anyString(), any(), anyLong(), anyLong(), any(TimeUnit.class));
+        return device;
+    }
+
+    private static String createOutput(int shardIndex) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 2; i++) {
+            for (int code : new int[] {1, 0}) {
+                output.append("INSTRUMENTATION_STATUS: class=FooTest\n")
+                        .append("INSTRUMENTATION_STATUS: test=test")
+                        .append(shardIndex)
+                        .append('_')
+                        .append(i)
+                        .append('\n')
+                        .append("INSTRUMENTATION_STATUS: numtests=2\n")
+                        .append("INSTRUMENTATION_STATUS: current=")
+                        .append(i + 1)
+                        .append('\n')
+                        .append("INSTRUMENTATION_STATUS_CODE: ")
+                        .append(code)
+                        .append('\n');
+            }
+        }
+        output.append("INSTRUMENTATION_RESULT: stream=\n")
+                .append("OK (2 tests)\n")
+                .append("INSTRUMENTATION_CODE: -1\n");
+        return output.toString();
+    }
+}
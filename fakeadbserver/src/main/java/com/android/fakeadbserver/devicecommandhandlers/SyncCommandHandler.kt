@@ -18,29 +18,50 @@ package com.android.fakeadbserver.devicecommandhandlers
 import com.android.fakeadbserver.CommandHandler
 import com.android.fakeadbserver.DeviceState
 import com.android.fakeadbserver.FakeAdbServer
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
 import java.io.IOException
+import java.io.OutputStream
 import java.net.Socket
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import java.nio.charset.StandardCharsets
 
+/**
+ * Handles the file transfers of the sync protocol, with the files of the [DeviceState]. Files
+ * pushed with SEND are stored on the device, RECV sends them back, and STAT reports their size.
+ * Directories are not modeled: any path without a file is reported as missing.
+ */
 class SyncCommandHandler : DeviceCommandHandler() {
   companion object {
     const val COMMAND = "sync"
+
+    private const val SYNC_DATA_MAX = 64 * 1024
+    private const val S_IFREG = 0x8000
   }
 
   override fun invoke(fakeAdbServer: FakeAdbServer, responseSocket: Socket, device: DeviceState, args: String): Boolean {
     try {
       val output = responseSocket.getOutputStream()
-      // Sync used for transferring files. Newly created emulator devices should not fail to handle this command.
+      val input = DataInputStream(responseSocket.getInputStream())
       CommandHandler.writeOkay(output)
 
-      // TODO the following is a hack. See http://b/79271028
-      output.write("OKAY".toByteArray(StandardCharsets.UTF_8).copyOf(8))
-      // Drain input stream. This data comes from files
-      val input = responseSocket.getInputStream()
-      val buffer= ByteArray(1024)
-      var bytesRead = 0
-      while (bytesRead >= 0) {
-        bytesRead = input.read(buffer)
+      // Each request is an id and a length, followed by that many bytes of data (e.g. a path)
+      while (true) {
+        val header = readHeader(input) ?: break
+        val data = ByteArray(header.second)
+        input.readFully(data)
+        val path = String(data, StandardCharsets.UTF_8)
+        when (header.first) {
+          "SEND" -> send(device, path.substringBeforeLast(','), input, output)
+          "RECV" -> recv(device, path, output)
+          "STAT" -> stat(device, path, output)
+          "QUIT" -> break
+          else -> {
+            writeSyncFail(output, "unsupported sync request ${header.first}")
+            break
+          }
+        }
       }
     }
     catch (ignored: IOException) {
@@ -48,4 +69,78 @@ class SyncCommandHandler : DeviceCommandHandler() {
     }
     return false
   }
-}
\ No newline at end of file
+
+  /** Receives the DATA chunks of a file until DONE, and stores the file on the device. */
+  private fun send(device: DeviceState, path: String, input: DataInputStream, output: OutputStream) {
+    val content = ByteArrayOutputStream()
+    while (true) {
+      val header = readHeader(input) ?: throw IOException("EOF while receiving $path")
+      when (header.first) {
+        "DATA" -> {
+          val data = ByteArray(header.second)
+          input.readFully(data)
+          content.write(data)
+        }
+        "DONE" -> {
+          device.createFile(path, content.toByteArray())
+          writeResponse(output, "OKAY", 0)
+          return
+        }
+        else -> throw IOException("Unexpected ${header.first} while receiving $path")
+      }
+    }
+  }
+
+  /** Sends a file of the device in DATA chunks, followed by DONE. */
+  private fun recv(device: DeviceState, path: String, output: OutputStream) {
+    val content = device.getFile(path)
+    if (content == null) {
+      writeSyncFail(output, "No such file or directory")
+      return
+    }
+    var offset = 0
+    while (offset < content.size) {
+      val length = Math.min(SYNC_DATA_MAX, content.size - offset)
+      writeResponse(output, "DATA", length)
+      output.write(content, offset, length)
+      offset += length
+    }
+    writeResponse(output, "DONE", 0)
+  }
+
+  /** Sends the mode, size and modification time of a file, which are all 0 if it is missing. */
+  private fun stat(device: DeviceState, path: String, output: OutputStream) {
+    val content = device.getFile(path)
+    val buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+    buffer.put("STAT".toByteArray(StandardCharsets.UTF_8))
+    buffer.putInt(if (content != null) S_IFREG or 0x1a4 else 0) // rw-r--r--
+    buffer.putInt(content?.size ?: 0)
+    buffer.putInt(0)
+    output.write(buffer.array())
+  }
+
+  /** Returns the id and length of the next request, or null at the end of the stream. */
+  private fun readHeader(input: DataInputStream): Pair<String, Int>? {
+    val header = ByteArray(8)
+    val first = input.read(header, 0, 1)
+    if (first < 0) {
+      return null
+    }
+    input.readFully(header, 1, 7)
+    val length = ByteBuffer.wrap(header, 4, 4).order(ByteOrder.LITTLE_ENDIAN).int
+    return Pair(String(header, 0, 4, StandardCharsets.UTF_8), length)
+  }
+
+  private fun writeResponse(output: OutputStream, id: String, value: Int) {
+    val buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+    buffer.put(id.toByteArray(StandardCharsets.UTF_8))
+    buffer.putInt(value)
+    output.write(buffer.array())
+  }
+
+  private fun writeSyncFail(output: OutputStream, message: String) {
+    val bytes = message.toByteArray(StandardCharsets.UTF_8)
+    writeResponse(output, "FAIL", bytes.size)
+    output.write(bytes)
+  }
+}
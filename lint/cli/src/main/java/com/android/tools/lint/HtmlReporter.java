@@ -60,6 +60,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * A reporter which emits lint results into an HTML report.
@@ -83,6 +86,12 @@ public class HtmlReporter extends Reporter {
     /** Number of lines to show around code snippets */
     static final int CODE_WINDOW_SIZE;
 
+    /** Size of the report text buffered before it is written out */
+    private static final int OUTPUT_CHUNK_SIZE = 256 * 1024;
+
+    /** Number of code blocks highlighted in the background before the output is written out */
+    private static final int MAX_PENDING_CODE_BLOCKS = 64;
+
     private static final String REPORT_PREFERENCE_PROPERTY = "lint.html.prefs";
 
     private static final boolean USE_WAVY_UNDERLINES_FOR_ERRORS;
@@ -511,8 +520,17 @@ public class HtmlReporter extends Reporter {
     @SuppressWarnings("StringBufferField")
     private StringBuilder sb;
 
-    private String highlightedFile;
-    private LintSyntaxHighlighter highlighter;
+    /**
+     * Report output which has not been written yet: strings, and {@link CodeBlock}s which may
+     * still be getting highlighted in the background
+     */
+    private final List<Object> pendingOutput = new ArrayList<>();
+
+    /** Code blocks in the same file which have not been submitted for highlighting yet */
+    private HighlightRun currentRun;
+
+    private int pendingCodeBlocks;
+    private IOException writeError;
 
     /**
      * Creates a new {@link HtmlReporter}
@@ -629,6 +647,7 @@ public class HtmlReporter extends Reporter {
 
                     int count = 0;
                     for (Warning warning : warnings) {
+                        flushOutput();
                         // Don't show thousands of matches for common errors; this just
                         // makes some reports huge and slow to render and nobody really wants to
                         // inspect 50+ individual reports of errors of the same type
@@ -856,8 +875,10 @@ public class HtmlReporter extends Reporter {
     }
 
     private void startReport(@NonNull LintStats stats) {
-        sb = new StringBuilder(1800 * stats.count());
+        sb = new StringBuilder(Math.min(1800 * stats.count(), OUTPUT_CHUNK_SIZE));
         builder = new HtmlBuilder(sb);
+        currentRun = null;
+        writeError = null;
 
         writeOpenHtmlTag();
         writeHeadTag();
@@ -1513,23 +1534,53 @@ public class HtmlReporter extends Reporter {
     }
 
     private void writeReport() throws IOException {
-        writer.write(sb.toString());
+        writePendingOutput();
         writer.close();
         sb = null;
         builder = null;
+        if (writeError != null) {
+            throw writeError;
+        }
     }
 
-    @NonNull
-    private LintSyntaxHighlighter getHighlighter(
-            @NonNull File file, @NonNull CharSequence contents) {
-        if (highlightedFile == null || !highlightedFile.equals(file.getPath())) {
-            highlighter = new LintSyntaxHighlighter(file.getName(), contents.toString());
-            highlighter.setPadCaretLine(true);
-            highlighter.setDedent(true);
-            highlightedFile = file.getPath();
+    /**
+     * Writes out the report generated so far once enough of it has accumulated, such that the
+     * whole report never needs to be held in memory
+     */
+    private void flushOutput() {
+        if (pendingCodeBlocks >= MAX_PENDING_CODE_BLOCKS || sb.length() >= OUTPUT_CHUNK_SIZE) {
+            writePendingOutput();
+        }
+    }
+
+    private void writePendingOutput() {
+        submitCurrentRun();
+        pendingOutput.add(sb.toString());
+        sb.setLength(0);
+        try {
+            for (Object chunk : pendingOutput) {
+                if (chunk instanceof CodeBlock) {
+                    writer.write(((CodeBlock) chunk).getHtml());
+                } else {
+                    writer.write((String) chunk);
+                }
+            }
+        } catch (IOException e) {
+            // Flushing happens from within the card appenders, which can't throw; report
+            // the failure when the report is finished instead
+            if (writeError == null) {
+                writeError = e;
+            }
         }
+        pendingOutput.clear();
+        pendingCodeBlocks = 0;
+    }
 
-        return highlighter;
+    private void submitCurrentRun() {
+        if (currentRun != null) {
+            currentRun.future = ForkJoinPool.commonPool().submit(currentRun);
+            currentRun = null;
+        }
     }
 
     /** Insert syntax highlighted XML */
@@ -1541,6 +1592,80 @@ public class HtmlReporter extends Reporter {
             @NonNull Severity severity) {
         int start = Math.max(0, startOffset);
         int end = Math.max(start, Math.min(endOffset, contents.length()));
-        getHighlighter(file, contents).generateHtml(builder, start, end, severity.isError());
+        if (currentRun == null || !currentRun.path.equals(file.getPath())) {
+            // Consecutive blocks in the same file share a highlighter (and therefore the
+            // lexing of the file); blocks in different files are highlighted in parallel
+            submitCurrentRun();
+            currentRun = new HighlightRun(file, contents);
+        }
+        CodeBlock block = new CodeBlock(currentRun, start, end, severity.isError());
+        currentRun.blocks.add(block);
+        pendingOutput.add(sb.toString());
+        sb.setLength(0);
+        pendingOutput.add(block);
+        pendingCodeBlocks++;
+    }
+
+    /** A series of code blocks highlighted in order with a single highlighter */
+    private static class HighlightRun implements Runnable {
+        final String path;
+        final String name;
+        final CharSequence contents;
+        final List<CodeBlock> blocks = new ArrayList<>();
+        Future<?> future;
+
+        HighlightRun(@NonNull File file, @NonNull CharSequence contents) {
+            this.path = file.getPath();
+            this.name = file.getName();
+            this.contents = contents;
+        }
+
+        @Override
+        public void run() {
+            LintSyntaxHighlighter highlighter =
+                    new LintSyntaxHighlighter(name, contents.toString());
+            highlighter.setPadCaretLine(true);
+            highlighter.setDedent(true);
+            for (CodeBlock block : blocks) {
+                HtmlBuilder builder = new HtmlBuilder();
+                highlighter.generateHtml(builder, block.start, block.end, block.error);
+                block.html = builder.getHtml();
+            }
+        }
+    }
+
+    /** A syntax highlighted code block in the report */
+    private static class CodeBlock {
+        final HighlightRun run;
+        final int start;
+        final int end;
+        final boolean error;
+        String html;
+
+        CodeBlock(HighlightRun run, int start, int end, boolean error) {
+            this.run = run;
+            this.start = start;
+            this.end = end;
+            this.error = error;
+        }
+
+        @NonNull
+        String getHtml() {
+            try {
+                run.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            return html;
+        }
     }
 }
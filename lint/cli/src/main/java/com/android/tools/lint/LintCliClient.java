@@ -56,7 +56,9 @@ import com.android.tools.lint.checks.HardcodedValuesDetector;
 import com.android.tools.lint.checks.WrongThreadInterproceduralDetector;
 import com.android.tools.lint.client.api.Configuration;
 import com.android.tools.lint.client.api.DefaultConfiguration;
+import com.android.tools.lint.client.api.DetectorProfiler;
 import com.android.tools.lint.client.api.GradleVisitor;
+import com.android.tools.lint.client.api.IncidentCache;
 import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintBaseline;
 import com.android.tools.lint.client.api.LintClient;
@@ -81,10 +83,12 @@ import com.android.utils.CharSequences;
 import com.android.utils.NullLogger;
 import com.android.utils.StdLogger;
 import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 import com.intellij.codeInsight.ExternalAnnotationsManager;
 import com.intellij.mock.MockProject;
 import com.intellij.openapi.Disposable;
@@ -105,6 +109,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -235,6 +240,24 @@ public class LintCliClient extends LintClient {
 
         driver.analyze();
 
+        if (flags.isPrintPhaseStatistics()) {
+            // Logged rather than printed, such that it does not end up in a text report
+            // written to the standard output
+            log(
+                    Severity.INFORMATIONAL,
+                    null,
+                    "Lint phase statistics:\n%1$s",
+                    driver.getPhaseStatistics().describe().trim());
+        }
+
+        DetectorProfiler profiler = driver.getDetectorProfiler();
+        File profileFile = flags.getDetectorProfile();
+        if (profiler != null && profileFile != null) {
+            try (Writer writer = Files.newWriter(profileFile, Charsets.UTF_8)) {
+                profiler.write(writer);
+            }
+        }
+
         Collections.sort(warnings);
 
         LintBaseline baseline = driver.getBaseline();
@@ -453,6 +476,17 @@ public class LintCliClient extends LintClient {
         driver.setIgnoreTestSources(flags.isIgnoreTestSources());
         driver.setCheckGeneratedSources(flags.isCheckGeneratedSources());
         driver.setFatalOnlyMode(flags.isFatalOnly());
+        driver.setParallelParsing(flags.isParallelParsing());
+        driver.setWindowedParsing(flags.isWindowedParsing());
+        if (flags.getDetectorProfile() != null) {
+            driver.setDetectorProfiler(new DetectorProfiler());
+        }
+        if (flags.isIncremental()) {
+            File cacheDir = getCacheDir("lint-incidents", true);
+            if (cacheDir != null) {
+                driver.setIncidentCache(new IncidentCache(cacheDir));
+            }
+        }
         driver.setCheckDependencies(flags.isCheckDependencies());
         driver.setAllowSuppress(flags.getAllowSuppress());
 
@@ -594,7 +628,7 @@ public class LintCliClient extends LintClient {
 
                 if (flags.isShowSourceLines()) {
                     // Compute error line contents
-                    warning.errorLine = getLine(warning.fileContents, line);
+                    warning.errorLine = getLine(file, warning.fileContents, line);
                     if (warning.errorLine != null) {
                         // Replace tabs with spaces such that the column
                         // marker (^) lines up properly:
@@ -638,6 +672,61 @@ public class LintCliClient extends LintClient {
         }
     }
 
+    /** Line start offsets of the files warnings have been reported in, keyed by file */
+    private final Map<File, LineIndex> lineIndices = new HashMap<>();
+
+    /**
+     * Look up the contents of the given line in the given file, using a cached index of the
+     * line start offsets such that repeated lookups in a large file do not rescan it
+     */
+    private String getLine(@NonNull File file, @NonNull CharSequence contents, int line) {
+        LineIndex index = lineIndices.get(file);
+        if (index == null || index.contents != contents) {
+            // Contexts may hand out different contents instances for the same file
+            index = new LineIndex(contents, computeLineOffsets(contents));
+            lineIndices.put(file, index);
+        }
+        int[] offsets = index.offsets;
+        if (line < 0 || line >= offsets.length) {
+            return null;
+        }
+        return getLineOfOffset(contents, offsets[line]);
+    }
+
+    /** Line start offsets computed for a specific contents instance */
+    private static class LineIndex {
+        final CharSequence contents;
+        final int[] offsets;
+
+        LineIndex(CharSequence contents, int[] offsets) {
+            this.contents = contents;
+            this.offsets = offsets;
+        }
+    }
+
+    /**
+     * Returns the offsets of the beginnings of all the lines in the given contents, such that
+     * {@code computeLineOffsets(contents)[line] == getLineOffset(contents, line)} for all the
+     * lines in the file
+     */
+    static int[] computeLineOffsets(CharSequence contents) {
+        int length = contents.length();
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (contents.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        int[] offsets = new int[count];
+        int line = 1;
+        for (int i = 0; i < length; i++) {
+            if (contents.charAt(i) == '\n') {
+                offsets[line++] = i + 1;
+            }
+        }
+        return offsets;
+    }
+
     /** Look up the contents of the given line */
     static String getLine(CharSequence contents, int line) {
         int index = getLineOffset(contents, line);
@@ -1682,6 +1771,13 @@ public class LintCliClient extends LintClient {
     }
 
     protected class LintCliUastParser extends DefaultUastParser {
+        /**
+         * Whether the Kotlin analysis and the annotation roots were set up for the module. When
+         * the sources are prepared in windows, this is only done for the first window.
+         */
+        private boolean analyzed;
+
+        private boolean annotationRootsUpdated;
 
         public LintCliUastParser(Project project) {
             //noinspection ConstantConditions
@@ -1712,10 +1808,13 @@ public class LintCliClient extends LintClient {
             // the project (such as the CliLightClassGenerationSupport and
             // the CoreFileManager) will throw exceptions at runtime even
             // for plain class lookup
+            // The sources are only prepared in several windows when there are no Kotlin files,
+            // so the analysis of the first window is the analysis of the whole module.
             MockProject project = (MockProject) ideaProject;
-            if (project != null && projectEnvironment != null) {
+            if (project != null && projectEnvironment != null && !analyzed) {
                 List<File> paths = projectEnvironment.getPaths();
                 new KotlinLintAnalyzerFacade().analyze(kotlinFiles, paths, project);
+                analyzed = true;
             }
 
             boolean ok = super.prepare(contexts, testContexts);
@@ -1726,14 +1825,25 @@ public class LintCliClient extends LintClient {
 
             // Now that we have a project context, ensure that the annotations manager
             // is up to date
-            if (ideaProject != null) {
+            if (ideaProject != null && !annotationRootsUpdated) {
                 LintExternalAnnotationsManager annotationsManager =
                         (LintExternalAnnotationsManager)
                                 ExternalAnnotationsManager.getInstance(ideaProject);
                 annotationsManager.updateAnnotationRoots(LintCliClient.this);
+                annotationRootsUpdated = true;
             }
 
             return ok;
         }
+
+        @Override
+        public void dispose() {
+            // The trees of the files visited since the last preparation are not referenced
+            // by lint anymore; drop the resolve results which would keep them reachable
+            if (ideaProject != null && !ideaProject.isDisposed()) {
+                PsiManager.getInstance(ideaProject).dropResolveCaches();
+            }
+            super.dispose();
+        }
     }
 }
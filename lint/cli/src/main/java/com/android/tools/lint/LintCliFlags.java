@@ -61,6 +61,11 @@ public class LintCliFlags {
     private boolean noWarnings;
     private boolean allErrors;
     private boolean fatalOnly;
+    private boolean parallelParsing;
+    private boolean windowedParsing;
+    private boolean incremental;
+    private boolean printPhaseStatistics;
+    private File detectorProfile;
     private boolean explainIssues;
     private File projectDescriptor;
     private List<File> sources;
@@ -550,6 +555,102 @@ public class LintCliFlags {
         this.fatalOnly = fatalOnly;
     }
 
+    /**
+     * Returns whether resource and class files should be parsed on multiple threads
+     *
+     * @return true if files should be parsed in parallel
+     */
+    public boolean isParallelParsing() {
+        return parallelParsing;
+    }
+
+    /**
+     * Sets whether resource and class files should be parsed on multiple threads
+     *
+     * @param parallelParsing if true, parse files in parallel
+     */
+    public void setParallelParsing(boolean parallelParsing) {
+        this.parallelParsing = parallelParsing;
+    }
+
+    /**
+     * Returns whether Java sources should be prepared and visited in windows bounded by the
+     * available heap
+     *
+     * @return true if sources should be parsed in windows
+     */
+    public boolean isWindowedParsing() {
+        return windowedParsing;
+    }
+
+    /**
+     * Sets whether Java sources should be prepared and visited in windows bounded by the
+     * available heap
+     *
+     * @param windowedParsing if true, parse sources in windows
+     */
+    public void setWindowedParsing(boolean windowedParsing) {
+        this.windowedParsing = windowedParsing;
+    }
+
+    /**
+     * Returns whether lint should cache the incidents found in each file, and skip
+     * files which have not changed since the previous run
+     *
+     * @return true if incidents should be cached between runs
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether lint should cache the incidents found in each file, and skip
+     * files which have not changed since the previous run
+     *
+     * @param incremental if true, cache incidents between runs
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns whether the time and peak heap usage of each analysis phase should be printed
+     *
+     * @return true if phase statistics should be printed
+     */
+    public boolean isPrintPhaseStatistics() {
+        return printPhaseStatistics;
+    }
+
+    /**
+     * Sets whether the time and peak heap usage of each analysis phase should be printed
+     *
+     * @param printPhaseStatistics if true, print phase statistics after the analysis
+     */
+    public void setPrintPhaseStatistics(boolean printPhaseStatistics) {
+        this.printPhaseStatistics = printPhaseStatistics;
+    }
+
+    /**
+     * Returns the file to write the cost of each detector to, if any. The file is in the Chrome
+     * trace event format, extended with per detector and per callback totals.
+     *
+     * @return the detector profile file, if any
+     */
+    @Nullable
+    public File getDetectorProfile() {
+        return detectorProfile;
+    }
+
+    /**
+     * Sets the file to write the cost of each detector to, if any
+     *
+     * @see #getDetectorProfile()
+     */
+    public void setDetectorProfile(@Nullable File detectorProfile) {
+        this.detectorProfile = detectorProfile;
+    }
+
     /**
      * Sets a map of severities to use
      *
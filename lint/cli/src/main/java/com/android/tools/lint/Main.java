@@ -106,6 +106,11 @@ public class Main {
     private static final String ARG_EXIT_CODE = "--exitcode";
     private static final String ARG_SDK_HOME = "--sdk-home";
     private static final String ARG_FATAL = "--fatalOnly";
+    private static final String ARG_PARALLEL = "--parallel";
+    private static final String ARG_WINDOWED = "--windowed";
+    private static final String ARG_INCREMENTAL = "--incremental";
+    private static final String ARG_PHASE_STATS = "--phase-stats";
+    private static final String ARG_PROFILE_DETECTORS = "--profile-detectors";
     private static final String ARG_PROJECT = "--project";
     private static final String ARG_CLASSES = "--classpath";
     private static final String ARG_SOURCES = "--sources";
@@ -553,6 +558,20 @@ public class Main {
                 flags.setSetExitCode(true);
             } else if (arg.equals(ARG_FATAL)) {
                 flags.setFatalOnly(true);
+            } else if (arg.equals(ARG_PARALLEL)) {
+                flags.setParallelParsing(true);
+            } else if (arg.equals(ARG_WINDOWED)) {
+                flags.setWindowedParsing(true);
+            } else if (arg.equals(ARG_INCREMENTAL)) {
+                flags.setIncremental(true);
+            } else if (arg.equals(ARG_PHASE_STATS)) {
+                flags.setPrintPhaseStatistics(true);
+            } else if (arg.equals(ARG_PROFILE_DETECTORS)) {
+                if (index == args.length - 1) {
+                    System.err.println("Missing detector profile file path");
+                    exit(ERRNO_INVALID_ARGS);
+                }
+                flags.setDetectorProfile(getOutArgumentPath(args[++index]));
             } else if (arg.equals(ARG_VERSION)) {
                 printVersion(client);
                 exit(ERRNO_SUCCESS);
@@ -1333,6 +1352,18 @@ public class Main {
                     "Show full explanations for the given list of issue id's.",
                     ARG_FATAL,
                     "Only check for fatal severity issues",
+                    ARG_PARALLEL,
+                    "Parse resource and class files on multiple threads",
+                    ARG_WINDOWED,
+                    "Parse Java sources in batches bounded by the available memory",
+                    ARG_INCREMENTAL,
+                    "Skip files which have not changed since the previous run, reusing the "
+                            + "warnings cached for them",
+                    ARG_PHASE_STATS,
+                    "Print the time spent and the peak heap usage in each analysis phase",
+                    ARG_PROFILE_DETECTORS + " <filename>",
+                    "Write the time and memory used by each detector to the given file, in "
+                            + "the Chrome trace event format",
                     ARG_AUTO_FIX,
                     "Apply suggestions to the source code (for safe fixes)",
                     "",
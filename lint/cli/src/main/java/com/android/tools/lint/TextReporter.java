@@ -45,6 +45,9 @@ import java.util.List;
  */
 @Beta
 public class TextReporter extends Reporter {
+    /** Size of the report text buffered before it is written out */
+    private static final int OUTPUT_CHUNK_SIZE = 64 * 1024;
+
     private final Writer writer;
     private final boolean close;
     private final LintCliFlags flags;
@@ -92,7 +95,7 @@ public class TextReporter extends Reporter {
     public void write(@NonNull LintStats stats, List<Warning> issues) throws IOException {
         boolean abbreviate = !flags.isShowEverything();
 
-        StringBuilder output = new StringBuilder(issues.size() * 200);
+        StringBuilder output = new StringBuilder(Math.min(issues.size() * 200, OUTPUT_CHUNK_SIZE));
         if (issues.isEmpty()) {
             if (isDisplayEmpty() && writeStats) {
                 writer.write("No issues found");
@@ -116,6 +119,11 @@ public class TextReporter extends Reporter {
         } else {
             Issue lastIssue = null;
             for (Warning warning : issues) {
+                if (output.length() >= OUTPUT_CHUNK_SIZE) {
+                    // Write the report as we go rather than holding all of it in memory
+                    writer.write(output.toString());
+                    output.setLength(0);
+                }
                 if (warning.issue != lastIssue) {
                     explainIssue(output, lastIssue);
                     lastIssue = warning.issue;
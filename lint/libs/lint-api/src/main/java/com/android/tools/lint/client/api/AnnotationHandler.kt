@@ -19,6 +19,7 @@ package com.android.tools.lint.client.api
 import com.android.SdkConstants.ATTR_VALUE
 import com.android.SdkConstants.SUPPORT_ANNOTATIONS_PREFIX
 import com.android.tools.lint.detector.api.AnnotationUsageType
+import com.android.tools.lint.detector.api.Detector
 import com.android.tools.lint.detector.api.JavaContext
 import com.android.tools.lint.detector.api.SourceCodeScanner
 import com.google.common.collect.Multimap
@@ -288,11 +289,15 @@ internal class AnnotationHandler(private val scanners: Multimap<String, SourceCo
                             }
                         }
 
-                        scanner.visitAnnotationUsage(
-                            context, argument, type, annotation,
-                            signature, method, referenced, annotations, allMethodAnnotations,
-                            allClassAnnotations, packageAnnotations
-                        )
+                        context.driver.detectorProfiler.profile(
+                            scanner as Detector, "visitAnnotationUsage"
+                        ) {
+                            scanner.visitAnnotationUsage(
+                                context, argument, type, annotation,
+                                signature, method, referenced, annotations, allMethodAnnotations,
+                                allClassAnnotations, packageAnnotations
+                            )
+                        }
                     }
                 }
             }
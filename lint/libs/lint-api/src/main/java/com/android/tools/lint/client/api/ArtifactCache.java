@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.annotations.VisibleForTesting;
+import com.google.common.annotations.Beta;
+import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A cache of data computed from library artifacts (such as jar files or library manifests),
+ * intended to be shared by all the projects, and all the lint runs, in a process. When lint
+ * checks many modules depending on the same libraries, each library only needs to be read once.
+ *
+ * <p>Entries are keyed by the artifact file, and are discarded when the size or timestamp of the
+ * file changes. Values are softly referenced, so the cache never causes the process to run out
+ * of memory, and the entries of the values reclaimed by the garbage collector are removed on the
+ * next access. Values should be immutable since they can be shared between threads.
+ *
+ * <p><b>NOTE: This is not a public or final API; if you rely on this be prepared to adjust your
+ * code for the next tools release.</b>
+ */
+@Beta
+public class ArtifactCache<T> {
+    private final Map<File, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> reclaimed = new ReferenceQueue<>();
+
+    /**
+     * Returns the value cached for the given artifact, or null if there is no value, or if the
+     * artifact has changed since the value was computed
+     */
+    @Nullable
+    public T get(@NonNull File artifact) {
+        removeReclaimedEntries();
+        Entry<T> entry = entries.get(artifact.getAbsoluteFile());
+        if (entry != null
+                && entry.length == artifact.length()
+                && entry.lastModified == artifact.lastModified()) {
+            return entry.get();
+        }
+        return null;
+    }
+
+    /** Caches the given value for the current version of the given artifact */
+    public void put(@NonNull File artifact, @NonNull T value) {
+        put(artifact, artifact.length(), artifact.lastModified(), value);
+    }
+
+    /**
+     * Returns the value cached for the given artifact, computing and caching it if necessary.
+     * Values are computed outside of any lock, so concurrent callers may compute the same value.
+     */
+    @NonNull
+    public T get(@NonNull File artifact, @NonNull Function<File, T> compute) {
+        T value = get(artifact);
+        if (value == null) {
+            // Read the stamps before computing, such that a concurrent change to the file is
+            // not masked by caching stale data under the new stamps
+            long length = artifact.length();
+            long lastModified = artifact.lastModified();
+            value = compute.apply(artifact);
+            put(artifact, length, lastModified, value);
+        }
+        return value;
+    }
+
+    /** Discards all the cached values */
+    public void clear() {
+        entries.clear();
+        removeReclaimedEntries();
+    }
+
+    /** Returns the number of entries, including those whose value was reclaimed meanwhile */
+    @VisibleForTesting
+    int size() {
+        return entries.size();
+    }
+
+    /** Clears the value of the given artifact as the garbage collector would */
+    @VisibleForTesting
+    void reclaim(@NonNull File artifact) {
+        Entry<T> entry = entries.get(artifact.getAbsoluteFile());
+        if (entry != null) {
+            entry.clear();
+            entry.enqueue();
+        }
+    }
+
+    private void put(@NonNull File artifact, long length, long lastModified, @NonNull T value) {
+        removeReclaimedEntries();
+        File key = artifact.getAbsoluteFile();
+        entries.put(key, new Entry<>(key, length, lastModified, value, reclaimed));
+    }
+
+    /** Removes the entries whose value was reclaimed, unless they were replaced meanwhile */
+    private void removeReclaimedEntries() {
+        Reference<? extends T> reference;
+        while ((reference = reclaimed.poll()) != null) {
+            Entry<?> entry = (Entry<?>) reference;
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private static class Entry<T> extends SoftReference<T> {
+        final File key;
+        final long length;
+        final long lastModified;
+
+        Entry(
+                @NonNull File key,
+                long length,
+                long lastModified,
+                @NonNull T value,
+                @NonNull ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.key = key;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
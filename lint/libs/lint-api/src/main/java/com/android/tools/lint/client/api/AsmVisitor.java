@@ -144,15 +144,19 @@ class AsmVisitor {
     // ASM API uses raw types
     void runClassDetectors(ClassContext context) {
         ClassNode classNode = context.getClassNode();
+        DetectorProfiler profiler = context.getDriver().getDetectorProfiler();
 
         for (Detector detector : allDetectors) {
-            detector.beforeCheckFile(context);
+            DetectorProfiler.profile(
+                    profiler, detector, "beforeCheckFile", () -> detector.beforeCheckFile(context));
         }
 
         for (Detector detector : fullClassChecks) {
             ClassScanner scanner = (ClassScanner) detector;
-            scanner.checkClass(context, classNode);
-            detector.afterCheckFile(context);
+            DetectorProfiler.profile(
+                    profiler, detector, "checkClass", () -> scanner.checkClass(context, classNode));
+            DetectorProfiler.profile(
+                    profiler, detector, "afterCheckFile", () -> detector.afterCheckFile(context));
         }
 
         if (!methodNameToChecks.isEmpty()
@@ -172,7 +176,11 @@ class AsmVisitor {
                         List<ClassScanner> scanners = methodOwnerToChecks.get(owner);
                         if (scanners != null) {
                             for (ClassScanner scanner : scanners) {
-                                scanner.checkCall(context, classNode, method, call);
+                                DetectorProfiler.profile(
+                                        profiler,
+                                        (Detector) scanner,
+                                        "checkCall",
+                                        () -> scanner.checkCall(context, classNode, method, call));
                             }
                         }
 
@@ -180,7 +188,11 @@ class AsmVisitor {
                         scanners = methodNameToChecks.get(name);
                         if (scanners != null) {
                             for (ClassScanner scanner : scanners) {
-                                scanner.checkCall(context, classNode, method, call);
+                                DetectorProfiler.profile(
+                                        profiler,
+                                        (Detector) scanner,
+                                        "checkCall",
+                                        () -> scanner.checkCall(context, classNode, method, call));
                             }
                         }
                     }
@@ -189,7 +201,13 @@ class AsmVisitor {
                         List<ClassScanner> scanners = nodeTypeDetectors[type];
                         if (scanners != null) {
                             for (ClassScanner scanner : scanners) {
-                                scanner.checkInstruction(context, classNode, method, instruction);
+                                DetectorProfiler.profile(
+                                        profiler,
+                                        (Detector) scanner,
+                                        "checkInstruction",
+                                        () ->
+                                                scanner.checkInstruction(
+                                                        context, classNode, method, instruction));
                             }
                         }
                     }
@@ -198,7 +216,8 @@ class AsmVisitor {
         }
 
         for (Detector detector : allDetectors) {
-            detector.afterCheckFile(context);
+            DetectorProfiler.profile(
+                    profiler, detector, "afterCheckFile", () -> detector.afterCheckFile(context));
         }
     }
 }
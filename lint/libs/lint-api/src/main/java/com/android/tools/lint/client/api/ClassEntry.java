@@ -19,25 +19,22 @@ package com.android.tools.lint.client.api;
 import static com.android.SdkConstants.DOT_CLASS;
 import static com.android.SdkConstants.DOT_JAR;
 import static com.android.SdkConstants.DOT_SRCJAR;
-import static org.objectweb.asm.Opcodes.ASM5;
 
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.annotations.VisibleForTesting;
-import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
 
 /** A class, present either as a .class file on disk, or inside a .jar file. */
 @VisibleForTesting
@@ -114,9 +111,50 @@ class ClassEntry implements Comparable<ClassEntry> {
     @NonNull
     public static List<ClassEntry> fromClassPath(
             @NonNull LintClient client, @NonNull List<File> classPath, boolean sort) {
+        return fromClassPath(client, classPath, sort, null);
+    }
+
+    /**
+     * Creates a list of class entries from the given class path, sharing the classes read from
+     * jar files through the given cache.
+     *
+     * @param client the client to report errors to and to use to read files
+     * @param classPath the class path (directories and jar files) to scan
+     * @param sort if true, sort the results
+     * @param jarCache the classes already read from jar files, typically by the other projects
+     *     of the current lint run, or null to read the jar files
+     * @return the list of class entries, never null.
+     */
+    @NonNull
+    public static List<ClassEntry> fromClassPath(
+            @NonNull LintClient client,
+            @NonNull List<File> classPath,
+            boolean sort,
+            @Nullable ArtifactCache<List<ClassEntry>> jarCache) {
         if (!classPath.isEmpty()) {
             List<ClassEntry> libraryEntries = new ArrayList<>(64);
-            addEntries(client, libraryEntries, classPath);
+            if (classPath.size() == 1) {
+                addEntries(client, libraryEntries, classPath, jarCache);
+            } else {
+                // Read (and for jars, inflate) the class path entries in parallel
+                List<List<ClassEntry>> entryLists =
+                        classPath
+                                .parallelStream()
+                                .map(
+                                        entry -> {
+                                            List<ClassEntry> entries = new ArrayList<>();
+                                            addEntries(
+                                                    client,
+                                                    entries,
+                                                    Collections.singletonList(entry),
+                                                    jarCache);
+                                            return entries;
+                                        })
+                                .collect(Collectors.toList());
+                for (List<ClassEntry> entries : entryLists) {
+                    libraryEntries.addAll(entries);
+                }
+            }
             if (sort) {
                 Collections.sort(libraryEntries);
             }
@@ -176,7 +214,8 @@ class ClassEntry implements Comparable<ClassEntry> {
     private static void addEntries(
             @NonNull LintClient client,
             @NonNull List<ClassEntry> entries,
-            @NonNull List<File> classPath) {
+            @NonNull List<File> classPath,
+            @Nullable ArtifactCache<List<ClassEntry>> jarCache) {
         for (File classPathEntry : classPath) {
             String name = classPathEntry.getName();
             if (name.endsWith(DOT_JAR)) {
@@ -185,24 +224,14 @@ class ClassEntry implements Comparable<ClassEntry> {
                 if (!jarFile.exists()) {
                     continue;
                 }
-                try (ZipFile jar = new ZipFile(jarFile)) {
-                    Enumeration<? extends ZipEntry> enumeration = jar.entries();
-                    while (enumeration.hasMoreElements()) {
-                        ZipEntry entry = enumeration.nextElement();
-                        if (entry.getName().endsWith(DOT_CLASS)) {
-                            try (InputStream is = jar.getInputStream(entry)) {
-                                byte[] bytes = ByteStreams.toByteArray(is);
-                                if (bytes != null) {
-                                    File file = new File(entry.getName());
-                                    entries.add(new ClassEntry(file, jarFile, jarFile, bytes));
-                                }
-                            } catch (Exception e) {
-                                client.log(e, null);
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    client.log(e, "Could not read jar file contents from %1$s", jarFile);
+                try {
+                    entries.addAll(
+                            jarCache != null
+                                    ? jarCache.get(jarFile, jar -> readJar(client, jar))
+                                    : readJar(client, jarFile));
+                } catch (UncheckedIOException e) {
+                    client.log(
+                            e.getCause(), "Could not read jar file contents from %1$s", jarFile);
                 }
             } else if (classPathEntry.isDirectory()) {
                 //noinspection UnnecessaryLocalVariable
@@ -224,6 +253,32 @@ class ClassEntry implements Comparable<ClassEntry> {
         }
     }
 
+    /** Reads all the classes in the given jar file */
+    @NonNull
+    private static List<ClassEntry> readJar(@NonNull LintClient client, @NonNull File jarFile) {
+        List<ClassEntry> entries = new ArrayList<>();
+        try (ZipFile jar = new ZipFile(jarFile)) {
+            Enumeration<? extends ZipEntry> enumeration = jar.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                if (entry.getName().endsWith(DOT_CLASS)) {
+                    try (InputStream is = jar.getInputStream(entry)) {
+                        byte[] bytes = ByteStreams.toByteArray(is);
+                        if (bytes != null) {
+                            File file = new File(entry.getName());
+                            entries.add(new ClassEntry(file, jarFile, jarFile, bytes));
+                        }
+                    } catch (Exception e) {
+                        client.log(e, null);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
     /** Adds in all the .class files found recursively in the given directory */
     private static void addClassFiles(@NonNull File dir, @NonNull List<File> classFiles) {
         // Process the resource folder
@@ -239,86 +294,4 @@ class ClassEntry implements Comparable<ClassEntry> {
             }
         }
     }
-
-    /**
-     * Creates a super class map (from class to its super class) for the given set of entries
-     *
-     * @param client the client to report errors to and to use to access files
-     * @param libraryEntries the set of library entries to consult
-     * @param classEntries the set of class entries to consult
-     * @return a map from name to super class internal names
-     */
-    @NonNull
-    public static Map<String, String> createSuperClassMap(
-            @NonNull LintClient client,
-            @NonNull List<ClassEntry> libraryEntries,
-            @NonNull List<ClassEntry> classEntries) {
-        int size = libraryEntries.size() + classEntries.size();
-        Map<String, String> map = Maps.newHashMapWithExpectedSize(size);
-        SuperclassVisitor visitor = new SuperclassVisitor(map);
-        addSuperClasses(client, visitor, libraryEntries);
-        addSuperClasses(client, visitor, classEntries);
-        return map;
-    }
-
-    /**
-     * Creates a super class map (from class to its super class) for the given set of entries
-     *
-     * @param client the client to report errors to and to use to access files
-     * @param entries the set of library entries to consult
-     * @return a map from name to super class internal names
-     */
-    @NonNull
-    public static Map<String, String> createSuperClassMap(
-            @NonNull LintClient client, @NonNull List<ClassEntry> entries) {
-        Map<String, String> map = Maps.newHashMapWithExpectedSize(entries.size());
-        SuperclassVisitor visitor = new SuperclassVisitor(map);
-        addSuperClasses(client, visitor, entries);
-        return map;
-    }
-
-    /** Adds in all the super classes found for the given class entries into the given map */
-    private static void addSuperClasses(
-            @NonNull LintClient client,
-            @NonNull SuperclassVisitor visitor,
-            @NonNull List<ClassEntry> entries) {
-        for (ClassEntry entry : entries) {
-            try {
-                ClassReader reader = new ClassReader(entry.bytes);
-                int flags =
-                        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
-                reader.accept(visitor, flags);
-            } catch (Throwable t) {
-                client.log(
-                        null,
-                        "Error processing %1$s: broken class file? (%2$s)",
-                        entry.path(),
-                        t.getMessage());
-            }
-        }
-    }
-
-    /** Visitor skimming classes and initializing a map of super classes */
-    private static class SuperclassVisitor extends ClassVisitor {
-        private final Map<String, String> mMap;
-
-        public SuperclassVisitor(Map<String, String> map) {
-            super(ASM5);
-            mMap = map;
-        }
-
-        @Override
-        public void visit(
-                int version,
-                int access,
-                String name,
-                String signature,
-                String superName,
-                String[] interfaces) {
-            // Record super class in the map (but don't waste space on java.lang.Object)
-            if (superName != null && !"java/lang/Object".equals(superName)) {
-                mMap.put(name, superName);
-            }
-        }
-    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api;
+
+import static com.android.SdkConstants.DOT_JAR;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.annotations.VisibleForTesting;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * An immutable index of the class headers (super class, interfaces and access flags) found on a
+ * class path. The class path entries are indexed in parallel. The index of each jar file is
+ * cached, keyed by its size and timestamp, such that library jars shared between projects (and
+ * between lint runs in the same process) are only read once.
+ *
+ * <p><b>NOTE: This is not a public or final API; if you rely on this be prepared to adjust your
+ * code for the next tools release.</b>
+ */
+@Beta
+public class ClassIndex {
+    /** The header of a single class, as found in its class file */
+    public static final class ClassInfo {
+        /** The internal name of the class, such as java/lang/Integer */
+        @NonNull public final String name;
+        /** The internal name of the super class, or null for java/lang/Object */
+        @Nullable public final String superName;
+        /** The internal names of the directly implemented interfaces */
+        @NonNull public final List<String> interfaces;
+        /** The access flags of the class, such as {@code Opcodes.ACC_PUBLIC} */
+        public final int access;
+
+        ClassInfo(
+                @NonNull String name,
+                @Nullable String superName,
+                @NonNull String[] interfaces,
+                int access) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = ImmutableList.copyOf(interfaces);
+            this.access = access;
+        }
+    }
+
+    /** Indices of jar files, shared by all the projects and lint runs in this process */
+    private static final ArtifactCache<Map<String, ClassInfo>> jarCache = new ArtifactCache<>();
+
+    private final Map<String, ClassInfo> classes;
+
+    private ClassIndex(@NonNull Map<String, ClassInfo> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Creates an index of the classes on the given class path. If a class is present in more
+     * than one class path entry, the last one wins.
+     *
+     * @param client the client to report errors to and to use to read files
+     * @param classPath the class path (directories and jar files) to index
+     * @return the class index, never null
+     */
+    @NonNull
+    public static ClassIndex create(@NonNull LintClient client, @NonNull List<File> classPath) {
+        if (classPath.isEmpty()) {
+            return new ClassIndex(Collections.emptyMap());
+        }
+
+        List<Map<String, ClassInfo>> indices =
+                classPath
+                        .parallelStream()
+                        .map(entry -> index(client, entry))
+                        .collect(Collectors.toList());
+        if (indices.size() == 1) {
+            return new ClassIndex(indices.get(0));
+        }
+
+        int size = 0;
+        for (Map<String, ClassInfo> index : indices) {
+            size += index.size();
+        }
+        Map<String, ClassInfo> classes = Maps.newHashMapWithExpectedSize(size);
+        for (Map<String, ClassInfo> index : indices) {
+            classes.putAll(index);
+        }
+        return new ClassIndex(Collections.unmodifiableMap(classes));
+    }
+
+    /** Returns the number of classes in the index */
+    public int size() {
+        return classes.size();
+    }
+
+    /** Returns the header of the class with the given internal name, or null if not known */
+    @Nullable
+    public ClassInfo get(@NonNull String name) {
+        return classes.get(name);
+    }
+
+    /** Returns the super class of the class with the given internal name, or null if not known */
+    @Nullable
+    public String getSuperClass(@NonNull String name) {
+        ClassInfo info = classes.get(name);
+        return info != null ? info.superName : null;
+    }
+
+    /**
+     * Returns a map from internal class name to the corresponding super class name, in the format
+     * of {@link LintClient#createSuperClassMap}. Classes extending java/lang/Object directly are
+     * not included.
+     */
+    @NonNull
+    public Map<String, String> getSuperClassMap() {
+        Map<String, String> map = Maps.newHashMapWithExpectedSize(classes.size());
+        for (ClassInfo info : classes.values()) {
+            String superName = info.superName;
+            if (superName != null && !"java/lang/Object".equals(superName)) {
+                map.put(info.name, superName);
+            }
+        }
+        return map;
+    }
+
+    @NonNull
+    private static Map<String, ClassInfo> index(@NonNull LintClient client, @NonNull File entry) {
+        if (!entry.getName().endsWith(DOT_JAR)) {
+            // Class folders are typically build outputs; their timestamps don't reflect changes
+            // to the files within them, so they are not cached
+            return index(client, ClassEntry.fromClassPath(client, ImmutableList.of(entry), false));
+        }
+        if (!entry.exists()) {
+            return Collections.emptyMap();
+        }
+
+        return jarCache.get(
+                entry,
+                jar -> {
+                    List<File> classPath = ImmutableList.of(jar);
+                    return index(client, ClassEntry.fromClassPath(client, classPath, false));
+                });
+    }
+
+    @NonNull
+    private static Map<String, ClassInfo> index(
+            @NonNull LintClient client, @NonNull List<ClassEntry> entries) {
+        Map<String, ClassInfo> classes = Maps.newHashMapWithExpectedSize(entries.size());
+        for (ClassEntry entry : entries) {
+            try {
+                // Only the class header is needed, which the reader exposes without a visitor
+                ClassReader reader = new ClassReader(entry.bytes);
+                String name = reader.getClassName();
+                classes.put(
+                        name,
+                        new ClassInfo(
+                                name,
+                                reader.getSuperName(),
+                                reader.getInterfaces(),
+                                reader.getAccess()));
+            } catch (Throwable t) {
+                client.log(
+                        null,
+                        "Error processing %1$s: broken class file? (%2$s)",
+                        entry.path(),
+                        t.getMessage());
+            }
+        }
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /** Discards the cached jar file indices */
+    @VisibleForTesting
+    static void clearCache() {
+        jarCache.clear();
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.detector.api.Detector
+import com.google.common.annotations.Beta
+import java.io.Writer
+import java.lang.management.ManagementFactory
+import java.util.ArrayList
+import java.util.HashMap
+import java.util.LinkedHashMap
+
+/**
+ * Attributes the wall time, CPU time and allocated bytes of a lint run to the
+ * individual detectors, and to the callbacks (such as `visitCallExpression`,
+ * `visitElement` or `checkClass`) they were invoked through.
+ *
+ * Measurements are taken on the thread running the detector, around a callback
+ * run through [measure] (or [profile] from Java). They can be nested, e.g. when a
+ * detector callback calls into another detector; the cost of the nested callback
+ * is then only charged to the nested one. Callbacks slower than
+ * [TRACE_THRESHOLD_NS] are also recorded as individual events, such that the
+ * report written by [write] can be loaded into a Chrome trace viewer
+ * (chrome://tracing or Perfetto).
+ *
+ * **NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.**
+ */
+@Beta
+class DetectorProfiler {
+    /** Accumulated cost of a single callback of a single detector */
+    class Stats(
+        /** The fully qualified class name of the detector */
+        val detector: String,
+        /** The name of the callback, such as `visitCallExpression` */
+        val callback: String
+    ) {
+        /** The number of times the callback was invoked */
+        var count = 0
+            internal set
+        /**
+         * The total wall time spent in the callback, in nanoseconds, not counting
+         * the callbacks measured within it
+         */
+        var wallNs = 0L
+            internal set
+        /** The total CPU time spent in the callback, in nanoseconds, or 0 if not supported */
+        var cpuNs = 0L
+            internal set
+        /** The total number of bytes allocated by the callback, or 0 if not supported */
+        var allocatedBytes = 0L
+            internal set
+    }
+
+    private class Event(
+        val detector: String,
+        val callback: String,
+        val threadId: Long,
+        val startNs: Long,
+        val wallNs: Long,
+        val cpuNs: Long,
+        val allocatedBytes: Long
+    )
+
+    /** A callback being measured; the nested cost is subtracted from its own */
+    private class Frame {
+        var startWall = 0L
+        var startCpu = 0L
+        var startAllocated = 0L
+        var nestedWall = 0L
+        var nestedCpu = 0L
+        var nestedAllocated = 0L
+    }
+
+    /** The callbacks being measured on a thread, innermost last; frames are reused */
+    private class FrameStack {
+        val frames = ArrayList<Frame>()
+        var depth = 0
+    }
+
+    private val threadBean = ManagementFactory.getThreadMXBean()
+    private val cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported &&
+            threadBean.isThreadCpuTimeEnabled
+    private val allocationBean = (threadBean as? com.sun.management.ThreadMXBean)?.takeIf {
+        it.isThreadAllocatedMemorySupported && it.isThreadAllocatedMemoryEnabled
+    }
+
+    private val stacks = ThreadLocal.withInitial { FrameStack() }
+    private val detectorStats = LinkedHashMap<Class<*>, HashMap<String, Stats>>()
+    private val events = ArrayList<Event>()
+    private val origin = System.nanoTime()
+
+    /** Starts measuring a detector callback; must be paired with [end] */
+    @PublishedApi
+    internal fun begin() {
+        val stack = stacks.get()
+        val frame = if (stack.depth < stack.frames.size) {
+            stack.frames[stack.depth]
+        } else {
+            Frame().also { stack.frames.add(it) }
+        }
+        stack.depth++
+        frame.nestedWall = 0L
+        frame.nestedCpu = 0L
+        frame.nestedAllocated = 0L
+        frame.startAllocated = allocatedBytes()
+        frame.startCpu = cpuTime()
+        frame.startWall = System.nanoTime()
+    }
+
+    /** Attributes the cost since the matching [begin] to the given detector callback */
+    @PublishedApi
+    internal fun end(detector: Detector, callback: String) {
+        val endWall = System.nanoTime()
+        val endCpu = cpuTime()
+        val endAllocated = allocatedBytes()
+        val stack = stacks.get()
+        val frame = stack.frames[--stack.depth]
+        val wall = endWall - frame.startWall
+        val cpu = endCpu - frame.startCpu
+        val allocated = endAllocated - frame.startAllocated
+        if (stack.depth > 0) {
+            val outer = stack.frames[stack.depth - 1]
+            outer.nestedWall += wall
+            outer.nestedCpu += cpu
+            outer.nestedAllocated += allocated
+        }
+
+        synchronized(this) {
+            val callbacks = detectorStats.getOrPut(detector.javaClass) { HashMap() }
+            val stats = callbacks.getOrPut(callback) { Stats(detector.javaClass.name, callback) }
+            stats.count++
+            stats.wallNs += wall - frame.nestedWall
+            stats.cpuNs += cpu - frame.nestedCpu
+            stats.allocatedBytes += allocated - frame.nestedAllocated
+
+            if (wall >= TRACE_THRESHOLD_NS && events.size < MAX_TRACE_EVENTS) {
+                events.add(
+                    Event(
+                        stats.detector, callback, Thread.currentThread().id,
+                        frame.startWall - origin, wall, cpu, allocated
+                    )
+                )
+            }
+        }
+    }
+
+    /** Runs the given detector callback and attributes its cost to [detector] */
+    inline fun <T> measure(detector: Detector, callback: String, block: () -> T): T {
+        begin()
+        try {
+            return block()
+        } finally {
+            end(detector, callback)
+        }
+    }
+
+    private fun cpuTime(): Long = if (cpuTimeSupported) threadBean.currentThreadCpuTime else 0L
+
+    private fun allocatedBytes(): Long =
+        allocationBean?.getThreadAllocatedBytes(Thread.currentThread().id) ?: 0L
+
+    /** The recorded statistics, most expensive (by wall time) first */
+    val stats: List<Stats>
+        @Synchronized
+        get() = detectorStats.values.flatMap { it.values }.sortedByDescending { it.wallNs }
+
+    /**
+     * Writes the recorded statistics as JSON. The `traceEvents` are in the Chrome
+     * trace event format; the `detectors` list the totals per detector and
+     * callback, most expensive detector first.
+     */
+    @Synchronized
+    fun write(writer: Writer) {
+        writer.write("{\n  \"displayTimeUnit\": \"ms\",\n  \"traceEvents\": [")
+        var first = true
+        for (event in events) {
+            writer.write(if (first) "\n" else ",\n")
+            first = false
+            writer.write("    {\"name\": ")
+            writeString(writer, event.detector.substringAfterLast('.') + "." + event.callback)
+            writer.write(", \"cat\": \"lint\", \"ph\": \"X\", \"pid\": 1")
+            writer.write(", \"tid\": ${event.threadId}")
+            writer.write(", \"ts\": ${event.startNs / 1000}, \"dur\": ${event.wallNs / 1000}")
+            writer.write(", \"args\": {\"detector\": ")
+            writeString(writer, event.detector)
+            writer.write(", \"cpuUs\": ${event.cpuNs / 1000}")
+            writer.write(", \"allocatedBytes\": ${event.allocatedBytes}}}")
+        }
+        writer.write("\n  ],\n  \"detectors\": [")
+
+        val detectors = detectorStats.values
+            .map { it.values.sortedByDescending { stats -> stats.wallNs } }
+            .sortedByDescending { callbacks -> callbacks.sumByLong { it.wallNs } }
+        first = true
+        for (callbacks in detectors) {
+            writer.write(if (first) "\n" else ",\n")
+            first = false
+            writer.write("    {\"detector\": ")
+            writeString(writer, callbacks[0].detector)
+            writeCosts(
+                writer,
+                callbacks.sumBy { it.count },
+                callbacks.sumByLong { it.wallNs },
+                callbacks.sumByLong { it.cpuNs },
+                callbacks.sumByLong { it.allocatedBytes }
+            )
+            writer.write(", \"callbacks\": [")
+            for ((index, stats) in callbacks.withIndex()) {
+                writer.write(if (index == 0) "\n" else ",\n")
+                writer.write("      {\"callback\": ")
+                writeString(writer, stats.callback)
+                writeCosts(writer, stats.count, stats.wallNs, stats.cpuNs, stats.allocatedBytes)
+                writer.write("}")
+            }
+            writer.write("\n    ]}")
+        }
+        writer.write("\n  ]\n}\n")
+    }
+
+    private fun writeCosts(writer: Writer, count: Int, wall: Long, cpu: Long, allocated: Long) {
+        writer.write(", \"count\": $count, \"wallMs\": ${wall / 1_000_000}")
+        writer.write(", \"cpuMs\": ${cpu / 1_000_000}, \"allocatedBytes\": $allocated")
+    }
+
+    private fun writeString(writer: Writer, s: String) {
+        writer.write('"'.toInt())
+        for (c in s) {
+            when {
+                c == '"' || c == '\\' -> {
+                    writer.write('\\'.toInt())
+                    writer.write(c.toInt())
+                }
+                c < ' ' -> writer.write(String.format("\\u%04x", c.toInt()))
+                else -> writer.write(c.toInt())
+            }
+        }
+        writer.write('"'.toInt())
+    }
+
+    private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long {
+        var sum = 0L
+        for (element in this) {
+            sum += selector(element)
+        }
+        return sum
+    }
+
+    companion object {
+        /** Callbacks taking at least this long are recorded as individual trace events */
+        const val TRACE_THRESHOLD_NS = 1_000_000L
+
+        /** Maximum number of individual trace events recorded */
+        private const val MAX_TRACE_EVENTS = 100_000
+
+        /**
+         * Runs the given detector callback, measuring it if [profiler] is not null.
+         * This is the Java counterpart of [measure].
+         */
+        @JvmStatic
+        fun profile(
+            profiler: DetectorProfiler?,
+            detector: Detector,
+            callback: String,
+            block: Runnable
+        ) {
+            if (profiler != null) {
+                profiler.measure(detector, callback) { block.run() }
+            } else {
+                block.run()
+            }
+        }
+    }
+}
+
+/** Runs the given detector callback, measuring it if a profiler is present */
+internal inline fun <T> DetectorProfiler?.profile(
+    detector: Detector,
+    callback: String,
+    block: () -> T
+): T = if (this != null) measure(detector, callback, block) else block()
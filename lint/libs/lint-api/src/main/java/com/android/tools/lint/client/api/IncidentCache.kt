@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.detector.api.DefaultPosition
+import com.android.tools.lint.detector.api.Location
+import com.android.tools.lint.detector.api.Position
+import com.android.tools.lint.detector.api.Severity
+import com.android.tools.lint.detector.api.TextFormat
+import com.google.common.annotations.Beta
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * A persistent cache of the incidents lint reported for individual files, which
+ * lets [LintDriver] skip files that have not changed since a previous run.
+ *
+ * Entries are looked up by a key computed by the driver from the file contents,
+ * the file path, the enabled issues and their configured severities, and the
+ * project settings which affect analysis. Each entry stores the incidents
+ * reported for the file by detectors which only look at one file at a time,
+ * along with the partial state of any [PartialStateDetector] that visited it.
+ *
+ * **NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.**
+ */
+@Beta
+class IncidentCache(
+    /** The directory the cache entries are stored in */
+    val dir: File
+) {
+    /** An incident stored in the cache */
+    class CachedIncident(
+        val issueId: String,
+        val severity: Severity,
+        val message: String,
+        val format: TextFormat,
+        val locations: List<CachedLocation>
+    ) {
+        /** Recreates the location of this incident, in the given file */
+        fun createLocation(file: File): Location {
+            var location: Location? = null
+            for (cached in locations.asReversed()) {
+                val start = cached.start
+                val current =
+                    if (start != null) Location.create(file, start, cached.end)
+                    else Location.create(file)
+                if (cached.message != null) {
+                    current.message = cached.message
+                }
+                current.setSelfExplanatory(cached.selfExplanatory)
+                current.visible = cached.visible
+                current.secondary = location
+                location = current
+            }
+            return location!!
+        }
+    }
+
+    /** A location in the cached file; see [Location] */
+    class CachedLocation(
+        val start: Position?,
+        val end: Position?,
+        val message: String?,
+        val selfExplanatory: Boolean,
+        val visible: Boolean
+    )
+
+    /** The cached results for a single file */
+    class Entry(
+        /** The incidents reported for the file */
+        val incidents: List<CachedIncident>,
+        /** Partial state of [PartialStateDetector]s, by detector class name */
+        val states: Map<String, String>
+    )
+
+    /**
+     * Returns the cache entry for the given key, or null if there is no such entry
+     * or it cannot be read
+     */
+    fun read(key: String): Entry? {
+        val file = getEntryFile(key)
+        if (!file.isFile) {
+            return null
+        }
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != FORMAT_VERSION) {
+                    return null
+                }
+                val incidents = ArrayList<CachedIncident>()
+                for (i in 0 until input.readInt()) {
+                    val issueId = input.readUTF()
+                    val severity = Severity.valueOf(input.readUTF())
+                    val message = readString(input)
+                    val format = TextFormat.valueOf(input.readUTF())
+                    val locations = ArrayList<CachedLocation>()
+                    for (j in 0 until input.readInt()) {
+                        val start = readPosition(input)
+                        val end = readPosition(input)
+                        val locationMessage = if (input.readBoolean()) readString(input) else null
+                        val selfExplanatory = input.readBoolean()
+                        val visible = input.readBoolean()
+                        locations.add(
+                            CachedLocation(start, end, locationMessage, selfExplanatory, visible)
+                        )
+                    }
+                    incidents.add(CachedIncident(issueId, severity, message, format, locations))
+                }
+                val states = LinkedHashMap<String, String>()
+                for (i in 0 until input.readInt()) {
+                    states[input.readUTF()] = readString(input)
+                }
+                Entry(incidents, states)
+            }
+        } catch (e: IOException) {
+            null
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+
+    /** Stores the given entry under the given key, replacing any previous entry */
+    @Throws(IOException::class)
+    fun write(key: String, entry: Entry) {
+        val file = getEntryFile(key)
+        file.parentFile.mkdirs()
+        // Write to a temporary file first such that concurrent lint runs never
+        // see partially written entries
+        val temp = File.createTempFile(key, ".tmp", file.parentFile)
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { output ->
+                output.writeInt(FORMAT_VERSION)
+                output.writeInt(entry.incidents.size)
+                for (incident in entry.incidents) {
+                    output.writeUTF(incident.issueId)
+                    output.writeUTF(incident.severity.name)
+                    writeString(output, incident.message)
+                    output.writeUTF(incident.format.name)
+                    output.writeInt(incident.locations.size)
+                    for (location in incident.locations) {
+                        writePosition(output, location.start)
+                        writePosition(output, location.end)
+                        output.writeBoolean(location.message != null)
+                        location.message?.let { writeString(output, it) }
+                        output.writeBoolean(location.selfExplanatory)
+                        output.writeBoolean(location.visible)
+                    }
+                }
+                output.writeInt(entry.states.size)
+                for ((detector, state) in entry.states) {
+                    output.writeUTF(detector)
+                    writeString(output, state)
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        } finally {
+            temp.delete()
+        }
+    }
+
+    private fun getEntryFile(key: String): File = File(File(dir, key.substring(0, 2)), key)
+
+    private fun readString(input: DataInputStream): String {
+        val bytes = ByteArray(input.readInt())
+        input.readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun writeString(output: DataOutputStream, string: String) {
+        val bytes = string.toByteArray(Charsets.UTF_8)
+        output.writeInt(bytes.size)
+        output.write(bytes)
+    }
+
+    private fun readPosition(input: DataInputStream): Position? {
+        if (!input.readBoolean()) {
+            return null
+        }
+        return DefaultPosition(input.readInt(), input.readInt(), input.readInt())
+    }
+
+    private fun writePosition(output: DataOutputStream, position: Position?) {
+        output.writeBoolean(position != null)
+        if (position != null) {
+            output.writeInt(position.line)
+            output.writeInt(position.column)
+            output.writeInt(position.offset)
+        }
+    }
+
+    companion object {
+        /** Version of the entry format; bump when the format or key computation changes */
+        private const val FORMAT_VERSION = 1
+
+        /**
+         * Converts the location of a reported incident into cached locations, or returns
+         * null if the location cannot be cached because it (or one of its secondary
+         * locations) is not in the given file
+         */
+        fun toCachedLocations(location: Location, file: File): List<CachedLocation>? {
+            val locations = ArrayList<CachedLocation>()
+            var current: Location? = location
+            while (current != null) {
+                if (current.file != file) {
+                    return null
+                }
+                locations.add(
+                    CachedLocation(
+                        current.start, current.end, current.message,
+                        current.isSelfExplanatory(), current.visible
+                    )
+                )
+                current = current.secondary
+            }
+            return locations
+        }
+    }
+}
@@ -32,22 +32,29 @@ import com.android.tools.lint.detector.api.Severity
 import com.android.tools.lint.detector.api.TextFormat
 import com.android.tools.lint.detector.api.describeCounts
 import com.android.utils.XmlUtils.toXmlAttributeValue
-import com.google.common.collect.ArrayListMultimap
 import com.google.common.collect.Lists
 import com.google.common.collect.Maps
+import com.google.common.hash.Hashing
 import org.kxml2.io.KXmlParser
 import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
 import java.io.BufferedReader
 import java.io.BufferedWriter
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.io.File
 import java.io.FileInputStream
+import java.io.FileOutputStream
 import java.io.FileWriter
 import java.io.IOException
 import java.io.InputStreamReader
 import java.io.Writer
 import java.nio.charset.StandardCharsets
 import java.util.ArrayList
+import java.util.HashMap
+import java.util.zip.CRC32
 
 /**
  * A lint baseline is a collection of warnings for a project that have been
@@ -82,8 +89,17 @@ class LintBaseline(
     var totalCount: Int = 0
         private set
 
-    /** Map from message to [Entry]  */
-    private val messageToEntry = ArrayListMultimap.create<String, Entry>(100, 20)
+    /** All the entries read from the baseline, in file order */
+    private val entries = ArrayList<Entry>()
+
+    /** Map from issue id, file name and message to the [Entry] objects with those values */
+    private val indexedEntries = HashMap<EntryKey, MutableList<Entry>>()
+
+    /**
+     * Map from message to the [Entry] objects which cannot be indexed by file name, since
+     * their paths are too short for [isSamePathSuffix] to compare the whole file name
+     */
+    private val unindexedEntries = HashMap<String, MutableList<Entry>>()
 
     /**
      * Whether we should write the baseline file when the baseline is closed, if the
@@ -156,7 +172,10 @@ class LintBaseline(
             val client = driver.client
             val baselineFile = file
             val ids = Maps.newHashMap<String, Int>()
-            for (entry in messageToEntry.values()) {
+            for (entry in entries) {
+                if (entry.found) {
+                    continue
+                }
                 var count: Int? = ids[entry.issueId]
                 if (count == null) {
                     count = 1
@@ -245,41 +264,67 @@ class LintBaseline(
         message: String,
         severity: Severity?
     ): Boolean {
-        val entries = messageToEntry.get(message)
-        if (entries == null || entries.isEmpty()) {
-            return false
+        val path = location.file.path
+        val issueId = issue.id
+        // Match the first entry in file order, as if all the entries were searched
+        val indexed =
+            findEntry(indexedEntries[EntryKey(issueId, getFileName(path), message)], issueId, path)
+        val unindexed = findEntry(unindexedEntries[message], issueId, path)
+        val entry = when {
+            indexed == null -> unindexed ?: return false
+            unindexed == null -> indexed
+            unindexed.order < indexed.order -> unindexed
+            else -> indexed
         }
 
-        val file = location.file
-        val path = file.path
-        val issueId = issue.id
-        for (entry in entries) {
-            if (entry!!.issueId == issueId) {
-                if (isSamePathSuffix(path, entry.path)) {
-                    // Remove all linked entries. We don't loop through all the locations;
-                    // they're allowed to vary over time, we just assume that all entries
-                    // for the same warning should be cleared.
-                    var curr = entry
-                    while (curr.previous != null) {
-                        curr = curr.previous
-                    }
-                    while (curr != null) {
-                        messageToEntry.remove(curr.message, curr)
-                        curr = curr.next
-                    }
+        // Mark all linked entries. We don't loop through all the locations;
+        // they're allowed to vary over time, we just assume that all entries
+        // for the same warning should be cleared.
+        var curr: Entry = entry
+        while (curr.previous != null) {
+            curr = curr.previous!!
+        }
+        var next: Entry? = curr
+        while (next != null) {
+            next.found = true
+            next = next.next
+        }
 
-                    if ((severity ?: issue.defaultSeverity).isError) {
-                        foundErrorCount++
-                    } else {
-                        foundWarningCount++
-                    }
+        if ((severity ?: issue.defaultSeverity).isError) {
+            foundErrorCount++
+        } else {
+            foundWarningCount++
+        }
 
-                    return true
-                }
+        return true
+    }
+
+    private fun findEntry(candidates: List<Entry>?, issueId: String, path: String): Entry? {
+        if (candidates == null) {
+            return null
+        }
+        for (entry in candidates) {
+            if (!entry.found && entry.issueId == issueId && isSamePathSuffix(path, entry.path)) {
+                return entry
             }
         }
+        return null
+    }
 
-        return false
+    /** Adds an entry read from the baseline file, linking it to the [previous] location */
+    private fun addEntry(entry: Entry, previous: Entry?) {
+        if (previous != null) {
+            previous.next = entry
+        }
+        entry.previous = previous
+        entry.order = entries.size
+        entries.add(entry)
+        if (isIndexable(entry.path)) {
+            val key = EntryKey(entry.issueId, getFileName(entry.path), entry.message)
+            indexedEntries.getOrPut(key) { ArrayList(1) }.add(entry)
+        } else {
+            unindexedEntries.getOrPut(entry.message) { ArrayList(1) }.add(entry)
+        }
     }
 
     /**
@@ -302,12 +347,40 @@ class LintBaseline(
         attributes[name] = value
     }
 
-    /** Read in the XML report  */
+    /** Read in the XML report, or the binary cache of it if it is up to date */
     private fun readBaselineFile() {
         if (!file.exists()) {
             return
         }
 
+        val cacheFile = getCacheFile()
+        if (cacheFile != null) {
+            try {
+                if (readCache(cacheFile)) {
+                    return
+                }
+            } catch (e: IOException) {
+                // Fall back to parsing the XML file
+            }
+            entries.clear()
+            indexedEntries.clear()
+            unindexedEntries.clear()
+            attributes = null
+            totalCount = 0
+        }
+
+        if (readXml() && cacheFile != null) {
+            try {
+                writeCache(cacheFile, computeChecksum(file))
+            } catch (e: IOException) {
+                // Not fatal; the XML file will be parsed again next time
+                cacheFile.delete()
+            }
+        }
+    }
+
+    /** Reads the baseline XML file, and returns true if it was read successfully */
+    private fun readXml(): Boolean {
         try {
             BufferedReader(
                 InputStreamReader(
@@ -330,12 +403,8 @@ class LintBaseline(
                         if (tag == SdkConstants.TAG_LOCATION) {
                             if (issue != null && message != null && path != null) {
                                 val entry = Entry(issue, message, path)
-                                if (currentEntry != null) {
-                                    currentEntry.next = entry
-                                }
-                                entry.previous = currentEntry
+                                addEntry(entry, currentEntry)
                                 currentEntry = entry
-                                messageToEntry.put(entry.message, entry)
                             }
                         } else if (tag == TAG_ISSUE) {
                             totalCount++
@@ -381,6 +450,7 @@ class LintBaseline(
                     }
                 }
             }
+            return true
         } catch (e: IOException) {
             if (client != null) {
                 client.log(e, null)
@@ -394,6 +464,114 @@ class LintBaseline(
                 e.printStackTrace()
             }
         }
+        return false
+    }
+
+    /**
+     * Returns the file to cache the parsed contents of the baseline in, or null if
+     * there is no cache directory
+     */
+    private fun getCacheFile(): File? {
+        val dir = client?.getCacheDir("lint-baselines", true) ?: return null
+        val path = file.absolutePath
+        return File(dir, Hashing.sha1().hashString(path, Charsets.UTF_8).toString() + ".bin")
+    }
+
+    /**
+     * Reads the entries from the given cache file, if it was written for the current
+     * contents of the baseline file. Returns false if the cache cannot be used.
+     *
+     * The cache is trusted when the length and the modification time of the baseline
+     * file are unchanged. Only when just the modification time differs is the baseline
+     * file read, to compare its checksum.
+     */
+    @Throws(IOException::class)
+    private fun readCache(cacheFile: File): Boolean {
+        if (!cacheFile.isFile) {
+            return false
+        }
+        var touched = false
+        var checksum = 0L
+        DataInputStream(BufferedInputStream(FileInputStream(cacheFile))).use { input ->
+            if (input.readInt() != CACHE_FORMAT_VERSION ||
+                readString(input) != file.absolutePath ||
+                input.readLong() != file.length()
+            ) {
+                return false
+            }
+            touched = input.readLong() != file.lastModified()
+            checksum = input.readLong()
+            if (touched && checksum != computeChecksum(file)) {
+                return false
+            }
+            totalCount = input.readInt()
+            for (i in 0 until input.readInt()) {
+                setAttribute(readString(input), readString(input))
+            }
+            val strings = ArrayList<String>()
+            fun readPooledString(): String {
+                val index = input.readInt()
+                return if (index == strings.size) {
+                    readString(input).also { strings.add(it) }
+                } else {
+                    strings[index]
+                }
+            }
+            var previous: Entry? = null
+            for (i in 0 until input.readInt()) {
+                val linked = input.readBoolean()
+                val entry = Entry(readPooledString(), readPooledString(), readPooledString())
+                addEntry(entry, if (linked) previous else null)
+                previous = entry
+            }
+        }
+        if (touched) {
+            // Record the new modification time, to skip the checksum next time
+            try {
+                writeCache(cacheFile, checksum)
+            } catch (e: IOException) {
+                cacheFile.delete()
+            }
+        }
+        return true
+    }
+
+    /** Writes the entries read from the baseline file into the given cache file */
+    @Throws(IOException::class)
+    private fun writeCache(cacheFile: File, checksum: Long) {
+        DataOutputStream(BufferedOutputStream(FileOutputStream(cacheFile))).use { output ->
+            output.writeInt(CACHE_FORMAT_VERSION)
+            writeString(output, file.absolutePath)
+            output.writeLong(file.length())
+            output.writeLong(file.lastModified())
+            output.writeLong(checksum)
+            output.writeInt(totalCount)
+            val attributes = attributes ?: emptyMap<String, String>()
+            output.writeInt(attributes.size)
+            for ((name, value) in attributes) {
+                writeString(output, name)
+                writeString(output, value)
+            }
+            // Issue ids, messages and paths repeat a lot; write each distinct string once
+            val strings = HashMap<String, Int>()
+            fun writePooledString(string: String) {
+                val index = strings[string]
+                if (index != null) {
+                    output.writeInt(index)
+                } else {
+                    output.writeInt(strings.size)
+                    strings[string] = strings.size
+                    writeString(output, string)
+                }
+            }
+            output.writeInt(entries.size)
+            for (entry in entries) {
+                output.writeBoolean(entry.previous != null)
+                writePooledString(entry.issueId)
+                writePooledString(entry.message)
+                writePooledString(entry.path)
+            }
+        }
     }
 
     /** Finishes writing the baseline  */
@@ -600,8 +778,21 @@ class LintBaseline(
          */
         var next: Entry? = null
         var previous: Entry? = null
+
+        /** Whether this entry has been matched by a reported issue */
+        var found = false
+
+        /** The position of this entry in the baseline file */
+        var order = 0
     }
 
+    /** Key used to look up baseline entries */
+    private data class EntryKey(
+        val issueId: String,
+        val fileName: String,
+        val message: String
+    )
+
     companion object {
         const val VARIANT_ALL = "all"
         const val VARIANT_FATAL = "fatal"
@@ -685,6 +876,61 @@ class LintBaseline(
             return true
         }
 
+        /** Version of the baseline cache format; bump when the format changes */
+        private const val CACHE_FORMAT_VERSION = 2
+
+        /** Returns the last segment of the given path, considering \\ and / identical */
+        private fun getFileName(path: String): String {
+            val index = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'))
+            return if (index == -1) path else path.substring(index + 1)
+        }
+
+        /**
+         * Returns true if [isSamePathSuffix] only accepts paths ending with the same file
+         * name as the given baseline path. That is the case when the file name is preceded
+         * by a separator which is compared too (the suffix comparison skips leading dots and
+         * separators, and the first character after them.)
+         */
+        private fun isIndexable(suffix: String): Boolean {
+            var begin = 0
+            while (begin < suffix.length - 1) {
+                val c = suffix[begin]
+                if (c != '.' && c != '/' && c != '\\') {
+                    break
+                }
+                begin++
+            }
+            val separator = Math.max(suffix.lastIndexOf('/'), suffix.lastIndexOf('\\'))
+            return separator > begin && separator < suffix.length - 1
+        }
+
+        private fun computeChecksum(file: File): Long {
+            val crc = CRC32()
+            FileInputStream(file).use { input ->
+                val buffer = ByteArray(65536)
+                while (true) {
+                    val n = input.read(buffer)
+                    if (n == -1) {
+                        break
+                    }
+                    crc.update(buffer, 0, n)
+                }
+            }
+            return crc.value
+        }
+
+        private fun readString(input: DataInputStream): String {
+            val bytes = ByteArray(input.readInt())
+            input.readFully(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        private fun writeString(output: DataOutputStream, string: String) {
+            val bytes = string.toByteArray(Charsets.UTF_8)
+            output.writeInt(bytes.size)
+            output.write(bytes)
+        }
+
         private fun getDisplayPath(project: Project?, file: File): String {
             var path = file.path
             if (project != null && path.startsWith(project.referenceDir.path)) {
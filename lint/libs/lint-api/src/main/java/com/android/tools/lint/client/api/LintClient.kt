@@ -1042,14 +1042,9 @@ abstract class LintClient {
      * @return a map from class to its corresponding super class; never null
      */
     open fun createSuperClassMap(project: Project): Map<String, String> {
-        val libraries = project.getJavaLibraries(true)
-        val classFolders = project.javaClassFolders
-        val classEntries = ClassEntry.fromClassPath(this, classFolders, true)
-        if (libraries.isEmpty()) {
-            return ClassEntry.createSuperClassMap(this, classEntries)
-        }
-        val libraryEntries = ClassEntry.fromClassPath(this, libraries, true)
-        return ClassEntry.createSuperClassMap(this, libraryEntries, classEntries)
+        // Local classes come last such that they take precedence over library classes
+        val classPath = project.getJavaLibraries(true) + project.javaClassFolders
+        return ClassIndex.create(this, classPath).superClassMap
     }
 
     /**
@@ -50,6 +50,7 @@ import com.android.tools.lint.detector.api.ClassContext
 import com.android.tools.lint.detector.api.ClassScanner
 import com.android.tools.lint.detector.api.Context
 import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.FileLocalDetector
 import com.android.tools.lint.detector.api.GradleContext
 import com.android.tools.lint.detector.api.GradleScanner
 import com.android.tools.lint.detector.api.Issue
@@ -57,6 +58,7 @@ import com.android.tools.lint.detector.api.JavaContext
 import com.android.tools.lint.detector.api.LintFix
 import com.android.tools.lint.detector.api.Location
 import com.android.tools.lint.detector.api.OtherFileScanner
+import com.android.tools.lint.detector.api.PartialStateDetector
 import com.android.tools.lint.detector.api.Platform
 import com.android.tools.lint.detector.api.Project
 import com.android.tools.lint.detector.api.ResourceContext
@@ -81,6 +83,7 @@ import com.google.common.base.Splitter
 import com.google.common.collect.ArrayListMultimap
 import com.google.common.collect.Iterables
 import com.google.common.collect.Sets
+import com.google.common.hash.Hashing
 import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.project.IndexNotReadyException
 import com.intellij.openapi.util.Computable
@@ -237,6 +240,49 @@ class LintDriver
     var baseline: LintBaseline? = null
     /** Whether dependent projects should be checked */
     var checkDependencies = true
+    /**
+     * Whether resource and class files should be read and parsed on a worker pool,
+     * ahead of the detectors. Detectors still run on the analysis thread and see
+     * the files in the same order as without this flag, so reports are unchanged.
+     * Only enable this when the client's [XmlParser] and [LintClient.readFile]
+     * can be called concurrently.
+     */
+    var parallelParsing = false
+    /**
+     * Whether the Java sources of a module should be prepared and visited in windows
+     * bounded by the available heap, releasing the trees of a window before the next
+     * one is prepared. This only applies to modules without Kotlin sources, when no
+     * detector needs the call graph. Off by default, since each window parses the
+     * sources it refers to again.
+     */
+    var windowedParsing = false
+    /**
+     * The estimated size of the trees of a source window with [windowedParsing], in
+     * bytes, or 0 to derive it from the heap available when the windows are computed
+     */
+    var parseWindowBudget = 0L
+    /**
+     * Cache of the incidents reported in previous runs, if any. When set, resource
+     * and source files which have not changed since they were cached are not
+     * visited again by detectors which only look at a single file; their incidents
+     * are replayed from the cache instead.
+     */
+    var incidentCache: IncidentCache? = null
+
+    /** Classes of the current detectors whose results can be cached per file */
+    private var cacheableDetectors: Set<Class<out Detector>> = emptySet()
+    /** Cache entries recorded in this run, written when the project has been checked */
+    private val pendingCacheEntries = HashMap<File, PendingCacheEntry>()
+    /** The cache entry of the file currently being visited, if any */
+    private var recordingCacheEntry: PendingCacheEntry? = null
+    /** Fingerprints of the project state included in the cache keys */
+    private val cacheFingerprints = HashMap<Project, String>()
+
+    /**
+     * The classes read from library jar files in this run, such that a jar used
+     * by several projects is only read once. Discarded at the end of the run.
+     */
+    private val jarClassCache = ArtifactCache<List<ClassEntry>>()
 
     /** Cancels the current lint run as soon as possible  */
     fun cancel() {
@@ -275,6 +321,14 @@ class LintDriver
     var disposeProjectsTimeMs = 0L
     /** Time to generate reports */
     var reportGenerationTimeMs = 0L
+    /** Time and peak heap usage of the individual analysis phases */
+    val phaseStatistics = PhaseStatistics()
+    /**
+     * Profiler attributing the cost of the run to the individual detectors, if
+     * enabled. Profiling adds overhead to every detector callback, so it is off
+     * by default.
+     */
+    var detectorProfiler: DetectorProfiler? = null
 
     /**
      * Returns the project containing a given file, or null if not found. This searches
@@ -413,14 +467,24 @@ class LintDriver
                 }
 
                 checkProjectTimeMs += measureTimeMillis {
-                    checkProject(project, main)
+                    phaseStatistics.measure("Check project") { checkProject(project, main) }
                 }
                 if (isCanceled) {
                     break
                 }
 
+                if (repeatingDetectors != null) {
+                    // Detectors will look at the files again, so what was
+                    // recorded for them in the first phase is not complete
+                    pendingCacheEntries.clear()
+                }
+
                 extraPhasesTimeMs += measureTimeMillis {
-                    runExtraPhases(project, main)
+                    phaseStatistics.measure("Extra phases") { runExtraPhases(project, main) }
+                }
+
+                if (!isCanceled) {
+                    writeCacheEntries()
                 }
             }
         } catch (throwable: Throwable) {
@@ -429,6 +493,8 @@ class LintDriver
                 cancel()
             }
         }
+        pendingCacheEntries.clear()
+        jarClassCache.clear()
 
         val baseline = this.baseline
         if (baseline != null && !isCanceled) {
@@ -617,9 +683,46 @@ class LintDriver
         scopeDetectors = map
         applicableDetectors = registry.createDetectors(client, configuration, scope, platforms, map)
 
+        if (incidentCache != null) {
+            cacheableDetectors = computeCacheableDetectors(map)
+        }
+
         validateScopeList()
     }
 
+    /**
+     * Computes the detectors whose results can be cached per file: the single file
+     * detectors which declare that they keep no state across files by implementing
+     * [FileLocalDetector], and those which can store what they collect from each
+     * file as a [PartialStateDetector]. A single file scope alone is not enough,
+     * since many detectors visit files one at a time but report from
+     * [Detector.afterCheckRootProject].
+     */
+    private fun computeCacheableDetectors(
+        scopeToDetectors: Map<Scope, List<Detector>>
+    ): Set<Class<out Detector>> {
+        val detectorScopes = IdentityHashMap<Detector, EnumSet<Scope>>()
+        for ((scope, detectors) in scopeToDetectors) {
+            for (detector in detectors) {
+                detectorScopes.getOrPut(detector) { EnumSet.noneOf(Scope::class.java) }.add(scope)
+            }
+        }
+
+        val cacheable = HashSet<Class<out Detector>>()
+        for ((detector, scopes) in detectorScopes) {
+            if (detector is SourceCodeScanner && detector.isCallGraphRequired()) {
+                // Call graph detectors report after all the files have been visited
+                continue
+            }
+            if (detector is PartialStateDetector ||
+                detector is FileLocalDetector && Scope.checkSingleFile(scopes)
+            ) {
+                cacheable.add(detector.javaClass)
+            }
+        }
+        return cacheable
+    }
+
     /** Development diagnostics only, run with assertions on  */
     private // Turn off warnings for the intentional assertion side effect below
     fun validateScopeList() {
@@ -883,9 +986,14 @@ class LintDriver
 
         currentProject = project
 
+        val profiler = detectorProfiler
         for (check in applicableDetectors) {
-            check.beforeCheckRootProject(projectContext)
-            check.beforeCheckEachProject(projectContext)
+            profiler.profile(check, "beforeCheckRootProject") {
+                check.beforeCheckRootProject(projectContext)
+            }
+            profiler.profile(check, "beforeCheckEachProject") {
+                check.beforeCheckEachProject(projectContext)
+            }
             if (isCanceled) {
                 return
             }
@@ -907,7 +1015,9 @@ class LintDriver
                 currentProject = library
 
                 for (check in applicableDetectors) {
-                    check.beforeCheckEachProject(libraryContext)
+                    profiler.profile(check, "beforeCheckEachProject") {
+                        check.beforeCheckEachProject(libraryContext)
+                    }
                     if (isCanceled) {
                         return
                     }
@@ -923,7 +1033,9 @@ class LintDriver
                 runDelayedRunnables()
 
                 for (check in applicableDetectors) {
-                    check.afterCheckEachProject(libraryContext)
+                    profiler.profile(check, "afterCheckEachProject") {
+                        check.afterCheckEachProject(libraryContext)
+                    }
                     if (isCanceled) {
                         return
                     }
@@ -935,8 +1047,12 @@ class LintDriver
 
         for (check in applicableDetectors) {
             client.runReadAction(Runnable {
-                check.afterCheckEachProject(projectContext)
-                check.afterCheckRootProject(projectContext)
+                profiler.profile(check, "afterCheckEachProject") {
+                    check.afterCheckEachProject(projectContext)
+                }
+                profiler.profile(check, "afterCheckRootProject") {
+                    check.afterCheckRootProject(projectContext)
+                }
             })
             if (isCanceled) {
                 return
@@ -1025,32 +1141,34 @@ class LintDriver
                     dirChecks != null && !dirChecks.isEmpty() ||
                     binaryChecks != null && !binaryChecks.isEmpty()
                 ) {
-                    val files = project.subset
-                    if (files != null) {
-                        checkIndividualResources(
-                            project, main, xmlDetectors, dirChecks,
-                            binaryChecks, files
-                        )
-                    } else {
-                        val resourceFolders = project.resourceFolders
-                        if (!resourceFolders.isEmpty()) {
-                            for (res in resourceFolders) {
-                                checkResFolder(
-                                    project, main, res, xmlDetectors, dirChecks,
-                                    binaryChecks
-                                )
-                            }
-                        }
-                        if (checkGeneratedSources) {
-                            val generatedResourceFolders = project.generatedResourceFolders
-                            if (!generatedResourceFolders.isEmpty()) {
-                                for (res in generatedResourceFolders) {
+                    phaseStatistics.measure("Resource files") {
+                        val files = project.subset
+                        if (files != null) {
+                            checkIndividualResources(
+                                project, main, xmlDetectors, dirChecks,
+                                binaryChecks, files
+                            )
+                        } else {
+                            val resourceFolders = project.resourceFolders
+                            if (!resourceFolders.isEmpty()) {
+                                for (res in resourceFolders) {
                                     checkResFolder(
                                         project, main, res, xmlDetectors, dirChecks,
                                         binaryChecks
                                     )
                                 }
                             }
+                            if (checkGeneratedSources) {
+                                val generatedResourceFolders = project.generatedResourceFolders
+                                if (!generatedResourceFolders.isEmpty()) {
+                                    for (res in generatedResourceFolders) {
+                                        checkResFolder(
+                                            project, main, res, xmlDetectors, dirChecks,
+                                            binaryChecks
+                                        )
+                                    }
+                                }
+                            }
                         }
                     }
                 }
@@ -1067,20 +1185,24 @@ class LintDriver
                 scopeDetectors[Scope.ALL_JAVA_FILES]
             )
             if (checks != null && !checks.isEmpty()) {
-                val files = project.subset
-                if (files != null) {
-                    checkIndividualJavaFiles(project, main, checks, files)
-                } else {
-                    val sourceFolders = project.javaSourceFolders
-                    val testFolders = if (!ignoreTestSources)
-                        project.testSourceFolders
-                    else
-                        emptyList<File>()
-
-                    val generatedFolders = if (checkGeneratedSources)
-                        project.generatedSourceFolders
-                    else emptyList<File>()
-                    checkJava(project, main, sourceFolders, testFolders, generatedFolders, checks)
+                phaseStatistics.measure("Source files") {
+                    val files = project.subset
+                    if (files != null) {
+                        checkIndividualJavaFiles(project, main, checks, files)
+                    } else {
+                        val sourceFolders = project.javaSourceFolders
+                        val testFolders = if (!ignoreTestSources)
+                            project.testSourceFolders
+                        else
+                            emptyList<File>()
+
+                        val generatedFolders = if (checkGeneratedSources)
+                            project.generatedSourceFolders
+                        else emptyList<File>()
+                        checkJava(
+                            project, main, sourceFolders, testFolders, generatedFolders, checks
+                        )
+                    }
                 }
             }
         }
@@ -1093,7 +1215,7 @@ class LintDriver
             scope.contains(Scope.ALL_CLASS_FILES) ||
             scope.contains(Scope.JAVA_LIBRARIES)
         ) {
-            checkClasses(project, main)
+            phaseStatistics.measure("Class files") { checkClasses(project, main) }
         }
 
         if (isCanceled) {
@@ -1101,7 +1223,7 @@ class LintDriver
         }
 
         if (scope.contains(Scope.GRADLE_FILE)) {
-            checkBuildScripts(project, main)
+            phaseStatistics.measure("Build scripts") { checkBuildScripts(project, main) }
         }
 
         if (isCanceled) {
@@ -1219,9 +1341,11 @@ class LintDriver
                 val context = Context(this, project, main, file)
                 fireEvent(EventType.SCANNING_FILE, context)
                 for (detector in detectors) {
-                    detector.beforeCheckFile(context)
-                    detector.run(context)
-                    detector.afterCheckFile(context)
+                    detectorProfiler.profile(detector, "run") {
+                        detector.beforeCheckFile(context)
+                        detector.run(context)
+                        detector.afterCheckFile(context)
+                    }
                     fileCount++
                 }
             }
@@ -1235,9 +1359,11 @@ class LintDriver
                 val context = Context(this, project, main, file)
                 fireEvent(EventType.SCANNING_FILE, context)
                 for (detector in detectors) {
-                    detector.beforeCheckFile(context)
-                    detector.run(context)
-                    detector.afterCheckFile(context)
+                    detectorProfiler.profile(detector, "run") {
+                        detector.beforeCheckFile(context)
+                        detector.run(context)
+                        detector.afterCheckFile(context)
+                    }
                     fileCount++
                 }
             }
@@ -1304,8 +1430,12 @@ class LintDriver
         // the parent chains (such that for example for a virtual dispatch, we can
         // also check the super classes).
 
-        val libraries = project.getJavaLibraries(false)
-        val libraryEntries = ClassEntry.fromClassPath(client, libraries, true)
+        // Library jars can be large; don't read them unless a detector will look at them
+        val libraryEntries = if (hasClassDetectors(Scope.JAVA_LIBRARIES)) {
+            ClassEntry.fromClassPath(client, project.getJavaLibraries(false), true, jarClassCache)
+        } else {
+            emptyList()
+        }
 
         val classFolders = project.javaClassFolders
         val classEntries: List<ClassEntry>
@@ -1336,6 +1466,9 @@ class LintDriver
         runClassDetectors(Scope.ALL_CLASS_FILES, classEntries, project, main)
     }
 
+    private fun hasClassDetectors(scope: Scope): Boolean =
+        this.scope.contains(scope) && scopeDetectors[scope]?.isEmpty() == false
+
     private fun checkIndividualClassFiles(
         project: Project,
         main: Project?,
@@ -1381,9 +1514,7 @@ class LintDriver
             if (classDetectors != null && !classDetectors.isEmpty() && !entries.isEmpty()) {
                 val visitor = AsmVisitor(client, classDetectors)
 
-                var sourceContents: CharSequence? = null
-                var sourceName = ""
-                outerClasses = ArrayDeque<ClassNode>()
+                val uniqueEntries = ArrayList<ClassEntry>(entries.size)
                 var prev: ClassEntry? = null
                 for (entry in entries) {
                     if (prev != null && prev.compareTo(entry) == 0) {
@@ -1391,13 +1522,21 @@ class LintDriver
                         continue
                     }
                     prev = entry
+                    uniqueEntries.add(entry)
+                }
+                val classNodes = ParallelParser(uniqueEntries, parallelParsing) { entry ->
+                    val classNode = ClassNode()
+                    ClassReader(entry.bytes).accept(classNode, 0 /* flags */)
+                    classNode
+                }
 
-                    val reader: ClassReader
+                var sourceContents: CharSequence? = null
+                var sourceName = ""
+                outerClasses = ArrayDeque<ClassNode>()
+                for (entry in uniqueEntries) {
                     val classNode: ClassNode
                     try {
-                        reader = ClassReader(entry.bytes)
-                        classNode = ClassNode()
-                        reader.accept(classNode, 0 /* flags */)
+                        classNode = classNodes.next()
                     } catch (t: Throwable) {
                         client.log(
                             null,
@@ -1473,6 +1612,7 @@ class LintDriver
                     // fileCount++
 
                     if (isCanceled) {
+                        classNodes.close()
                         return
                     }
 
@@ -1672,54 +1812,369 @@ class LintDriver
             }
             val uElementVisitor = UElementVisitor(parser, uastScanners)
 
-            parserErrors = !uElementVisitor.prepare(srcContexts, testContexts)
+            // Kotlin resolution needs all the Kotlin sources of the module analyzed together,
+            // and the call graph is built from the trees of all the files at once. Otherwise,
+            // with [windowedParsing], the sources are prepared and visited in windows, and
+            // the trees and caches of a window are released before the next one is prepared.
+            val windowed = windowedParsing &&
+                allContexts.none { it.file.name.endsWith(DOT_KT) } &&
+                uastScanners.none { (it as SourceCodeScanner).isCallGraphRequired() }
+            if (windowed) {
+                parserErrors = false
+            } else {
+                parserErrors = !uElementVisitor.prepare(srcContexts, testContexts)
+            }
+            val uncachedVisitor = lazy { createUncachedVisitor(parser, uastScanners) }
 
-            for (context in srcContexts) {
-                fireEvent(EventType.SCANNING_FILE, context)
-                // TODO: Don't hold read lock around the entire process?
-                client.runReadAction(Runnable { uElementVisitor.visitFile(context) })
-                fileCount++
-                if (context.file.name.endsWith(DOT_JAVA)) {
-                    javaFileCount++
-                } else {
-                    kotlinFileCount++
+            for (window in computeParseWindows(srcContexts, windowed)) {
+                if (windowed && !uElementVisitor.prepare(window, emptyList())) {
+                    parserErrors = true
                 }
-                if (isCanceled) {
-                    return
+                readAhead(window).use { sources ->
+                    for (context in sources) {
+                        fireEvent(EventType.SCANNING_FILE, context)
+                        // TODO: Don't hold read lock around the entire process?
+                        client.runReadAction(Runnable {
+                            visitCachedFile(context, { context.getContents() }, uastScanners,
+                                { uElementVisitor.visitFile(context) },
+                                { uncachedVisitor.value.visitFile(context) })
+                        })
+                        // The contexts are kept for the whole project; don't hold on to the
+                        // source text of every file. It is read again if needed later.
+                        context.releaseContents()
+                        fileCount++
+                        if (context.file.name.endsWith(DOT_JAVA)) {
+                            javaFileCount++
+                        } else {
+                            kotlinFileCount++
+                        }
+                        if (isCanceled) {
+                            return
+                        }
+                    }
+                }
+                if (windowed) {
+                    uElementVisitor.dispose()
                 }
             }
 
             val projectContext = Context(this, project, main, project.dir)
-            uElementVisitor.visitGroups(projectContext, allContexts)
+            phaseStatistics.measure("Call graph") {
+                uElementVisitor.visitGroups(projectContext, allContexts)
+            }
             uElementVisitor.dispose()
 
             if (!testContexts.isEmpty()) {
                 val testScanners = filterTestScanners(uastScanners)
                 if (!testScanners.isEmpty()) {
                     val uTestVisitor = UElementVisitor(parser, testScanners)
+                    val uncachedTestVisitor = lazy { createUncachedVisitor(parser, testScanners) }
 
-                    for (context in testContexts) {
-                        fireEvent(EventType.SCANNING_FILE, context)
-                        // TODO: Don't hold read lock around the entire process?
-                        client.runReadAction(Runnable { uTestVisitor.visitFile(context) })
-                        fileCount++
-                        testSourceCount++
-                        if (context.file.name.endsWith(DOT_JAVA)) {
-                            javaFileCount++
-                        } else {
-                            kotlinFileCount++
+                    for (window in computeParseWindows(testContexts, windowed)) {
+                        if (windowed && !uTestVisitor.prepare(emptyList(), window)) {
+                            parserErrors = true
                         }
-                        if (isCanceled) {
-                            return
+                        readAhead(window).use { sources ->
+                            for (context in sources) {
+                                fireEvent(EventType.SCANNING_FILE, context)
+                                // TODO: Don't hold read lock around the entire process?
+                                client.runReadAction(Runnable {
+                                    visitCachedFile(
+                                        context, { context.getContents() }, testScanners,
+                                        { uTestVisitor.visitFile(context) },
+                                        { uncachedTestVisitor.value.visitFile(context) })
+                                })
+                                context.releaseContents()
+                                fileCount++
+                                testSourceCount++
+                                if (context.file.name.endsWith(DOT_JAVA)) {
+                                    javaFileCount++
+                                } else {
+                                    kotlinFileCount++
+                                }
+                                if (isCanceled) {
+                                    return
+                                }
+                            }
                         }
+                        uTestVisitor.dispose()
                     }
+                }
+            }
+        }
+    }
 
-                    uTestVisitor.dispose()
+    /**
+     * Splits the given contexts into consecutive windows, such that the UAST trees of a
+     * window fit in the [parseWindowBudget], or by default in a budget derived from the
+     * heap which is currently available. Returns all the contexts as a single window
+     * unless [windowed] is true.
+     */
+    private fun computeParseWindows(
+        contexts: List<JavaContext>,
+        windowed: Boolean
+    ): List<List<JavaContext>> {
+        if (!windowed) {
+            return listOf(contexts)
+        }
+        val budget = if (parseWindowBudget > 0) {
+            parseWindowBudget
+        } else {
+            Math.max(MIN_PARSE_WINDOW_BUDGET, getAvailableHeap() / PARSE_WINDOW_HEAP_FRACTION)
+        }
+        val windows = ArrayList<List<JavaContext>>()
+        var start = 0
+        var size = 0L
+        for ((index, context) in contexts.withIndex()) {
+            val cost = context.file.length() * UAST_BYTES_PER_SOURCE_BYTE
+            if (index > start && size + cost > budget) {
+                windows.add(contexts.subList(start, index))
+                start = index
+                size = 0L
+            }
+            size += cost
+        }
+        if (start < contexts.size) {
+            windows.add(contexts.subList(start, contexts.size))
+        }
+        return windows
+    }
+
+    /**
+     * Returns the given source contexts in order. When [parallelParsing] is enabled, the
+     * contents of upcoming files are read on the worker pool, as far ahead as the
+     * [computeReadAheadBudget] allows. The UAST trees are still built on the calling
+     * thread, one file at a time, since the PSI environment is not thread safe.
+     */
+    private fun readAhead(
+        contexts: List<JavaContext>
+    ): ParallelParser<JavaContext, JavaContext> =
+        ParallelParser(
+            contexts, parallelParsing, computeReadAheadBudget(),
+            { it.file.length() * 2 }
+        ) { context ->
+            // In sequential mode this is called just before the file is visited, so
+            // leave it to the detectors to read the contents if they need them
+            if (parallelParsing) {
+                context.getContents()
+            }
+            context
+        }
+
+    /**
+     * Returns the number of bytes of source text which may be read ahead of the
+     * detectors, as a fraction of the heap which is currently available
+     */
+    private fun computeReadAheadBudget(): Long =
+        Math.max(MIN_READ_AHEAD_BUDGET, getAvailableHeap() / READ_AHEAD_HEAP_FRACTION)
+
+    /** Returns the number of bytes the heap can still grow by */
+    private fun getAvailableHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())
+    }
+
+    /** Creates a visitor for the given scanners which cannot be replayed from the cache */
+    private fun createUncachedVisitor(
+        parser: UastParser,
+        scanners: List<Detector>
+    ): UElementVisitor =
+        UElementVisitor(parser, scanners.filter { !cacheableDetectors.contains(it.javaClass) })
+
+    /**
+     * Visits the file of the given context by calling [visit], unless the [incidentCache]
+     * has results for the file. In that case the cached incidents are reported again, the
+     * partial state of the given detectors is restored, and [visitUncached] is called to
+     * visit the file with the remaining detectors whose results cannot be cached.
+     */
+    private fun <T : Any> visitCachedFile(
+        context: Context,
+        contents: () -> CharSequence?,
+        detectors: List<T>,
+        visit: () -> Unit,
+        visitUncached: (List<T>) -> Unit
+    ) {
+        val cache = incidentCache
+        val text = if (cache != null && phase == 1) contents() else null
+        if (cache == null || text == null) {
+            visit()
+            return
+        }
+
+        val key = computeCacheKey(getCacheFingerprint(context.project), context.project,
+            context.file, text)
+        val entry = cache.read(key)
+        if (entry == null) {
+            val pending = PendingCacheEntry(key, context.file)
+            pendingCacheEntries[context.file] = pending
+            recordingCacheEntry = pending
+            try {
+                visit()
+            } finally {
+                recordingCacheEntry = null
+            }
+            for (detector in detectors) {
+                if (detector is PartialStateDetector) {
+                    val state = detector.getPartialState(context) ?: continue
+                    pending.states[detector.javaClass.name] = state
                 }
             }
+            return
+        }
+
+        replayCacheEntry(context, entry, detectors)
+        val uncached = detectors.filter { !cacheableDetectors.contains(it.javaClass) }
+        if (!uncached.isEmpty()) {
+            visitUncached(uncached)
+        }
+    }
+
+    /**
+     * Reports the cached incidents of the file of the given context again, and restores
+     * the partial state the given detectors collected from it
+     */
+    private fun replayCacheEntry(
+        context: Context,
+        entry: IncidentCache.Entry,
+        detectors: List<Any>
+    ) {
+        for (incident in entry.incidents) {
+            val issue = registry.getIssue(incident.issueId) ?: continue
+            client.report(
+                context, issue, incident.severity, incident.createLocation(context.file),
+                incident.message, incident.format, null
+            )
+        }
+        for (detector in detectors) {
+            if (detector is PartialStateDetector) {
+                val state = entry.states[detector.javaClass.name] ?: continue
+                detector.mergePartialState(context, state)
+            }
         }
     }
 
+    /**
+     * Computes the cache key of the given file. This only depends on its arguments, so
+     * unlike [getCacheFingerprint] it can be called from worker threads.
+     */
+    private fun computeCacheKey(
+        fingerprint: String,
+        project: Project,
+        file: File,
+        contents: CharSequence
+    ): String =
+        Hashing.sha256().newHasher()
+            .putString(fingerprint, Charsets.UTF_8)
+            .putString(file.relativeToOrSelf(project.dir).path, Charsets.UTF_8)
+            .putByte(0)
+            .putString(contents, Charsets.UTF_8)
+            .hash()
+            .toString()
+
+    /**
+     * Returns a fingerprint of everything besides the contents of a file which can
+     * affect what the cacheable detectors report for it: the lint version, the
+     * cacheable detectors, the enabled issues, the lint.xml configuration and the
+     * project settings. Any change to these invalidates all the cached entries of the
+     * project. Since the cacheable detectors don't look at other files, a change to
+     * another file of the project does not.
+     */
+    private fun getCacheFingerprint(project: Project): String =
+        cacheFingerprints.getOrPut(project) {
+            val hasher = Hashing.sha256().newHasher()
+            val sb = StringBuilder()
+            sb.append(client.getClientRevision()).append('\n')
+            for (detectorClass in cacheableDetectors.map { it.name }.sorted()) {
+                sb.append(detectorClass).append('\n')
+            }
+            val configuration = project.getConfiguration(this)
+            for (issue in registry.issues.sortedBy { it.id }) {
+                sb.append(issue.id).append(':').append(configuration.getSeverity(issue))
+                    .append('\n')
+            }
+            sb.append(project.minSdkVersion.apiString).append('\n')
+            sb.append(project.targetSdkVersion.apiString).append('\n')
+            sb.append(project.buildSdk).append('\n')
+            sb.append(project.getPackage()).append('\n')
+            sb.append(project.isLibrary).append(checkTestSources).append(ignoreTestSources)
+                .append(checkGeneratedSources).append(fatalOnlyMode).append('\n')
+            hasher.putString(sb, Charsets.UTF_8)
+
+            val lintXml = File(project.dir, "lint.xml")
+            if (lintXml.isFile) {
+                hasher.putBytes(client.readBytes(lintXml))
+            }
+
+            hasher.hash().toString()
+        }
+
+    /**
+     * Records an incident reported for a file whose results are being cached, or marks
+     * the entry of the file as not cacheable if the incident cannot be replayed later
+     */
+    private fun recordIncident(
+        issue: Issue,
+        severity: Severity,
+        location: Location,
+        message: String,
+        format: TextFormat,
+        fix: LintFix?
+    ) {
+        val detectorClass = client.replaceDetector(issue.implementation.detectorClass)
+        if (!cacheableDetectors.contains(detectorClass)) {
+            // Detectors which cannot be cached report their incidents again in each run
+            return
+        }
+
+        val recording = recordingCacheEntry
+        if (recording == null) {
+            // Reported after the files have been visited. Single file detectors are
+            // not expected to do this, so don't skip the file in the next run. Partial
+            // state detectors report such incidents from the merged state each run.
+            val pending = pendingCacheEntries[location.file]
+            if (pending != null &&
+                !PartialStateDetector::class.java.isAssignableFrom(detectorClass)
+            ) {
+                pending.cacheable = false
+            }
+            return
+        }
+
+        val locations = IncidentCache.toCachedLocations(location, recording.file)
+        if (locations == null || fix != null) {
+            // Quick fixes are not cached, and neither are locations in other files
+            recording.cacheable = false
+            return
+        }
+        recording.incidents.add(
+            IncidentCache.CachedIncident(issue.id, severity, message, format, locations)
+        )
+    }
+
+    /** Writes the entries recorded for the files visited in this run to the cache */
+    private fun writeCacheEntries() {
+        val cache = incidentCache ?: return
+        for (pending in pendingCacheEntries.values) {
+            if (!pending.cacheable) {
+                continue
+            }
+            try {
+                cache.write(pending.key, IncidentCache.Entry(pending.incidents, pending.states))
+            } catch (e: IOException) {
+                client.log(e, "Couldn't write lint cache entry for %1\$s", pending.file)
+                break
+            }
+        }
+        pendingCacheEntries.clear()
+    }
+
+    /** The incidents and partial state recorded while visiting a file */
+    private class PendingCacheEntry(val key: String, val file: File) {
+        val incidents = ArrayList<IncidentCache.CachedIncident>()
+        val states = LinkedHashMap<String, String>()
+        var cacheable = true
+    }
+
     private fun filterTestScanners(scanners: List<Detector>): List<Detector> {
         val testScanners = ArrayList<Detector>(scanners.size)
         // Compute intersection of Java and test scanners
@@ -1907,32 +2362,63 @@ class LintDriver
             // Process files in alphabetical order, to ensure stable output
             // (for example for the duplicate resource detector)
             Arrays.sort(files)
-            for (file in files) {
-                if (isXmlFile(file)) {
-                    val context = createXmlContext(project, main, file, type, parser) ?: continue
-                    try {
+            val xmlDetectors = currentXmlDetectors ?: emptyList<XmlScanner>()
+            // When all the detectors of this folder can be replayed from the cache, files
+            // with cached results don't need to be parsed at all
+            val cacheFingerprint =
+                if (incidentCache != null && phase == 1 &&
+                    xmlDetectors.all { cacheableDetectors.contains(it.javaClass) }
+                ) {
+                    getCacheFingerprint(project)
+                } else {
+                    null
+                }
+            // Only the XML parsing runs ahead on the worker pool; the detectors visit the
+            // documents on this thread
+            ParallelParser(files.asList(), parallelParsing) { file ->
+                if (isXmlFile(file)) readXmlFile(file, parser, project, cacheFingerprint) else null
+            }.use { sources ->
+                for (file in files) {
+                    val source = sources.next()
+                    if (isXmlFile(file)) {
+                        source ?: continue
+                        val xml = source.xml
+                        val document = source.document
+                        if (document == null) {
+                            val context = ResourceContext(this, project, main, file, type, xml)
+                            fireEvent(EventType.SCANNING_FILE, context)
+                            replayCacheEntry(context, source.cached!!, xmlDetectors)
+                        } else {
+                            val context =
+                                XmlContext(this, project, main, file, type, parser, xml, document)
+                            try {
+                                fireEvent(EventType.SCANNING_FILE, context)
+                                visitCachedFile(context, { xml }, xmlDetectors,
+                                    { visitor.visitFile(context) },
+                                    { ResourceVisitor(parser, it, null).visitFile(context) })
+                            } finally {
+                                disposeXmlContext(context)
+                            }
+                        }
+                        fileCount++
+                        resourceFileCount++
+                    } else if (binaryChecks != null &&
+                        (isBitmapFile(file) || type == ResourceFolderType.RAW)
+                    ) {
+                        val context = object :
+                            ResourceContext(this, project, main, file, type, "") {
+                            override val resourceFolder: File?
+                                // Like super, but for the parent folder instead of the context file
+                                get() = if (resourceFolderType != null) file.parentFile else null
+                        }
                         fireEvent(EventType.SCANNING_FILE, context)
-                        visitor.visitFile(context)
-                    } finally {
-                        disposeXmlContext(context)
+                        visitor.visitBinaryResource(context)
+                        fileCount++
+                        resourceFileCount++
                     }
-                    fileCount++
-                    resourceFileCount++
-                } else if (binaryChecks != null &&
-                    (isBitmapFile(file) || type == ResourceFolderType.RAW)
-                ) {
-                    val context = object : ResourceContext(this, project, main, file, type, "") {
-                        override val resourceFolder: File?
-                            // Like super, but for the parent folder instead of the context file
-                            get() = if (resourceFolderType != null) file.parentFile else null
+                    if (isCanceled) {
+                        return
                     }
-                    fireEvent(EventType.SCANNING_FILE, context)
-                    visitor.visitBinaryResource(context)
-                    fileCount++
-                    resourceFileCount++
-                }
-                if (isCanceled) {
-                    return
                 }
             }
         }
@@ -1948,20 +2434,51 @@ class LintDriver
         type: ResourceFolderType?,
         parser: XmlParser
     ): XmlContext? {
+        val source = readXmlFile(file, parser, project, null) ?: return null
+        val document = source.document ?: return null
+        return XmlContext(this, project, main, file, type, parser, source.xml, document)
+    }
+
+    /**
+     * Reads the given XML file, and parses it unless a [cacheFingerprint] is given and
+     * the [incidentCache] has results for the file. Returns null if the file is empty
+     * or could not be parsed. Called from worker threads when [parallelParsing] is
+     * enabled.
+     */
+    private fun readXmlFile(
+        file: File,
+        parser: XmlParser,
+        project: Project,
+        cacheFingerprint: String?
+    ): XmlSource? {
         assert(isXmlFile(file))
         val contents = client.readFile(file)
         if (contents.isEmpty()) {
             return null
         }
         val xml = contents.toString()
+        if (cacheFingerprint != null) {
+            val key = computeCacheKey(cacheFingerprint, project, file, xml)
+            val entry = incidentCache?.read(key)
+            if (entry != null) {
+                return XmlSource(xml, null, entry)
+            }
+        }
         val document = parser.parseXml(xml, file) ?: return null
 
         // Ignore empty documents
         document.documentElement ?: return null
 
-        return XmlContext(this, project, main, file, type, parser, xml, document)
+        return XmlSource(xml, document, null)
     }
 
+    /** The contents of an XML file, and either its document or its cached results */
+    private class XmlSource(
+        val xml: String,
+        val document: Document?,
+        val cached: IncidentCache.Entry?
+    )
+
     /** Checks individual resources  */
     private fun checkIndividualResources(
         project: Project,
@@ -2104,6 +2621,10 @@ class LintDriver
                 return
             }
 
+            if (!pendingCacheEntries.isEmpty()) {
+                recordIncident(issue, severity, location, message, format, fix)
+            }
+
             val configuration = context.configuration
             if (!configuration.isEnabled(issue)) {
                 if (issue.category !== Category.LINT) {
@@ -2874,6 +3395,21 @@ class LintDriver
          */
         private const val MAX_PHASES = 3
 
+        /** Smallest amount of source text (in bytes) to read ahead of the detectors */
+        private const val MIN_READ_AHEAD_BUDGET = 1024 * 1024L
+
+        /** Fraction of the available heap used for source text read ahead of the detectors */
+        private const val READ_AHEAD_HEAP_FRACTION = 16
+
+        /** Smallest estimated size (in bytes) of the UAST trees of a window of source files */
+        private const val MIN_PARSE_WINDOW_BUDGET = 64 * 1024 * 1024L
+
+        /** Fraction of the available heap used for the UAST trees of a window of source files */
+        private const val PARSE_WINDOW_HEAP_FRACTION = 4
+
+        /** Rough size of the PSI and UAST trees built for each byte of source text */
+        private const val UAST_BYTES_PER_SOURCE_BYTE = 20
+
         private const val SUPPRESS_LINT_VMSIG = "/$SUPPRESS_LINT;"
 
         /** Prefix used by the comment suppress mechanism in Studio/IntelliJ  */
@@ -221,9 +221,11 @@ internal class OtherFileVisitor(private val detectors: List<Detector>) {
                 for (file in files) {
                     val context = Context(driver, project, main, file)
                     for (detector in applicable) {
-                        detector.beforeCheckFile(context)
-                        detector.run(context)
-                        detector.afterCheckFile(context)
+                        driver.detectorProfiler.profile(detector, "run") {
+                            detector.beforeCheckFile(context)
+                            detector.run(context)
+                            detector.afterCheckFile(context)
+                        }
                         driver.fileCount++
                     }
                     if (driver.isCanceled) {
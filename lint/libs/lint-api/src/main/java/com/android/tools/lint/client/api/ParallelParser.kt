@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.google.common.util.concurrent.Uninterruptibles
+import java.io.Closeable
+import java.util.ArrayDeque
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Parses a list of inputs ahead of the code consuming them.
+ *
+ * When [parallel] is false, each input is parsed on the calling thread when
+ * its result is requested, exactly as if [parse] was called inline. When it
+ * is true, a bounded window of upcoming inputs is parsed concurrently on the
+ * common fork-join pool. Either way the results are handed out in input
+ * order, so the code consuming them sees files in a deterministic order.
+ *
+ * The window can additionally be bounded by a memory [budget]: inputs are
+ * only parsed ahead while the estimated [size] of the pending results fits
+ * in the budget. The next input is always parsed, even if it alone exceeds
+ * the budget.
+ *
+ * Exceptions thrown by [parse] are rethrown from [next] for the input that
+ * caused them. The inputs being parsed ahead at that point are cancelled,
+ * and the remaining inputs are parsed on the calling thread.
+ *
+ * Once [close] returns, or [next] has returned the last result, [parse] is
+ * no longer running on any thread, so the caller can rely on all the work
+ * started for the inputs being over.
+ */
+internal class ParallelParser<T, R>(
+    private val inputs: List<T>,
+    private var parallel: Boolean,
+    private val budget: Long = Long.MAX_VALUE,
+    private val size: (T) -> Long = { 0L },
+    private val parse: (T) -> R
+) : Iterator<R>, Closeable {
+    private val pending = ArrayDeque<Task>()
+    private var submitted = 0
+    private var consumed = 0
+    private var pendingSize = 0L
+
+    override fun hasNext(): Boolean = consumed < inputs.size
+
+    override fun next(): R {
+        if (!hasNext()) {
+            throw NoSuchElementException()
+        }
+        if (!parallel) {
+            return parse(inputs[consumed++])
+        }
+
+        val pool = ForkJoinPool.commonPool()
+        while (submitted < inputs.size && pending.size < WINDOW_SIZE) {
+            val input = inputs[submitted]
+            val inputSize = size(input)
+            if (pending.isNotEmpty() && pendingSize + inputSize > budget) {
+                break
+            }
+            submitted++
+            pendingSize += inputSize
+            val task = Task(input)
+            task.future = pool.submit(task)
+            pending.add(task)
+        }
+        pendingSize -= size(inputs[consumed++])
+        val task = pending.removeFirst()
+        task.future.get()
+        val failure = task.failure
+        if (failure != null) {
+            // Don't keep working ahead for a consumer which is likely to give up
+            close()
+            parallel = false
+            throw failure
+        }
+        @Suppress("UNCHECKED_CAST")
+        return task.result as R
+    }
+
+    /**
+     * Cancels the parsing of inputs which have not been consumed yet, and waits
+     * for the ones which had already started
+     */
+    override fun close() {
+        for (task in pending) {
+            task.cancel()
+        }
+        for (task in pending) {
+            task.await()
+        }
+        pending.clear()
+        submitted = consumed
+        pendingSize = 0
+    }
+
+    /**
+     * The parsing of a single input on the pool. The outcome is kept in the task rather
+     * than in its future, which would wrap the exceptions thrown by [parse].
+     */
+    private inner class Task(private val input: T) : Runnable {
+        lateinit var future: Future<*>
+        var result: R? = null
+        var failure: Throwable? = null
+        /** Set by the first of the task starting to run and the task being cancelled */
+        private val claimed = AtomicBoolean()
+        private val finished = CountDownLatch(1)
+
+        override fun run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return
+            }
+            try {
+                result = parse(input)
+            } catch (e: Throwable) {
+                failure = e
+            } finally {
+                finished.countDown()
+            }
+        }
+
+        fun cancel() {
+            future.cancel(false)
+            if (claimed.compareAndSet(false, true)) {
+                // Never started, and now it never will
+                finished.countDown()
+            }
+        }
+
+        fun await() = Uninterruptibles.awaitUninterruptibly(finished)
+    }
+
+    companion object {
+        /**
+         * Maximum number of inputs parsed ahead of the consumer, which bounds
+         * the number of parsed files held in memory at any time
+         */
+        private val WINDOW_SIZE = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism())
+    }
+}
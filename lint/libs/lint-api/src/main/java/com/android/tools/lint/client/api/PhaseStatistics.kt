@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.google.common.annotations.Beta
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import java.util.ArrayDeque
+
+/**
+ * Records the time spent and the peak heap usage in the various phases of a
+ * lint run, such as visiting the resource files or the source files of a
+ * project. Phases can be nested; the heap usage peaks observed while an inner
+ * phase runs are attributed to the enclosing phases as well. The peak usage of
+ * the heap pools is only read, never reset, so it is shared with any other
+ * code monitoring the JVM.
+ *
+ * **NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.**
+ */
+@Beta
+class PhaseStatistics {
+    /** Statistics for a single phase, accumulated over all the times it ran */
+    class Phase(
+        /** The name of the phase */
+        val name: String
+    ) {
+        /** The number of times the phase ran */
+        var count = 0
+            internal set
+        /** The total time spent in the phase, in milliseconds */
+        var timeMs = 0L
+            internal set
+        /** The largest heap usage observed while the phase was running, in bytes */
+        var peakHeapBytes = 0L
+            internal set
+    }
+
+    private val heapPools = ManagementFactory.getMemoryPoolMXBeans()
+        .filter { it.type == MemoryType.HEAP && it.isValid }
+    private val phaseMap = LinkedHashMap<String, Phase>()
+    private val active = ArrayDeque<Phase>()
+
+    /** The phases recorded so far, in the order they first ran */
+    val phases: Collection<Phase>
+        get() = phaseMap.values
+
+    /** Runs the given [block] and records its time and peak heap usage under [name] */
+    fun <T> measure(name: String, block: () -> T): T {
+        val phase = phaseMap.getOrPut(name) { Phase(name) }
+        val before = sampleHeap()
+        active.push(phase)
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            phase.timeMs += (System.nanoTime() - start) / 1_000_000
+            phase.count++
+            active.pop()
+            val after = sampleHeap()
+            // A pool peak which rose while the phase ran was reached by the phase; otherwise
+            // only the usage observed at its boundaries is known
+            val peak = if (after.peak > before.peak) {
+                after.peak
+            } else {
+                Math.max(before.used, after.used)
+            }
+            for (p in active) {
+                p.peakHeapBytes = Math.max(p.peakHeapBytes, peak)
+            }
+            phase.peakHeapBytes = Math.max(phase.peakHeapBytes, peak)
+        }
+    }
+
+    /** The current heap usage, and the sum of the peak usage of the heap pools */
+    private class HeapSample(val used: Long, val peak: Long)
+
+    private fun sampleHeap(): HeapSample {
+        var used = 0L
+        var peak = 0L
+        for (pool in heapPools) {
+            used += pool.usage?.used ?: 0L
+            peak += pool.peakUsage?.used ?: 0L
+        }
+        return HeapSample(used, peak)
+    }
+
+    /** Returns a human readable summary of the recorded phases, one line per phase */
+    fun describe(): String {
+        val sb = StringBuilder()
+        for (phase in phases) {
+            sb.append(
+                String.format(
+                    "%1\$-24s %2\$8d ms %3\$8d MB",
+                    phase.name, phase.timeMs, phase.peakHeapBytes / (1024 * 1024)
+                )
+            )
+            if (phase.count > 1) {
+                sb.append(" (").append(phase.count).append(" runs)")
+            }
+            sb.append('\n')
+        }
+        return sb.toString()
+    }
+}
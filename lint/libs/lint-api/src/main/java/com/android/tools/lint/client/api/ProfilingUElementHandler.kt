@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.detector.api.Detector
+import org.jetbrains.uast.UAnnotation
+import org.jetbrains.uast.UArrayAccessExpression
+import org.jetbrains.uast.UBinaryExpression
+import org.jetbrains.uast.UBinaryExpressionWithType
+import org.jetbrains.uast.UBlockExpression
+import org.jetbrains.uast.UBreakExpression
+import org.jetbrains.uast.UCallExpression
+import org.jetbrains.uast.UCallableReferenceExpression
+import org.jetbrains.uast.UCatchClause
+import org.jetbrains.uast.UClass
+import org.jetbrains.uast.UClassInitializer
+import org.jetbrains.uast.UClassLiteralExpression
+import org.jetbrains.uast.UContinueExpression
+import org.jetbrains.uast.UDeclaration
+import org.jetbrains.uast.UDeclarationsExpression
+import org.jetbrains.uast.UDoWhileExpression
+import org.jetbrains.uast.UElement
+import org.jetbrains.uast.UEnumConstant
+import org.jetbrains.uast.UExpression
+import org.jetbrains.uast.UExpressionList
+import org.jetbrains.uast.UField
+import org.jetbrains.uast.UFile
+import org.jetbrains.uast.UForEachExpression
+import org.jetbrains.uast.UForExpression
+import org.jetbrains.uast.UIfExpression
+import org.jetbrains.uast.UImportStatement
+import org.jetbrains.uast.ULabeledExpression
+import org.jetbrains.uast.ULambdaExpression
+import org.jetbrains.uast.ULiteralExpression
+import org.jetbrains.uast.ULocalVariable
+import org.jetbrains.uast.UMethod
+import org.jetbrains.uast.UObjectLiteralExpression
+import org.jetbrains.uast.UParameter
+import org.jetbrains.uast.UParenthesizedExpression
+import org.jetbrains.uast.UPolyadicExpression
+import org.jetbrains.uast.UPostfixExpression
+import org.jetbrains.uast.UPrefixExpression
+import org.jetbrains.uast.UQualifiedReferenceExpression
+import org.jetbrains.uast.UReturnExpression
+import org.jetbrains.uast.USimpleNameReferenceExpression
+import org.jetbrains.uast.USuperExpression
+import org.jetbrains.uast.USwitchClauseExpression
+import org.jetbrains.uast.USwitchExpression
+import org.jetbrains.uast.UThisExpression
+import org.jetbrains.uast.UThrowExpression
+import org.jetbrains.uast.UTryExpression
+import org.jetbrains.uast.UTypeReferenceExpression
+import org.jetbrains.uast.UUnaryExpression
+import org.jetbrains.uast.UVariable
+import org.jetbrains.uast.UWhileExpression
+
+/**
+ * A [UElementHandler] which forwards all the callbacks to the handler of a
+ * detector, attributing their cost to the detector in a [DetectorProfiler]
+ */
+internal class ProfilingUElementHandler(
+    private val delegate: UElementHandler,
+    private val detector: Detector,
+    private val profiler: DetectorProfiler
+) : UElementHandler() {
+    private inline fun measure(callback: String, block: () -> Unit) =
+        profiler.measure(detector, callback, block)
+
+    override fun visitAnnotation(node: UAnnotation) {
+        measure("visitAnnotation") { delegate.visitAnnotation(node) }
+    }
+
+    override fun visitArrayAccessExpression(node: UArrayAccessExpression) {
+        measure("visitArrayAccessExpression") { delegate.visitArrayAccessExpression(node) }
+    }
+
+    override fun visitBinaryExpression(node: UBinaryExpression) {
+        measure("visitBinaryExpression") { delegate.visitBinaryExpression(node) }
+    }
+
+    override fun visitBinaryExpressionWithType(node: UBinaryExpressionWithType) {
+        measure("visitBinaryExpressionWithType") { delegate.visitBinaryExpressionWithType(node) }
+    }
+
+    override fun visitBlockExpression(node: UBlockExpression) {
+        measure("visitBlockExpression") { delegate.visitBlockExpression(node) }
+    }
+
+    override fun visitBreakExpression(node: UBreakExpression) {
+        measure("visitBreakExpression") { delegate.visitBreakExpression(node) }
+    }
+
+    override fun visitCallExpression(node: UCallExpression) {
+        measure("visitCallExpression") { delegate.visitCallExpression(node) }
+    }
+
+    override fun visitCallableReferenceExpression(node: UCallableReferenceExpression) {
+        measure("visitCallableReferenceExpression") {
+            delegate.visitCallableReferenceExpression(node)
+        }
+    }
+
+    override fun visitCatchClause(node: UCatchClause) {
+        measure("visitCatchClause") { delegate.visitCatchClause(node) }
+    }
+
+    override fun visitClass(node: UClass) {
+        measure("visitClass") { delegate.visitClass(node) }
+    }
+
+    override fun visitClassLiteralExpression(node: UClassLiteralExpression) {
+        measure("visitClassLiteralExpression") { delegate.visitClassLiteralExpression(node) }
+    }
+
+    override fun visitContinueExpression(node: UContinueExpression) {
+        measure("visitContinueExpression") { delegate.visitContinueExpression(node) }
+    }
+
+    override fun visitDeclaration(node: UDeclaration) {
+        measure("visitDeclaration") { delegate.visitDeclaration(node) }
+    }
+
+    override fun visitDeclarationsExpression(node: UDeclarationsExpression) {
+        measure("visitDeclarationsExpression") { delegate.visitDeclarationsExpression(node) }
+    }
+
+    override fun visitDoWhileExpression(node: UDoWhileExpression) {
+        measure("visitDoWhileExpression") { delegate.visitDoWhileExpression(node) }
+    }
+
+    override fun visitElement(node: UElement) {
+        measure("visitElement") { delegate.visitElement(node) }
+    }
+
+    override fun visitEnumConstant(node: UEnumConstant) {
+        measure("visitEnumConstant") { delegate.visitEnumConstant(node) }
+    }
+
+    override fun visitExpression(node: UExpression) {
+        measure("visitExpression") { delegate.visitExpression(node) }
+    }
+
+    override fun visitExpressionList(node: UExpressionList) {
+        measure("visitExpressionList") { delegate.visitExpressionList(node) }
+    }
+
+    override fun visitField(node: UField) {
+        measure("visitField") { delegate.visitField(node) }
+    }
+
+    override fun visitFile(node: UFile) {
+        measure("visitFile") { delegate.visitFile(node) }
+    }
+
+    override fun visitForEachExpression(node: UForEachExpression) {
+        measure("visitForEachExpression") { delegate.visitForEachExpression(node) }
+    }
+
+    override fun visitForExpression(node: UForExpression) {
+        measure("visitForExpression") { delegate.visitForExpression(node) }
+    }
+
+    override fun visitIfExpression(node: UIfExpression) {
+        measure("visitIfExpression") { delegate.visitIfExpression(node) }
+    }
+
+    override fun visitImportStatement(node: UImportStatement) {
+        measure("visitImportStatement") { delegate.visitImportStatement(node) }
+    }
+
+    override fun visitInitializer(node: UClassInitializer) {
+        measure("visitInitializer") { delegate.visitInitializer(node) }
+    }
+
+    override fun visitLabeledExpression(node: ULabeledExpression) {
+        measure("visitLabeledExpression") { delegate.visitLabeledExpression(node) }
+    }
+
+    override fun visitLambdaExpression(node: ULambdaExpression) {
+        measure("visitLambdaExpression") { delegate.visitLambdaExpression(node) }
+    }
+
+    override fun visitLiteralExpression(node: ULiteralExpression) {
+        measure("visitLiteralExpression") { delegate.visitLiteralExpression(node) }
+    }
+
+    override fun visitLocalVariable(node: ULocalVariable) {
+        measure("visitLocalVariable") { delegate.visitLocalVariable(node) }
+    }
+
+    override fun visitMethod(node: UMethod) {
+        measure("visitMethod") { delegate.visitMethod(node) }
+    }
+
+    override fun visitObjectLiteralExpression(node: UObjectLiteralExpression) {
+        measure("visitObjectLiteralExpression") { delegate.visitObjectLiteralExpression(node) }
+    }
+
+    override fun visitParameter(node: UParameter) {
+        measure("visitParameter") { delegate.visitParameter(node) }
+    }
+
+    override fun visitParenthesizedExpression(node: UParenthesizedExpression) {
+        measure("visitParenthesizedExpression") { delegate.visitParenthesizedExpression(node) }
+    }
+
+    override fun visitPolyadicExpression(node: UPolyadicExpression) {
+        measure("visitPolyadicExpression") { delegate.visitPolyadicExpression(node) }
+    }
+
+    override fun visitPostfixExpression(node: UPostfixExpression) {
+        measure("visitPostfixExpression") { delegate.visitPostfixExpression(node) }
+    }
+
+    override fun visitPrefixExpression(node: UPrefixExpression) {
+        measure("visitPrefixExpression") { delegate.visitPrefixExpression(node) }
+    }
+
+    override fun visitQualifiedReferenceExpression(node: UQualifiedReferenceExpression) {
+        measure("visitQualifiedReferenceExpression") {
+            delegate.visitQualifiedReferenceExpression(node)
+        }
+    }
+
+    override fun visitReturnExpression(node: UReturnExpression) {
+        measure("visitReturnExpression") { delegate.visitReturnExpression(node) }
+    }
+
+    override fun visitSimpleNameReferenceExpression(node: USimpleNameReferenceExpression) {
+        measure("visitSimpleNameReferenceExpression") {
+            delegate.visitSimpleNameReferenceExpression(node)
+        }
+    }
+
+    override fun visitSuperExpression(node: USuperExpression) {
+        measure("visitSuperExpression") { delegate.visitSuperExpression(node) }
+    }
+
+    override fun visitSwitchClauseExpression(node: USwitchClauseExpression) {
+        measure("visitSwitchClauseExpression") { delegate.visitSwitchClauseExpression(node) }
+    }
+
+    override fun visitSwitchExpression(node: USwitchExpression) {
+        measure("visitSwitchExpression") { delegate.visitSwitchExpression(node) }
+    }
+
+    override fun visitThisExpression(node: UThisExpression) {
+        measure("visitThisExpression") { delegate.visitThisExpression(node) }
+    }
+
+    override fun visitThrowExpression(node: UThrowExpression) {
+        measure("visitThrowExpression") { delegate.visitThrowExpression(node) }
+    }
+
+    override fun visitTryExpression(node: UTryExpression) {
+        measure("visitTryExpression") { delegate.visitTryExpression(node) }
+    }
+
+    override fun visitTypeReferenceExpression(node: UTypeReferenceExpression) {
+        measure("visitTypeReferenceExpression") { delegate.visitTypeReferenceExpression(node) }
+    }
+
+    override fun visitUnaryExpression(node: UUnaryExpression) {
+        measure("visitUnaryExpression") { delegate.visitUnaryExpression(node) }
+    }
+
+    override fun visitVariable(node: UVariable) {
+        measure("visitVariable") { delegate.visitVariable(node) }
+    }
+
+    override fun visitWhileExpression(node: UWhileExpression) {
+        measure("visitWhileExpression") { delegate.visitWhileExpression(node) }
+    }
+}
@@ -66,6 +66,8 @@ class ResourceVisitor {
     private final List<XmlScanner> allDetectors;
     private final List<? extends Detector> binaryDetectors;
     private final XmlParser parser;
+    /** The profiler of the driver of the file being visited, if profiling */
+    @Nullable private DetectorProfiler profiler;
 
     // Really want this:
     //<T extends List<Detector> & XmlScanner> XmlVisitor(IDomParser parser,
@@ -118,13 +120,22 @@ class ResourceVisitor {
     }
 
     void visitFile(@NonNull XmlContext context) {
+        profiler = context.getDriver().getDetectorProfiler();
         try {
             for (XmlScanner check : allDetectors) {
-                check.beforeCheckFile(context);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "beforeCheckFile",
+                        () -> check.beforeCheckFile(context));
             }
 
             for (XmlScanner check : documentDetectors) {
-                check.visitDocument(context, context.document);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "visitDocument",
+                        () -> check.visitDocument(context, context.document));
             }
 
             if (!elementToCheck.isEmpty()
@@ -135,7 +146,11 @@ class ResourceVisitor {
             }
 
             for (XmlScanner check : allDetectors) {
-                check.afterCheckFile(context);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "afterCheckFile",
+                        () -> check.afterCheckFile(context));
             }
         } catch (RuntimeException e) {
             LintDriver.handleDetectorError(context, context.getDriver(), e);
@@ -147,12 +162,20 @@ class ResourceVisitor {
         if (elementChecks != null) {
             assert elementChecks instanceof RandomAccess;
             for (XmlScanner check : elementChecks) {
-                check.visitElement(context, element);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "visitElement",
+                        () -> check.visitElement(context, element));
             }
         }
         if (!allElementDetectors.isEmpty()) {
             for (XmlScanner check : allElementDetectors) {
-                check.visitElement(context, element);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "visitElement",
+                        () -> check.visitElement(context, element));
             }
         }
 
@@ -167,12 +190,20 @@ class ResourceVisitor {
                 List<XmlScanner> list = attributeToCheck.get(name);
                 if (list != null) {
                     for (XmlScanner check : list) {
-                        check.visitAttribute(context, attribute);
+                        DetectorProfiler.profile(
+                                profiler,
+                                (Detector) check,
+                                "visitAttribute",
+                                () -> check.visitAttribute(context, attribute));
                     }
                 }
                 if (!allAttributeDetectors.isEmpty()) {
                     for (XmlScanner check : allAttributeDetectors) {
-                        check.visitAttribute(context, attribute);
+                        DetectorProfiler.profile(
+                                profiler,
+                                (Detector) check,
+                                "visitAttribute",
+                                () -> check.visitAttribute(context, attribute));
                     }
                 }
             }
@@ -190,12 +221,20 @@ class ResourceVisitor {
         // Post hooks
         if (elementChecks != null) {
             for (XmlScanner check : elementChecks) {
-                check.visitElementAfter(context, element);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "visitElementAfter",
+                        () -> check.visitElementAfter(context, element));
             }
         }
         if (!allElementDetectors.isEmpty()) {
             for (XmlScanner check : allElementDetectors) {
-                check.visitElementAfter(context, element);
+                DetectorProfiler.profile(
+                        profiler,
+                        (Detector) check,
+                        "visitElementAfter",
+                        () -> check.visitElementAfter(context, element));
             }
         }
     }
@@ -246,6 +246,7 @@ internal class UElementVisitor constructor(
             // a full warning (such as IssueRegistry#PARSER_ERROR) with details, location, etc.)
 
             val client = context.client
+            val profiler = context.driver.detectorProfiler
             try {
                 context.setJavaFile(uFile.psi) // needed for getLocation
                 context.uastFile = uFile
@@ -253,7 +254,9 @@ internal class UElementVisitor constructor(
                 client.runReadAction(Runnable {
                     for (v in allDetectors) {
                         v.setContext(context)
-                        v.detector.beforeCheckFile(context)
+                        profiler.profile(v.detector, "beforeCheckFile") {
+                            v.detector.beforeCheckFile(context)
+                        }
                     }
                 })
 
@@ -290,7 +293,9 @@ internal class UElementVisitor constructor(
                 client.runReadAction(Runnable {
                     for (v in allDetectors) {
                         ProgressManager.checkCanceled()
-                        v.detector.afterCheckFile(context)
+                        profiler.profile(v.detector, "afterCheckFile") {
+                            v.detector.afterCheckFile(context)
+                        }
                     }
                 })
             } finally {
@@ -322,10 +327,13 @@ internal class UElementVisitor constructor(
                 generateCallGraph(projectContext, parser, allContexts)
             })
             if (callGraph != null && !callGraphDetectors.isEmpty()) {
+                val profiler = projectContext.driver.detectorProfiler
                 for (scanner in callGraphDetectors) {
                     projectContext.client.runReadAction(Runnable {
                         ProgressManager.checkCanceled()
-                        scanner.analyzeCallGraph(projectContext, callGraph)
+                        profiler.profile(scanner as Detector, "analyzeCallGraph") {
+                            scanner.analyzeCallGraph(projectContext, callGraph)
+                        }
                     })
                 }
             }
@@ -401,6 +409,11 @@ internal class UElementVisitor constructor(
                     mVisitor = detector.createUastHandler(mContext!!)
                     if (mVisitor == null) {
                         mVisitor = UElementHandler.NONE
+                    } else {
+                        val profiler = mContext!!.driver.detectorProfiler
+                        if (profiler != null) {
+                            mVisitor = ProfilingUElementHandler(mVisitor!!, detector, profiler)
+                        }
                     }
                 }
                 return mVisitor!!
@@ -417,6 +430,7 @@ internal class UElementVisitor constructor(
 
     private inner class SuperclassPsiVisitor(private val context: JavaContext) :
         AbstractUastVisitor() {
+        private val profiler = context.driver.detectorProfiler
 
         override fun visitLambdaExpression(node: ULambdaExpression): Boolean {
             // Have to go to PSI here; not available on ULambdaExpression yet
@@ -461,11 +475,13 @@ internal class UElementVisitor constructor(
                 if (list != null) {
                     for (v in list) {
                         val uastScanner = v.uastScanner
-                        if (uClass != null) {
-                            uastScanner.visitClass(context, uClass)
-                        } else {
-                            assert(lambda != null)
-                            uastScanner.visitClass(context, lambda!!)
+                        profiler.profile(v.detector, "visitClass") {
+                            if (uClass != null) {
+                                uastScanner.visitClass(context, uClass)
+                            } else {
+                                assert(lambda != null)
+                                uastScanner.visitClass(context, lambda!!)
+                            }
                         }
                     }
                 }
@@ -478,11 +494,13 @@ internal class UElementVisitor constructor(
                         if (list != null) {
                             for (v in list) {
                                 val uastScanner = v.uastScanner
-                                if (uClass != null) {
-                                    uastScanner.visitClass(context, uClass)
-                                } else {
-                                    assert(lambda != null)
-                                    uastScanner.visitClass(context, lambda!!)
+                                profiler.profile(v.detector, "visitClass") {
+                                    if (uClass != null) {
+                                        uastScanner.visitClass(context, uClass)
+                                    } else {
+                                        assert(lambda != null)
+                                        uastScanner.visitClass(context, lambda!!)
+                                    }
                                 }
                             }
                         }
@@ -1012,6 +1030,7 @@ internal class UElementVisitor constructor(
         private val mVisitMethods: Boolean = !methodDetectors.isEmpty()
         private val mVisitConstructors: Boolean = !constructorDetectors.isEmpty()
         private val mVisitReferences: Boolean = !referenceDetectors.isEmpty()
+        private val profiler = mContext.driver.detectorProfiler
 
         override fun visitSimpleNameReferenceExpression(node: USimpleNameReferenceExpression): Boolean {
             if (mVisitReferences || mVisitResources) {
@@ -1025,7 +1044,9 @@ internal class UElementVisitor constructor(
                     if (referenced != null) {
                         for (v in list) {
                             val uastScanner = v.uastScanner
-                            uastScanner.visitReference(mContext, node, referenced)
+                            profiler.profile(v.detector, "visitReference") {
+                                uastScanner.visitReference(mContext, node, referenced)
+                            }
                         }
                     }
                 }
@@ -1036,13 +1057,15 @@ internal class UElementVisitor constructor(
                 if (reference != null) {
                     for (v in resourceFieldDetectors) {
                         val uastScanner = v.uastScanner
-                        uastScanner.visitResourceReference(
-                            mContext,
-                            reference.node,
-                            reference.type,
-                            reference.name,
-                            reference.`package` == ANDROID_PKG
-                        )
+                        profiler.profile(v.detector, "visitResourceReference") {
+                            uastScanner.visitResourceReference(
+                                mContext,
+                                reference.node,
+                                reference.type,
+                                reference.name,
+                                reference.`package` == ANDROID_PKG
+                            )
+                        }
                     }
                 }
             }
@@ -1078,7 +1101,9 @@ internal class UElementVisitor constructor(
                         if (function != null) {
                             for (v in list) {
                                 val scanner = v.uastScanner
-                                scanner.visitMethodCall(mContext, node, function)
+                                profiler.profile(v.detector, "visitMethodCall") {
+                                    scanner.visitMethodCall(mContext, node, function)
+                                }
                             }
                         }
                     }
@@ -1096,7 +1121,9 @@ internal class UElementVisitor constructor(
                     if (list != null) {
                         for (v in list) {
                             val javaPsiScanner = v.uastScanner
-                            javaPsiScanner.visitConstructor(mContext, node, method)
+                            profiler.profile(v.detector, "visitConstructor") {
+                                javaPsiScanner.visitConstructor(mContext, node, method)
+                            }
                         }
                     }
                 }
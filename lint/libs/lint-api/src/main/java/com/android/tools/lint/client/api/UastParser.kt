@@ -187,7 +187,9 @@ abstract class UastParser {
     /**
      * Dispose any remaining data structures held for all contexts.
      * Typically frees up any resources allocated by
-     * [.prepare]
+     * [.prepare]. Lint may prepare and visit the sources of a project
+     * in several windows, in which case this is called after each
+     * window and [prepare] is called again for the next one.
      */
     open fun dispose() {
     }
@@ -118,6 +118,14 @@ open class Context(
         return contents
     }
 
+    /**
+     * Drops the cached contents of the file, if any, such that they can be
+     * garbage collected. A later call to [getContents] reads the file again.
+     */
+    internal fun releaseContents() {
+        contents = null
+    }
+
     /**
      * Gets the SDK info for the current project.
      *
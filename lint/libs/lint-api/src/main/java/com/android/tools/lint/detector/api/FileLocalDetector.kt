@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.detector.api
+
+import com.android.tools.lint.client.api.IncidentCache
+
+/**
+ * Marker interface for detectors whose incidents for a file only depend on
+ * the contents of that file and on the lint configuration: they keep no state
+ * across files, and don't look up symbols or resources defined in other files.
+ *
+ * When lint runs with an [IncidentCache], the incidents these detectors report
+ * for a file are cached, and replayed instead of visiting the file again as
+ * long as its contents don't change. Detectors which merely have a single file
+ * scope, but collect data from each file and report from
+ * [Detector.afterCheckRootProject] or similar hooks, must not implement this
+ * interface; see [PartialStateDetector] instead.
+ *
+ * **NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.**
+ */
+interface FileLocalDetector
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.detector.api
+
+import com.android.tools.lint.client.api.IncidentCache
+
+/**
+ * Interface for detectors which look at more than one file, but which can
+ * summarize what they collect from each file in a serialized form.
+ *
+ * When lint runs with an [IncidentCache], files which have not changed since a
+ * previous run are not visited by [FileLocalDetector]s; their incidents are
+ * replayed from the cache instead. Other detectors normally force such files
+ * to be visited again. Detectors that
+ * implement this interface can participate in the incremental analysis too:
+ * lint stores the state they collected from each file, and hands it back to
+ * them instead of visiting the file when it has not changed.
+ *
+ * Incidents reported while visiting a file are cached along with the state, so
+ * project wide incidents should be reported from [Detector.afterCheckRootProject]
+ * or similar hooks, after the states of all the files have been merged.
+ *
+ * **NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.**
+ */
+interface PartialStateDetector {
+    /**
+     * Returns the state this detector collected from the file of the given context,
+     * which was just visited, or null if there is nothing to remember for it
+     */
+    fun getPartialState(context: Context): String?
+
+    /**
+     * Merges state previously returned from [getPartialState] for the file of the
+     * given context into this detector. Called instead of visiting the file when
+     * the file has not changed since the state was computed.
+     */
+    fun mergePartialState(context: Context, state: String)
+}
@@ -39,10 +39,9 @@ import org.jetbrains.uast.java.JavaUParameter
 import java.io.BufferedWriter
 import java.io.FileWriter
 import java.io.PrintWriter
-import java.util.ArrayDeque
 import java.util.ArrayList
+import java.util.BitSet
 import java.util.HashMap
-import java.util.HashSet
 
 sealed class CallTarget {
     abstract val element: UElement
@@ -171,25 +170,50 @@ fun <T : Any> searchForPaths(
     getNeighbors: (T) -> Collection<T>
 ): Collection<List<T>> {
     val res = ArrayList<List<T>>()
-    val prev = HashMap<T, T?>(sources.associate { Pair(it, null) })
-    fun T.seen() = this in prev
-    val used = HashSet<T>() // Nodes already part of a result path.
-    val q = ArrayDeque<T>(sources.toSet())
-    while (!q.isEmpty()) {
-        val n = q.removeFirst()
+    // Nodes are numbered in the order they are discovered, which is also the order in
+    // which the breadth-first search visits them, so the node list doubles as the queue.
+    // This keeps the search to a single hash lookup per edge, with the rest of the
+    // search state in flat arrays.
+    val ids = HashMap<T, Int>()
+    val nodes = ArrayList<T>()
+    var prev = IntArray(Math.max(16, sources.size))
+    val used = BitSet() // Nodes already part of a result path.
+    fun discover(node: T, from: Int) {
+        if (ids.putIfAbsent(node, nodes.size) == null) {
+            if (nodes.size == prev.size) {
+                prev = prev.copyOf(prev.size * 2)
+            }
+            prev[nodes.size] = from
+            nodes.add(node)
+        }
+    }
+    sources.forEach { discover(it, -1) }
+    var head = 0
+    while (head < nodes.size) {
+        val id = head++
+        val n = nodes[id]
         if (isSink(n)) {
             // Keep running time linear by preempting path construction
             // if it intersects with one already seen.
-            val path = generateSequence(n) { if (it in used) null else prev[it] }
-                .toList()
-                .reversed()
-            if (path.none { it in used })
+            val path = ArrayList<T>()
+            var intersects = false
+            var current = id
+            while (current != -1) {
+                path.add(nodes[current])
+                if (used.get(current)) {
+                    intersects = true
+                    break
+                }
+                used.set(current)
+                current = prev[current]
+            }
+            if (!intersects) {
+                path.reverse()
                 res.add(path)
-            used.addAll(path)
+            }
         } else {
-            getNeighbors(n).filter { !it.seen() }.forEach {
-                q.addLast(it)
-                prev[it] = n
+            for (neighbor in getNeighbors(n)) {
+                discover(neighbor, id)
             }
         }
     }
@@ -29,13 +29,16 @@ import com.android.tools.lint.client.api.LintClient;
 import com.android.tools.lint.detector.api.Lint;
 import com.android.utils.Pair;
 import com.google.common.io.Files;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -56,12 +59,14 @@ import java.util.Set;
  * <p>The {@link Api} class provides access to the full Android API along with version information,
  * initialized from an XML file. This lookup class adds a binary cache around the API to make
  * initialization faster and to require fewer objects. It creates a binary cache data structure,
- * which fits in a single byte array, which means that to open the database you can just read in the
- * byte array and go. On one particular machine, this takes about 30-50 ms versus 600-800ms for the
- * full parse. It also helps memory by placing everything in a compact byte array instead of needing
- * separate strings (2 bytes per character in a char[] for the 25k method entries, 11k field entries
- * and 6k class entries) - and it also avoids the same number of Map.Entry objects. When creating
- * the memory data structure it performs a few other steps to help memory:
+ * which fits in a single byte array, which means that to open the database you can just map the
+ * file into memory and go. On one particular machine, reading it in took about 30-50 ms versus
+ * 600-800ms for the full parse; mapping it is nearly free, and the pages are shared through the OS
+ * page cache by all the processes running lint. It also helps memory by placing everything in a
+ * compact byte array instead of needing separate strings (2 bytes per character in a char[] for
+ * the 25k method entries, 11k field entries and 6k class entries) - and it also avoids the same
+ * number of Map.Entry objects. When creating the memory data structure it performs a few other
+ * steps to help memory:
  *
  * <ul>
  *   <li>It stores the strings as single bytes, since all the JVM signatures are in ASCII
@@ -78,9 +83,10 @@ public class ApiLookup {
     public static final int SDK_DATABASE_MIN_VERSION = 26;
 
     private static final String FILE_HEADER = "API database used by Android lint\000";
-    private static final int BINARY_FORMAT_VERSION = 15;
+    private static final int BINARY_FORMAT_VERSION = 16;
     private static final boolean DEBUG_SEARCH = false;
     private static final boolean WRITE_STATS = false;
+    private static final int MAX_CLASS_HASH_SEED = 1 << 16;
 
     private static final int CLASS_HEADER_MEMBER_OFFSETS = 1;
     private static final int CLASS_HEADER_API = 2;
@@ -93,10 +99,18 @@ public class ApiLookup {
     @VisibleForTesting static final boolean DEBUG_FORCE_REGENERATE_BINARY = false;
 
     private final Api mInfo;
-    private byte[] mData;
-    private int[] mIndices;
+    /** The memory mapped database file. Only read with absolute gets, so it can be shared. */
+    private ByteBuffer mData;
+    /** Offset of the index table in {@link #mData} */
+    private int mIndexOffset;
+    /** Offset of the class hash table in {@link #mData}, or 0 if there is none */
+    private int mClassHashOffset;
 
-    private static final Map<AndroidVersion, WeakReference<ApiLookup>> instances = new HashMap<>();
+    /**
+     * Shared instances. These are held strongly, since the database is memory mapped rather than
+     * loaded into the heap, so keeping it around is cheap while re-opening it is not.
+     */
+    private static final Map<AndroidVersion, ApiLookup> instances = new HashMap<>();
 
     private int containerCount;
     private final IAndroidTarget target;
@@ -129,8 +143,7 @@ public class ApiLookup {
     public static ApiLookup get(@NonNull LintClient client, @Nullable IAndroidTarget target) {
         synchronized (ApiLookup.class) {
             AndroidVersion version = target != null ? target.getVersion() : AndroidVersion.DEFAULT;
-            WeakReference<ApiLookup> reference = instances.get(version);
-            ApiLookup db = reference != null ? reference.get() : null;
+            ApiLookup db = instances.get(version);
             if (db == null) {
                 // Fallbacks: Allow the API database to be read from a custom location
                 String env = System.getProperty("LINT_API_DATABASE");
@@ -159,7 +172,7 @@ public class ApiLookup {
                 } else {
                     db = get(client, file, target);
                 }
-                instances.put(version, new WeakReference<>(db));
+                instances.put(version, db);
             }
 
             return db;
@@ -315,15 +328,15 @@ public class ApiLookup {
      * 2. A file version number. If the binary file does not match the reader's expected
      *     version, it can ignore it (and regenerate the cache from XML).
      *
-     * 3. The index table. When the data file is read, this is used to initialize the
-     *    {@link #mIndices} array. The index table is built up like this:
-     *    a. The number of index entries (e.g. number of elements in the {@link #mIndices} array)
-     *        [a 4-byte integer]
+     * 3. The index table. Entries are looked up by their number, which is the position of
+     *    their offset in this table. The index table is built up like this:
+     *    a. The number of index entries [a 4-byte integer]
      *    b. The number of java/javax packages [a 4-byte integer]
-     *    c. Offsets to the container entries, one for each package or a class containing inner
+     *    c. The offset of the class hash table (7), or 0 if there is none [a 4-byte integer]
+     *    d. Offsets to the container entries, one for each package or a class containing inner
      *       classes [a 4-byte integer].
-     *    d. Offsets to the class entries, one for each class [a 4-byte integer].
-     *    e. Offsets to the member entries, one for each member [a 4-byte integer].
+     *    e. Offsets to the class entries, one for each class [a 4-byte integer].
+     *    f. Offsets to the member entries, one for each member [a 4-byte integer].
      *
      * 4. The member entries -- one for each member. A given class entry will point to the
      *    first and last members in the index table above, and the offset of a given member
@@ -366,6 +379,16 @@ public class ApiLookup {
      *       class [a 3-byte integer.]
      *    d. The number of classes in the package or the number of inner classes in the outer class
      *       [a 2-byte integer].
+     *
+     * 7. The class hash table: a perfect hash of the fully qualified class names (with all
+     *    separators treated as '.'), which finds a class with a single probe instead of binary
+     *    searching the containers and then the classes. See {@link #hashClassName}.
+     *    a. The number of buckets [a 4-byte integer].
+     *    b. The number of slots [a 4-byte integer].
+     *    c. For each bucket, the seed to hash the names in the bucket with to find their
+     *       slot [a 4-byte integer].
+     *    d. For each slot, the number of the class in the slot, or -1 if it is empty, followed
+     *       by the number of the container of the class [two 4-byte integers].
      * </pre>
      */
     private void readData(
@@ -375,14 +398,19 @@ public class ApiLookup {
             return;
         }
         long start = WRITE_STATS ? System.currentTimeMillis() : 0;
-        try {
-            byte[] b = Files.toByteArray(binaryFile);
-
-            // First skip the header
-            int offset = 0;
+        boolean regenerate = false;
+        try (FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ)) {
+            // Check the header and format version before mapping the file: older formats
+            // are regenerated below, and a mapped file cannot be replaced on Windows
             byte[] expectedHeader = FILE_HEADER.getBytes(StandardCharsets.US_ASCII);
-            for (byte anExpectedHeader : expectedHeader) {
-                if (anExpectedHeader != b[offset++]) {
+            ByteBuffer header = ByteBuffer.allocate(expectedHeader.length + 1);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            for (int offset = 0; offset < expectedHeader.length; offset++) {
+                if (expectedHeader[offset] != header.get(offset)) {
                     client.log(
                             null,
                             "Incorrect file header: not an API database cache "
@@ -392,40 +420,36 @@ public class ApiLookup {
             }
 
             // Read in the format number.
-            if (b[offset++] != BINARY_FORMAT_VERSION) {
-                // Force regeneration of new binary data with up to date format.
-                if (createCache(client, xmlFile, binaryFile)) {
-                    readData(client, xmlFile, binaryFile); // Recurse
-                }
-
-                return;
-            }
+            if (header.get(expectedHeader.length) != BINARY_FORMAT_VERSION) {
+                regenerate = true;
+            } else {
+                ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int offset = header.capacity();
+                int indexCount = b.getInt(offset);
+                offset += 4;
+                int containers = b.getInt(offset);
+                offset += 4;
+                int classHashOffset = b.getInt(offset);
+                offset += 4;
 
-            int indexCount = get4ByteInt(b, offset);
-            offset += 4;
-            containerCount = get4ByteInt(b, offset);
-            offset += 4;
+                // Lookups read straight from the mapping, so make sure the tables are all there
+                // (the entries themselves are checked by the range checks of the buffer)
+                if ((long) offset + 4L * indexCount > b.limit()
+                        || classHashOffset > 0 && !isValidClassHashTable(b, classHashOffset)) {
+                    throw new EOFException();
+                }
 
-            mIndices = new int[indexCount];
-            for (int i = 0; i < indexCount; i++) {
-                // TODO: Pack the offsets: They increase by a small amount for each entry, so
-                // no need to spend 4 bytes on each. These will need to be processed when read
-                // back in anyway, so consider storing the offset -deltas- as single bytes and
-                // adding them up cumulatively in readData().
-                mIndices[i] = get4ByteInt(b, offset);
-                offset += 4;
+                containerCount = containers;
+                mIndexOffset = offset;
+                mClassHashOffset = classHashOffset;
+                mData = b;
             }
-            mData = b;
-            // TODO: We only need to keep the data portion here since we've initialized
-            // the offset array separately.
-            // TODO: Investigate (profile) accessing the byte buffer directly instead of
-            // accessing a byte array.
 
-            if (WRITE_STATS) {
+            if (WRITE_STATS && mData != null) {
                 long end = System.currentTimeMillis();
                 System.out.println("\nRead API database in " + (end - start) + " milliseconds.");
-                System.out.print("Size of data table: " + mData.length + " bytes");
-                System.out.println(String.format(" (%.3gMB)", mData.length / (1024. * 1024.)));
+                System.out.print("Size of data table: " + mData.limit() + " bytes");
+                System.out.println(String.format(" (%.3gMB)", mData.limit() / (1024. * 1024.)));
             }
         } catch (Throwable e) {
             client.log(null, "Failure reading binary cache file %1$s", binaryFile.getPath());
@@ -434,9 +458,28 @@ public class ApiLookup {
                     "Please delete the file and restart the IDE/lint: %1$s",
                     binaryFile.getPath());
             client.log(e, null);
+            return;
+        }
+
+        if (regenerate) {
+            // Force regeneration of new binary data with up to date format.
+            if (createCache(client, xmlFile, binaryFile)) {
+                readData(client, xmlFile, binaryFile); // Recurse
+            }
         }
     }
 
+    private static boolean isValidClassHashTable(@NonNull ByteBuffer data, int offset) {
+        if ((long) offset + 8 > data.limit()) {
+            return false;
+        }
+        int bucketCount = data.getInt(offset);
+        int slotCount = data.getInt(offset + 4);
+        return bucketCount > 0
+                && slotCount > 0
+                && (long) offset + 8 + 4L * bucketCount + 8L * slotCount <= data.limit();
+    }
+
     /** See the {@link #readData(LintClient, File, File)} for documentation on the data format. */
     private static void writeDatabase(File file, Api info) throws IOException {
         Map<String, ApiClass> classMap = info.getClasses();
@@ -480,6 +523,14 @@ public class ApiLookup {
             Collections.sort(container.getClasses());
         }
 
+        // Class hash table: at most (see writeClassHashTable) 4 bytes per bucket and
+        // 8 bytes for each of the 5/4 slots per class
+        int totalClassCount = 0;
+        for (ApiClassOwner container : containers) {
+            totalClassCount += container.getClasses().size();
+        }
+        estimatedSize += 8 + 4 * totalClassCount + 8 * (totalClassCount + totalClassCount / 4 + 1);
+
         // Write header
         ByteBuffer buffer = ByteBuffer.allocate(estimatedSize);
         buffer.order(ByteOrder.BIG_ENDIAN);
@@ -494,6 +545,9 @@ public class ApiLookup {
         // Write the number of containers in the containers index.
         buffer.putInt(containers.size());
 
+        int classHashOffsetOffset = buffer.position();
+        buffer.putInt(0); // placeholder
+
         // Write container index.
         int newIndex = buffer.position();
         for (ApiClassOwner container : containers) {
@@ -685,6 +739,14 @@ public class ApiLookup {
             }
         }
 
+        int classHashOffset = buffer.position();
+        if (writeClassHashTable(buffer, containers)) {
+            buffer.putInt(classHashOffsetOffset, classHashOffset);
+        } else {
+            // Lookups will fall back to binary search
+            buffer.position(classHashOffset);
+        }
+
         int size = buffer.position();
         assert size <= buffer.limit();
         buffer.mark();
@@ -715,6 +777,121 @@ public class ApiLookup {
         }
     }
 
+    /**
+     * Writes a perfect hash table of the class names, using the "hash, displace" scheme: the names
+     * are first distributed over a number of small buckets, and then for each bucket (largest
+     * first) a seed is searched for which hashes all the names in the bucket to free slots.
+     *
+     * @return true if the table was written, false if no perfect hash could be found
+     */
+    private static boolean writeClassHashTable(
+            @NonNull ByteBuffer buffer, @NonNull List<ApiClassOwner> containers) {
+        List<String> names = new ArrayList<>();
+        List<Integer> classNumbers = new ArrayList<>();
+        List<Integer> containerNumbers = new ArrayList<>();
+        for (int containerNumber = 0; containerNumber < containers.size(); containerNumber++) {
+            for (ApiClass cls : containers.get(containerNumber).getClasses()) {
+                names.add(cls.getName());
+                classNumbers.add(cls.index);
+                containerNumbers.add(containerNumber);
+            }
+        }
+        int classCount = names.size();
+        if (classCount == 0) {
+            return false;
+        }
+
+        int bucketCount = Math.max(1, classCount / 4);
+        int slotCount = classCount + classCount / 4 + 1;
+        List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < classCount; i++) {
+            buckets.get(hashClassName(names.get(i), 0) % bucketCount).add(i);
+        }
+        List<Integer> order = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            order.add(i);
+        }
+        order.sort((b1, b2) -> buckets.get(b2).size() - buckets.get(b1).size());
+
+        int[] seeds = new int[bucketCount];
+        int[] slots = new int[slotCount];
+        Arrays.fill(slots, -1);
+        int[] candidates = new int[0];
+        for (int bucket : order) {
+            List<Integer> keys = buckets.get(bucket);
+            if (keys.isEmpty()) {
+                break;
+            }
+            if (candidates.length < keys.size()) {
+                candidates = new int[keys.size()];
+            }
+            boolean placed = false;
+            for (int seed = 1; seed < MAX_CLASS_HASH_SEED && !placed; seed++) {
+                placed = true;
+                for (int i = 0; i < keys.size() && placed; i++) {
+                    int slot = hashClassName(names.get(keys.get(i)), seed) % slotCount;
+                    if (slots[slot] != -1) {
+                        placed = false;
+                    }
+                    for (int j = 0; j < i && placed; j++) {
+                        if (candidates[j] == slot) {
+                            placed = false;
+                        }
+                    }
+                    candidates[i] = slot;
+                }
+                if (placed) {
+                    seeds[bucket] = seed;
+                    for (int i = 0; i < keys.size(); i++) {
+                        slots[candidates[i]] = keys.get(i);
+                    }
+                }
+            }
+            if (!placed) {
+                return false;
+            }
+        }
+
+        buffer.putInt(bucketCount);
+        buffer.putInt(slotCount);
+        for (int seed : seeds) {
+            buffer.putInt(seed);
+        }
+        for (int key : slots) {
+            if (key == -1) {
+                buffer.putInt(-1);
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(classNumbers.get(key));
+                buffer.putInt(containerNumbers.get(key));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the given class name with the given seed. Separators are normalized first, so that
+     * for example "android/view/View$OnClickListener" and "android.view.View.OnClickListener" hash
+     * to the same value. The result is never negative.
+     */
+    private static int hashClassName(@NonNull String name, int seed) {
+        int h = 0x811c9dc5 ^ (seed * 0x9e3779b9); // FNV-1a
+        for (int i = 0, n = name.length(); i < n; i++) {
+            h ^= normalizeSeparator(name.charAt(i));
+            h *= 0x01000193;
+        }
+        // Avalanche (from MurmurHash3), such that nearby seeds give unrelated hashes
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & 0x7fffffff;
+    }
+
     private static void writeSinceDeprecatedInRemovedIn(
             ByteBuffer buffer, int since, int deprecatedIn, int removedIn) {
         assert since != 0 && since == (since & API_MASK); // Must fit in 7 bits.
@@ -743,8 +920,8 @@ public class ApiLookup {
     private String dumpEntry(int offset) {
         if (DEBUG_SEARCH) {
             StringBuilder sb = new StringBuilder(200);
-            for (int i = offset; i < mData.length; i++) {
-                byte b = mData[i];
+            for (int i = offset; i < mData.limit(); i++) {
+                byte b = mData.get(i);
                 if (b == 0 || b == 1) {
                     break;
                 }
@@ -759,11 +936,11 @@ public class ApiLookup {
     }
 
     private static int compare(
-            byte[] data, int offset, byte terminator, String s, int sOffset, int max) {
+            ByteBuffer data, int offset, byte terminator, String s, int sOffset, int max) {
         int i = offset;
         int j = sOffset;
         for (; j < max; i++, j++) {
-            byte b = data[i];
+            byte b = data.get(i);
             char c = s.charAt(j);
             if (c == '.' && (b == '/' || b == '$')) { // '.' matches both '/' and '$'.
                 continue;
@@ -777,7 +954,7 @@ public class ApiLookup {
             }
         }
 
-        byte b = data[i];
+        byte b = data.get(i);
         if (terminator == 1 && b == 0) { // Terminator 1 matches both 0 and 1.
             return 0;
         }
@@ -811,7 +988,7 @@ public class ApiLookup {
     private int getClassVersion(int classNumber) {
         if (classNumber >= 0) {
             int offset = seekClassData(classNumber, CLASS_HEADER_API);
-            int api = Byte.toUnsignedInt(mData[offset]) & API_MASK;
+            int api = Byte.toUnsignedInt(mData.get(offset)) & API_MASK;
             return api > 0 ? api : -1;
         }
         return -1;
@@ -839,11 +1016,11 @@ public class ApiLookup {
                 int interfaceNumber = findClass(destinationClass);
                 if (interfaceNumber >= 0) {
                     int offset = seekClassData(classNumber, CLASS_HEADER_INTERFACES);
-                    int interfaceCount = mData[offset++];
+                    int interfaceCount = mData.get(offset++);
                     for (int i = 0; i < interfaceCount; i++) {
                         int clsNumber = get3ByteInt(mData, offset);
                         offset += 3;
-                        int api = mData[offset++];
+                        int api = mData.get(offset++);
                         if (clsNumber == interfaceNumber) {
                             return api;
                         }
@@ -884,7 +1061,7 @@ public class ApiLookup {
                     // Not deprecated
                     return -1;
                 }
-                int deprecatedIn = Byte.toUnsignedInt(mData[offset]) & API_MASK;
+                int deprecatedIn = Byte.toUnsignedInt(mData.get(offset)) & API_MASK;
                 ;
                 return deprecatedIn != 0 ? deprecatedIn : -1;
             }
@@ -915,7 +1092,7 @@ public class ApiLookup {
                     // Not removed
                     return -1;
                 }
-                int removedIn = Byte.toUnsignedInt(mData[offset]) & API_MASK;
+                int removedIn = Byte.toUnsignedInt(mData.get(offset)) & API_MASK;
                 return removedIn != 0 ? removedIn : -1;
             }
         } else if (mInfo != null) {
@@ -1115,11 +1292,11 @@ public class ApiLookup {
         List<ApiMember> result = null;
         int end = start + length;
         for (int index = start; index < end; index++) {
-            int offset = mIndices[index];
+            int offset = getIndex(index);
             boolean methodSignatureDetected = false;
             int i;
-            for (i = offset; i < mData.length; i++) {
-                byte b = mData[i];
+            for (i = offset; i < mData.limit(); i++) {
+                byte b = mData.get(i);
                 if (b == 0) {
                     break;
                 }
@@ -1127,7 +1304,7 @@ public class ApiLookup {
                     methodSignatureDetected = true;
                 }
             }
-            if (i >= mData.length) {
+            if (i >= mData.limit()) {
                 assert false;
                 break;
             }
@@ -1135,15 +1312,15 @@ public class ApiLookup {
                 continue;
             }
             int endOfSignature = i++;
-            int since = Byte.toUnsignedInt(mData[i++]);
+            int since = Byte.toUnsignedInt(mData.get(i++));
             if ((since & HAS_EXTRA_BYTE_FLAG) != 0) {
-                int deprecatedIn = Byte.toUnsignedInt(mData[i++]);
+                int deprecatedIn = Byte.toUnsignedInt(mData.get(i++));
                 if ((deprecatedIn & HAS_EXTRA_BYTE_FLAG) != 0) {
-                    int removedIn = Byte.toUnsignedInt(mData[i]);
+                    int removedIn = Byte.toUnsignedInt(mData.get(i));
                     if (removedIn != 0) {
                         StringBuilder sb = new StringBuilder(endOfSignature - offset);
                         for (i = offset; i < endOfSignature; i++) {
-                            sb.append((char) Byte.toUnsignedInt(mData[i]));
+                            sb.append((char) Byte.toUnsignedInt(mData.get(i)));
                         }
                         since &= API_MASK;
                         deprecatedIn &= API_MASK;
@@ -1278,12 +1455,12 @@ public class ApiLookup {
     private int findContainer(
             @NonNull String packageOrClassName, int containerNameLength, boolean packageOnly) {
         // The index array contains class indexes from 0 to classCount and
-        // member indices from classCount to mIndices.length.
+        // member indices from classCount to the end of the index table.
         int low = 0;
         int high = containerCount;
         while (low < high) {
             int middle = (low + high) >>> 1;
-            int offset = mIndices[middle];
+            int offset = getIndex(middle);
 
             if (DEBUG_SEARCH) {
                 System.out.println(
@@ -1315,15 +1492,6 @@ public class ApiLookup {
         return -1;
     }
 
-    private static int get4ByteInt(@NonNull byte[] data, int offset) {
-        byte b1 = data[offset++];
-        byte b2 = data[offset++];
-        byte b3 = data[offset++];
-        byte b4 = data[offset];
-        // The byte data is always big endian.
-        return (b1 & 0xFF) << 24 | (b2 & 0xFF) << 16 | (b3 & 0xFF) << 8 | (b4 & 0xFF);
-    }
-
     private static void put3ByteInt(@NonNull ByteBuffer buffer, int value) {
         // Big endian
         byte b3 = (byte) (value & 0xFF);
@@ -1345,17 +1513,22 @@ public class ApiLookup {
         buffer.put(b2);
     }
 
-    private static int get3ByteInt(@NonNull byte[] mData, int offset) {
-        byte b1 = mData[offset++];
-        byte b2 = mData[offset++];
-        byte b3 = mData[offset];
+    /** Returns the offset of the entry with the given number in the index table */
+    private int getIndex(int number) {
+        return mData.getInt(mIndexOffset + (number << 2));
+    }
+
+    private static int get3ByteInt(@NonNull ByteBuffer mData, int offset) {
+        byte b1 = mData.get(offset++);
+        byte b2 = mData.get(offset++);
+        byte b3 = mData.get(offset);
         // The byte data is always big endian.
         return (b1 & 0xFF) << 16 | (b2 & 0xFF) << 8 | (b3 & 0xFF);
     }
 
-    private static int get2ByteInt(@NonNull byte[] data, int offset) {
-        byte b1 = data[offset++];
-        byte b2 = data[offset];
+    private static int get2ByteInt(@NonNull ByteBuffer data, int offset) {
+        byte b1 = data.get(offset++);
+        byte b2 = data.get(offset);
         // The byte data is always big endian.
         return (b1 & 0xFF) << 8 | (b2 & 0xFF);
     }
@@ -1364,6 +1537,9 @@ public class ApiLookup {
     private int findClass(@NonNull String className) {
         int lastSeparator = lastIndexOfDotOrSlashOrDollar(className);
         int containerNameLength = lastSeparator >= 0 ? lastSeparator : 0;
+        if (mClassHashOffset > 0) {
+            return findClassByHash(className, lastSeparator, containerNameLength);
+        }
         int containerNumber = findContainer(className, containerNameLength, false);
         if (containerNumber < 0) {
             return -1;
@@ -1371,9 +1547,9 @@ public class ApiLookup {
         int classNameLength = className.length();
         int classNameOffset = lastSeparator + 1;
 
-        int curr = mIndices[containerNumber];
+        int curr = getIndex(containerNumber);
         // Skip the name of the container.
-        while ((mData[curr] & ~1) != 0) { // Iterate until encountering 0 or 1.
+        while ((mData.get(curr) & ~1) != 0) { // Iterate until encountering 0 or 1.
             curr++;
         }
         curr++;
@@ -1386,7 +1562,7 @@ public class ApiLookup {
         int high = low + length;
         while (low < high) {
             int middle = (low + high) >>> 1;
-            int offset = mIndices[middle];
+            int offset = getIndex(middle);
             offset++; // Skip the byte which points to the metadata after the name.
 
             if (DEBUG_SEARCH) {
@@ -1418,6 +1594,39 @@ public class ApiLookup {
         return -1;
     }
 
+    /** Like {@link #findClass}, but using the class hash table instead of binary search. */
+    private int findClassByHash(
+            @NonNull String className, int lastSeparator, int containerNameLength) {
+        int offset = mClassHashOffset;
+        int bucketCount = mData.getInt(offset);
+        int slotCount = mData.getInt(offset + 4);
+        offset += 8;
+        int seed = mData.getInt(offset + 4 * (hashClassName(className, 0) % bucketCount));
+        offset += 4 * bucketCount;
+        offset += 8 * (hashClassName(className, seed) % slotCount);
+        int classNumber = mData.getInt(offset);
+        if (classNumber < 0) {
+            return -1;
+        }
+
+        // Names which are not in the database hash to arbitrary slots, so check that the
+        // container and the class name match
+        int containerNumber = mData.getInt(offset + 4);
+        if (compare(mData, getIndex(containerNumber), (byte) 1, className, 0, containerNameLength)
+                        != 0
+                || compare(
+                                mData,
+                                getIndex(classNumber) + 1, // Skip the metadata offset byte
+                                (byte) 0,
+                                className,
+                                lastSeparator + 1,
+                                className.length())
+                        != 0) {
+            return -1;
+        }
+        return classNumber;
+    }
+
     private static int lastIndexOfDotOrSlashOrDollar(@NonNull String className) {
         for (int i = className.length(); --i >= 0; ) {
             char c = className.charAt(i);
@@ -1496,8 +1705,8 @@ public class ApiLookup {
     }
 
     private int seekClassData(int classNumber, int field) {
-        int offset = mIndices[classNumber];
-        offset += mData[offset] & 0xFF;
+        int offset = getIndex(classNumber);
+        offset += mData.get(offset) & 0xFF;
         if (field == CLASS_HEADER_MEMBER_OFFSETS) {
             return offset;
         }
@@ -1505,13 +1714,13 @@ public class ApiLookup {
         if (field == CLASS_HEADER_API) {
             return offset;
         }
-        boolean hasDeprecatedIn = (mData[offset] & HAS_EXTRA_BYTE_FLAG) != 0;
+        boolean hasDeprecatedIn = (mData.get(offset) & HAS_EXTRA_BYTE_FLAG) != 0;
         boolean hasRemovedIn = false;
         offset++;
         if (field == CLASS_HEADER_DEPRECATED) {
             return hasDeprecatedIn ? offset : -1;
         } else if (hasDeprecatedIn) {
-            hasRemovedIn = (mData[offset] & HAS_EXTRA_BYTE_FLAG) != 0;
+            hasRemovedIn = (mData.get(offset) & HAS_EXTRA_BYTE_FLAG) != 0;
             offset++;
         }
         if (field == CLASS_HEADER_REMOVED) {
@@ -1539,7 +1748,7 @@ public class ApiLookup {
 
         while (low < high) {
             int middle = (low + high) >>> 1;
-            int offset = mIndices[middle];
+            int offset = getIndex(middle);
 
             if (DEBUG_SEARCH) {
                 System.out.println(
@@ -1569,7 +1778,7 @@ public class ApiLookup {
 
                         offset += argsEnd + 1;
 
-                        if (mData[offset++] == 0) {
+                        if (mData.get(offset++) == 0) {
                             // Yes, terminated argument list: get the API level
                             return getApiLevel(offset, apiLevelField);
                         }
@@ -1581,7 +1790,7 @@ public class ApiLookup {
                 compare = compare(mData, offset, (byte) 0, name, 0, nameLength);
                 if (compare == 0) {
                     offset += nameLength;
-                    if (mData[offset++] == 0) {
+                    if (mData.get(offset++) == 0) {
                         // Yes, terminated argument list: get the API level
                         return getApiLevel(offset, apiLevelField);
                     }
@@ -1602,14 +1811,14 @@ public class ApiLookup {
     }
 
     private int getApiLevel(int offset, int apiLevelField) {
-        int api = Byte.toUnsignedInt(mData[offset]);
+        int api = Byte.toUnsignedInt(mData.get(offset));
         if (apiLevelField == CLASS_HEADER_API) {
             return api & API_MASK;
         }
         if ((api & HAS_EXTRA_BYTE_FLAG) == 0) {
             return -1;
         }
-        api = Byte.toUnsignedInt(mData[++offset]);
+        api = Byte.toUnsignedInt(mData.get(++offset));
         if (apiLevelField == CLASS_HEADER_DEPRECATED) {
             api &= API_MASK;
             return api == 0 ? -1 : api;
@@ -1618,7 +1827,7 @@ public class ApiLookup {
         if ((api & HAS_EXTRA_BYTE_FLAG) == 0 || apiLevelField != CLASS_HEADER_REMOVED) {
             return -1;
         }
-        api = Byte.toUnsignedInt(mData[++offset]);
+        api = Byte.toUnsignedInt(mData.get(++offset));
         return api == 0 ? -1 : api;
     }
 
@@ -27,6 +27,7 @@ import com.android.resources.ResourceFolderType
 import com.android.tools.lint.checks.RestrictionsDetector.Companion.ATTR_DESCRIPTION
 import com.android.tools.lint.checks.RestrictionsDetector.Companion.TAG_RESTRICTIONS
 import com.android.tools.lint.detector.api.Category
+import com.android.tools.lint.detector.api.FileLocalDetector
 import com.android.tools.lint.detector.api.Implementation
 import com.android.tools.lint.detector.api.Issue
 import com.android.tools.lint.detector.api.LayoutDetector
@@ -44,7 +45,7 @@ import java.util.Arrays
  * TODO: Consider looking at the localization="suggested" attribute in the platform attrs.xml to
  * catch future recommended attributes.
  */
-class HardcodedValuesDetector : LayoutDetector() {
+class HardcodedValuesDetector : LayoutDetector(), FileLocalDetector {
 
     override fun getApplicableAttributes(): Collection<String>? {
         return Arrays.asList(
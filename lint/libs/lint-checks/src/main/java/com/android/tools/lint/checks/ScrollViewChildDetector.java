@@ -26,6 +26,7 @@ import static com.android.SdkConstants.VALUE_MATCH_PARENT;
 
 import com.android.annotations.NonNull;
 import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.FileLocalDetector;
 import com.android.tools.lint.detector.api.Implementation;
 import com.android.tools.lint.detector.api.Issue;
 import com.android.tools.lint.detector.api.LayoutDetector;
@@ -42,7 +43,7 @@ import org.w3c.dom.Element;
  * Check which looks at the children of ScrollViews and ensures that they fill/match the parent
  * width instead of setting wrap_content.
  */
-public class ScrollViewChildDetector extends LayoutDetector {
+public class ScrollViewChildDetector extends LayoutDetector implements FileLocalDetector {
     /** The main issue discovered by this detector */
     public static final Issue ISSUE =
             Issue.create(
@@ -23,9 +23,11 @@ import com.android.SdkConstants.VALUE_FALSE
 import com.android.resources.ResourceFolderType
 import com.android.tools.lint.detector.api.Category
 import com.android.tools.lint.detector.api.Context
+import com.android.tools.lint.detector.api.DefaultPosition
 import com.android.tools.lint.detector.api.Implementation
 import com.android.tools.lint.detector.api.Issue
 import com.android.tools.lint.detector.api.Location
+import com.android.tools.lint.detector.api.PartialStateDetector
 import com.android.tools.lint.detector.api.ResourceXmlDetector
 import com.android.tools.lint.detector.api.Scope
 import com.android.tools.lint.detector.api.Severity
@@ -40,7 +42,7 @@ import java.util.HashMap
 import java.util.Locale
 
 /** Constructs a new [StringCasingDetector] check  */
-class StringCasingDetector : ResourceXmlDetector() {
+class StringCasingDetector : ResourceXmlDetector(), PartialStateDetector {
 
     companion object {
         private val IMPLEMENTATION_XML =
@@ -73,6 +75,9 @@ class StringCasingDetector : ResourceXmlDetector() {
      */
     private val allStrings = HashMap<Pair<String, String>, MutableList<StringDeclaration>>()
 
+    /** The strings found in the current file, in order, with their keys in [allStrings] */
+    private val fileStrings = ArrayList<Pair<Pair<String, String>, StringDeclaration>>()
+
     override fun appliesTo(folderType: ResourceFolderType): Boolean {
         return folderType == ResourceFolderType.VALUES
     }
@@ -81,6 +86,10 @@ class StringCasingDetector : ResourceXmlDetector() {
         return listOf(TAG_STRING)
     }
 
+    override fun beforeCheckFile(context: Context) {
+        fileStrings.clear()
+    }
+
     override fun visitElement(context: XmlContext, element: Element) {
         val childNodes = element.childNodes
         if (childNodes.length > 0) {
@@ -114,13 +123,93 @@ class StringCasingDetector : ResourceXmlDetector() {
         else Pair.of("default", text.toLowerCase(Locale.US))
         val handle = context.createLocationHandle(element)
         handle.clientData = element
+        addDeclaration(key, StringDeclaration(element.getAttribute(ATTR_NAME), text, handle))
+    }
+
+    private fun addDeclaration(key: Pair<String, String>, declaration: StringDeclaration) {
         val handleList = allStrings.getOrDefault(key, ArrayList())
-        handleList.add(StringDeclaration(element.getAttribute(ATTR_NAME), text, handle))
+        handleList.add(declaration)
         allStrings[key] = handleList
+        fileStrings.add(Pair.of(key, declaration))
     }
 
     data class StringDeclaration(val name: String, val text: String, val location: Location.Handle)
 
+    /**
+     * Stores the strings of the file, one per line, as the tab separated locale, lower
+     * case text, name, text and the start and end positions of the declaration
+     */
+    override fun getPartialState(context: Context): String? {
+        if (fileStrings.isEmpty()) {
+            return null
+        }
+        val sb = StringBuilder()
+        for (declaration in fileStrings) {
+            val key = declaration.first
+            val string = declaration.second
+            val location = string.location.resolve()
+            val start = location.start ?: return null
+            val end = location.end ?: return null
+            sb.append(escape(key.first)).append('\t')
+            sb.append(escape(key.second)).append('\t')
+            sb.append(escape(string.name)).append('\t')
+            sb.append(escape(string.text)).append('\t')
+            sb.append(start.line).append('\t').append(start.column).append('\t')
+            sb.append(start.offset).append('\t')
+            sb.append(end.line).append('\t').append(end.column).append('\t')
+            sb.append(end.offset).append('\n')
+        }
+        return sb.toString()
+    }
+
+    override fun mergePartialState(context: Context, state: String) {
+        fileStrings.clear()
+        for (line in state.lineSequence()) {
+            if (line.isEmpty()) {
+                continue
+            }
+            val fields = line.split('\t')
+            val key = Pair.of(unescape(fields[0]), unescape(fields[1]))
+            val start = DefaultPosition(fields[4].toInt(), fields[5].toInt(), fields[6].toInt())
+            val end = DefaultPosition(fields[7].toInt(), fields[8].toInt(), fields[9].toInt())
+            val handle = ResolvedHandle(Location.create(context.file, start, end))
+            addDeclaration(key, StringDeclaration(unescape(fields[2]), unescape(fields[3]), handle))
+        }
+    }
+
+    /** A handle for a location which was restored from the partial state of a file */
+    private class ResolvedHandle(private val location: Location) : Location.Handle {
+        override var clientData: Any? = null
+
+        override fun resolve(): Location = location
+    }
+
+    private fun escape(s: String): String =
+        s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n")
+            .replace("\r", "\\r")
+
+    private fun unescape(s: String): String {
+        if (s.indexOf('\\') == -1) {
+            return s
+        }
+        val sb = StringBuilder(s.length)
+        var i = 0
+        while (i < s.length) {
+            val c = s[i++]
+            if (c == '\\' && i < s.length) {
+                when (s[i++]) {
+                    't' -> sb.append('\t')
+                    'n' -> sb.append('\n')
+                    'r' -> sb.append('\r')
+                    else -> sb.append(s[i - 1])
+                }
+            } else {
+                sb.append(c)
+            }
+        }
+        return sb.toString()
+    }
+
     override fun afterCheckRootProject(context: Context) {
         for ((_, duplicates) in allStrings) {
             if (duplicates.size > 1) {
@@ -19,6 +19,13 @@ package com.android.tools.lint.gradle;
 import static com.android.SdkConstants.ANDROIDX_APPCOMPAT_LIB_ARTIFACT;
 import static com.android.SdkConstants.ANDROIDX_LEANBACK_ARTIFACT;
 import static com.android.SdkConstants.ANDROIDX_SUPPORT_LIB_ARTIFACT;
+import static com.android.SdkConstants.ANDROID_NS_NAME_PREFIX;
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_MIN_SDK_VERSION;
+import static com.android.SdkConstants.ATTR_PACKAGE;
+import static com.android.SdkConstants.ATTR_TARGET_SDK_VERSION;
+import static com.android.SdkConstants.TAG_MANIFEST;
+import static com.android.SdkConstants.TAG_USES_SDK;
 
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
@@ -41,6 +48,7 @@ import com.android.sdklib.AndroidTargetHash;
 import com.android.sdklib.AndroidVersion;
 import com.android.sdklib.IAndroidTarget;
 import com.android.support.AndroidxNameUtils;
+import com.android.tools.lint.client.api.ArtifactCache;
 import com.android.tools.lint.detector.api.Lint;
 import com.android.tools.lint.detector.api.Project;
 import com.android.tools.lint.gradle.api.ToolingRegistryProvider;
@@ -51,6 +59,7 @@ import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -73,11 +82,16 @@ import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.tooling.provider.model.ToolingModelBuilderRegistry;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  * An implementation of Lint's {@link Project} class wrapping a Gradle model (project or library)
  */
 public class LintGradleProject extends Project {
+    /** Summaries of the manifests read by all the projects in this process */
+    private static final ArtifactCache<ManifestSummary> manifestCache = new ArtifactCache<>();
+
     protected AndroidVersion minSdkVersion;
     protected AndroidVersion targetSdkVersion;
 
@@ -161,15 +175,92 @@ public class LintGradleProject extends Project {
 
     protected void readManifest(File manifest) {
         if (manifest.exists()) {
+            // With many modules depending on the same libraries, the library manifests would
+            // otherwise be parsed again for every module
+            ManifestSummary summary;
+            try {
+                summary = manifestCache.get(manifest, ManifestSummary::read);
+            } catch (UncheckedIOException e) {
+                client.log(e.getCause(), "Could not read manifest %1$s", manifest);
+                return;
+            }
+            if (summary.parsed) {
+                readManifest(summary.toDocument());
+            }
+        }
+    }
+
+    /**
+     * The parts of a manifest read by {@link Project#readManifest(Document)}. Unlike a DOM
+     * document, this can be shared between threads.
+     */
+    private static class ManifestSummary {
+        /** False if the manifest is not a valid XML document */
+        private final boolean parsed;
+        @Nullable private final String pkg;
+        private final boolean hasUsesSdk;
+        @Nullable private final String minSdkVersion;
+        @Nullable private final String targetSdkVersion;
+
+        ManifestSummary(@Nullable Document document) {
+            parsed = document != null;
+            Element root = document != null ? document.getDocumentElement() : null;
+            pkg = root != null ? root.getAttribute(ATTR_PACKAGE) : null;
+            NodeList usesSdks = root != null ? root.getElementsByTagName(TAG_USES_SDK) : null;
+            hasUsesSdk = usesSdks != null && usesSdks.getLength() > 0;
+            if (hasUsesSdk) {
+                Element element = (Element) usesSdks.item(0);
+                minSdkVersion = getAndroidAttribute(element, ATTR_MIN_SDK_VERSION);
+                targetSdkVersion = getAndroidAttribute(element, ATTR_TARGET_SDK_VERSION);
+            } else {
+                minSdkVersion = null;
+                targetSdkVersion = null;
+            }
+        }
+
+        /** Reads the given manifest file, which may not be valid XML */
+        @NonNull
+        static ManifestSummary read(@NonNull File manifest) {
             try {
                 String xml = Files.asCharSource(manifest, Charsets.UTF_8).read();
-                Document document = XmlUtils.parseDocumentSilently(xml, true);
-                if (document != null) {
-                    readManifest(document);
-                }
+                return new ManifestSummary(XmlUtils.parseDocumentSilently(xml, true));
             } catch (IOException e) {
-                client.log(e, "Could not read manifest %1$s", manifest);
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Nullable
+        private static String getAndroidAttribute(@NonNull Element element, @NonNull String name) {
+            return element.hasAttributeNS(ANDROID_URI, name)
+                    ? element.getAttributeNS(ANDROID_URI, name)
+                    : null;
+        }
+
+        /** Creates a minimal manifest document with the summarized contents */
+        @NonNull
+        Document toDocument() {
+            Document document = XmlUtils.createDocument(true);
+            if (pkg == null) {
+                return document;
+            }
+            Element root = document.createElement(TAG_MANIFEST);
+            root.setAttribute(ATTR_PACKAGE, pkg);
+            document.appendChild(root);
+            if (hasUsesSdk) {
+                Element usesSdk = document.createElement(TAG_USES_SDK);
+                if (minSdkVersion != null) {
+                    usesSdk.setAttributeNS(
+                            ANDROID_URI, ANDROID_NS_NAME_PREFIX + ATTR_MIN_SDK_VERSION,
+                            minSdkVersion);
+                }
+                if (targetSdkVersion != null) {
+                    usesSdk.setAttributeNS(
+                            ANDROID_URI, ANDROID_NS_NAME_PREFIX + ATTR_TARGET_SDK_VERSION,
+                            targetSdkVersion);
+                }
+                root.appendChild(usesSdk);
             }
+            return document;
         }
     }
 
@@ -71,6 +71,7 @@ import com.android.tools.lint.checks.ApiLookup;
 import com.android.tools.lint.client.api.CircularDependencyException;
 import com.android.tools.lint.client.api.Configuration;
 import com.android.tools.lint.client.api.GradleVisitor;
+import com.android.tools.lint.client.api.IncidentCache;
 import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintClient;
 import com.android.tools.lint.client.api.LintDriver;
@@ -589,6 +590,15 @@ public class TestLintClient extends LintCliClient {
             @NonNull IssueRegistry registry, @NonNull LintRequest request) {
         LintDriver driver = super.createDriver(registry, request);
         driver.setFatalOnlyMode(task.vital);
+        driver.setParallelParsing(task.parallelParsing);
+        driver.setWindowedParsing(task.windowedParsing);
+        if (task.windowedParsing) {
+            // Test sources are small; prepare each one in its own window
+            driver.setParseWindowBudget(1);
+        }
+        if (task.incidentCacheDir != null) {
+            driver.setIncidentCache(new IncidentCache(task.incidentCacheDir));
+        }
         return driver;
     }
 
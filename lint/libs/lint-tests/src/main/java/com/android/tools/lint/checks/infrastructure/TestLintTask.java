@@ -104,6 +104,9 @@ public class TestLintTask {
     boolean allowMissingSdk;
     boolean requireCompileSdk;
     boolean vital;
+    boolean parallelParsing;
+    boolean windowedParsing;
+    File incidentCacheDir;
     Map<String, byte[]> mockNetworkData;
     boolean allowNetworkAccess;
     boolean allowDuplicates;
@@ -518,6 +521,44 @@ public class TestLintTask {
         return this;
     }
 
+    /**
+     * Tells lint whether resource and class files should be parsed on multiple threads
+     *
+     * @param parallelParsing whether files should be parsed in parallel
+     * @return this, for constructor chaining
+     */
+    public TestLintTask parallelParsing(boolean parallelParsing) {
+        ensurePreRun();
+        this.parallelParsing = parallelParsing;
+        return this;
+    }
+
+    /**
+     * Tells lint whether Java sources should be prepared and visited in windows bounded by the
+     * available heap. In tests, each source file is prepared in its own window.
+     *
+     * @param windowedParsing whether sources should be parsed in windows
+     * @return this, for constructor chaining
+     */
+    public TestLintTask windowedParsing(boolean windowedParsing) {
+        ensurePreRun();
+        this.windowedParsing = windowedParsing;
+        return this;
+    }
+
+    /**
+     * Tells lint to cache the incidents it finds in each file in the given directory, and
+     * to replay them instead of analyzing files which have not changed since they were cached
+     *
+     * @param incidentCacheDir the directory to store the cached incidents in
+     * @return this, for constructor chaining
+     */
+    public TestLintTask incidentCache(@NonNull File incidentCacheDir) {
+        ensurePreRun();
+        this.incidentCacheDir = incidentCacheDir;
+        return this;
+    }
+
     /**
      * Tells the lint infrastructure to silently ignore any unknown Gradle constructs it encounters
      * when processing a Gradle file and attempting to build up mocks for the Gradle builder model
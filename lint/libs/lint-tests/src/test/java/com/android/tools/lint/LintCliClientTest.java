@@ -52,6 +52,18 @@ public class LintCliClientTest extends AbstractCheckTest {
         Extensions.getExtensions(CustomExceptionHandler.KEY);
     }
 
+    public void testLineOffsets() {
+        String contents = "line1\n\nline3\r\nline4";
+        int[] offsets = LintCliClient.computeLineOffsets(contents);
+        assertEquals(4, offsets.length);
+        for (int line = 0; line < 6; line++) {
+            int expected = LintCliClient.getLineOffset(contents, line);
+            assertEquals(expected, line < offsets.length ? offsets[line] : -1);
+        }
+        assertEquals("line3", LintCliClient.getLineOfOffset(contents, offsets[2]));
+        assertEquals(1, LintCliClient.computeLineOffsets("").length);
+    }
+
     @Override
     protected Detector getDetector() {
         return new HardcodedValuesDetector();
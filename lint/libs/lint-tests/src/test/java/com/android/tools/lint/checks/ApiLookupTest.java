@@ -430,6 +430,18 @@ public class ApiLookupTest extends AbstractCheckTest {
         assertEquals(1, mDb.getClassVersion("android.view.WindowManager.BadTokenException"));
     }
 
+    public void testClassLookupUnknownNames() {
+        // Names which are not in the database must not match classes sharing their hash slot
+        assertEquals(-1, mDb.getClassVersion("java/util/Locale$Categories"));
+        assertEquals(-1, mDb.getClassVersion("java/utilx/Locale$Category"));
+        assertEquals(-1, mDb.getClassVersion("Category"));
+        assertEquals(-1, mDb.getClassVersion(""));
+        assertFalse(mDb.containsClass("android/app/Activityy"));
+        assertFalse(mDb.containsClass("android/app"));
+        assertTrue(mDb.containsClass("android/app/Activity"));
+        assertTrue(mDb.containsClass("android.app.Activity"));
+    }
+
     public void testClassDeprecation() {
         assertEquals(5, mDb.getClassDeprecatedIn("android/webkit/PluginData"));
         assertEquals(1, mDb.getClassVersion("java/io/LineNumberInputStream"));
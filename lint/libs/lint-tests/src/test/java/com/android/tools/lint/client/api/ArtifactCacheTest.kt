@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import junit.framework.TestCase
+import java.io.File
+
+class ArtifactCacheTest : TestCase() {
+    fun testCache() {
+        val file = File.createTempFile("artifact", ".jar")
+        try {
+            file.writeText("version 1")
+            val cache = ArtifactCache<String>()
+            assertNull(cache.get(file))
+            cache.put(file, "first")
+            assertEquals("first", cache.get(file))
+
+            // Changing the artifact invalidates the entry
+            file.writeText("version 2, longer")
+            assertNull(cache.get(file))
+
+            var computed = 0
+            val compute = { _: File -> computed++; "second" }
+            assertEquals("second", cache.get(file, compute))
+            assertEquals("second", cache.get(file, compute))
+            assertEquals(1, computed)
+
+            cache.clear()
+            assertNull(cache.get(file))
+        } finally {
+            file.delete()
+        }
+    }
+
+    fun testReclaimedEntriesRemoved() {
+        val first = File.createTempFile("artifact", ".jar")
+        val second = File.createTempFile("artifact", ".jar")
+        try {
+            val cache = ArtifactCache<String>()
+            cache.put(first, "first")
+            cache.put(second, "second")
+            assertEquals(2, cache.size())
+
+            // The entry of a value reclaimed by the garbage collector is dropped on next access
+            cache.reclaim(first)
+            assertNull(cache.get(first))
+            assertEquals(1, cache.size())
+            assertEquals("second", cache.get(second))
+
+            // A value computed again after being reclaimed is cached again
+            cache.reclaim(second)
+            cache.put(second, "recomputed")
+            assertEquals("recomputed", cache.get(second))
+            assertEquals(1, cache.size())
+        } finally {
+            first.delete()
+            second.delete()
+        }
+    }
+}
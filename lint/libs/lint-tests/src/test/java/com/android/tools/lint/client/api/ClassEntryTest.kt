@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.LintCliClient
+import junit.framework.TestCase
+import java.io.File
+import java.nio.file.Files
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+
+class ClassEntryTest : TestCase() {
+    fun testJarContentsShared() {
+        val dir = Files.createTempDirectory("lint-classes").toFile()
+        try {
+            val jar = File(dir, "lib.jar")
+            writeJar(jar, byteArrayOf(1, 2, 3))
+
+            val cache = ArtifactCache<List<ClassEntry>>()
+            val client = LintCliClient(LintClient.CLIENT_UNIT_TESTS)
+            val first = ClassEntry.fromClassPath(client, listOf(jar), true, cache)
+            assertEquals(1, first.size)
+            assertEquals("test/pkg/Foo.class", first[0].file.path)
+            assertEquals(jar, first[0].jarFile)
+
+            // Projects of a run depending on the same library share the classes read from it
+            val second = ClassEntry.fromClassPath(client, listOf(jar), true, cache)
+            assertSame(first[0].bytes, second[0].bytes)
+
+            // Without the cache of a run, the library is read again
+            val uncached = ClassEntry.fromClassPath(client, listOf(jar), true)
+            assertNotSame(first[0].bytes, uncached[0].bytes)
+            assertTrue(first[0].bytes.contentEquals(uncached[0].bytes))
+
+            // A changed library is read again
+            writeJar(jar, byteArrayOf(1, 2, 3, 4))
+            jar.setLastModified(jar.lastModified() + 10_000)
+            val third = ClassEntry.fromClassPath(client, listOf(jar), true, cache)
+            assertEquals(4, third[0].bytes.size)
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+
+    private fun writeJar(jar: File, bytes: ByteArray) {
+        JarOutputStream(jar.outputStream()).use { out ->
+            out.putNextEntry(ZipEntry("test/pkg/Foo.class"))
+            out.write(bytes)
+            out.closeEntry()
+        }
+    }
+}
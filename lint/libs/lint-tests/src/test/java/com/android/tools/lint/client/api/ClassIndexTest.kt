@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.LintCliClient
+import junit.framework.TestCase
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import java.io.File
+import java.nio.file.Files
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+
+class ClassIndexTest : TestCase() {
+    fun testIndex() {
+        val dir = Files.createTempDirectory("lint-classes").toFile()
+        try {
+            val jar = File(dir, "lib.jar")
+            JarOutputStream(jar.outputStream()).use { out ->
+                out.putNextEntry(ZipEntry("test/pkg/Base.class"))
+                out.write(createClass("test/pkg/Base", "java/lang/Object", "java/lang/Runnable"))
+                out.putNextEntry(ZipEntry("test/pkg/Child.class"))
+                out.write(createClass("test/pkg/Child", "test/pkg/Base"))
+                out.closeEntry()
+            }
+            val classes = File(dir, "classes/test/pkg")
+            classes.mkdirs()
+            // Local classes take precedence over library classes
+            File(classes, "Child.class").writeBytes(createClass("test/pkg/Child", "test/pkg/Other"))
+
+            ClassIndex.clearCache()
+            val client = LintCliClient(LintClient.CLIENT_UNIT_TESTS)
+            val index = ClassIndex.create(client, listOf(jar, File(dir, "classes")))
+            assertEquals(2, index.size())
+            val base = index.get("test/pkg/Base")!!
+            assertEquals("java/lang/Object", base.superName)
+            assertEquals(listOf("java/lang/Runnable"), base.interfaces)
+            assertEquals(Opcodes.ACC_PUBLIC, base.access and Opcodes.ACC_PUBLIC)
+            assertEquals("test/pkg/Other", index.getSuperClass("test/pkg/Child"))
+            assertNull(index.get("test/pkg/Missing"))
+            assertEquals(mapOf("test/pkg/Child" to "test/pkg/Other"), index.superClassMap)
+
+            // The jar index is cached and shared between class paths
+            val jarIndex = ClassIndex.create(client, listOf(jar))
+            val again = ClassIndex.create(client, listOf(jar))
+            assertSame(jarIndex.get("test/pkg/Base"), again.get("test/pkg/Base"))
+            assertEquals("test/pkg/Base", jarIndex.getSuperClass("test/pkg/Child"))
+        } finally {
+            ClassIndex.clearCache()
+            dir.deleteRecursively()
+        }
+    }
+
+    private fun createClass(name: String, superName: String, vararg interfaces: String): ByteArray {
+        val writer = ClassWriter(0)
+        writer.visit(
+            Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName,
+            arrayOf(*interfaces)
+        )
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+}
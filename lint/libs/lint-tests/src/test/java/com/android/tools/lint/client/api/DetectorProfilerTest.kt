@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.detector.api.Detector
+import com.google.common.truth.Truth.assertThat
+import junit.framework.TestCase
+import java.io.StringWriter
+
+class DetectorProfilerTest : TestCase() {
+    fun testAttribution() {
+        val profiler = DetectorProfiler()
+        val slow = SlowDetector()
+        val fast = FastDetector()
+        for (i in 0 until 3) {
+            profiler.measure(slow, "visitCallExpression") {
+                Thread.sleep(2)
+            }
+        }
+        val result = profiler.measure(fast, "visitElement") { 42 }
+        assertEquals(42, result)
+        try {
+            profiler.measure(fast, "afterCheckFile") { throw IllegalStateException() }
+            fail()
+        } catch (expected: IllegalStateException) {
+        }
+
+        val stats = profiler.stats
+        assertEquals(3, stats.size)
+        val first = stats[0]
+        assertEquals(SlowDetector::class.java.name, first.detector)
+        assertEquals("visitCallExpression", first.callback)
+        assertEquals(3, first.count)
+        assertThat(first.wallNs).isAtLeast(6_000_000L)
+        assertEquals(1, stats.single { it.callback == "afterCheckFile" }.count)
+
+        val writer = StringWriter()
+        profiler.write(writer)
+        val json = writer.toString()
+        assertThat(json).contains("\"traceEvents\": [")
+        assertThat(json).contains("SlowDetector.visitCallExpression\", \"cat\": \"lint\"")
+        assertThat(json).contains("\"ph\": \"X\"")
+        // The slowest detector is listed first
+        assertThat(json.indexOf("\"detector\": \"${SlowDetector::class.java.name}\", \"count\""))
+            .isLessThan(json.indexOf("\"detector\": \"${FastDetector::class.java.name}\""))
+    }
+
+    fun testNesting() {
+        val profiler = DetectorProfiler()
+        val slow = SlowDetector()
+        val fast = FastDetector()
+        profiler.measure(fast, "visitElement") {
+            profiler.measure(slow, "visitCallExpression") {
+                Thread.sleep(20)
+            }
+            DetectorProfiler.profile(profiler, slow, "visitClass", Runnable { Thread.sleep(20) })
+        }
+        DetectorProfiler.profile(null, slow, "visitClass", Runnable { })
+
+        val stats = profiler.stats
+        assertEquals(3, stats.size)
+        val outer = stats.single { it.callback == "visitElement" }
+        assertEquals(1, outer.count)
+        // The nested callbacks are only charged to the slow detector
+        assertThat(outer.wallNs).isLessThan(20_000_000L)
+        assertThat(stats.single { it.callback == "visitCallExpression" }.wallNs)
+            .isAtLeast(20_000_000L)
+        assertEquals(1, stats.single { it.callback == "visitClass" }.count)
+    }
+
+    private class SlowDetector : Detector()
+    private class FastDetector : Detector()
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.checks.AbstractCheckTest
+import com.android.tools.lint.checks.StringCasingDetector
+import com.android.tools.lint.checks.infrastructure.TestResultChecker
+import com.android.tools.lint.detector.api.Category
+import com.android.tools.lint.detector.api.Context
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.FileLocalDetector
+import com.android.tools.lint.detector.api.Implementation
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.LayoutDetector
+import com.android.tools.lint.detector.api.Location
+import com.android.tools.lint.detector.api.Scope
+import com.android.tools.lint.detector.api.Severity
+import com.android.tools.lint.detector.api.XmlContext
+import com.google.common.truth.Truth.assertThat
+import org.w3c.dom.Element
+import java.nio.file.Files
+
+class IncidentCacheTest : AbstractCheckTest() {
+    fun testReplayUnchangedFiles() {
+        val cacheDir = Files.createTempDirectory("lint-incidents").toFile()
+        try {
+            CountingDetector.visitCount = 0
+            var first = ""
+            lint().files(
+                xml("res/layout/foo.xml", "<LinearLayout/>"),
+                xml("res/layout/bar.xml", "<FrameLayout><LinearLayout/></FrameLayout>")
+            )
+                .incidentCache(cacheDir)
+                .run()
+                .check(TestResultChecker { first = it })
+            assertThat(first).contains("[_TestCachedIssue]")
+            assertThat(first).contains("0 errors, 2 warnings")
+            val visitCount = CountingDetector.visitCount
+            assertThat(visitCount).isGreaterThan(0)
+
+            // Unchanged files are not visited again, but report the same warnings
+            lint().files(
+                xml("res/layout/foo.xml", "<LinearLayout/>"),
+                xml("res/layout/bar.xml", "<FrameLayout><LinearLayout/></FrameLayout>")
+            )
+                .incidentCache(cacheDir)
+                .run()
+                .expect(first)
+            assertThat(CountingDetector.visitCount).isEqualTo(visitCount)
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    fun testChangedFileDoesNotInvalidateOtherFiles() {
+        val cacheDir = Files.createTempDirectory("lint-incidents").toFile()
+        try {
+            CountingDetector.visitCount = 0
+            lint().files(
+                xml("res/layout/foo.xml", "<LinearLayout/>"),
+                xml("res/layout/bar.xml", "<FrameLayout><LinearLayout/></FrameLayout>")
+            )
+                .incidentCache(cacheDir)
+                .run()
+                .expectCount(2, Severity.WARNING)
+            val visitCount = CountingDetector.visitCount
+
+            // Only the changed file is visited again
+            lint().files(
+                xml("res/layout/foo.xml", "<LinearLayout/>"),
+                xml(
+                    "res/layout/bar.xml",
+                    "<FrameLayout><LinearLayout/><LinearLayout/></FrameLayout>"
+                )
+            )
+                .incidentCache(cacheDir)
+                .run()
+                .expectCount(3, Severity.WARNING)
+            assertThat(CountingDetector.visitCount).isEqualTo(visitCount + 2)
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    fun testAggregatingDetectorVisitsUnchangedFiles() {
+        val cacheDir = Files.createTempDirectory("lint-incidents").toFile()
+        try {
+            var first = ""
+            lint().files(
+                xml("res/layout/foo.xml", "<LinearLayout/>"),
+                xml("res/layout/bar.xml", "<FrameLayout><LinearLayout/></FrameLayout>")
+            )
+                .issues(AggregatingDetector.AGGREGATED_ISSUE)
+                .incidentCache(cacheDir)
+                .run()
+                .check(TestResultChecker { first = it })
+            assertThat(first).contains("Found 2 LinearLayouts [_TestAggregatedIssue]")
+
+            // The detector only has a single file scope, but reports across files
+            lint().files(
+                xml("res/layout/foo.xml", "<LinearLayout/>"),
+                xml("res/layout/bar.xml", "<FrameLayout><LinearLayout/></FrameLayout>")
+            )
+                .issues(AggregatingDetector.AGGREGATED_ISSUE)
+                .incidentCache(cacheDir)
+                .run()
+                .expect(first)
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    fun testPartialStateDetectorMergesUnchangedFiles() {
+        val cacheDir = Files.createTempDirectory("lint-incidents").toFile()
+        try {
+            lint().files(
+                xml("res/values/a.xml", "<resources><string name=\"a\">hello</string></resources>"),
+                xml("res/values/b.xml", "<resources><string name=\"b\">Hello</string></resources>")
+            )
+                .issues(StringCasingDetector.DUPLICATE_STRINGS)
+                .incidentCache(cacheDir)
+                .run()
+                .expectCount(1, Severity.WARNING)
+
+            // The strings of the unchanged file are restored from the cache, and still
+            // found to be duplicated by the strings of the changed file
+            var second = ""
+            lint().files(
+                xml("res/values/a.xml", "<resources><string name=\"a\">hello</string></resources>"),
+                xml(
+                    "res/values/b.xml",
+                    "<resources><string name=\"b\">Hello</string>" +
+                            "<string name=\"c\">HELLO</string></resources>"
+                )
+            )
+                .issues(StringCasingDetector.DUPLICATE_STRINGS)
+                .incidentCache(cacheDir)
+                .run()
+                .check(TestResultChecker { second = it })
+            assertThat(second).contains("used in a, b and c")
+            assertThat(second).contains("res/values/a.xml:1: Warning: Duplicate string value")
+            assertThat(second).contains("0 errors, 1 warnings")
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    override fun getIssues(): List<Issue> = listOf(CountingDetector.CACHED_ISSUE)
+
+    override fun getDetector(): Detector = CountingDetector()
+
+    class CountingDetector : LayoutDetector(), FileLocalDetector {
+        override fun getApplicableElements(): Collection<String> = listOf("LinearLayout")
+
+        override fun visitElement(context: XmlContext, element: Element) {
+            visitCount++
+            context.report(
+                CACHED_ISSUE, element, context.getLocation(element),
+                "Found a LinearLayout"
+            )
+        }
+
+        companion object {
+            var visitCount = 0
+
+            val CACHED_ISSUE = Issue.create(
+                "_TestCachedIssue", "test", "test", Category.LINT, 10, Severity.WARNING,
+                Implementation(CountingDetector::class.java, Scope.RESOURCE_FILE_SCOPE)
+            )
+        }
+    }
+
+    class AggregatingDetector : LayoutDetector() {
+        private var count = 0
+
+        override fun getApplicableElements(): Collection<String> = listOf("LinearLayout")
+
+        override fun visitElement(context: XmlContext, element: Element) {
+            count++
+        }
+
+        override fun afterCheckRootProject(context: Context) {
+            context.report(
+                AGGREGATED_ISSUE, Location.create(context.project.dir),
+                "Found $count LinearLayouts"
+            )
+        }
+
+        companion object {
+            val AGGREGATED_ISSUE = Issue.create(
+                "_TestAggregatedIssue", "test", "test", Category.LINT, 10, Severity.WARNING,
+                Implementation(AggregatingDetector::class.java, Scope.RESOURCE_FILE_SCOPE)
+            )
+        }
+    }
+}
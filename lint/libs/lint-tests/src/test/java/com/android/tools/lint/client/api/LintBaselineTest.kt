@@ -186,6 +186,151 @@ There are quickfixes to automatically extract this hardcoded string into a resou
         assertFalse(LintBaseline.isSamePathSuffix("foo", "bar"))
     }
 
+    @Throws(IOException::class)
+    fun testCachedBaseline() {
+        val baselineFile = File.createTempFile("baseline", ".xml")
+        baselineFile.deleteOnExit()
+
+        @Language("XML")
+        val baselineContents = """<?xml version="1.0" encoding="UTF-8"?>
+<issues format="5" by="lint unittest" custom="value">
+
+    <issue
+        id="HardcodedText"
+        message="Hardcoded string &quot;Fooo&quot;, should use @string resource">
+        <location
+            file="res/layout/main.xml"
+            line="12"/>
+        <location
+            file="res/layout/main2.xml"
+            line="11"/>
+    </issue>
+
+    <issue
+        id="HardcodedText"
+        message="Hardcoded string &quot;Fooo&quot;, should use @string resource">
+        <location
+            file="main.xml"
+            line="13"/>
+    </issue>
+
+</issues>
+"""
+        Files.asCharSink(baselineFile, Charsets.UTF_8).write(baselineContents)
+        val message = "Hardcoded string \"Fooo\", should use @string resource"
+
+        // The first baseline parses the XML file, the second one reads the cached entries;
+        // both should behave the same
+        for (i in 0..1) {
+            val baseline = LintBaseline(createClient(), baselineFile)
+            assertThat(baseline.totalCount).isEqualTo(2)
+            assertThat(baseline.getAttribute("custom")).isEqualTo("value")
+
+            // Secondary location of the first issue
+            assertThat(
+                baseline.findAndMark(
+                    HardcodedValuesDetector.ISSUE,
+                    Location.create(File("/project/res/layout/main2.xml")),
+                    message, Severity.WARNING, null
+                )
+            ).isTrue()
+            assertThat(
+                baseline.findAndMark(
+                    HardcodedValuesDetector.ISSUE,
+                    Location.create(File("/project/res/layout/main.xml")),
+                    message, Severity.WARNING, null
+                )
+            ).isTrue()
+            assertThat(
+                baseline.findAndMark(
+                    HardcodedValuesDetector.ISSUE,
+                    Location.create(File("/project/res/layout/main.xml")),
+                    message, Severity.WARNING, null
+                )
+            ).isFalse()
+            assertThat(baseline.foundWarningCount).isEqualTo(2)
+            assertThat(baseline.fixedCount).isEqualTo(0)
+        }
+
+        // Touching the baseline keeps the cache valid
+        assertThat(baselineFile.setLastModified(baselineFile.lastModified() - 10_000)).isTrue()
+        assertThat(LintBaseline(createClient(), baselineFile).totalCount).isEqualTo(2)
+
+        // Changing the baseline invalidates the cache; the change has the same length, so
+        // only the modification time tells it apart
+        Files.asCharSink(baselineFile, Charsets.UTF_8)
+            .write(baselineContents.replace("Fooo", "Barr"))
+        assertThat(baselineFile.setLastModified(baselineFile.lastModified() + 10_000)).isTrue()
+        val baseline = LintBaseline(createClient(), baselineFile)
+        assertThat(
+            baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/res/layout/main.xml")),
+                message, Severity.WARNING, null
+            )
+        ).isFalse()
+        assertThat(
+            baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/res/layout/main.xml")),
+                message.replace("Fooo", "Barr"), Severity.WARNING, null
+            )
+        ).isTrue()
+    }
+
+    @Throws(IOException::class)
+    fun testMatchInFileOrder() {
+        val baselineFile = File.createTempFile("baseline", ".xml")
+        baselineFile.deleteOnExit()
+
+        @Language("XML")
+        val baselineContents = """<?xml version="1.0" encoding="UTF-8"?>
+<issues format="5" by="lint unittest">
+
+    <issue
+        id="HardcodedText"
+        message="Hardcoded string &quot;Fooo&quot;, should use @string resource">
+        <location
+            file="main.xml"
+            line="13"/>
+    </issue>
+
+    <issue
+        id="HardcodedText"
+        message="Hardcoded string &quot;Fooo&quot;, should use @string resource">
+        <location
+            file="res/layout/main.xml"
+            line="12"/>
+        <location
+            file="res/layout/main2.xml"
+            line="11"/>
+    </issue>
+
+</issues>
+"""
+        Files.asCharSink(baselineFile, Charsets.UTF_8).write(baselineContents)
+        val message = "Hardcoded string \"Fooo\", should use @string resource"
+        val baseline = LintBaseline(createClient(), baselineFile)
+
+        // Both entries match main.xml; the first one in the file is used, so the
+        // second one is still there for main2.xml
+        assertThat(
+            baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/res/layout/main.xml")),
+                message, Severity.WARNING, null
+            )
+        ).isTrue()
+        assertThat(
+            baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/res/layout/main2.xml")),
+                message, Severity.WARNING, null
+            )
+        ).isTrue()
+        assertThat(baseline.foundWarningCount).isEqualTo(2)
+    }
+
     @Throws(IOException::class)
     fun testFormat() {
         val baselineFile = File.createTempFile("lint-baseline", ".xml")
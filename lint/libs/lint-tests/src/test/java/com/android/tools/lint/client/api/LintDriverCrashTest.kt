@@ -96,9 +96,32 @@ class LintDriverCrashTest : AbstractCheckTest() {
         LintDriver.clearCrashCount()
     }
 
+    fun testParallelParsingDetectorError() {
+        // The files are parsed ahead on worker threads, but the detector crashes on the
+        // analysis thread, and each failure is reported for its own file
+        lint().files(
+            xml("res/layout/foo1.xml", "<LinearLayout/>"),
+            xml("res/layout/foo2.xml", "<LinearLayout/>"),
+            xml("res/layout/foo3.xml", "<LinearLayout/>")
+        )
+            .allowSystemErrors(true)
+            .issues(ParsedAheadCrashingDetector.PARSED_AHEAD_CRASHING_ISSUE)
+            .parallelParsing(true)
+            .run()
+            .check(TestResultChecker {
+                for (name in listOf("foo1.xml", "foo2.xml", "foo3.xml")) {
+                    assertThat(it).contains("Unexpected failure during lint analysis of $name")
+                }
+                assertThat(it).contains("IllegalStateException:LintDriverCrashTest\$ParsedAheadCrashingDetector.visitElement(LintDriverCrashTest.kt:")
+                assertThat(it).contains("3 errors, 0 warnings")
+            })
+        LintDriver.clearCrashCount()
+    }
+
     override fun getIssues(): List<Issue> = listOf(
         CrashingDetector.CRASHING_ISSUE,
-        DisposedThrowingDetector.DISPOSED_ISSUE, LinkageErrorDetector.LINKAGE_ERROR
+        DisposedThrowingDetector.DISPOSED_ISSUE, LinkageErrorDetector.LINKAGE_ERROR,
+        ParsedAheadCrashingDetector.PARSED_AHEAD_CRASHING_ISSUE
     )
 
     override fun getDetector(): Detector = CrashingDetector()
@@ -148,6 +171,28 @@ class LintDriverCrashTest : AbstractCheckTest() {
         }
     }
 
+    class ParsedAheadCrashingDetector : LayoutDetector() {
+
+        override fun getApplicableElements(): Collection<String> {
+            return arrayListOf("LinearLayout")
+        }
+
+        override fun visitElement(context: XmlContext, element: Element) {
+            throw IllegalStateException("Crashed on ${context.file.name}")
+        }
+
+        companion object {
+            val PARSED_AHEAD_CRASHING_ISSUE = Issue.create(
+                "_TestParsedAheadCrash", "test", "test", Category.LINT,
+                10, Severity.FATAL,
+                Implementation(
+                    ParsedAheadCrashingDetector::class.java,
+                    Scope.RESOURCE_FILE_SCOPE
+                )
+            )
+        }
+    }
+
     class LinkageErrorDetector : Detector(), SourceCodeScanner {
 
         override fun getApplicableUastTypes(): List<Class<out UElement>>? =
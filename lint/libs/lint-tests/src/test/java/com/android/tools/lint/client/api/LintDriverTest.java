@@ -21,18 +21,32 @@ import static com.android.tools.lint.detector.api.LintUtilsTest.parse;
 import com.android.annotations.NonNull;
 import com.android.tools.lint.checks.AbstractCheckTest;
 import com.android.tools.lint.checks.AccessibilityDetector;
+import com.android.tools.lint.checks.HardcodedValuesDetector;
+import com.android.tools.lint.checks.infrastructure.TestFile;
+import com.android.tools.lint.checks.infrastructure.TestLintTask;
+import com.android.tools.lint.detector.api.Category;
 import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
 import com.android.tools.lint.detector.api.JavaContext;
 import com.android.tools.lint.detector.api.Project;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.SourceCodeScanner;
 import com.android.utils.Pair;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import org.jetbrains.uast.UCallExpression;
+import org.jetbrains.uast.UClass;
+import org.jetbrains.uast.UElement;
 
 @SuppressWarnings("javadoc")
 public class LintDriverTest extends AbstractCheckTest {
@@ -101,6 +115,118 @@ public class LintDriverTest extends AbstractCheckTest {
                 .expectClean();
     }
 
+    public void testParallelParsing() {
+        String expected =
+                ""
+                        + "res/layout/layout1.xml:3: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageView android:src=\"@drawable/logo\" />\n"
+                        + "     ~~~~~~~~~\n"
+                        + "res/layout/layout2.xml:3: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageView android:src=\"@drawable/logo\" />\n"
+                        + "     ~~~~~~~~~\n"
+                        + "res/layout/layout3.xml:3: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageView android:src=\"@drawable/logo\" />\n"
+                        + "     ~~~~~~~~~\n"
+                        + "0 errors, 3 warnings";
+
+        //noinspection all // Sample code
+        lint().files(
+                        xml(
+                                "res/layout/layout1.xml",
+                                ""
+                                        + "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                                        + "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">\n"
+                                        + "    <ImageView android:src=\"@drawable/logo\" />\n"
+                                        + "</LinearLayout>\n"),
+                        xml(
+                                "res/layout/layout2.xml",
+                                ""
+                                        + "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                                        + "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">\n"
+                                        + "    <ImageView android:src=\"@drawable/logo\" />\n"
+                                        + "</LinearLayout>\n"),
+                        xml(
+                                "res/layout/layout3.xml",
+                                ""
+                                        + "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                                        + "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">\n"
+                                        + "    <ImageView android:src=\"@drawable/logo\" />\n"
+                                        + "</LinearLayout>\n"))
+                .parallelParsing(true)
+                .run()
+                .expect(expected);
+    }
+
+    public void testParallelParsingReports() {
+        // The files are read and parsed ahead on worker threads when parsing in parallel,
+        // but the detectors still visit them on the analysis thread, in the same order
+        List<TestFile> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            //noinspection all // Sample code
+            files.add(
+                    xml(
+                            "res/layout/layout" + i + ".xml",
+                            ""
+                                    + "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                                    + "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">\n"
+                                    + "    <Button android:text=\"Button "
+                                    + i
+                                    + "\" />\n"
+                                    + "</LinearLayout>\n"));
+            files.add(java("package test.pkg;\npublic class Class" + i + " {\n}\n"));
+        }
+        TestFile[] array = files.toArray(new TestFile[0]);
+
+        String[] sequential = new String[1];
+        lintTextAndClassNames(array)
+                .parallelParsing(false)
+                .run()
+                .check(output -> sequential[0] = output);
+        assertTrue(sequential[0], sequential[0].contains("0 errors, 20 warnings"));
+
+        lintTextAndClassNames(array).parallelParsing(true).run().expect(sequential[0]);
+    }
+
+    private TestLintTask lintTextAndClassNames(TestFile[] files) {
+        return lint().files(files)
+                .issues(HardcodedValuesDetector.ISSUE, ClassNameDetector.ISSUE);
+    }
+
+    public void testWindowedParsingReports() {
+        // Each class calls the previous one, which is prepared in an earlier window when
+        // parsing in windows; calls must still resolve, and the reports be the same
+        List<TestFile> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String call = i > 0 ? "        new Class" + (i - 1) + "().run();\n" : "";
+            //noinspection all // Sample code
+            files.add(
+                    java(
+                            ""
+                                    + "package test.pkg;\n"
+                                    + "public class Class"
+                                    + i
+                                    + " {\n"
+                                    + "    public void run() {\n"
+                                    + call
+                                    + "    }\n"
+                                    + "}\n"));
+        }
+        TestFile[] array = files.toArray(new TestFile[0]);
+
+        String[] unwindowed = new String[1];
+        lintClassNamesAndCalls(array)
+                .windowedParsing(false)
+                .run()
+                .check(output -> unwindowed[0] = output);
+        assertTrue(unwindowed[0], unwindowed[0].contains("0 errors, 19 warnings"));
+
+        lintClassNamesAndCalls(array).windowedParsing(true).run().expect(unwindowed[0]);
+    }
+
+    private TestLintTask lintClassNamesAndCalls(TestFile[] files) {
+        return lint().files(files).issues(ClassNameDetector.ISSUE, CallTargetDetector.ISSUE);
+    }
+
     public void testHasErrors() {
         //noinspection all // Sample code
         Pair<JavaContext, Disposable> unit =
@@ -134,4 +260,61 @@ public class LintDriverTest extends AbstractCheckTest {
     protected Detector getDetector() {
         return new AccessibilityDetector();
     }
+
+    /** Flags each class */
+    public static class ClassNameDetector extends Detector implements SourceCodeScanner {
+        public static final Issue ISSUE =
+                Issue.create(
+                        "_ClassName",
+                        "test",
+                        "test",
+                        Category.LINT,
+                        5,
+                        Severity.WARNING,
+                        new Implementation(ClassNameDetector.class, Scope.JAVA_FILE_SCOPE));
+
+        @Override
+        public List<Class<? extends UElement>> getApplicableUastTypes() {
+            return Collections.singletonList(UClass.class);
+        }
+
+        @Override
+        public UElementHandler createUastHandler(@NonNull JavaContext context) {
+            return new UElementHandler() {
+                @Override
+                public void visitClass(@NonNull UClass node) {
+                    context.report(
+                            ISSUE, node, context.getNameLocation(node), "Class " + node.getName());
+                }
+            };
+        }
+    }
+
+    /** Flags each resolved method call with the class of the called method */
+    public static class CallTargetDetector extends Detector implements SourceCodeScanner {
+        public static final Issue ISSUE =
+                Issue.create(
+                        "_CallTarget",
+                        "test",
+                        "test",
+                        Category.LINT,
+                        5,
+                        Severity.WARNING,
+                        new Implementation(CallTargetDetector.class, Scope.JAVA_FILE_SCOPE));
+
+        @Override
+        public List<String> getApplicableMethodNames() {
+            return Collections.singletonList("run");
+        }
+
+        @Override
+        public void visitMethod(
+                @NonNull JavaContext context,
+                @NonNull UCallExpression node,
+                @NonNull PsiMethod method) {
+            PsiClass containingClass = method.getContainingClass();
+            String name = containingClass != null ? containingClass.getName() : null;
+            context.report(ISSUE, node, context.getLocation(node), "Calls " + name);
+        }
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.google.common.truth.Truth.assertThat
+import junit.framework.TestCase
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelParserTest : TestCase() {
+    fun testResultsInInputOrder() {
+        val inputs = (0 until 100).toList()
+        for (parallel in listOf(false, true)) {
+            val parser = ParallelParser(inputs, parallel) { it * 2 }
+            val results = ArrayList<Int>()
+            parser.use {
+                while (it.hasNext()) {
+                    results.add(it.next())
+                }
+            }
+            assertThat(results).isEqualTo(inputs.map { it * 2 })
+        }
+    }
+
+    fun testFailureCancelsPendingInputs() {
+        val inputs = (0 until 1000).toList()
+        val running = AtomicInteger()
+        val parsed = Collections.synchronizedList(ArrayList<Int>())
+        val failing = CountDownLatch(1)
+        val parser = ParallelParser(inputs, true) { input ->
+            running.incrementAndGet()
+            try {
+                if (input == 0) {
+                    // Leave time for the other inputs to be picked up by the pool
+                    failing.await(100, TimeUnit.MILLISECONDS)
+                    throw IllegalStateException("Parse error")
+                }
+                Thread.sleep(10)
+                parsed.add(input)
+                input
+            } finally {
+                running.decrementAndGet()
+            }
+        }
+
+        try {
+            parser.next()
+            fail("Expected the parse error")
+        } catch (e: IllegalStateException) {
+            assertEquals("Parse error", e.message)
+        }
+        // The inputs which were being parsed ahead are over, and the rest are not started
+        assertEquals(0, running.get())
+        val parsedAhead = parsed.size
+        assertThat(parsedAhead).isLessThan(inputs.size - 1)
+        Thread.sleep(50)
+        assertEquals(parsedAhead, parsed.size)
+
+        // The remaining inputs are parsed on the calling thread
+        val thread = Thread.currentThread()
+        val threads = Collections.synchronizedSet(HashSet<Thread>())
+        val sequential = ParallelParser(inputs, true) { input ->
+            if (input == 0) {
+                throw IllegalStateException("Parse error")
+            }
+            threads.add(Thread.currentThread())
+            input
+        }
+        try {
+            sequential.next()
+            fail("Expected the parse error")
+        } catch (e: IllegalStateException) {
+            // Expected
+        }
+        threads.clear()
+        assertEquals(1, sequential.next())
+        assertEquals(2, sequential.next())
+        assertThat(threads).containsExactly(thread)
+        sequential.close()
+    }
+
+    fun testCloseWaitsForRunningInputs() {
+        val inputs = (0 until 100).toList()
+        val started = CountDownLatch(1)
+        val running = AtomicInteger()
+        val parser = ParallelParser(inputs, true) { input ->
+            running.incrementAndGet()
+            try {
+                if (input > 0) {
+                    started.countDown()
+                    Thread.sleep(20)
+                }
+                input
+            } finally {
+                running.decrementAndGet()
+            }
+        }
+        assertEquals(0, parser.next())
+        started.await(1, TimeUnit.SECONDS)
+
+        parser.close()
+        assertEquals(0, running.get())
+    }
+}
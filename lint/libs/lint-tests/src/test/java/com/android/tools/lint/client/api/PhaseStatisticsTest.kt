@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.google.common.truth.Truth.assertThat
+import junit.framework.TestCase
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+
+class PhaseStatisticsTest : TestCase() {
+    fun testNestedPhases() {
+        val statistics = PhaseStatistics()
+        var inner: LongArray? = null
+        val result = statistics.measure("Outer") {
+            statistics.measure("Inner") {
+                // Allocate something the peak heap usage should account for
+                inner = LongArray(4 * 1024 * 1024)
+            }
+            statistics.measure("Inner") { 42 }
+        }
+        assertEquals(42, result)
+        assertNotNull(inner)
+
+        val phases = statistics.phases.associateBy { it.name }
+        assertThat(phases.keys).containsExactly("Outer", "Inner").inOrder()
+        val outer = phases["Outer"]!!
+        val nested = phases["Inner"]!!
+        assertEquals(1, outer.count)
+        assertEquals(2, nested.count)
+        assertThat(nested.peakHeapBytes).isAtLeast(32 * 1024 * 1024L)
+        assertThat(outer.peakHeapBytes).isAtLeast(nested.peakHeapBytes)
+        assertThat(outer.timeMs).isAtLeast(nested.timeMs)
+        assertThat(statistics.describe()).contains("(2 runs)")
+    }
+
+    fun testPoolPeaksAreNotReset() {
+        val pools = ManagementFactory.getMemoryPoolMXBeans()
+            .filter { it.type == MemoryType.HEAP && it.isValid }
+        val peaks = pools.map { it.peakUsage.used }
+
+        val statistics = PhaseStatistics()
+        statistics.measure("Phase") { LongArray(1024).size }
+
+        // Other code monitoring the JVM relies on the peaks since the start
+        for ((pool, peak) in pools.zip(peaks)) {
+            assertThat(pool.peakUsage.used).isAtLeast(peak)
+        }
+        assertThat(statistics.phases.single().peakHeapBytes).isGreaterThan(0L)
+    }
+}
@@ -40,6 +40,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Multimap;
 import java.util.Arrays;
 import java.util.Collection;
@@ -51,6 +52,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -93,12 +95,44 @@ public class ResourceResolver extends RenderResources {
     /** Contains the default parent for DeviceDefault styles (e.g. for API 18, "Holo") */
     private String mDeviceDefaultParent;
 
+    /**
+     * Whether {@link #findItemInStyle(StyleResourceValue, ResourceReference)} and {@link
+     * #findItemInTheme(ResourceReference)} results are memoized.
+     */
+    private final boolean mCacheEnabled;
+
+    /**
+     * Memoized {@link #findItemInStyle(StyleResourceValue, ResourceReference)} results, keyed by
+     * style (by identity) and attribute. Replaced with an empty map whenever the style inheritance
+     * changes, so lookups racing with the change only populate the discarded map.
+     */
+    @NonNull
+    private volatile Map<
+                    StyleResourceValue, Map<ResourceReference, Optional<StyleItemResourceValue>>>
+            mStyleItemCache = createStyleItemCache();
+
+    /**
+     * Memoized {@link #findItemInTheme(ResourceReference)} results. Replaced with an empty map
+     * whenever the themes or the style inheritance change.
+     */
+    @NonNull
+    private volatile Map<ResourceReference, Optional<ResourceValue>> mThemeItemCache =
+            new ConcurrentHashMap<>();
+
     private ResourceResolver(
             @NonNull Map<ResourceNamespace, Map<ResourceType, ResourceValueMap>> resources,
             @Nullable StyleResourceValue theme) {
+        this(resources, theme, true);
+    }
+
+    private ResourceResolver(
+            @NonNull Map<ResourceNamespace, Map<ResourceType, ResourceValueMap>> resources,
+            @Nullable StyleResourceValue theme,
+            boolean cacheEnabled) {
         mResources = resources;
         mDefaultTheme = theme;
         mThemes = new LinkedList<>();
+        mCacheEnabled = cacheEnabled;
     }
 
     /**
@@ -266,6 +300,7 @@ public class ResourceResolver extends RenderResources {
             if (from != null && to != null) {
                 mStyleInheritanceMap.put(from.asReference(), to);
                 mReverseStyleInheritanceMap.clear();
+                invalidateStyleCaches();
             }
         }
     }
@@ -320,6 +355,7 @@ public class ResourceResolver extends RenderResources {
         } else {
             mThemes.add(theme);
         }
+        mThemeItemCache = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -328,6 +364,7 @@ public class ResourceResolver extends RenderResources {
         if (mDefaultTheme != null) {
             mThemes.add(mDefaultTheme);
         }
+        mThemeItemCache = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -361,10 +398,60 @@ public class ResourceResolver extends RenderResources {
         } while (true);
     }
 
+    @Override
+    @Nullable
+    public ResourceValue findItemInTheme(@NonNull ResourceReference attr) {
+        if (!mCacheEnabled) {
+            return super.findItemInTheme(attr);
+        }
+
+        Map<ResourceReference, Optional<ResourceValue>> cache = mThemeItemCache;
+        Optional<ResourceValue> value = cache.get(attr);
+        if (value == null) {
+            value = Optional.ofNullable(super.findItemInTheme(attr));
+            // A lookup going through a cyclic theme is reported on every call, like in styles.
+            if (areThemeHierarchiesFinite()) {
+                cache.put(attr, value);
+            }
+        }
+        return value.orElse(null);
+    }
+
+    /** Returns true if the parent chains of all the themes end within the indirection limit. */
+    private boolean areThemeHierarchiesFinite() {
+        for (StyleResourceValue theme : getAllThemes()) {
+            if (!isStyleHierarchyFinite(theme)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     @Nullable
     public StyleItemResourceValue findItemInStyle(
             @NonNull StyleResourceValue style, @NonNull ResourceReference attr) {
+        if (!mCacheEnabled) {
+            return findItemInStyleHierarchy(style, attr);
+        }
+
+        Map<ResourceReference, Optional<StyleItemResourceValue>> cache =
+                mStyleItemCache.computeIfAbsent(style, s -> new ConcurrentHashMap<>());
+        Optional<StyleItemResourceValue> item = cache.get(attr);
+        if (item == null) {
+            StyleItemResourceValue found = findItemInStyleHierarchy(style, attr);
+            // A null result may come from a cyclic hierarchy, which is reported on every lookup.
+            if (found != null || isStyleHierarchyFinite(style)) {
+                cache.put(attr, Optional.ofNullable(found));
+            }
+            return found;
+        }
+        return item.orElse(null);
+    }
+
+    @Nullable
+    private StyleItemResourceValue findItemInStyleHierarchy(
+            @NonNull StyleResourceValue style, @NonNull ResourceReference attr) {
         for (int depth = 0; depth < MAX_RESOURCE_INDIRECTION; depth++) {
             StyleItemResourceValue item = style.getItem(attr);
 
@@ -393,6 +480,32 @@ public class ResourceResolver extends RenderResources {
         return null;
     }
 
+    /** Returns true if the parent chain of the given style ends within the indirection limit. */
+    private boolean isStyleHierarchyFinite(@NonNull StyleResourceValue style) {
+        for (int depth = 0; depth < MAX_RESOURCE_INDIRECTION; depth++) {
+            style = mStyleInheritanceMap.get(style.asReference());
+            if (style == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    private static Map<
+                    StyleResourceValue, Map<ResourceReference, Optional<StyleItemResourceValue>>>
+            createStyleItemCache() {
+        // Weak keys are compared by identity, so styles that are equal but have different items
+        // don't share entries.
+        return new MapMaker().weakKeys().makeMap();
+    }
+
+    /** Discards memoized lookups after the style inheritance map changed. */
+    private void invalidateStyleCaches() {
+        mStyleItemCache = createStyleItemCache();
+        mThemeItemCache = new ConcurrentHashMap<>();
+    }
+
     @NonNull
     private String computeCyclicStyleChain(@NonNull StyleResourceValue style) {
         StringBuilder result = new StringBuilder(100);
@@ -792,7 +905,8 @@ public class ResourceResolver extends RenderResources {
                 @NonNull List<ResourceValue> lookupChain,
                 @NonNull Map<ResourceNamespace, Map<ResourceType, ResourceValueMap>> resources,
                 @Nullable StyleResourceValue theme) {
-            super(resources, theme);
+            // Memoized lookups would skip the nested calls recorded below.
+            super(resources, theme, false);
             mLookupChain = lookupChain;
         }
 
@@ -22,6 +22,9 @@ import com.android.resources.Density;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ScreenOrientation;
 import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
@@ -68,8 +71,38 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
 
     private static final ResourceQualifier[] NULL_QUALIFIERS = new ResourceQualifier[INDEX_COUNT];
 
+    /** Bit set in {@link #mQualifierMask} once the mask has been computed. */
+    private static final int MASK_COMPUTED = 1 << INDEX_COUNT;
+
+    /** Maximum number of distinct qualifier strings kept by {@link #PARSED_CONFIGS}. */
+    private static final int MAX_CACHED_CONFIGS = 1024;
+
+    /**
+     * Parsed configurations keyed by qualifier string. The cached instances are never handed out
+     * or modified; callers get a copy so the parse (and the qualifier allocations) only happens
+     * once per distinct string.
+     */
+    private static final LoadingCache<String, Optional<FolderConfiguration>> PARSED_CONFIGS =
+            CacheBuilder.newBuilder()
+                    .maximumSize(MAX_CACHED_CONFIGS)
+                    .build(
+                            new CacheLoader<String, Optional<FolderConfiguration>>() {
+                                @Override
+                                public Optional<FolderConfiguration> load(
+                                        @NonNull String qualifierString) {
+                                    return Optional.ofNullable(
+                                            getConfigFromQualifiers(
+                                                    QUALIFIER_SPLITTER.split(qualifierString)));
+                                }
+                            });
+
     private final ResourceQualifier[] mQualifiers;
     @Nullable private String mQualifierString; // Evaluated lazily.
+    /**
+     * Bit {@code i} is set when the qualifier at index {@code i} has a non-default value. Evaluated
+     * lazily; zero (no {@link #MASK_COMPUTED} bit) means it needs to be recomputed.
+     */
+    private transient int mQualifierMask;
 
     static {
         // get the default qualifiers.
@@ -433,7 +466,11 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
      */
     @Nullable
     public static FolderConfiguration getConfigForFolder(@NonNull String folderName) {
-        return getConfig(QUALIFIER_SPLITTER.split(folderName));
+        int index = folderName.indexOf(SdkConstants.RES_QUALIFIER_SEP);
+        if (index < 0) {
+            return new FolderConfiguration();
+        }
+        return getCachedConfig(folderName.substring(index + 1));
     }
 
     /**
@@ -457,10 +494,26 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         if (qualifierString.isEmpty()) {
             return new FolderConfiguration();
         } else {
-            return getConfigFromQualifiers(QUALIFIER_SPLITTER.split(qualifierString));
+            return getCachedConfig(qualifierString);
         }
     }
 
+    /**
+     * Returns a modifiable copy of the configuration parsed from the given qualifier string,
+     * parsing it only if it isn't already cached.
+     */
+    @Nullable
+    private static FolderConfiguration getCachedConfig(@NonNull String qualifierString) {
+        FolderConfiguration config = PARSED_CONFIGS.getUnchecked(qualifierString).orElse(null);
+        if (config == null) {
+            return null;
+        }
+        FolderConfiguration copy = copyOf(config);
+        copy.mQualifierString = config.getQualifierString();
+        copy.mQualifierMask = config.getQualifierMask();
+        return copy;
+    }
+
     /**
      * Returns the number of {@link ResourceQualifier} that make up a Folder configuration.
      */
@@ -495,6 +548,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
                 if (!nonFakeValuesOnly || q == null || !q.hasFakeValue()) {
                     mQualifiers[i] = q;
                     mQualifierString = null;
+                    mQualifierMask = 0;
                 }
             }
         }
@@ -506,6 +560,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void reset() {
         System.arraycopy(NULL_QUALIFIERS, 0, mQualifiers, 0, INDEX_COUNT);
         mQualifierString = "";
+        mQualifierMask = 0;
     }
 
     /**
@@ -517,6 +572,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
             if (ResourceQualifier.isValid(config.mQualifiers[i])) {
                 mQualifiers[i] = NULL_QUALIFIERS[i];
                 mQualifierString = null;
+                mQualifierMask = 0;
             }
         }
     }
@@ -530,6 +586,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
             if (config.mQualifiers[i] != NULL_QUALIFIERS[i]) {
                 mQualifiers[i] = config.mQualifiers[i];
                 mQualifierString = null;
+                mQualifierMask = 0;
             }
         }
     }
@@ -603,6 +660,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
             mQualifiers[INDEX_VERSION] = qualifier;
         }
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     /**
@@ -614,6 +672,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
             if (mQualifiers[i] == qualifier) {
                 mQualifiers[i] = NULL_QUALIFIERS[i];
                 mQualifierString = null;
+                mQualifierMask = 0;
                 return;
             }
         }
@@ -658,6 +717,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_COUNTRY_CODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_COUNTRY_CODE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -669,6 +729,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_NETWORK_CODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_NETWORK_CODE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -680,6 +741,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_LOCALE] = qualifier == null ? NULL_QUALIFIERS[INDEX_LOCALE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -691,6 +753,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_LAYOUT_DIR] = qualifier == null ? NULL_QUALIFIERS[INDEX_LAYOUT_DIR]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -703,6 +766,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
                 [INDEX_SMALLEST_SCREEN_WIDTH]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -714,6 +778,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_WIDTH] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_WIDTH]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -725,6 +790,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_HEIGHT] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_HEIGHT]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -736,6 +802,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_LAYOUT_SIZE] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_SCREEN_LAYOUT_SIZE] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -747,6 +814,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_RATIO] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_RATIO]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -758,6 +826,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_ROUND] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_ROUND]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -769,6 +838,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_WIDE_COLOR_GAMUT] =
                 qualifier == null ? NULL_QUALIFIERS[INDEX_WIDE_COLOR_GAMUT] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -780,6 +850,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_HIGH_DYNAMIC_RANGE] =
                 qualifier == null ? NULL_QUALIFIERS[INDEX_HIGH_DYNAMIC_RANGE] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -791,6 +862,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_ORIENTATION] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_SCREEN_ORIENTATION] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -802,6 +874,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_UI_MODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_UI_MODE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -813,6 +886,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_NIGHT_MODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_NIGHT_MODE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -824,6 +898,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_PIXEL_DENSITY] = qualifier == null ? NULL_QUALIFIERS[INDEX_PIXEL_DENSITY]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -835,6 +910,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_TOUCH_TYPE] = qualifier == null ? NULL_QUALIFIERS[INDEX_TOUCH_TYPE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -846,6 +922,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_KEYBOARD_STATE] = qualifier == null ? NULL_QUALIFIERS[INDEX_KEYBOARD_STATE]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -857,6 +934,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_TEXT_INPUT_METHOD] = qualifier == null ? NULL_QUALIFIERS[INDEX_TEXT_INPUT_METHOD]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -868,6 +946,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_NAVIGATION_STATE] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_NAVIGATION_STATE] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -879,6 +958,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_NAVIGATION_METHOD] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_NAVIGATION_METHOD] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -890,6 +970,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SCREEN_DIMENSION] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_SCREEN_DIMENSION] : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -901,6 +982,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_VERSION] = qualifier == null ? NULL_QUALIFIERS[INDEX_VERSION]
                 : qualifier;
         mQualifierString = null;
+        mQualifierMask = 0;
     }
 
     @Nullable
@@ -931,6 +1013,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
                 ((VersionQualifier)mQualifiers[INDEX_VERSION]).getVersion() < minSdk) {
             mQualifiers[INDEX_VERSION] = new VersionQualifier(minSdk);
             mQualifierString = null;
+            mQualifierMask = 0;
         }
     }
 
@@ -1308,16 +1391,12 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
             return false;
         }
 
-        for (int i = 0; i < INDEX_COUNT; i++) {
-            ResourceQualifier testQualifier = mQualifiers[i];
-            ResourceQualifier referenceQualifier = referenceConfig.mQualifiers[i];
-
-            // it's only a non match if both qualifiers are non-null, and they don't match.
-            if (testQualifier != null
-                    && !testQualifier.equals(testQualifier.getNullQualifier())
-                    && referenceQualifier != null
-                    && !referenceQualifier.equals(referenceQualifier.getNullQualifier())
-                    && !testQualifier.isMatchFor(referenceQualifier)) {
+        // it's only a non match if both qualifiers are set, and they don't match.
+        int common = getQualifierMask() & referenceConfig.getQualifierMask() & ~MASK_COMPUTED;
+        while (common != 0) {
+            int i = Integer.numberOfTrailingZeros(common);
+            common &= common - 1;
+            if (!mQualifiers[i].isMatchFor(referenceConfig.mQualifiers[i])) {
                 return false;
             }
         }
@@ -1325,6 +1404,25 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         return true;
     }
 
+    /**
+     * Returns a bit mask where bit {@code i} is set if the qualifier at index {@code i} is neither
+     * {@code null} nor equal to its null qualifier, always or'ed with {@link #MASK_COMPUTED}.
+     */
+    private int getQualifierMask() {
+        int mask = mQualifierMask;
+        if (mask == 0) {
+            mask = MASK_COMPUTED;
+            for (int i = 0; i < INDEX_COUNT; i++) {
+                ResourceQualifier qualifier = mQualifiers[i];
+                if (qualifier != null && !qualifier.equals(qualifier.getNullQualifier())) {
+                    mask |= 1 << i;
+                }
+            }
+            mQualifierMask = mask;
+        }
+        return mask;
+    }
+
     /**
      * Returns the index of the first non null {@link ResourceQualifier} starting at index
      * <var>startIndex</var>
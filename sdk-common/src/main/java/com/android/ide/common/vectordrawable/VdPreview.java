@@ -288,6 +288,51 @@ public class VdPreview {
         return getPreviewFromVectorTree(targetSize, vdTree, errorLog);
     }
 
+    /**
+     * Parses the VectorDrawable's XML content once so that it can be rendered at several target
+     * sizes without parsing it again.
+     *
+     * @param xmlFileContent VectorDrawable's XML file's content.
+     * @param errorLog log for the parsing errors and warnings.
+     * @return the parsed vector drawable, or null if the content is empty
+     */
+    @Nullable
+    public static ParsedVectorDrawable parseVectorXml(
+            @Nullable String xmlFileContent, @Nullable StringBuilder errorLog) {
+        if (xmlFileContent == null || xmlFileContent.isEmpty()) {
+            return null;
+        }
+
+        InputStream inputStream =
+                new ByteArrayInputStream(xmlFileContent.getBytes(StandardCharsets.UTF_8));
+        return new ParsedVectorDrawable(VdParser.parse(inputStream, errorLog));
+    }
+
+    /**
+     * A vector drawable parsed by {@link #parseVectorXml(String, StringBuilder)}. Instances are
+     * thread-safe; concurrent renderings of the same drawable are serialized because the
+     * underlying tree keeps temporary drawing state.
+     */
+    public static final class ParsedVectorDrawable {
+        @NonNull private final VdTree mTree;
+
+        private ParsedVectorDrawable(@NonNull VdTree tree) {
+            mTree = tree;
+        }
+
+        /**
+         * Renders the vector drawable into a new image.
+         *
+         * @param targetSize the size of result image.
+         * @param errorLog log for the errors and warnings.
+         */
+        @NonNull
+        public synchronized BufferedImage render(
+                @NonNull TargetSize targetSize, @Nullable StringBuilder errorLog) {
+            return getPreviewFromVectorTree(targetSize, mTree, errorLog);
+        }
+    }
+
     /**
      * This generates an image from a vector tree.
      * The size of image is determined by the {@code size}.
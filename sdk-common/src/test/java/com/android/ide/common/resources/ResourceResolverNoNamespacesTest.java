@@ -29,7 +29,9 @@ import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.rendering.api.ResourceReference;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.rendering.api.ResourceValueImpl;
+import com.android.ide.common.rendering.api.StyleItemResourceValueImpl;
 import com.android.ide.common.rendering.api.StyleResourceValue;
+import com.android.ide.common.rendering.api.StyleResourceValueImpl;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.Density;
 import com.android.resources.ResourceType;
@@ -42,6 +44,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import junit.framework.TestCase;
 
@@ -941,4 +944,67 @@ public class ResourceResolverNoNamespacesTest extends TestCase {
         assertNotNull(resolver.findResValue("@id/lib_id1", true));
         assertNotNull(resolver.findResValue("@android:id/lib_id1", false));
     }
+
+    public void testThemeChangesInvalidateLookups() {
+        StyleResourceValueImpl base = new StyleResourceValueImpl(RES_AUTO, "Base", null, null);
+        base.addItem(new StyleItemResourceValueImpl(RES_AUTO, "textColor", "#000000", null));
+        StyleResourceValueImpl theme =
+                new StyleResourceValueImpl(RES_AUTO, "AppTheme", "Base", null);
+        StyleResourceValueImpl overlay =
+                new StyleResourceValueImpl(RES_AUTO, "Overlay", null, null);
+        overlay.addItem(new StyleItemResourceValueImpl(RES_AUTO, "textColor", "#ffffff", null));
+        ResourceResolver resolver =
+                ResourceResolver.withValues(
+                        Lists.newArrayList(base, theme, overlay),
+                        new ResourceReference(RES_AUTO, ResourceType.STYLE, "AppTheme"));
+        ResourceReference textColor =
+                new ResourceReference(RES_AUTO, ResourceType.ATTR, "textColor");
+        ResourceValue reference =
+                new ResourceValueImpl(RES_AUTO, ResourceType.COLOR, "color", "?textColor");
+
+        assertEquals("#000000", resolver.findItemInTheme(textColor).getValue());
+        assertEquals("#000000", resolver.resolveResValue(reference).getValue());
+        assertEquals("#000000", resolver.findItemInStyle(theme, textColor).getValue());
+
+        resolver.applyStyle(overlay, true);
+        assertEquals("#ffffff", resolver.findItemInTheme(textColor).getValue());
+        assertEquals("#ffffff", resolver.resolveResValue(reference).getValue());
+
+        resolver.clearStyles();
+        assertEquals("#000000", resolver.findItemInTheme(textColor).getValue());
+        assertEquals("#000000", resolver.resolveResValue(reference).getValue());
+    }
+
+    public void testCyclicThemeLookupsAreNotCached() {
+        StyleResourceValueImpl theme =
+                new StyleResourceValueImpl(RES_AUTO, "AppTheme", "Base", null);
+        StyleResourceValueImpl base =
+                new StyleResourceValueImpl(RES_AUTO, "Base", "AppTheme", null);
+        ResourceResolver resolver =
+                ResourceResolver.withValues(
+                        Lists.newArrayList(base, theme),
+                        new ResourceReference(RES_AUTO, ResourceType.STYLE, "AppTheme"));
+        final AtomicInteger cycleErrors = new AtomicInteger();
+        resolver.setLogger(
+                new LayoutLog() {
+                    @Override
+                    public void error(
+                            @Nullable String tag,
+                            @NonNull String message,
+                            @Nullable Throwable throwable,
+                            @Nullable Object viewCookie,
+                            @Nullable Object data) {
+                        assertTrue(message, message.startsWith("Cyclic style parent definitions"));
+                        cycleErrors.incrementAndGet();
+                    }
+                });
+        ResourceReference textColor =
+                new ResourceReference(RES_AUTO, ResourceType.ATTR, "textColor");
+
+        assertNull(resolver.findItemInTheme(textColor));
+        assertNull(resolver.findItemInTheme(textColor));
+        assertEquals(2, cycleErrors.get());
+        assertNull(resolver.findItemInStyle(base, textColor));
+        assertEquals(3, cycleErrors.get());
+    }
 }
@@ -623,6 +623,47 @@ public class FolderConfigurationTest {
         assertThat(blankFolder).hasNoVersion();
     }
 
+    @Test
+    public void cachedConfigsAreIndependent() {
+        FolderConfiguration first = FolderConfiguration.getConfigForFolder("values-en-rUS-hdpi");
+        FolderConfiguration second = FolderConfiguration.getConfigForFolder("layout-en-rUS-hdpi");
+        Truth.assertThat(first).isNotNull();
+        Truth.assertThat(second).isNotNull();
+        Truth.assertThat(second).isNotSameAs(first);
+        Truth.assertThat(second).isEqualTo(first);
+        Truth.assertThat(FolderConfiguration.getConfigForQualifierString("en-rUS-hdpi"))
+                .isEqualTo(first);
+
+        first.setDensityQualifier(new DensityQualifier(Density.XHIGH));
+        assertThat(first).hasDensity(Density.XHIGH);
+        assertThat(second).hasDensity(Density.HIGH);
+        assertThat(FolderConfiguration.getConfigForFolder("values-en-rUS-hdpi"))
+                .hasDensity(Density.HIGH);
+
+        // Invalid folder names are remembered too.
+        Truth.assertThat(FolderConfiguration.getConfigForFolder("values-hdpi-en")).isNull();
+        Truth.assertThat(FolderConfiguration.getConfigForFolder("values-hdpi-en")).isNull();
+        Truth.assertThat(FolderConfiguration.getConfigForFolder("values-")).isNull();
+    }
+
+    @Test
+    public void matchAfterModification() {
+        FolderConfiguration reference = FolderConfiguration.getConfigForFolder("values-en-v21");
+        FolderConfiguration config = FolderConfiguration.getConfigForFolder("values-fr");
+        Truth.assertThat(reference).isNotNull();
+        Truth.assertThat(config).isNotNull();
+        Truth.assertThat(config.isMatchFor(reference)).isFalse();
+
+        config.setLocaleQualifier(null);
+        Truth.assertThat(config.isMatchFor(reference)).isTrue();
+
+        config.setVersionQualifier(new VersionQualifier(23));
+        Truth.assertThat(config.isMatchFor(reference)).isFalse();
+
+        config.reset();
+        Truth.assertThat(config.isMatchFor(reference)).isTrue();
+    }
+
     @Test
     public void screenSizeMatching() {
         runConfigMatchTest("normal-v21", 2, "", "v21", "normal", "large");